@@ -24,6 +24,7 @@ import com.sleepycat.bind.tuple.ByteBinding;
 import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.je.CheckpointConfig;
 import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
@@ -41,11 +42,15 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
@@ -54,6 +59,7 @@ import org.apache.qpid.AMQStoreException;
 import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.server.binding.Binding;
 import org.apache.qpid.server.exchange.Exchange;
+import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.message.EnqueableMessage;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.store.*;
@@ -61,12 +67,12 @@ import org.apache.qpid.server.store.ConfigurationRecoveryHandler.BindingRecovery
 import org.apache.qpid.server.store.ConfigurationRecoveryHandler.ExchangeRecoveryHandler;
 import org.apache.qpid.server.store.ConfigurationRecoveryHandler.QueueRecoveryHandler;
 import org.apache.qpid.server.store.MessageStoreRecoveryHandler.StoredMessageRecoveryHandler;
-import org.apache.qpid.server.store.TransactionLogRecoveryHandler.QueueEntryRecoveryHandler;
+import org.apache.qpid.server.store.berkeleydb.entry.ContentChunkKey;
 import org.apache.qpid.server.store.berkeleydb.entry.PreparedTransaction;
 import org.apache.qpid.server.store.berkeleydb.entry.QueueEntryKey;
 import org.apache.qpid.server.store.berkeleydb.entry.Xid;
 import org.apache.qpid.server.store.berkeleydb.tuple.ConfiguredObjectBinding;
-import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.tuple.ContentChunkKeyBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.MessageMetaDataBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.PreparedTransactionBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.QueueEntryBinding;
@@ -80,7 +86,10 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     private static final int LOCK_RETRY_ATTEMPTS = 5;
 
-    public static final int VERSION = 6;
+    public static final int VERSION = 7;
+
+    /** Message content is stored in records of at most this many bytes */
+    static final int MAX_CONTENT_CHUNK_SIZE = 64 * 1024;
 
     private static final Map<String, String> ENVCONFIG_DEFAULTS = Collections.unmodifiableMap(new HashMap<String, String>()
     {{
@@ -91,7 +100,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     private String CONFIGURED_OBJECTS = "CONFIGURED_OBJECTS";
     private String MESSAGEMETADATADB_NAME = "MESSAGE_METADATA";
-    private String MESSAGECONTENTDB_NAME = "MESSAGE_CONTENT";
+    private String MESSAGECONTENTDB_NAME = "MESSAGE_CONTENT_CHUNKS";
     private String DELIVERYDB_NAME = "QUEUE_ENTRIES";
     private String BRIDGEDB_NAME = "BRIDGES";
     private String LINKDB_NAME = "LINKS";
@@ -127,15 +136,23 @@ public abstract class AbstractBDBMessageStore implements MessageStore
      * messageId (long) - bodySize (integer), metaData (MessageMetaData encoded as binary)
      *
      * Message (Content):
-     * messageId (long), byteOffset (integer) - dataLength(integer), data(binary)
+     * messageId (long), byteOffset (integer) - data(binary)
      */
 
     private final AtomicLong _messageId = new AtomicLong(0);
+    /** the queues configured when the store was activated or created since, which alone may hold entries */
+    private volatile Set<UUID> _queueIds = new CopyOnWriteArraySet<UUID>();
+    /** the highest message id in use when the store was activated */
+    private volatile long _recoveredMaxMessageId;
+    /** the messages referenced by the prepared transactions recovered on activation */
+    private final Set<Long> _preparedMessageIds = Collections.synchronizedSet(new HashSet<Long>());
 
     protected final StateManager _stateManager;
 
     private MessageStoreRecoveryHandler _messageRecoveryHandler;
 
+    private MessageContentCache.Region _contentCache;
+
     private TransactionLogRecoveryHandler _tlogRecoveryHandler;
 
     private ConfigurationRecoveryHandler _configRecoveryHandler;
@@ -181,6 +198,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     {
         _messageRecoveryHandler = messageRecoveryHandler;
         _tlogRecoveryHandler = tlogRecoveryHandler;
+        _contentCache = MessageContentCache.getInstance().createRegion(name);
 
         _stateManager.attainState(State.INITIALISED);
     }
@@ -333,6 +351,10 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     public void close() throws Exception
     {
         _stateManager.attainState(State.CLOSING);
+        if (_contentCache != null)
+        {
+            _contentCache.close();
+        }
         closeInternal();
         _stateManager.attainState(State.CLOSED);
     }
@@ -410,6 +432,17 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         try
         {
             List<ConfiguredObjectRecord> configuredObjects = loadConfiguredObjects();
+
+            Set<UUID> queueIds = new CopyOnWriteArraySet<UUID>();
+            for(ConfiguredObjectRecord configuredObject : configuredObjects)
+            {
+                if(Queue.class.getName().equals(configuredObject.getType()))
+                {
+                    queueIds.add(configuredObject.getId());
+                }
+            }
+            _queueIds = queueIds;
+
             ExchangeRecoveryHandler erh = recoveryHandler.begin(this);
             _configuredObjectHelper.recoverExchanges(erh, configuredObjects);
 
@@ -469,26 +502,36 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         Cursor cursor = null;
         try
         {
-            cursor = _messageMetaDataDb.openCursor(null, null);
-            DatabaseEntry key = new DatabaseEntry();
-            DatabaseEntry value = new DatabaseEntry();
-            MessageMetaDataBinding valueBinding = MessageMetaDataBinding.getInstance();
-
+            // messages are read as the queues holding them are recovered; an entry may outlive its message, so new
+            // messages must not reuse the id of either
             long maxId = 0;
 
-            while (cursor.getNext(key, value, LockMode.RMW) == OperationStatus.SUCCESS)
+            cursor = _messageMetaDataDb.openCursor(null, CursorConfig.READ_COMMITTED);
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+            if (cursor.getLast(key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS)
             {
-                long messageId = LongBinding.entryToLong(key);
-                StorableMessageMetaData metaData = valueBinding.entryToObject(value);
-
-                StoredBDBMessage message = new StoredBDBMessage(messageId, metaData, true);
-
-                mrh.message(message);
+                maxId = LongBinding.entryToLong(key);
+            }
 
-                maxId = Math.max(maxId, messageId);
+            for(UUID queueId : _queueIds)
+            {
+                QueueEntryCursor entries = new QueueEntryCursor(queueId, Long.MAX_VALUE);
+                try
+                {
+                    maxId = Math.max(maxId, entries.last());
+                }
+                finally
+                {
+                    entries.close();
+                }
             }
 
             _messageId.set(maxId);
+            _recoveredMaxMessageId = maxId;
+
+            mrh.completeMessageRecovery();
         }
         catch (DatabaseException e)
         {
@@ -504,83 +547,347 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     private void recoverQueueEntries(TransactionLogRecoveryHandler recoveryHandler)
     throws DatabaseException
     {
-        QueueEntryRecoveryHandler qerh = recoveryHandler.begin(this);
+        TransactionLogRecoveryHandler.DtxRecordRecoveryHandler dtxrh =
+                recoveryHandler.begin(this).completeQueueEntryRecovery(new BDBQueueEntryReader());
 
-        ArrayList<QueueEntryKey> entries = new ArrayList<QueueEntryKey>();
+        _preparedMessageIds.clear();
 
         Cursor cursor = null;
         try
         {
-            cursor = _deliveryDb.openCursor(null, null);
+            cursor = _xidDb.openCursor(null, null);
             DatabaseEntry key = new DatabaseEntry();
-            QueueEntryBinding keyBinding = QueueEntryBinding.getInstance();
-
+            XidBinding keyBinding = XidBinding.getInstance();
+            PreparedTransactionBinding valueBinding = new PreparedTransactionBinding();
             DatabaseEntry value = new DatabaseEntry();
+
             while (cursor.getNext(key, value, LockMode.RMW) == OperationStatus.SUCCESS)
             {
-                QueueEntryKey qek = keyBinding.entryToObject(key);
+                Xid xid = keyBinding.entryToObject(key);
+                PreparedTransaction preparedTransaction = valueBinding.entryToObject(value);
+                addPreparedMessageIds(preparedTransaction.getEnqueues());
+                addPreparedMessageIds(preparedTransaction.getDequeues());
+                dtxrh.dtxRecord(xid.getFormat(),xid.getGlobalId(),xid.getBranchId(),
+                                preparedTransaction.getEnqueues(),preparedTransaction.getDequeues());
+            }
 
-                entries.add(qek);
+        }
+        catch (DatabaseException e)
+        {
+            LOGGER.error("Database Error: " + e.getMessage(), e);
+            throw e;
+        }
+        finally
+        {
+            closeCursorSafely(cursor);
+        }
+
+
+        dtxrh.completeDtxRecordRecovery();
+    }
+
+    private void addPreparedMessageIds(org.apache.qpid.server.store.Transaction.Record[] records)
+    {
+        for(org.apache.qpid.server.store.Transaction.Record record : records)
+        {
+            _preparedMessageIds.add(record.getMessage().getMessageNumber());
+        }
+    }
+
+    /**
+     * @return whether any queue still holds an entry for the message
+     */
+    private boolean isEnqueued(long messageId) throws DatabaseException
+    {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        for(UUID queueId : _queueIds)
+        {
+            QueueEntryBinding.getInstance().objectToEntry(new QueueEntryKey(queueId, messageId), key);
+            if(_deliveryDb.get(null, key, value, LockMode.READ_COMMITTED) == OperationStatus.SUCCESS)
+            {
+                return true;
             }
+        }
+        return false;
+    }
 
+    private void removeUnconfiguredQueueEntries() throws DatabaseException
+    {
+        List<UUID> queueIds = new ArrayList<UUID>();
+        Cursor cursor = null;
+        try
+        {
+            // the entries are ordered by queue, so each queue is skipped over once it has been seen
+            cursor = _deliveryDb.openCursor(null, CursorConfig.READ_COMMITTED);
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+            QueueEntryBinding keyBinding = QueueEntryBinding.getInstance();
+            OperationStatus status = cursor.getFirst(key, value, LockMode.DEFAULT);
+            while (status == OperationStatus.SUCCESS)
+            {
+                UUID queueId = keyBinding.entryToObject(key).getQueueId();
+                if(!_queueIds.contains(queueId))
+                {
+                    queueIds.add(queueId);
+                }
+                keyBinding.objectToEntry(new QueueEntryKey(queueId, Long.MAX_VALUE), key);
+                status = cursor.getSearchKeyRange(key, value, LockMode.DEFAULT);
+            }
+        }
+        finally
+        {
+            closeCursorSafely(cursor);
+        }
+
+        for(UUID queueId : queueIds)
+        {
+            List<Long> messageIds = new ArrayList<Long>();
+            QueueEntryCursor entries = new QueueEntryCursor(queueId, Long.MAX_VALUE);
             try
             {
-                cursor.close();
+                for(boolean more = entries.seek(0); more; more = entries.next())
+                {
+                    messageIds.add(entries.getMessageId());
+                }
             }
             finally
             {
-                cursor = null;
+                entries.close();
             }
 
-            for(QueueEntryKey entry : entries)
+            DatabaseEntry key = new DatabaseEntry();
+            for(Long messageId : messageIds)
             {
-                UUID queueId = entry.getQueueId();
-                long messageId = entry.getMessageId();
-                qerh.queueEntry(queueId, messageId);
+                QueueEntryBinding.getInstance().objectToEntry(new QueueEntryKey(queueId, messageId), key);
+                _deliveryDb.delete(null, key);
             }
+            LOGGER.warn(messageIds.size() + " message(s) referenced in log as enqueued in unknown queue " + queueId
+                        + ", entries have been discarded");
         }
-        catch (DatabaseException e)
+    }
+
+    private void removeUnreferencedMessages() throws DatabaseException, AMQStoreException
+    {
+        List<Long> messageIds = new ArrayList<Long>();
+        List<QueueEntryCursor> cursors = new ArrayList<QueueEntryCursor>();
+        Cursor cursor = null;
+        try
         {
-            LOGGER.error("Database Error: " + e.getMessage(), e);
-            throw e;
+            // the entries of each queue are ordered by message id, so merging them finds the unreferenced messages
+            PriorityQueue<QueueEntryCursor> entries = new PriorityQueue<QueueEntryCursor>();
+            for(UUID queueId : _queueIds)
+            {
+                QueueEntryCursor queueEntries = new QueueEntryCursor(queueId, _recoveredMaxMessageId);
+                cursors.add(queueEntries);
+                if(queueEntries.seek(0))
+                {
+                    entries.add(queueEntries);
+                }
+            }
+
+            cursor = _messageMetaDataDb.openCursor(null, CursorConfig.READ_COMMITTED);
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+            while (cursor.getNext(key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS)
+            {
+                long messageId = LongBinding.entryToLong(key);
+                if(messageId > _recoveredMaxMessageId)
+                {
+                    break;
+                }
+
+                boolean referenced = false;
+                while(!entries.isEmpty() && entries.peek().getMessageId() <= messageId)
+                {
+                    QueueEntryCursor queueEntries = entries.poll();
+                    boolean more;
+                    if(queueEntries.getMessageId() == messageId)
+                    {
+                        referenced = true;
+                        more = queueEntries.next();
+                    }
+                    else
+                    {
+                        more = queueEntries.seek(messageId);
+                    }
+                    if(more)
+                    {
+                        entries.add(queueEntries);
+                    }
+                }
+
+                if(!referenced && !_preparedMessageIds.contains(messageId))
+                {
+                    messageIds.add(messageId);
+                }
+            }
         }
         finally
         {
             closeCursorSafely(cursor);
+            for(QueueEntryCursor queueEntries : cursors)
+            {
+                queueEntries.close();
+            }
         }
 
-        TransactionLogRecoveryHandler.DtxRecordRecoveryHandler dtxrh = qerh.completeQueueEntryRecovery();
+        for(Long messageId : messageIds)
+        {
+            LOGGER.warn("Message id " + messageId + " in store, but not in any queue - removing....");
+            removeMessage(messageId, false);
+        }
+    }
 
-        cursor = null;
-        try
+    /**
+     * Reads the entries of one queue, in message id order, up to a given message id.
+     */
+    private class QueueEntryCursor implements Comparable<QueueEntryCursor>
+    {
+        private final UUID _queueId;
+        private final long _maxMessageId;
+        private final Cursor _cursor;
+        private final DatabaseEntry _key = new DatabaseEntry();
+        private final DatabaseEntry _value = new DatabaseEntry();
+        private long _messageId;
+
+        QueueEntryCursor(UUID queueId, long maxMessageId) throws DatabaseException
         {
-            cursor = _xidDb.openCursor(null, null);
-            DatabaseEntry key = new DatabaseEntry();
-            XidBinding keyBinding = XidBinding.getInstance();
-            PreparedTransactionBinding valueBinding = new PreparedTransactionBinding();
-            DatabaseEntry value = new DatabaseEntry();
+            _queueId = queueId;
+            _maxMessageId = maxMessageId;
+            _cursor = _deliveryDb.openCursor(null, CursorConfig.READ_COMMITTED);
+            _value.setPartial(0, 0, true);
+        }
 
-            while (cursor.getNext(key, value, LockMode.RMW) == OperationStatus.SUCCESS)
+        /**
+         * Moves to the first entry for a message with an id of at least the given one.
+         *
+         * @return false if the queue has no such entry
+         */
+        boolean seek(long messageId) throws DatabaseException
+        {
+            QueueEntryBinding.getInstance().objectToEntry(new QueueEntryKey(_queueId, messageId), _key);
+            return read(_cursor.getSearchKeyRange(_key, _value, LockMode.DEFAULT));
+        }
+
+        boolean next() throws DatabaseException
+        {
+            return read(_cursor.getNext(_key, _value, LockMode.DEFAULT));
+        }
+
+        /**
+         * @return the id of the last message on the queue, or 0 if it has none
+         */
+        long last() throws DatabaseException
+        {
+            // the last entry of the queue precedes the first entry of the next queue, if there is one
+            QueueEntryBinding.getInstance().objectToEntry(new QueueEntryKey(_queueId, Long.MAX_VALUE), _key);
+            OperationStatus status = _cursor.getSearchKeyRange(_key, _value, LockMode.DEFAULT);
+            if(status != OperationStatus.SUCCESS)
             {
-                Xid xid = keyBinding.entryToObject(key);
-                PreparedTransaction preparedTransaction = valueBinding.entryToObject(value);
-                dtxrh.dtxRecord(xid.getFormat(),xid.getGlobalId(),xid.getBranchId(),
-                                preparedTransaction.getEnqueues(),preparedTransaction.getDequeues());
+                status = _cursor.getLast(_key, _value, LockMode.DEFAULT);
             }
+            else if(!read(status))
+            {
+                status = _cursor.getPrev(_key, _value, LockMode.DEFAULT);
+            }
+            return read(status) ? _messageId : 0l;
+        }
 
+        long getMessageId()
+        {
+            return _messageId;
         }
-        catch (DatabaseException e)
+
+        void close()
         {
-            LOGGER.error("Database Error: " + e.getMessage(), e);
-            throw e;
+            _cursor.close();
         }
-        finally
+
+        private boolean read(OperationStatus status)
         {
-            closeCursorSafely(cursor);
+            if(status != OperationStatus.SUCCESS)
+            {
+                return false;
+            }
+            QueueEntryKey entry = QueueEntryBinding.getInstance().entryToObject(_key);
+            _messageId = entry.getMessageId();
+            return _queueId.equals(entry.getQueueId()) && _messageId <= _maxMessageId;
         }
 
+        public int compareTo(QueueEntryCursor other)
+        {
+            return _messageId < other._messageId ? -1 : (_messageId == other._messageId ? 0 : 1);
+        }
+    }
 
-        dtxrh.completeDtxRecordRecovery();
+    private class BDBQueueEntryReader implements QueueEntryReader
+    {
+        public void readQueueEntries(UUID queueId, QueueEntryHandler handler) throws AMQStoreException
+        {
+            try
+            {
+                QueueEntryCursor entries = new QueueEntryCursor(queueId, _recoveredMaxMessageId);
+                try
+                {
+                    for(boolean more = entries.seek(0); more; more = entries.next())
+                    {
+                        long messageId = entries.getMessageId();
+                        if(!handler.queueEntry(messageId, readMessage(messageId)))
+                        {
+                            break;
+                        }
+                    }
+                }
+                finally
+                {
+                    entries.close();
+                }
+            }
+            catch (DatabaseException e)
+            {
+                throw new AMQStoreException("Error reading the entries of queue " + queueId + ": " + e.getMessage(), e);
+            }
+        }
+
+        public StoredMessage<?> readMessage(long messageId) throws AMQStoreException
+        {
+            DatabaseEntry key = new DatabaseEntry();
+            LongBinding.longToEntry(messageId, key);
+            DatabaseEntry value = new DatabaseEntry();
+            try
+            {
+                if (_messageMetaDataDb.get(null, key, value, LockMode.READ_COMMITTED) != OperationStatus.SUCCESS)
+                {
+                    return null;
+                }
+            }
+            catch (DatabaseException e)
+            {
+                throw new AMQStoreException("Error reading message " + messageId + ": " + e.getMessage(), e);
+            }
+
+            // the meta data is decoded when the message is first used
+            byte[] metaDataEntry = new byte[value.getSize()];
+            System.arraycopy(value.getData(), value.getOffset(), metaDataEntry, 0, value.getSize());
+            return new StoredBDBMessage(messageId, metaDataEntry);
+        }
+
+        public void removeUnreferenced() throws AMQStoreException
+        {
+            try
+            {
+                removeUnconfiguredQueueEntries();
+                removeUnreferencedMessages();
+            }
+            catch (DatabaseException e)
+            {
+                throw new AMQStoreException("Error removing unreferenced messages: " + e.getMessage(), e);
+            }
+        }
     }
 
     public void removeMessage(long messageId, boolean sync) throws AMQStoreException
@@ -623,9 +930,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                     }
 
                     //now remove the content data from the store if there is any.
-                    DatabaseEntry contentKeyEntry = new DatabaseEntry();
-                    LongBinding.longToEntry(messageId, contentKeyEntry);
-                    _messageContentDb.delete(tx, contentKeyEntry);
+                    deleteContent(tx, messageId);
 
                     if (LOGGER.isDebugEnabled())
                     {
@@ -800,6 +1105,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                         + ", arguments=" + arguments + "): called");
             }
             ConfiguredObjectRecord configuredObject = _configuredObjectHelper.createQueueConfiguredObject(queue, arguments);
+            _queueIds.add(queue.getId());
             storeConfiguredObjectEntry(configuredObject);
         }
     }
@@ -1177,10 +1483,19 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                                       ByteBuffer contentBody) throws AMQStoreException
     {
         DatabaseEntry key = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, key);
+        ContentChunkKeyBinding.getInstance().objectToEntry(new ContentChunkKey(messageId, offset), key);
         DatabaseEntry value = new DatabaseEntry();
-        ContentBinding messageBinding = ContentBinding.getInstance();
-        messageBinding.objectToEntry(contentBody.array(), value);
+        if (contentBody.hasArray())
+        {
+            value.setData(contentBody.array(), contentBody.arrayOffset() + contentBody.position(),
+                          contentBody.remaining());
+        }
+        else
+        {
+            byte[] data = new byte[contentBody.remaining()];
+            contentBody.duplicate().get(data);
+            value.setData(data);
+        }
         try
         {
             OperationStatus status = _messageContentDb.put(tx, key, value);
@@ -1191,7 +1506,8 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
             if (LOGGER.isDebugEnabled())
             {
-                LOGGER.debug("Storing content for message " + messageId + " in transaction " + tx);
+                LOGGER.debug("Storing content for message " + messageId + " at offset " + offset
+                             + " in transaction " + tx);
 
             }
         }
@@ -1201,6 +1517,34 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         }
     }
 
+    /**
+     * Removes all the chunks of content stored for a message.
+     */
+    private void deleteContent(final com.sleepycat.je.Transaction tx, long messageId)
+    {
+        ContentChunkKeyBinding keyBinding = ContentChunkKeyBinding.getInstance();
+        Cursor cursor = null;
+        try
+        {
+            cursor = _messageContentDb.openCursor(tx, null);
+            DatabaseEntry key = new DatabaseEntry();
+            keyBinding.objectToEntry(new ContentChunkKey(messageId, 0), key);
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+
+            OperationStatus status = cursor.getSearchKeyRange(key, value, LockMode.RMW);
+            while (status == OperationStatus.SUCCESS && keyBinding.entryToObject(key).getMessageId() == messageId)
+            {
+                cursor.delete();
+                status = cursor.getNext(key, value, LockMode.RMW);
+            }
+        }
+        finally
+        {
+            closeCursorSafely(cursor);
+        }
+    }
+
     /**
      * Stores message meta-data.
      *
@@ -1295,40 +1639,63 @@ public abstract class AbstractBDBMessageStore implements MessageStore
      */
     public int getContent(long messageId, int offset, ByteBuffer dst) throws AMQStoreException
     {
+        ContentChunkKeyBinding keyBinding = ContentChunkKeyBinding.getInstance();
         DatabaseEntry contentKeyEntry = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, contentKeyEntry);
+        keyBinding.objectToEntry(new ContentChunkKey(messageId, offset), contentKeyEntry);
         DatabaseEntry value = new DatabaseEntry();
-        ContentBinding contentTupleBinding = ContentBinding.getInstance();
-
 
         if (LOGGER.isDebugEnabled())
         {
             LOGGER.debug("Message Id: " + messageId + " Getting content body from offset: " + offset);
         }
 
+        Cursor cursor = null;
         try
         {
+            cursor = _messageContentDb.openCursor(null, null);
 
-            int written = 0;
-            OperationStatus status = _messageContentDb.get(null, contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
-            if (status == OperationStatus.SUCCESS)
+            // find the chunk holding the offset: either the chunk starting at the offset, or the one before
+            OperationStatus status = cursor.getSearchKeyRange(contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
+            ContentChunkKey chunkKey = status == OperationStatus.SUCCESS ? keyBinding.entryToObject(contentKeyEntry) : null;
+            if (chunkKey == null || chunkKey.getMessageId() != messageId || chunkKey.getOffset() > offset)
             {
-                byte[] dataAsBytes = contentTupleBinding.entryToObject(value);
-                int size = dataAsBytes.length;
-                if (offset > size)
+                status = chunkKey == null
+                         ? cursor.getLast(contentKeyEntry, value, LockMode.READ_UNCOMMITTED)
+                         : cursor.getPrev(contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
+                chunkKey = status == OperationStatus.SUCCESS ? keyBinding.entryToObject(contentKeyEntry) : null;
+                if (chunkKey == null || chunkKey.getMessageId() != messageId)
                 {
-                    throw new RuntimeException("Offset " + offset + " is greater than message size " + size
-                            + " for message id " + messageId + "!");
-
+                    return 0;
                 }
+            }
 
-                written = size - offset;
-                if(written > dst.remaining())
+            if (offset > chunkKey.getOffset() + value.getSize())
+            {
+                throw new RuntimeException("Offset " + offset + " is greater than message size "
+                        + (chunkKey.getOffset() + value.getSize()) + " for message id " + messageId + "!");
+            }
+
+            int written = 0;
+            while (dst.hasRemaining())
+            {
+                int position = offset + written - chunkKey.getOffset();
+                int length = Math.min(value.getSize() - position, dst.remaining());
+                if (length > 0)
                 {
-                    written = dst.remaining();
+                    dst.put(value.getData(), value.getOffset() + position, length);
+                    written += length;
                 }
 
-                dst.put(dataAsBytes, offset, written);
+                status = cursor.getNext(contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
+                if (status != OperationStatus.SUCCESS)
+                {
+                    break;
+                }
+                chunkKey = keyBinding.entryToObject(contentKeyEntry);
+                if (chunkKey.getMessageId() != messageId)
+                {
+                    break;
+                }
             }
             return written;
         }
@@ -1336,6 +1703,10 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         {
             throw new AMQStoreException("Error getting AMQMessage with id " + messageId + " to database: " + e.getMessage(), e);
         }
+        finally
+        {
+            closeCursorSafely(cursor);
+        }
     }
 
     public boolean isPersistent()
@@ -1352,7 +1723,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         }
         else
         {
-            return new StoredMemoryMessage(getNewMessageId(), metaData);
+            return new StoredMemoryMessage(getNewMessageId(), metaData, _contentCache);
         }
     }
 
@@ -1434,9 +1805,14 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
         private StorableMessageMetaData _metaData;
         private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
+        /** the stored meta data of a recovered message, until it is first decoded */
+        private volatile byte[] _recoveredMetaData;
 
-        private byte[] _data;
-        private volatile SoftReference<byte[]> _dataRef;
+        /** content not yet stored, in chunks of at most MAX_CONTENT_CHUNK_SIZE bytes */
+        private volatile List<byte[]> _chunks;
+        /** stored content, until it is evicted from the cache */
+        private volatile MessageContentCache.Entry<List<byte[]>> _cachedChunks;
+        private volatile boolean _removed;
 
         StoredBDBMessage(long messageId, StorableMessageMetaData metaData)
         {
@@ -1455,18 +1831,33 @@ public abstract class AbstractBDBMessageStore implements MessageStore
             _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
         }
 
+        StoredBDBMessage(long messageId, byte[] recoveredMetaData)
+        {
+            this(messageId, null, true);
+            _recoveredMetaData = recoveredMetaData;
+        }
+
         public StorableMessageMetaData getMetaData()
         {
             StorableMessageMetaData metaData = _metaDataRef.get();
             if(metaData == null)
             {
-                try
+                byte[] recoveredMetaData = _recoveredMetaData;
+                if(recoveredMetaData != null)
                 {
-                    metaData = AbstractBDBMessageStore.this.getMessageMetaData(_messageId);
+                    metaData = MessageMetaDataBinding.getInstance().entryToObject(new DatabaseEntry(recoveredMetaData));
+                    _recoveredMetaData = null;
                 }
-                catch (AMQStoreException e)
+                else
                 {
-                    throw new RuntimeException(e);
+                    try
+                    {
+                        metaData = AbstractBDBMessageStore.this.getMessageMetaData(_messageId);
+                    }
+                    catch (AMQStoreException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
                 }
                 _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
             }
@@ -1481,34 +1872,101 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
         public void addContent(int offsetInMessage, java.nio.ByteBuffer src)
         {
-            src = src.slice();
+            src = src.duplicate();
 
-            if(_data == null)
+            if(_chunks == null)
             {
-                _data = new byte[src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
-                src.duplicate().get(_data);
+                _chunks = new ArrayList<byte[]>();
             }
-            else
+
+            while(src.hasRemaining())
             {
-                byte[] oldData = _data;
-                _data = new byte[oldData.length + src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
+                byte[] chunk = new byte[Math.min(src.remaining(), MAX_CONTENT_CHUNK_SIZE)];
+                src.get(chunk);
+                _chunks.add(chunk);
+            }
+        }
 
-                System.arraycopy(oldData,0,_data,0,oldData.length);
-                src.duplicate().get(_data, oldData.length, src.remaining());
+        private List<byte[]> getChunks()
+        {
+            List<byte[]> chunks = _chunks;
+            if(chunks == null)
+            {
+                MessageContentCache.Entry<List<byte[]>> cachedChunks = _cachedChunks;
+                chunks = cachedChunks == null ? null : cachedChunks.get();
+                if(chunks == null && _contentCache != null && !_removed && stored())
+                {
+                    chunks = readChunks();
+                }
             }
+            return chunks;
+        }
 
+        /**
+         * Reads the stored content back into the cache, unless it is too large to be cached.
+         */
+        private synchronized List<byte[]> readChunks()
+        {
+            MessageContentCache.Entry<List<byte[]>> cachedChunks = _cachedChunks;
+            List<byte[]> chunks = cachedChunks == null ? null : cachedChunks.get();
+            if(chunks == null)
+            {
+                int size = getMetaData().getContentSize();
+                if(size == 0 || !_contentCache.fits(size))
+                {
+                    return null;
+                }
+                chunks = new ArrayList<byte[]>();
+                try
+                {
+                    for(int offset = 0; offset < size; offset += MAX_CONTENT_CHUNK_SIZE)
+                    {
+                        byte[] chunk = new byte[Math.min(size - offset, MAX_CONTENT_CHUNK_SIZE)];
+                        if(AbstractBDBMessageStore.this.getContent(_messageId, offset, ByteBuffer.wrap(chunk))
+                           != chunk.length)
+                        {
+                            return null;
+                        }
+                        chunks.add(chunk);
+                    }
+                }
+                catch (AMQStoreException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                cachedChunks = _contentCache.add(chunks, size);
+                _cachedChunks = cachedChunks;
+                if(_removed)
+                {
+                    cachedChunks.discard();
+                }
+            }
+            return chunks;
         }
 
         public int getContent(int offsetInMessage, java.nio.ByteBuffer dst)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
-            if(data != null)
+            List<byte[]> chunks = getChunks();
+            if(chunks != null)
             {
-                int length = Math.min(dst.remaining(), data.length - offsetInMessage);
-                dst.put(data, offsetInMessage, length);
-                return length;
+                int written = 0;
+                int chunkOffset = 0;
+                for(byte[] chunk : chunks)
+                {
+                    if(!dst.hasRemaining())
+                    {
+                        break;
+                    }
+                    int position = offsetInMessage + written - chunkOffset;
+                    if(position < chunk.length)
+                    {
+                        int length = Math.min(chunk.length - position, dst.remaining());
+                        dst.put(chunk, position, length);
+                        written += length;
+                    }
+                    chunkOffset += chunk.length;
+                }
+                return written;
             }
             else
             {
@@ -1526,19 +1984,31 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
-            if(data != null)
-            {
-                return ByteBuffer.wrap(data,offsetInMessage,size);
-            }
-            else
+            List<byte[]> chunks = getChunks();
+            if(chunks != null)
             {
-                ByteBuffer buf = ByteBuffer.allocate(size);
-                int length = getContent(offsetInMessage, buf);
-                buf.limit(length);
-                buf.position(0);
-                return  buf;
+                // a range within a single chunk needs no copy
+                int chunkOffset = 0;
+                for(byte[] chunk : chunks)
+                {
+                    if(offsetInMessage < chunkOffset + chunk.length)
+                    {
+                        int position = offsetInMessage - chunkOffset;
+                        if(position + size <= chunk.length)
+                        {
+                            return ByteBuffer.wrap(chunk, position, size).slice();
+                        }
+                        break;
+                    }
+                    chunkOffset += chunk.length;
+                }
             }
+
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            int length = getContent(offsetInMessage, buf);
+            buf.limit(length);
+            buf.position(0);
+            return  buf;
         }
 
         synchronized void store(com.sleepycat.je.Transaction txn)
@@ -1547,10 +2017,18 @@ public abstract class AbstractBDBMessageStore implements MessageStore
             {
                 try
                 {
-                    _dataRef = new SoftReference<byte[]>(_data);
+                    List<byte[]> chunks = _chunks == null ? Collections.<byte[]>emptyList() : _chunks;
                     AbstractBDBMessageStore.this.storeMetaData(txn, _messageId, _metaData);
-                    AbstractBDBMessageStore.this.addContent(txn, _messageId, 0,
-                                                    _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    int offset = 0;
+                    for(byte[] chunk : chunks)
+                    {
+                        AbstractBDBMessageStore.this.addContent(txn, _messageId, offset, ByteBuffer.wrap(chunk));
+                        offset += chunk.length;
+                    }
+                    if(_contentCache != null && offset > 0)
+                    {
+                        _cachedChunks = _contentCache.add(chunks, offset);
+                    }
                 }
                 catch(DatabaseException e)
                 {
@@ -1568,7 +2046,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                 finally
                 {
                     _metaData = null;
-                    _data = null;
+                    _chunks = null;
                 }
             }
         }
@@ -1590,14 +2068,27 @@ public abstract class AbstractBDBMessageStore implements MessageStore
             try
             {
                 int delta = getMetaData().getContentSize();
-                AbstractBDBMessageStore.this.removeMessage(_messageId, false);
-                storedSizeChange(-delta);
-
+                _removed = true;
+                MessageContentCache.Entry<List<byte[]>> cachedChunks = _cachedChunks;
+                if(cachedChunks != null)
+                {
+                    cachedChunks.discard();
+                }
+                // each queue holding a recovered message reads its own copy, and the last of them removes it
+                if(!_isRecovered || !isEnqueued(_messageId))
+                {
+                    AbstractBDBMessageStore.this.removeMessage(_messageId, false);
+                    storedSizeChange(-delta);
+                }
             }
             catch (AMQStoreException e)
             {
                 throw new RuntimeException(e);
             }
+            catch (DatabaseException e)
+            {
+                throw new RuntimeException(e);
+            }
         }
 
         private boolean stored()
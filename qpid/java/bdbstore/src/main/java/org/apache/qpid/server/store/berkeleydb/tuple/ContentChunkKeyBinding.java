@@ -24,29 +24,35 @@ import com.sleepycat.bind.tuple.TupleBinding;
 import com.sleepycat.bind.tuple.TupleInput;
 import com.sleepycat.bind.tuple.TupleOutput;
 
-public class ContentBinding extends TupleBinding<byte[]>
+import org.apache.qpid.server.store.berkeleydb.entry.ContentChunkKey;
+
+/**
+ * Binds the key of a chunk of message content: the message id followed by the offset of the chunk in the
+ * message, so that the chunks of a message are stored together, in order.
+ */
+public class ContentChunkKeyBinding extends TupleBinding<ContentChunkKey>
 {
-    private static final ContentBinding INSTANCE = new ContentBinding();
+    private static final ContentChunkKeyBinding INSTANCE = new ContentChunkKeyBinding();
 
-    public static ContentBinding getInstance()
+    public static ContentChunkKeyBinding getInstance()
     {
         return INSTANCE;
     }
 
     /** private constructor forces getInstance instead */
-    private ContentBinding() { }
+    private ContentChunkKeyBinding() { }
 
-    @Override
-    public byte[] entryToObject(final TupleInput input)
+    public ContentChunkKey entryToObject(TupleInput tupleInput)
     {
-        byte[] data = new byte[input.available()];
-        input.read(data);
-        return data;
+        long messageId = tupleInput.readLong();
+        int offset = tupleInput.readInt();
+
+        return new ContentChunkKey(messageId, offset);
     }
 
-    @Override
-    public void objectToEntry(final byte[] data, final TupleOutput output)
+    public void objectToEntry(ContentChunkKey key, TupleOutput tupleOutput)
     {
-        output.write(data);
+        tupleOutput.writeLong(key.getMessageId());
+        tupleOutput.writeInt(key.getOffset());
     }
 }
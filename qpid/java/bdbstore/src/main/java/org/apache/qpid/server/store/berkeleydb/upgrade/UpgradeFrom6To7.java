@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.upgrade;
+
+import org.apache.log4j.Logger;
+import org.apache.qpid.AMQStoreException;
+
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+public class UpgradeFrom6To7 extends AbstractStoreUpgrade
+{
+    private static final Logger _logger = Logger.getLogger(UpgradeFrom6To7.class);
+
+    static final String OLD_CONTENT_DB_NAME = "MESSAGE_CONTENT";
+    static final String NEW_CONTENT_DB_NAME = "MESSAGE_CONTENT_CHUNKS";
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Upgrades from a v6 database to a v7 database
+     *
+     * Change in this version:
+     *
+     * Message content is moved from the database MESSAGE_CONTENT to
+     * MESSAGE_CONTENT_CHUNKS. The structure of the database changes from
+     * ( message-id: long ) -> ( byte[] data ) to ( message-id: long,
+     * offset: int ) -> ( byte[] data )
+     *
+     * That is the content of a message is split into records of at most 64k,
+     * so that a range of the content can be read without reading it all
+     */
+    public void performUpgrade(final Environment environment, final UpgradeInteractionHandler handler, String virtualHostName)
+            throws DatabaseException, AMQStoreException
+    {
+        reportStarting(environment, 6);
+        upgradeMessageContent(environment);
+        reportFinished(environment, 7);
+    }
+
+    private void upgradeMessageContent(final Environment environment) throws AMQStoreException
+    {
+        _logger.info("Message Contents");
+        if (environment.getDatabaseNames().contains(OLD_CONTENT_DB_NAME))
+        {
+            Transaction transaction = null;
+            try
+            {
+                transaction = environment.beginTransaction(null, null);
+                CursorOperation contentOperation = new CursorOperation()
+                {
+                    @Override
+                    public void processEntry(Database oldContentDatabase, Database newContentDatabase,
+                            Transaction contentTransaction, DatabaseEntry key, DatabaseEntry value)
+                    {
+                        long messageId = LongBinding.entryToLong(key);
+                        upgradeMessage(messageId, value, newContentDatabase, contentTransaction);
+                    }
+                };
+                new DatabaseTemplate(environment, OLD_CONTENT_DB_NAME, NEW_CONTENT_DB_NAME, transaction)
+                        .run(contentOperation);
+                _logger.info(contentOperation.getRowCount() + " Message Content Entries");
+                environment.removeDatabase(transaction, OLD_CONTENT_DB_NAME);
+                transaction.commit();
+            }
+            catch (Exception e)
+            {
+                if (transaction != null)
+                {
+                    transaction.abort();
+                }
+                if (e instanceof DatabaseException)
+                {
+                    throw (DatabaseException) e;
+                }
+                else
+                {
+                    throw new AMQStoreException("Unexpected exception", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the content of an individual message into chunks, adding a record for each to the new database
+     */
+    private void upgradeMessage(long messageId, DatabaseEntry oldValue, Database newDatabase, Transaction txn)
+    {
+        byte[] data = oldValue.getData();
+        int start = oldValue.getOffset();
+        int size = oldValue.getSize();
+        ChunkKeyBinding keyBinding = new ChunkKeyBinding();
+        for (int offset = 0; offset < size; offset += CHUNK_SIZE)
+        {
+            DatabaseEntry key = new DatabaseEntry();
+            keyBinding.objectToEntry(new ChunkKey(messageId, offset), key);
+            DatabaseEntry value = new DatabaseEntry(data, start + offset, Math.min(CHUNK_SIZE, size - offset));
+
+            OperationStatus status = newDatabase.put(txn, key, value);
+            if (status != OperationStatus.SUCCESS)
+            {
+                throw new RuntimeException("Cannot add record into " + newDatabase.getDatabaseName() + ":" + status);
+            }
+        }
+    }
+
+    static final class ChunkKey
+    {
+        private final long _messageId;
+        private final int _offset;
+
+        public ChunkKey(final long messageId, final int offset)
+        {
+            _messageId = messageId;
+            _offset = offset;
+        }
+
+        public long getMessageId()
+        {
+            return _messageId;
+        }
+
+        public int getOffset()
+        {
+            return _offset;
+        }
+    }
+
+    static final class ChunkKeyBinding extends TupleBinding<ChunkKey>
+    {
+        @Override
+        public ChunkKey entryToObject(final TupleInput input)
+        {
+            return new ChunkKey(input.readLong(), input.readInt());
+        }
+
+        @Override
+        public void objectToEntry(final ChunkKey object, final TupleOutput output)
+        {
+            output.writeLong(object._messageId);
+            output.writeInt(object._offset);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import org.apache.qpid.AMQException;
 import org.apache.qpid.AMQStoreException;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicContentHeaderProperties;
@@ -34,6 +35,7 @@ import org.apache.qpid.framing.abstraction.MessagePublishInfo;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.EnqueableMessage;
 import org.apache.qpid.server.message.MessageMetaData;
+import org.apache.qpid.server.message.MessageConverter;
 import org.apache.qpid.server.message.MessageMetaData_0_10;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
@@ -44,6 +46,7 @@ import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.store.Transaction;
 import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.virtualhost.VirtualHost;
 import org.apache.qpid.transport.DeliveryProperties;
 import org.apache.qpid.transport.Header;
 import org.apache.qpid.transport.MessageAcceptMode;
@@ -367,6 +370,67 @@ public class BDBMessageStoreTest extends org.apache.qpid.server.store.MessageSto
         assertEquals("Retrieved content when none was expected",
                         0, bdbStore.getContent(messageid_0_8, 0, dst));
     }
+
+    public void testGetContentAcrossChunks() throws Exception
+    {
+        MessageStore store = getVirtualHost().getMessageStore();
+        AbstractBDBMessageStore bdbStore = assertBDBStore(store);
+
+        byte[] content = new byte[AbstractBDBMessageStore.MAX_CONTENT_CHUNK_SIZE * 3 + 100];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        long first = createAndStoreMultiChunkMessage_0_8(store, content).getMessageNumber();
+        long second = createAndStoreMultiChunkMessage_0_8(store, content).getMessageNumber();
+
+        ByteBuffer dst = ByteBuffer.allocate(content.length);
+        assertEquals("Unexpected length", content.length, bdbStore.getContent(first, 0, dst));
+        assertTrue("Unexpected content", Arrays.equals(content, dst.array()));
+
+        // a range spanning a chunk boundary
+        int offset = AbstractBDBMessageStore.MAX_CONTENT_CHUNK_SIZE * 2 - 10;
+        dst = ByteBuffer.allocate(20);
+        assertEquals("Unexpected length", 20, bdbStore.getContent(first, offset, dst));
+        assertTrue("Unexpected content", Arrays.equals(Arrays.copyOfRange(content, offset, offset + 20), dst.array()));
+
+        // a range at the end of the content
+        offset = content.length - 50;
+        dst = ByteBuffer.allocate(100);
+        assertEquals("Unexpected length", 50, bdbStore.getContent(first, offset, dst));
+        dst.flip();
+        byte[] tail = new byte[50];
+        dst.get(tail);
+        assertTrue("Unexpected content", Arrays.equals(Arrays.copyOfRange(content, offset, content.length), tail));
+
+        bdbStore.removeMessage(first, true);
+        assertEquals("Retrieved content of removed message", 0, bdbStore.getContent(first, 0, ByteBuffer.allocate(1)));
+
+        dst = ByteBuffer.allocate(content.length);
+        assertEquals("Unexpected length", content.length, bdbStore.getContent(second, 0, dst));
+        assertTrue("Unexpected content", Arrays.equals(content, dst.array()));
+    }
+
+    private StoredMessage<MessageMetaData> createAndStoreMultiChunkMessage_0_8(MessageStore store, byte[] content)
+    {
+        MessagePublishInfo pubInfoBody_0_8 = createPublishInfoBody_0_8();
+        BasicContentHeaderProperties props_0_8 = createContentHeaderProperties_0_8();
+        ContentHeaderBody chb_0_8 = createContentHeaderBody_0_8(props_0_8, content.length);
+
+        MessageMetaData messageMetaData_0_8 = new MessageMetaData(pubInfoBody_0_8, chb_0_8, 0);
+        StoredMessage<MessageMetaData> storedMessage_0_8 = store.addMessage(messageMetaData_0_8);
+
+        // content arrives in frames which do not line up with the stored chunks
+        int frameSize = 100000;
+        for (int offset = 0; offset < content.length; offset += frameSize)
+        {
+            storedMessage_0_8.addContent(offset, ByteBuffer.wrap(content, offset, Math.min(frameSize, content.length - offset)));
+        }
+        storedMessage_0_8.flushToStore();
+
+        return storedMessage_0_8;
+    }
+
     private AbstractBDBMessageStore assertBDBStore(MessageStore store)
     {
 
@@ -587,5 +651,10 @@ public class BDBMessageStoreTest extends org.apache.qpid.server.store.MessageSto
         {
             return null;
         }
+
+        public <V> V getConverted(MessageConverter<V> converter, VirtualHost virtualHost) throws AMQException
+        {
+            return converter.convert(this, virtualHost);
+        }
     }
 }
@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.upgrade;
+
+import static org.apache.qpid.server.store.berkeleydb.upgrade.UpgradeFrom6To7.CHUNK_SIZE;
+import static org.apache.qpid.server.store.berkeleydb.upgrade.UpgradeFrom6To7.NEW_CONTENT_DB_NAME;
+import static org.apache.qpid.server.store.berkeleydb.upgrade.UpgradeFrom6To7.OLD_CONTENT_DB_NAME;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.server.store.berkeleydb.upgrade.UpgradeFrom6To7.ChunkKey;
+import org.apache.qpid.server.store.berkeleydb.upgrade.UpgradeFrom6To7.ChunkKeyBinding;
+
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.Transaction;
+
+public class UpgradeFrom6To7Test extends AbstractUpgradeTestCase
+{
+    @Override
+    protected String getStoreDirectoryName()
+    {
+        return "bdbstore-v5";
+    }
+
+    public void testPerformUpgrade() throws Exception
+    {
+        new UpgradeFrom5To6().performUpgrade(_environment, UpgradeInteractionHandler.DEFAULT_HANDLER, getVirtualHostName());
+        Map<Long, byte[]> oldContent = getOldContent(_environment);
+        assertFalse("Store should hold some messages", oldContent.isEmpty());
+
+        new UpgradeFrom6To7().performUpgrade(_environment, UpgradeInteractionHandler.DEFAULT_HANDLER, getVirtualHostName());
+
+        int expectedChunks = 0;
+        Map<Long, byte[]> expectedContent = new HashMap<Long, byte[]>();
+        for (Map.Entry<Long, byte[]> entry : oldContent.entrySet())
+        {
+            int size = entry.getValue().length;
+            expectedChunks += (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (size > 0)
+            {
+                // empty content is stored as no chunks at all
+                expectedContent.put(entry.getKey(), entry.getValue());
+            }
+        }
+        assertTrue("Store should hold a message larger than a chunk", expectedChunks > expectedContent.size());
+
+        assertFalse("Old content database should be removed", _environment.getDatabaseNames().contains(OLD_CONTENT_DB_NAME));
+        assertDatabaseRecordCount(NEW_CONTENT_DB_NAME, expectedChunks);
+        assertContent(_environment, expectedContent);
+    }
+
+    public void testLargeMessageIsSplitIntoChunks() throws Exception
+    {
+        File storeLocation = new File(TMP_FOLDER, getName());
+        storeLocation.mkdirs();
+        Environment environment = createEnvironment(storeLocation);
+        try
+        {
+            final byte[] content = new byte[CHUNK_SIZE * 2 + 1];
+            for (int i = 0; i < content.length; i++)
+            {
+                content[i] = (byte) i;
+            }
+
+            new DatabaseTemplate(environment, OLD_CONTENT_DB_NAME, null).run(new DatabaseRunnable()
+            {
+                @Override
+                public void run(Database sourceDatabase, Database targetDatabase, Transaction transaction)
+                {
+                    DatabaseEntry key = new DatabaseEntry();
+                    LongBinding.longToEntry(1l, key);
+                    sourceDatabase.put(null, key, new DatabaseEntry(content));
+                }
+            });
+
+            new UpgradeFrom6To7().performUpgrade(environment, UpgradeInteractionHandler.DEFAULT_HANDLER, getVirtualHostName());
+
+            final ChunkKeyBinding keyBinding = new ChunkKeyBinding();
+            final Map<Integer, Integer> chunkSizes = new HashMap<Integer, Integer>();
+            CursorOperation chunkOperation = new CursorOperation()
+            {
+                @Override
+                public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction,
+                        DatabaseEntry key, DatabaseEntry value)
+                {
+                    ChunkKey chunkKey = keyBinding.entryToObject(key);
+                    assertEquals("Unexpected message id", 1l, chunkKey.getMessageId());
+                    chunkSizes.put(chunkKey.getOffset(), value.getSize());
+                }
+            };
+            new DatabaseTemplate(environment, NEW_CONTENT_DB_NAME, null).run(chunkOperation);
+
+            Map<Integer, Integer> expectedChunkSizes = new HashMap<Integer, Integer>();
+            expectedChunkSizes.put(0, CHUNK_SIZE);
+            expectedChunkSizes.put(CHUNK_SIZE, CHUNK_SIZE);
+            expectedChunkSizes.put(CHUNK_SIZE * 2, 1);
+            assertEquals("Unexpected chunks", expectedChunkSizes, chunkSizes);
+
+            assertContent(environment, Collections.singletonMap(1l, content));
+        }
+        finally
+        {
+            environment.close();
+            deleteDirectoryIfExists(storeLocation);
+        }
+    }
+
+    private Map<Long, byte[]> getOldContent(Environment environment)
+    {
+        final Map<Long, byte[]> content = new HashMap<Long, byte[]>();
+        CursorOperation contentOperation = new CursorOperation()
+        {
+            @Override
+            public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction,
+                    DatabaseEntry key, DatabaseEntry value)
+            {
+                content.put(LongBinding.entryToLong(key),
+                            Arrays.copyOfRange(value.getData(), value.getOffset(), value.getOffset() + value.getSize()));
+            }
+        };
+        new DatabaseTemplate(environment, OLD_CONTENT_DB_NAME, null).run(contentOperation);
+        return content;
+    }
+
+    private void assertContent(Environment environment, Map<Long, byte[]> expectedContent)
+    {
+        final ChunkKeyBinding keyBinding = new ChunkKeyBinding();
+        final Map<Long, ByteArrayOutputStream> content = new HashMap<Long, ByteArrayOutputStream>();
+        CursorOperation chunkOperation = new CursorOperation()
+        {
+            @Override
+            public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction,
+                    DatabaseEntry key, DatabaseEntry value)
+            {
+                ChunkKey chunkKey = keyBinding.entryToObject(key);
+                ByteArrayOutputStream messageContent = content.get(chunkKey.getMessageId());
+                if (messageContent == null)
+                {
+                    messageContent = new ByteArrayOutputStream();
+                    content.put(chunkKey.getMessageId(), messageContent);
+                }
+                assertEquals("Chunks should be in order", messageContent.size(), chunkKey.getOffset());
+                messageContent.write(value.getData(), value.getOffset(), value.getSize());
+            }
+        };
+        new DatabaseTemplate(environment, NEW_CONTENT_DB_NAME, null).run(chunkOperation);
+
+        assertEquals("Unexpected messages", expectedContent.keySet(), content.keySet());
+        for (Map.Entry<Long, byte[]> entry : expectedContent.entrySet())
+        {
+            assertTrue("Unexpected content for message " + entry.getKey(),
+                       Arrays.equals(entry.getValue(), content.get(entry.getKey()).toByteArray()));
+        }
+    }
+}
@@ -25,10 +25,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.qpid.server.store.berkeleydb.AbstractBDBMessageStore;
-import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.entry.ContentChunkKey;
+import org.apache.qpid.server.store.berkeleydb.tuple.ContentChunkKeyBinding;
 
 import com.sleepycat.bind.tuple.IntegerBinding;
-import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
@@ -119,7 +119,7 @@ public class UpgraderTest extends AbstractUpgradeTestCase
 
     private void assertContent()
     {
-        final ContentBinding contentBinding = ContentBinding.getInstance();
+        final ContentChunkKeyBinding keyBinding = ContentChunkKeyBinding.getInstance();
         CursorOperation contentCursorOperation = new CursorOperation()
         {
 
@@ -127,12 +127,14 @@ public class UpgraderTest extends AbstractUpgradeTestCase
             public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction, DatabaseEntry key,
                     DatabaseEntry value)
             {
-                long id = LongBinding.entryToLong(key);
-                assertTrue("Unexpected id", id > 0);
-                byte[] content = contentBinding.entryToObject(value);
-                assertNotNull("Unexpected content", content);
+                ContentChunkKey chunkKey = keyBinding.entryToObject(key);
+                assertTrue("Unexpected id", chunkKey.getMessageId() > 0);
+                assertEquals("Unexpected offset", 0, chunkKey.getOffset() % UpgradeFrom6To7.CHUNK_SIZE);
+                assertTrue("Unexpected content", value.getSize() > 0);
             }
         };
-        new DatabaseTemplate(_environment, "MESSAGE_CONTENT", null).run(contentCursorOperation);
+        new DatabaseTemplate(_environment, "MESSAGE_CONTENT_CHUNKS", null).run(contentCursorOperation);
+        assertFalse("Old content database should be removed",
+                    _environment.getDatabaseNames().contains("MESSAGE_CONTENT"));
     }
 }
@@ -20,12 +20,14 @@
  */
 package org.apache.qpid.server.jmx.mbeans;
 
+import java.util.Map;
 import javax.management.NotCompliantMBeanException;
 import org.apache.qpid.server.model.ConfiguredObject;
 import org.apache.qpid.server.model.Connection;
 import org.apache.qpid.server.jmx.AMQManagedObject;
 import org.apache.qpid.server.jmx.ManagedObjectRegistry;
 import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.stats.HistogramStatisticsCounter;
 
 abstract class AbstractStatisticsGatheringMBean<T extends ConfiguredObject> extends AMQManagedObject
 {
@@ -197,4 +199,28 @@ abstract class AbstractStatisticsGatheringMBean<T extends ConfiguredObject> exte
         return getStatistic(Connection.BYTES_IN);
     }
 
+    public long[] getMessageSizeDeliveredHistogram()
+    {
+        return getHistogram(VirtualHost.MESSAGE_SIZE_OUT);
+    }
+
+    public long[] getMessageSizeReceivedHistogram()
+    {
+        return getHistogram(VirtualHost.MESSAGE_SIZE_IN);
+    }
+
+    private long[] getHistogram(String name)
+    {
+        Object summary = getConfiguredObject().getStatistics().getStatistic(name);
+        if(summary instanceof Map)
+        {
+            Object histogram = ((Map<?, ?>) summary).get(HistogramStatisticsCounter.HISTOGRAM);
+            if(histogram instanceof long[])
+            {
+                return (long[]) histogram;
+            }
+        }
+        return new long[0];
+    }
+
 }
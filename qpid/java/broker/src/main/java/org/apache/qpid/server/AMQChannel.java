@@ -955,17 +955,22 @@ public class AMQChannel implements AMQSessionModel, AsyncAutoCommitTransaction.F
         if(async && _transaction instanceof LocalTransaction)
         {
 
-            ((LocalTransaction)_transaction).commitAsync(new Runnable()
+            // recorded like the other asynchronous commands, so that a failed commit is reported by sync()
+            recordFuture(((LocalTransaction)_transaction).commitAsync(null), new ServerTransaction.Action()
             {
-                @Override
-                public void run()
+                public void postCommit()
                 {
                     immediateAction.run();
                     _txnCommits.incrementAndGet();
                     _txnStarts.incrementAndGet();
-                    decrementOutstandingTxnsIfNecessary();
+                }
+
+                public void onRollback()
+                {
                 }
             });
+            // the next transaction may start before the store has completed this one
+            decrementOutstandingTxnsIfNecessary();
         }
         else
         {
@@ -1571,14 +1576,30 @@ public class AMQChannel implements AMQSessionModel, AsyncAutoCommitTransaction.F
 
         void awaitReadyForCompletion()
         {
-            _future.waitForCompletion();
+            try
+            {
+                _future.waitForCompletion();
+            }
+            catch(RuntimeException e)
+            {
+                // the failure is reported by complete()
+            }
         }
 
         void complete()
         {
-            if(!_future.isComplete())
+            try
             {
-                _future.waitForCompletion();
+                if(!_future.isComplete())
+                {
+                    _future.waitForCompletion();
+                }
+            }
+            catch(RuntimeException e)
+            {
+                _action.onRollback();
+                _action = null;
+                throw e;
             }
             _action.postCommit();
             _action = null;
@@ -30,6 +30,24 @@ public class BrokerProperties
     public static final String PROPERTY_MANAGEMENT_RIGHTS_INFER_ALL_ACCESS = "qpid.broker_jmx_method_rights_infer_all_access";
     public static final String PROPERTY_USE_CUSTOM_RMI_SOCKET_FACTORY = "qpid.broker_jmx_use_custom_rmi_socket_factory";
 
+    public static final String PROPERTY_QUEUE_DELIVERY_SCHEDULER = "qpid.broker_queue_delivery_scheduler";
+    public static final String PROPERTY_CONCURRENT_SORTED_QUEUE_ENTRY_LIST = "qpid.broker_concurrent_sorted_queue_entry_list";
+
+    public static final String PROPERTY_TOPIC_ROUTE_CACHE_SIZE = "qpid.broker_topic_route_cache_size";
+    public static final int DEFAULT_TOPIC_ROUTE_CACHE_SIZE = 8192;
+
+    /** the number of bytes of stored message content held in memory, by default a quarter of the maximum heap */
+    public static final String PROPERTY_CONTENT_CACHE_SIZE = "qpid.broker_content_cache_size";
+
+    /**
+     * the directory the content of transient messages is spilled to once evicted from the content cache; if unset,
+     * transient content is not cached, and is held in memory until its message is removed
+     */
+    public static final String PROPERTY_CONTENT_OVERFLOW_DIRECTORY = "qpid.broker_content_overflow_directory";
+
+    /** the number of threads replaying the queue entries of a message store on recovery, by default one per processor */
+    public static final String PROPERTY_RECOVERY_THREADS = "qpid.broker_recovery_threads";
+
     public static final String PROPERTY_QPID_HOME = "QPID_HOME";
     public static final String PROPERTY_QPID_WORK = "QPID_WORK";
 
@@ -341,6 +341,21 @@ public abstract class AbstractExchange implements Exchange
         return _droppedMessageSize.get();
     }
 
+    public long getRouteCacheHits()
+    {
+        return 0L;
+    }
+
+    public long getRouteCacheMisses()
+    {
+        return 0L;
+    }
+
+    public long getRouteCacheInvalidations()
+    {
+        return 0L;
+    }
+
     public long getCreateTime()
     {
         return _createTime;
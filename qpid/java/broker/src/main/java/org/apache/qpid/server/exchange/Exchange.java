@@ -55,6 +55,21 @@ public interface Exchange extends ExchangeReferrer
 
     long getMsgReceives();
 
+    /**
+     * @return the number of messages routed using a cached route for their routing key
+     */
+    long getRouteCacheHits();
+
+    /**
+     * @return the number of messages whose route had to be computed from the bindings
+     */
+    long getRouteCacheMisses();
+
+    /**
+     * @return the number of times cached routes have been discarded because the bindings changed
+     */
+    long getRouteCacheInvalidations();
+
     public interface BindingListener
     {
         void bindingAdded(Exchange exchange, Binding binding);
@@ -93,6 +93,31 @@ class HeadersBinding
         return _binding;
     }
 
+    /**
+     * @return true if the binding matches messages which satisfy any of its conditions (x-match=any), false if
+     * they must satisfy all of them
+     */
+    boolean isMatchAny()
+    {
+        return matchAny;
+    }
+
+    /**
+     * @return the names of the headers which a message must carry, whatever their value
+     */
+    Set<String> getRequiredHeaders()
+    {
+        return required;
+    }
+
+    /**
+     * @return the header values which a message must carry, keyed by header name
+     */
+    Map<String, Object> getHeaderValues()
+    {
+        return matches;
+    }
+
     /**
      * Checks whether the supplied headers match the requirements of this binding
      * @param headers the headers to check
@@ -0,0 +1,455 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.qpid.server.binding.Binding;
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.queue.BaseQueue;
+
+/**
+ * An inverted index of the bindings of a {@link HeadersExchange} on the header names and name/value pairs which
+ * they test, so that routing a message only evaluates the bindings which it could match.
+ *
+ * An x-match=all binding is indexed under one of its conditions, a value match in preference to a presence
+ * test, and is evaluated in full when a message satisfies that condition. An x-match=any binding is indexed
+ * under each of its conditions, and is matched through the first of them which the message satisfies, so that
+ * it is matched once however many of its conditions are satisfied. Bindings with no conditions match every
+ * message.
+ *
+ * Bindings are added and removed incrementally while holding the index's lock. Routing takes no lock: it reads
+ * arrays which are replaced, never modified, when the bindings change. It collects the matched queues in a
+ * structure reused by each routing thread, and allocates a list for the result only when a message is routed to
+ * more than one queue.
+ */
+final class HeadersBindingIndex
+{
+    private static final Posting[] NO_POSTINGS = new Posting[0];
+    private static final HeaderPostings[] NO_HEADERS = new HeaderPostings[0];
+
+    /** the number of matched queues above which duplicates are found through a set rather than a list scan */
+    private static final int SMALL_RESULT_SIZE = 8;
+
+    private static final ThreadLocal<Matches> _matches = new ThreadLocal<Matches>()
+    {
+        @Override
+        protected Matches initialValue()
+        {
+            return new Matches();
+        }
+    };
+
+    private final Map<Binding, IndexedBinding> _bindings = new HashMap<Binding, IndexedBinding>();
+    private final Map<String, HeaderPostings> _headersByName = new HashMap<String, HeaderPostings>();
+
+    private volatile HeaderPostings[] _headers = NO_HEADERS;
+    private volatile Posting[] _unconditional = NO_POSTINGS;
+
+    /**
+     * Adds a binding to the index, replacing any equal binding already indexed.
+     */
+    synchronized void add(HeadersBinding headersBinding)
+    {
+        remove(headersBinding.getBinding());
+
+        IndexedBinding indexed = new IndexedBinding(headersBinding);
+        _bindings.put(headersBinding.getBinding(), indexed);
+
+        Condition[] conditions = indexed._conditions;
+        if(conditions.length == 0)
+        {
+            _unconditional = add(_unconditional, new Posting(indexed, 0));
+        }
+        else if(indexed._matchAny)
+        {
+            for(int i = 0; i < conditions.length; i++)
+            {
+                addPosting(new Posting(indexed, i));
+            }
+        }
+        else
+        {
+            addPosting(new Posting(indexed, 0));
+        }
+    }
+
+    /**
+     * @return true if an equal binding was indexed, and has been removed
+     */
+    synchronized boolean remove(Binding binding)
+    {
+        IndexedBinding indexed = _bindings.remove(binding);
+        if(indexed == null)
+        {
+            return false;
+        }
+
+        Condition[] conditions = indexed._conditions;
+        if(conditions.length == 0)
+        {
+            _unconditional = remove(_unconditional, indexed);
+        }
+        else
+        {
+            int indexedConditions = indexed._matchAny ? conditions.length : 1;
+            for(int i = 0; i < indexedConditions; i++)
+            {
+                removePostings(conditions[i], indexed);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the bindings matched by a message's headers, counting a match against each of them.
+     *
+     * @return the distinct queues of the matched bindings
+     */
+    List<BaseQueue> route(AMQMessageHeader headers)
+    {
+        Matches matches = _matches.get();
+        try
+        {
+            match(_unconditional, headers, matches);
+            if(headers != null)
+            {
+                for(HeaderPostings header : _headers)
+                {
+                    if(headers.containsHeader(header._name))
+                    {
+                        match(header._present, headers, matches);
+
+                        Object value = headers.getHeader(header._name);
+                        if(value != null)
+                        {
+                            Posting[] postings = header._values.get(value);
+                            if(postings != null)
+                            {
+                                match(postings, headers, matches);
+                            }
+                        }
+                    }
+                }
+            }
+            return matches.getQueues();
+        }
+        finally
+        {
+            matches.clear();
+        }
+    }
+
+    synchronized int size()
+    {
+        return _bindings.size();
+    }
+
+    private static void match(Posting[] postings, AMQMessageHeader headers, Matches matches)
+    {
+        for(Posting posting : postings)
+        {
+            if(posting.matches(headers))
+            {
+                matches.add(posting._binding);
+            }
+        }
+    }
+
+    private void addPosting(Posting posting)
+    {
+        Condition condition = posting.getCondition();
+        HeaderPostings header = _headersByName.get(condition._name);
+        if(header == null)
+        {
+            header = new HeaderPostings(condition._name);
+            _headersByName.put(condition._name, header);
+            _headers = add(_headers, header);
+        }
+
+        if(condition._value == null)
+        {
+            header._present = add(header._present, posting);
+        }
+        else
+        {
+            Posting[] postings = header._values.get(condition._value);
+            header._values.put(condition._value, add(postings == null ? NO_POSTINGS : postings, posting));
+        }
+    }
+
+    private void removePostings(Condition condition, IndexedBinding indexed)
+    {
+        HeaderPostings header = _headersByName.get(condition._name);
+        if(header == null)
+        {
+            return;
+        }
+
+        if(condition._value == null)
+        {
+            header._present = remove(header._present, indexed);
+        }
+        else
+        {
+            Posting[] postings = header._values.get(condition._value);
+            if(postings != null)
+            {
+                postings = remove(postings, indexed);
+                if(postings.length == 0)
+                {
+                    header._values.remove(condition._value);
+                }
+                else
+                {
+                    header._values.put(condition._value, postings);
+                }
+            }
+        }
+
+        if(header._present.length == 0 && header._values.isEmpty())
+        {
+            _headersByName.remove(condition._name);
+            _headers = remove(_headers, header);
+        }
+    }
+
+    private static Posting[] add(Posting[] postings, Posting posting)
+    {
+        Posting[] added = new Posting[postings.length + 1];
+        System.arraycopy(postings, 0, added, 0, postings.length);
+        added[postings.length] = posting;
+        return added;
+    }
+
+    private static Posting[] remove(Posting[] postings, IndexedBinding indexed)
+    {
+        List<Posting> remaining = new ArrayList<Posting>(postings.length);
+        for(Posting posting : postings)
+        {
+            if(posting._binding != indexed)
+            {
+                remaining.add(posting);
+            }
+        }
+        return remaining.size() == postings.length ? postings : remaining.toArray(NO_POSTINGS);
+    }
+
+    private static HeaderPostings[] add(HeaderPostings[] headers, HeaderPostings header)
+    {
+        HeaderPostings[] added = new HeaderPostings[headers.length + 1];
+        System.arraycopy(headers, 0, added, 0, headers.length);
+        added[headers.length] = header;
+        return added;
+    }
+
+    private static HeaderPostings[] remove(HeaderPostings[] headers, HeaderPostings header)
+    {
+        List<HeaderPostings> remaining = new ArrayList<HeaderPostings>(headers.length);
+        for(HeaderPostings h : headers)
+        {
+            if(h != header)
+            {
+                remaining.add(h);
+            }
+        }
+        return remaining.toArray(NO_HEADERS);
+    }
+
+    /**
+     * A test of a single header: its presence if the value is null, otherwise its value.
+     */
+    private static final class Condition
+    {
+        private final String _name;
+        private final Object _value;
+
+        private Condition(String name, Object value)
+        {
+            _name = name;
+            _value = value;
+        }
+
+        boolean isSatisfiedBy(AMQMessageHeader headers)
+        {
+            return _value == null ? headers.containsHeader(_name) : _value.equals(headers.getHeader(_name));
+        }
+    }
+
+    private static final class IndexedBinding
+    {
+        private final HeadersBinding _headersBinding;
+        /** the result of routing a message to this binding alone */
+        private final List<BaseQueue> _queues;
+        private final boolean _matchAny;
+        /** value matches first, so that an x-match=all binding is indexed under its most selective condition */
+        private final Condition[] _conditions;
+
+        private IndexedBinding(HeadersBinding headersBinding)
+        {
+            _headersBinding = headersBinding;
+            _queues = Collections.singletonList((BaseQueue) headersBinding.getBinding().getQueue());
+            _matchAny = headersBinding.isMatchAny();
+
+            Map<String, Object> values = headersBinding.getHeaderValues();
+            Set<String> required = headersBinding.getRequiredHeaders();
+            _conditions = new Condition[values.size() + required.size()];
+            int i = 0;
+            for(Map.Entry<String, Object> entry : values.entrySet())
+            {
+                _conditions[i++] = new Condition(entry.getKey(), entry.getValue());
+            }
+            for(String name : required)
+            {
+                _conditions[i++] = new Condition(name, null);
+            }
+        }
+    }
+
+    /**
+     * An entry in the index for one of a binding's conditions.
+     */
+    private static final class Posting
+    {
+        private final IndexedBinding _binding;
+        private final int _condition;
+
+        private Posting(IndexedBinding binding, int condition)
+        {
+            _binding = binding;
+            _condition = condition;
+        }
+
+        Condition getCondition()
+        {
+            return _binding._conditions[_condition];
+        }
+
+        /**
+         * Called only once the message is known to satisfy the posting's condition.
+         */
+        boolean matches(AMQMessageHeader headers)
+        {
+            if(_binding._matchAny || _binding._conditions.length == 0)
+            {
+                // match only through the first satisfied condition, so the binding is matched once per message
+                for(int i = 0; i < _condition; i++)
+                {
+                    if(_binding._conditions[i].isSatisfiedBy(headers))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            else
+            {
+                return _binding._headersBinding.matches(headers);
+            }
+        }
+    }
+
+    /**
+     * The postings for the conditions on a single header name.
+     */
+    private static final class HeaderPostings
+    {
+        private final String _name;
+        private volatile Posting[] _present = NO_POSTINGS;
+        private final ConcurrentHashMap<Object, Posting[]> _values = new ConcurrentHashMap<Object, Posting[]>();
+
+        private HeaderPostings(String name)
+        {
+            _name = name;
+        }
+    }
+
+    /**
+     * The queues matched while routing a message, reused for each message routed by a thread.
+     */
+    private static final class Matches
+    {
+        private final ArrayList<BaseQueue> _queues = new ArrayList<BaseQueue>(SMALL_RESULT_SIZE + 1);
+        private final Set<BaseQueue> _queueSet = new HashSet<BaseQueue>();
+        private IndexedBinding _first;
+
+        void add(IndexedBinding indexed)
+        {
+            Binding binding = indexed._headersBinding.getBinding();
+            binding.incrementMatches();
+
+            BaseQueue queue = binding.getQueue();
+            if(_first == null)
+            {
+                _first = indexed;
+                _queues.add(queue);
+            }
+            else if(_queues.size() > SMALL_RESULT_SIZE)
+            {
+                if(_queueSet.add(queue))
+                {
+                    _queues.add(queue);
+                }
+            }
+            else if(!_queues.contains(queue))
+            {
+                _queues.add(queue);
+                if(_queues.size() > SMALL_RESULT_SIZE)
+                {
+                    _queueSet.addAll(_queues);
+                }
+            }
+        }
+
+        /**
+         * @return the matched queues, in a list which the caller may keep
+         */
+        List<BaseQueue> getQueues()
+        {
+            switch(_queues.size())
+            {
+                case 0:
+                    return Collections.emptyList();
+                case 1:
+                    return _first._queues;
+                default:
+                    return new ArrayList<BaseQueue>(_queues);
+            }
+        }
+
+        void clear()
+        {
+            if(_queues.size() > SMALL_RESULT_SIZE)
+            {
+                _queueSet.clear();
+            }
+            _queues.clear();
+            _first = null;
+        }
+    }
+}
@@ -31,11 +31,9 @@ import org.apache.qpid.server.plugin.ExchangeType;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.BaseQueue;
 
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
@@ -73,8 +71,7 @@ public class HeadersExchange extends AbstractExchange
     private final ConcurrentHashMap<String, CopyOnWriteArraySet<Binding>> _bindingsByKey =
                             new ConcurrentHashMap<String, CopyOnWriteArraySet<Binding>>();
     
-    private final CopyOnWriteArrayList<HeadersBinding> _bindingHeaderMatchers =
-                            new CopyOnWriteArrayList<HeadersBinding>();
+    private final HeadersBindingIndex _bindingIndex = new HeadersBindingIndex();
 
     
     public static final ExchangeType<HeadersExchange> TYPE = new HeadersExchangeType();
@@ -85,34 +82,26 @@ public class HeadersExchange extends AbstractExchange
     }
 
 
-    public ArrayList<BaseQueue> doRoute(InboundMessage payload)
+    public List<? extends BaseQueue> doRoute(InboundMessage payload)
     {
         AMQMessageHeader header = payload.getMessageHeader();
         if (_logger.isDebugEnabled())
         {
             _logger.debug("Exchange " + getNameShortString() + ": routing message with headers " + header);
         }
-        
-        LinkedHashSet<BaseQueue> queues = new LinkedHashSet<BaseQueue>();
-        
-        for (HeadersBinding hb : _bindingHeaderMatchers)
+
+        List<BaseQueue> queues = _bindingIndex.route(header);
+
+        if (_logger.isDebugEnabled())
         {
-            if (hb.matches(header))
+            for (BaseQueue queue : queues)
             {
-                Binding b = hb.getBinding();
-                
-                b.incrementMatches();
-                
-                if (_logger.isDebugEnabled())
-                {
-                    _logger.debug("Exchange " + getNameShortString() + ": delivering message with headers " +
-                                  header + " to " + b.getQueue().getNameShortString());
-                }
-                queues.add(b.getQueue());
+                _logger.debug("Exchange " + getNameShortString() + ": delivering message with headers " +
+                              header + " to " + queue.getNameShortString());
             }
         }
-        
-        return new ArrayList<BaseQueue>(queues);
+
+        return queues;
     }
 
 
@@ -223,7 +212,7 @@ public class HeadersExchange extends AbstractExchange
                           " with binding key '" +bindingKey + "' and args: " + args);
         }
 
-        _bindingHeaderMatchers.add(new HeadersBinding(binding));
+        _bindingIndex.add(new HeadersBinding(binding));
         bindings.add(binding);
 
     }
@@ -238,7 +227,7 @@ public class HeadersExchange extends AbstractExchange
             bindings.remove(binding);
         }
 
-        boolean removedBinding = _bindingHeaderMatchers.remove(new HeadersBinding(binding));
+        boolean removedBinding = _bindingIndex.remove(binding);
         if(_logger.isDebugEnabled())
         {
             _logger.debug("Removing Binding: " + removedBinding);
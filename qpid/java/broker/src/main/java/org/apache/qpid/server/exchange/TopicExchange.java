@@ -22,13 +22,18 @@ package org.apache.qpid.server.exchange;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.apache.log4j.Logger;
 import org.apache.qpid.AMQInvalidArgumentException;
 import org.apache.qpid.common.AMQPFilterTypes;
@@ -38,6 +43,7 @@ import org.apache.qpid.filter.selector.TokenMgrError;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.server.binding.Binding;
+import org.apache.qpid.server.configuration.BrokerProperties;
 import org.apache.qpid.server.exchange.topic.TopicExchangeResult;
 import org.apache.qpid.server.exchange.topic.TopicMatcherResult;
 import org.apache.qpid.server.exchange.topic.TopicNormalizer;
@@ -67,12 +73,43 @@ public class TopicExchange extends AbstractExchange
 
     private final Map<String, WeakReference<JMSSelectorFilter>> _selectorCache = new WeakHashMap<String, WeakReference<JMSSelectorFilter>>();
 
+    private final int _routeCacheSize = Integer.getInteger(BrokerProperties.PROPERTY_TOPIC_ROUTE_CACHE_SIZE,
+                                                           BrokerProperties.DEFAULT_TOPIC_ROUTE_CACHE_SIZE);
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TopicExchange, ConcurrentHashMap> _routeCacheUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(TopicExchange.class, ConcurrentHashMap.class, "_routeCache");
+
+    /**
+     * The routes of recently published routing keys. The map is replaced whenever the bindings change, so a
+     * route is only ever used with the bindings it was computed from, and when it is full, so that the routes of
+     * routing keys no longer published do not keep newer routing keys out of the cache.
+     */
+    private volatile ConcurrentHashMap<AMQShortString, CachedRoute> _routeCache =
+            new ConcurrentHashMap<AMQShortString, CachedRoute>();
+
+    private final AtomicLong _routeCacheHits = new AtomicLong();
+    private final AtomicLong _routeCacheMisses = new AtomicLong();
+    private final AtomicLong _routeCacheInvalidations = new AtomicLong();
+
     public TopicExchange()
     {
         super(TYPE);
     }
 
     protected synchronized void registerQueue(final Binding binding) throws AMQInvalidArgumentException
+    {
+        try
+        {
+            doRegisterQueue(binding);
+        }
+        finally
+        {
+            invalidateRouteCache();
+        }
+    }
+
+    private void doRegisterQueue(final Binding binding) throws AMQInvalidArgumentException
     {
         AMQShortString rKey = new AMQShortString(binding.getBindingKey()) ;
         AMQQueue queue = binding.getQueue();
@@ -226,28 +263,16 @@ public class TopicExchange extends AbstractExchange
     }
 
 
-    public ArrayList<BaseQueue> doRoute(InboundMessage payload)
+    public List<? extends BaseQueue> doRoute(InboundMessage payload)
     {
 
         final AMQShortString routingKey = payload.getRoutingKeyShortString() == null
                                           ? AMQShortString.EMPTY_STRING
                                           : payload.getRoutingKeyShortString();
 
-        final Collection<AMQQueue> matchedQueues = getMatchedQueues(payload, routingKey);
-
-        ArrayList<BaseQueue> queues;
-
-        if(matchedQueues.getClass() == ArrayList.class)
-        {
-            queues = (ArrayList) matchedQueues;
-        }
-        else
-        {
-            queues = new ArrayList<BaseQueue>();
-            queues.addAll(matchedQueues);
-        }
+        final List<? extends BaseQueue> queues = getMatchedQueues(payload, routingKey);
 
-        if(queues == null || queues.isEmpty())
+        if(queues.isEmpty())
         {
             _logger.info("Message routing key: " + payload.getRoutingKey() + " No routes.");
         }
@@ -338,6 +363,18 @@ public class TopicExchange extends AbstractExchange
     }
 
     private boolean deregisterQueue(final Binding binding)
+    {
+        try
+        {
+            return doDeregisterQueue(binding);
+        }
+        finally
+        {
+            invalidateRouteCache();
+        }
+    }
+
+    private boolean doDeregisterQueue(final Binding binding)
     {
         if(_bindings.containsKey(binding))
         {
@@ -370,35 +407,61 @@ public class TopicExchange extends AbstractExchange
         }
     }
 
-    private Collection<AMQQueue> getMatchedQueues(InboundMessage message, AMQShortString routingKey)
+    private List<? extends BaseQueue> getMatchedQueues(InboundMessage message, AMQShortString routingKey)
     {
+        // read the cache before parsing, so a route computed while the bindings change is stored in a cache
+        // which has already been, or is about to be, discarded
+        ConcurrentHashMap<AMQShortString, CachedRoute> routeCache = _routeCache;
 
-        Collection<TopicMatcherResult> results = _parser.parse(routingKey);
-        switch(results.size())
-        {
-            case 0:
-                return Collections.EMPTY_SET;
-            case 1:
-                TopicMatcherResult[] resultQueues = new TopicMatcherResult[1];
-                results.toArray(resultQueues);
-                return ((TopicExchangeResult)resultQueues[0]).processMessage(message, null);
-            default:
-                Collection<AMQQueue> queues = new HashSet<AMQQueue>();
-                for(TopicMatcherResult result : results)
-                {
-                    TopicExchangeResult res = (TopicExchangeResult)result;
+        CachedRoute route = routeCache.get(routingKey);
+        if(route == null)
+        {
+            _routeCacheMisses.incrementAndGet();
+            route = new CachedRoute(_parser.parse(routingKey));
+            if(routeCache.size() >= _routeCacheSize)
+            {
+                // the cache is only cleared if it has not been replaced since it was read, as otherwise the
+                // bindings may have changed while the route was computed
+                ConcurrentHashMap<AMQShortString, CachedRoute> emptyCache =
+                        new ConcurrentHashMap<AMQShortString, CachedRoute>();
+                routeCache = _routeCacheUpdater.compareAndSet(this, routeCache, emptyCache) ? emptyCache : null;
+            }
+            if(routeCache != null)
+            {
+                // the routing key may be a view onto the buffer of the message which carried it
+                routeCache.put(new AMQShortString(routingKey.getBytes()), route);
+            }
+        }
+        else
+        {
+            _routeCacheHits.incrementAndGet();
+        }
 
-                    for(Binding b : res.getBindings())
-                    {
-                        b.incrementMatches();
-                    }
+        return route.getQueues(message);
+    }
 
-                    queues = res.processMessage(message, queues);
-                }
-                return queues;
-        }
+    private void invalidateRouteCache()
+    {
+        _routeCache = new ConcurrentHashMap<AMQShortString, CachedRoute>();
+        _routeCacheInvalidations.incrementAndGet();
+    }
 
+    @Override
+    public long getRouteCacheHits()
+    {
+        return _routeCacheHits.get();
+    }
+
+    @Override
+    public long getRouteCacheMisses()
+    {
+        return _routeCacheMisses.get();
+    }
 
+    @Override
+    public long getRouteCacheInvalidations()
+    {
+        return _routeCacheInvalidations.get();
     }
 
     protected void onBind(final Binding binding)
@@ -418,6 +481,64 @@ public class TopicExchange extends AbstractExchange
         deregisterQueue(binding);
     }
 
+    /**
+     * The bindings matched by a routing key. The queues of unfiltered bindings are computed once, so that only
+     * filtered bindings need to be evaluated against each message.
+     */
+    private static final class CachedRoute
+    {
+        private final TopicExchangeResult[] _results;
+        private final List<AMQQueue> _unfilteredQueues;
+        private final boolean _filtered;
+        private final Binding[] _matchedBindings;
+
+        private CachedRoute(Collection<TopicMatcherResult> results)
+        {
+            _results = results.toArray(new TopicExchangeResult[results.size()]);
+
+            Set<AMQQueue> unfilteredQueues = new LinkedHashSet<AMQQueue>();
+            List<Binding> matchedBindings = new ArrayList<Binding>();
+            boolean filtered = false;
+            for(TopicExchangeResult result : _results)
+            {
+                unfilteredQueues.addAll(result.getUnfilteredQueues());
+                filtered |= result.hasFilteredQueues();
+                if(_results.length > 1)
+                {
+                    matchedBindings.addAll(result.getBindings());
+                }
+            }
+
+            _unfilteredQueues = Collections.unmodifiableList(
+                    Arrays.asList(unfilteredQueues.toArray(new AMQQueue[unfilteredQueues.size()])));
+            _filtered = filtered;
+            _matchedBindings = matchedBindings.toArray(new Binding[matchedBindings.size()]);
+        }
+
+        List<? extends BaseQueue> getQueues(InboundMessage message)
+        {
+            for(Binding binding : _matchedBindings)
+            {
+                binding.incrementMatches();
+            }
+
+            if(!_filtered)
+            {
+                return _unfilteredQueues;
+            }
+
+            Collection<AMQQueue> queues = new LinkedHashSet<AMQQueue>(_unfilteredQueues);
+            for(TopicExchangeResult result : _results)
+            {
+                if(result.hasFilteredQueues())
+                {
+                    queues = result.processMessage(message, queues);
+                }
+            }
+            return new ArrayList<AMQQueue>(queues);
+        }
+    }
+
     private static final class NoLocalFilter implements MessageFilter
     {
         private final AMQQueue _queue;
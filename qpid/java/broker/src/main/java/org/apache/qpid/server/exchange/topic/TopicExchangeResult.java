@@ -80,6 +80,11 @@ public final class TopicExchangeResult implements TopicMatcherResult
         return _unfilteredQueues.keySet();
     }
 
+    public boolean hasFilteredQueues()
+    {
+        return !_filteredQueues.isEmpty();
+    }
+
     public void addBinding(Binding binding)
     {
         _bindings.add(binding);
@@ -23,6 +23,8 @@ package org.apache.qpid.server.filter;
 // Based on like named file from r450141 of the Apache ActiveMQ project <http://www.activemq.org/site/home.html>
 //
 
+import java.util.Collection;
+
 import org.apache.qpid.server.queue.Filterable;
 
 public interface FilterManager
@@ -31,6 +33,16 @@ public interface FilterManager
 
     void remove(MessageFilter filter);
 
+    /**
+     * Replaces a filter by another which it is equivalent to, in the same position.
+     */
+    void replace(MessageFilter filter, MessageFilter replacement);
+
+    /**
+     * @return the filters, in the order in which they are applied
+     */
+    Collection<MessageFilter> getFilters();
+
     boolean allAllow(Filterable  msg);
 
     boolean hasFilters();
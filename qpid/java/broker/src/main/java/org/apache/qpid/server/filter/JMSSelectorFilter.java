@@ -22,12 +22,18 @@ package org.apache.qpid.server.filter;
 
 import org.apache.log4j.Logger;
 
+import org.apache.qpid.filter.BinaryExpression;
 import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.Expression;
 import org.apache.qpid.filter.FilterableMessage;
+import org.apache.qpid.filter.PropertyExpression;
+import org.apache.qpid.filter.SelectorCompiler;
 import org.apache.qpid.filter.SelectorParsingException;
 import org.apache.qpid.filter.selector.ParseException;
 import org.apache.qpid.filter.selector.SelectorParser;
 import org.apache.qpid.filter.selector.TokenMgrError;
+import org.apache.qpid.filter.UnaryExpression;
+import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.queue.Filterable;
 
 
@@ -35,19 +41,24 @@ public class JMSSelectorFilter implements MessageFilter
 {
     private final static Logger _logger = org.apache.log4j.Logger.getLogger(JMSSelectorFilter.class);
 
+    private static final String JMS_REDELIVERED = "JMSRedelivered";
+
     private String _selector;
     private BooleanExpression _matcher;
+    private final boolean _redeliveryDependent;
 
     public JMSSelectorFilter(String selector) throws ParseException, TokenMgrError, SelectorParsingException
     {
         _selector = selector;
-        _matcher = new SelectorParser().parse(selector);
+        BooleanExpression parsed = new SelectorParser().parse(selector);
+        _redeliveryDependent = refersTo(parsed, JMS_REDELIVERED);
+        _matcher = SelectorCompiler.compile(parsed);
     }
 
     public boolean matches(Filterable message)
     {
 
-        boolean match = _matcher.matches(wrap(message));
+        boolean match = _matcher.matches(new FilterableMessageAdapter(message));
         if(_logger.isDebugEnabled())
         {
             _logger.debug(message + " match(" + match + ") selector(" + System.identityHashCode(_selector) + "):" + _selector);
@@ -55,65 +66,48 @@ public class JMSSelectorFilter implements MessageFilter
         return match;
     }
 
-    private FilterableMessage wrap(final Filterable message)
+    public String getSelector()
+    {
+        return _selector;
+    }
+
+    /**
+     * @return true if the selector tests whether a message has been redelivered, so that a message may match it
+     * when delivered again but not at first, or the other way around
+     */
+    public boolean isRedeliveryDependent()
     {
-        return new FilterableMessage()
+        return _redeliveryDependent;
+    }
+
+    private static boolean refersTo(Expression expression, String property)
+    {
+        if (expression instanceof PropertyExpression)
+        {
+            return property.equals(((PropertyExpression) expression).getName());
+        }
+        else if (expression instanceof BinaryExpression)
         {
-            public boolean isPersistent()
-            {
-                return message.isPersistent();
-            }
-
-            public boolean isRedelivered()
-            {
-                return message.isRedelivered();
-            }
-
-            public Object getHeader(String name)
-            {
-                return message.getMessageHeader().getHeader(name);
-            }
-
-            public String getReplyTo()
-            {
-                return message.getMessageHeader().getReplyTo();
-            }
-
-            public String getType()
-            {
-                return message.getMessageHeader().getType();
-            }
-
-            public byte getPriority()
-            {
-                return message.getMessageHeader().getPriority();
-            }
-
-            public String getMessageId()
-            {
-                return message.getMessageHeader().getMessageId();
-            }
-
-            public long getTimestamp()
-            {
-                return message.getMessageHeader().getTimestamp();
-            }
-
-            public String getCorrelationId()
-            {
-                return message.getMessageHeader().getCorrelationId();
-            }
-
-            public long getExpiration()
-            {
-                return message.getMessageHeader().getExpiration();
-            }
-        };
+            return refersTo(((BinaryExpression) expression).getLeft(), property)
+                   || refersTo(((BinaryExpression) expression).getRight(), property);
+        }
+        else if (expression instanceof UnaryExpression)
+        {
+            return refersTo(((UnaryExpression) expression).getRight(), property);
+        }
+        return false;
     }
 
-    public String getSelector()
+    @Override
+    public boolean equals(Object o)
     {
-        return _selector;
+        return (o instanceof JMSSelectorFilter) && _selector.equals(((JMSSelectorFilter) o)._selector);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _selector.hashCode();
     }
 
     @Override
@@ -121,4 +115,69 @@ public class JMSSelectorFilter implements MessageFilter
     {
         return "JMSSelector("+_selector+")";
     }
+
+    /**
+     * Presents a message to the selector, looking up its header once rather than for each property tested.
+     */
+    private static final class FilterableMessageAdapter implements FilterableMessage
+    {
+        private final Filterable _message;
+        private final AMQMessageHeader _header;
+
+        private FilterableMessageAdapter(Filterable message)
+        {
+            _message = message;
+            _header = message.getMessageHeader();
+        }
+
+        public boolean isPersistent()
+        {
+            return _message.isPersistent();
+        }
+
+        public boolean isRedelivered()
+        {
+            return _message.isRedelivered();
+        }
+
+        public Object getHeader(String name)
+        {
+            return _header.getHeader(name);
+        }
+
+        public String getReplyTo()
+        {
+            return _header.getReplyTo();
+        }
+
+        public String getType()
+        {
+            return _header.getType();
+        }
+
+        public byte getPriority()
+        {
+            return _header.getPriority();
+        }
+
+        public String getMessageId()
+        {
+            return _header.getMessageId();
+        }
+
+        public long getTimestamp()
+        {
+            return _header.getTimestamp();
+        }
+
+        public String getCorrelationId()
+        {
+            return _header.getCorrelationId();
+        }
+
+        public long getExpiration()
+        {
+            return _header.getExpiration();
+        }
+    }
 }
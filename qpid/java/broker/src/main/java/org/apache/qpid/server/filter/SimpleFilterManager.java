@@ -24,19 +24,21 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.server.queue.Filterable;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class SimpleFilterManager implements FilterManager
 {
     private final Logger _logger = Logger.getLogger(SimpleFilterManager.class);
 
-    private final ConcurrentLinkedQueue<MessageFilter> _filters;
+    private final CopyOnWriteArrayList<MessageFilter> _filters;
     private String _toString = "";
 
     public SimpleFilterManager()
     {
         _logger.debug("Creating SimpleFilterManager");
-        _filters = new ConcurrentLinkedQueue<MessageFilter>();
+        _filters = new CopyOnWriteArrayList<MessageFilter>();
     }
 
     public SimpleFilterManager(JMSSelectorFilter messageFilter)
@@ -57,6 +59,24 @@ public class SimpleFilterManager implements FilterManager
         updateStringValue();
     }
 
+    public void replace(MessageFilter filter, MessageFilter replacement)
+    {
+        for (int i = 0; i < _filters.size(); i++)
+        {
+            if (_filters.get(i) == filter)
+            {
+                _filters.set(i, replacement);
+                updateStringValue();
+                return;
+            }
+        }
+    }
+
+    public Collection<MessageFilter> getFilters()
+    {
+        return Collections.unmodifiableList(_filters);
+    }
+
     public boolean allAllow(Filterable msg)
     {
         for (MessageFilter filter : _filters)
@@ -28,7 +28,9 @@ import org.apache.qpid.framing.ContentHeaderBody;
 import org.apache.qpid.framing.abstraction.MessagePublishInfo;
 import org.apache.qpid.server.AMQChannel;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.store.PooledContent;
 import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
 
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
@@ -36,7 +38,7 @@ import java.nio.ByteBuffer;
 /**
  * A deliverable message.
  */
-public class AMQMessage extends AbstractServerMessageImpl<MessageMetaData>
+public class AMQMessage extends AbstractServerMessageImpl<MessageMetaData> implements PooledContent
 {
     /** Used for debugging purposes. */
     private static final Logger _log = Logger.getLogger(AMQMessage.class);
@@ -246,4 +248,10 @@ public class AMQMessage extends AbstractServerMessageImpl<MessageMetaData>
         return getStoredMessage().getContent(offset, size);
     }
 
+    public PooledBuffer retainContent()
+    {
+        StoredMessage storedMessage = getStoredMessage();
+        return storedMessage instanceof PooledContent ? ((PooledContent) storedMessage).retainContent() : null;
+    }
+
 }
@@ -20,10 +20,13 @@
  */
 package org.apache.qpid.server.message;
 
+import org.apache.qpid.AMQException;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.virtualhost.VirtualHost;
 
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public abstract class AbstractServerMessageImpl<T extends StorableMessageMetaData> implements ServerMessage<T>
 {
@@ -31,8 +34,12 @@ public abstract class AbstractServerMessageImpl<T extends StorableMessageMetaDat
     private static final AtomicIntegerFieldUpdater<AbstractServerMessageImpl> _refCountUpdater =
             AtomicIntegerFieldUpdater.newUpdater(AbstractServerMessageImpl.class, "_referenceCount");
 
+    private static final AtomicReferenceFieldUpdater<AbstractServerMessageImpl, Object[]> _convertedUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractServerMessageImpl.class, Object[].class, "_converted");
+
     private volatile int _referenceCount = 0;
     private final StoredMessage<T> _handle;
+    private volatile Object[] _converted = ConvertedMessageCache.NONE;
 
     public AbstractServerMessageImpl(StoredMessage<T> handle)
     {
@@ -102,6 +109,11 @@ public abstract class AbstractServerMessageImpl<T extends StorableMessageMetaDat
         }
     }
 
+    public <V> V getConverted(MessageConverter<V> converter, VirtualHost virtualHost) throws AMQException
+    {
+        return ConvertedMessageCache.getConverted(this, _convertedUpdater, this, converter, virtualHost);
+    }
+
     public String debugIdentity()
     {
         return "(HC:" + System.identityHashCode(this) + " ID:" + getMessageNumber() + " Ref:" + getReferenceCount() + ")";
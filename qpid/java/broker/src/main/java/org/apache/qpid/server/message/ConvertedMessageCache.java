@@ -0,0 +1,95 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.message;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.apache.qpid.AMQException;
+import org.apache.qpid.server.virtualhost.VirtualHost;
+
+/**
+ * Holds the converted forms of a message alongside the message itself, so that they live exactly as long as it
+ * does. The forms are kept in an array of converter and result pairs in a volatile field of the message, which
+ * is replaced, never modified, when a new form is added; most messages are never converted, and those which are
+ * are converted for one or two protocols at most.
+ */
+public final class ConvertedMessageCache
+{
+    public static final Object[] NONE = new Object[0];
+
+    private ConvertedMessageCache()
+    {
+    }
+
+    /**
+     * Returns the message converted by the given converter, converting it if it has not been already. Should two
+     * threads convert the message at once, both get the result of whichever stored its result first.
+     *
+     * @param owner the object holding the message's converted forms, usually the message itself
+     * @param updater the updater for the owner's field holding the converted forms
+     */
+    public static <T, V> V getConverted(T owner,
+                                        AtomicReferenceFieldUpdater<T, Object[]> updater,
+                                        ServerMessage message,
+                                        MessageConverter<V> converter,
+                                        VirtualHost virtualHost) throws AMQException
+    {
+        Object[] converted = updater.get(owner);
+        V value = find(converted, converter);
+        if(value != null)
+        {
+            return value;
+        }
+
+        V newValue = converter.convert(message, virtualHost);
+        while(true)
+        {
+            Object[] added = new Object[converted.length + 2];
+            System.arraycopy(converted, 0, added, 0, converted.length);
+            added[converted.length] = converter;
+            added[converted.length + 1] = newValue;
+            if(updater.compareAndSet(owner, converted, added))
+            {
+                return newValue;
+            }
+
+            converted = updater.get(owner);
+            value = find(converted, converter);
+            if(value != null)
+            {
+                return value;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Object[] converted, MessageConverter<V> converter)
+    {
+        for(int i = 0; i < converted.length; i += 2)
+        {
+            if(converted[i] == converter)
+            {
+                return (V) converted[i + 1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.message;
+
+import org.apache.qpid.AMQException;
+import org.apache.qpid.server.virtualhost.VirtualHost;
+
+/**
+ * Converts a message into the form in which it is sent to the consumers of another protocol.
+ *
+ * A message is converted by each converter at most once, and the result is shared by every subscription the
+ * message is delivered to, so it must not be modified once returned.
+ *
+ * @param <V> the converted form of the message
+ */
+public interface MessageConverter<V>
+{
+    /**
+     * @param message the message to convert
+     * @param virtualHost the virtual host on whose queues the message is held
+     */
+    V convert(ServerMessage message, VirtualHost virtualHost) throws AMQException;
+}
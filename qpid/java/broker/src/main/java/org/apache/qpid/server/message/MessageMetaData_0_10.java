@@ -31,6 +31,7 @@ import org.apache.qpid.transport.MessageTransfer;
 import org.apache.qpid.transport.Struct;
 import org.apache.qpid.transport.codec.BBDecoder;
 import org.apache.qpid.transport.codec.BBEncoder;
+import org.apache.qpid.transport.util.ByteBufferPool;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -100,8 +101,26 @@ public class MessageMetaData_0_10 implements StorableMessageMetaData, InboundMes
 
     private ByteBuffer encodeAsBuffer()
     {
-        BBEncoder encoder = new BBEncoder(ENCODER_SIZE);
+        // the encoding is done in a pooled buffer and copied out at its exact size, so that the
+        // metadata held for the lifetime of the message does not pin an oversized encoder buffer
+        BBEncoder encoder = new BBEncoder(ByteBufferPool.getInstance(), ENCODER_SIZE);
+        try
+        {
+            encode(encoder);
+            ByteBuffer encoded = encoder.buffer();
+            ByteBuffer buf = ByteBuffer.allocate(encoded.remaining());
+            buf.put(encoded);
+            buf.flip();
+            return buf;
+        }
+        finally
+        {
+            encoder.release();
+        }
+    }
 
+    private void encode(BBEncoder encoder)
+    {
         encoder.writeInt64(_arrivalTime);
         encoder.writeInt32(_bodySize);
         int headersLength = 0;
@@ -137,8 +156,6 @@ public class MessageMetaData_0_10 implements StorableMessageMetaData, InboundMes
             }
 
         }
-        ByteBuffer buf = encoder.buffer();
-        return buf;
     }
 
     public int writeToBuffer(int offsetInMetaData, ByteBuffer dest)
@@ -34,6 +34,9 @@ public interface Exchange extends ConfiguredObject
     String MESSAGES_IN      = "messagesIn";
     String PRODUCER_COUNT   = "producerCount";
     String STATE_CHANGED    = "stateChanged";
+    String ROUTE_CACHE_HITS          = "routeCacheHits";
+    String ROUTE_CACHE_MISSES        = "routeCacheMisses";
+    String ROUTE_CACHE_INVALIDATIONS = "routeCacheInvalidations";
 
     public static final Collection<String> AVAILABLE_STATISTICS =
             Collections.unmodifiableList(
@@ -43,7 +46,10 @@ public interface Exchange extends ConfiguredObject
                                   MESSAGES_DROPPED,
                                   MESSAGES_IN,
                                   PRODUCER_COUNT,
-                                  STATE_CHANGED));
+                                  STATE_CHANGED,
+                                  ROUTE_CACHE_HITS,
+                                  ROUTE_CACHE_MISSES,
+                                  ROUTE_CACHE_INVALIDATIONS));
 
     String CREATED                              = "created";
     String DURABLE                              = "durable";
@@ -30,6 +30,8 @@ public interface Queue extends ConfiguredObject
     public static final String BINDING_COUNT = "bindingCount";
     public static final String CONSUMER_COUNT = "consumerCount";
     public static final String CONSUMER_COUNT_WITH_CREDIT = "consumerCountWithCredit";
+    public static final String DELIVERY_RUN_COUNT = "deliveryRunCount";
+    public static final String DELIVERY_RUN_TIME = "deliveryRunTime";
     public static final String DISCARDS_TTL_BYTES = "discardsTtlBytes";
     public static final String DISCARDS_TTL_MESSAGES = "discardsTtlMessages";
     public static final String PERSISTENT_DEQUEUED_BYTES = "persistentDequeuedBytes";
@@ -51,6 +53,8 @@ public interface Queue extends ConfiguredObject
                     Arrays.asList(BINDING_COUNT,
                                   CONSUMER_COUNT,
                                   CONSUMER_COUNT_WITH_CREDIT,
+                                  DELIVERY_RUN_COUNT,
+                                  DELIVERY_RUN_TIME,
                                   DISCARDS_TTL_BYTES,
                                   DISCARDS_TTL_MESSAGES,
                                   PERSISTENT_DEQUEUED_BYTES,
@@ -42,6 +42,8 @@ public interface VirtualHost extends ConfiguredObject
     public static final String MESSAGES_IN = "messagesIn";
     public static final String MESSAGES_OUT = "messagesOut";
     public static final String MESSAGES_RETAINED = "messagesRetained";
+    public static final String MESSAGE_SIZE_IN = "messageSizeIn";
+    public static final String MESSAGE_SIZE_OUT = "messageSizeOut";
     public static final String STATE_CHANGED = "stateChanged";
     public static final String XA_TRANSACTION_BRANCH_ENDS = "xaTransactionBranchEnds";
     public static final String XA_TRANSACTION_BRANCH_STARTS = "xaTransactionBranchStarts";
@@ -49,13 +51,24 @@ public interface VirtualHost extends ConfiguredObject
     public static final String QUEUE_COUNT = "queueCount";
     public static final String EXCHANGE_COUNT = "exchangeCount";
     public static final String CONNECTION_COUNT = "connectionCount";
+    public static final String CONTENT_CACHE_BYTES = "contentCacheBytes";
+    public static final String CONTENT_CACHE_EVICTIONS = "contentCacheEvictions";
+    public static final String BUFFER_POOL_HITS = "bufferPoolHits";
+    public static final String BUFFER_POOL_MISSES = "bufferPoolMisses";
+    public static final String BUFFER_POOL_UNPOOLED = "bufferPoolUnpooled";
+    public static final String BUFFER_POOL_RECYCLED = "bufferPoolRecycled";
+    public static final String BUFFER_POOL_DISCARDED = "bufferPoolDiscarded";
+    public static final String BUFFER_POOL_FREE_COUNT = "bufferPoolFreeCount";
 
     public static final Collection<String> AVAILABLE_STATISTICS =
             Collections.unmodifiableList(
                     Arrays.asList(BYTES_IN, BYTES_OUT, BYTES_RETAINED, LOCAL_TRANSACTION_BEGINS,
                             LOCAL_TRANSACTION_ROLLBACKS, MESSAGES_IN, MESSAGES_OUT, MESSAGES_RETAINED, STATE_CHANGED,
                             XA_TRANSACTION_BRANCH_ENDS, XA_TRANSACTION_BRANCH_STARTS, XA_TRANSACTION_BRANCH_SUSPENDS,
-                            QUEUE_COUNT, EXCHANGE_COUNT, CONNECTION_COUNT));
+                            QUEUE_COUNT, EXCHANGE_COUNT, CONNECTION_COUNT, MESSAGE_SIZE_IN, MESSAGE_SIZE_OUT,
+                            CONTENT_CACHE_BYTES, CONTENT_CACHE_EVICTIONS, BUFFER_POOL_HITS, BUFFER_POOL_MISSES,
+                            BUFFER_POOL_UNPOOLED, BUFFER_POOL_RECYCLED, BUFFER_POOL_DISCARDED,
+                            BUFFER_POOL_FREE_COUNT));
 
     String ALERT_REPEAT_GAP = "alertRepeatGap";
     String ALERT_THRESHOLD_MESSAGE_AGE = "alertThresholdMessageAge";
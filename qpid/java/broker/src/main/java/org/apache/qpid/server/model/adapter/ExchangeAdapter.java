@@ -414,6 +414,18 @@ final class ExchangeAdapter extends AbstractAdapter implements Exchange, org.apa
             {
                 return _exchange.getMsgReceives();
             }
+            else if(ROUTE_CACHE_HITS.equals(name))
+            {
+                return _exchange.getRouteCacheHits();
+            }
+            else if(ROUTE_CACHE_MISSES.equals(name))
+            {
+                return _exchange.getRouteCacheMisses();
+            }
+            else if(ROUTE_CACHE_INVALIDATIONS.equals(name))
+            {
+                return _exchange.getRouteCacheInvalidations();
+            }
             else if(PRODUCER_COUNT.equals(name))
             {
 
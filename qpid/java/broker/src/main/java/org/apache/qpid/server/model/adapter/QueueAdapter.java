@@ -632,6 +632,14 @@ final class QueueAdapter extends AbstractAdapter implements Queue, AMQQueue.Subs
             {
                 return _queue.getActiveConsumerCount();
             }
+            else if(DELIVERY_RUN_COUNT.equals(name))
+            {
+                return _queue.getDeliveryRunCount();
+            }
+            else if(DELIVERY_RUN_TIME.equals(name))
+            {
+                return _queue.getDeliveryRunTime();
+            }
             else if(DISCARDS_TTL_BYTES.equals(name))
             {
                 return null; // TODO
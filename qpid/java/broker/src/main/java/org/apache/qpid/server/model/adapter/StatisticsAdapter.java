@@ -17,11 +17,14 @@
 package org.apache.qpid.server.model.adapter;
 
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.qpid.server.model.Statistics;
+import org.apache.qpid.server.stats.HistogramStatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsGatherer;
 
@@ -31,14 +34,18 @@ class StatisticsAdapter implements Statistics
     private final Map<String, StatisticsCounter> _statistics =
             new HashMap<String, StatisticsCounter>();
 
+    private final Map<String, HistogramStatisticsCounter> _histograms =
+            new HashMap<String, HistogramStatisticsCounter>();
+
 
     private static final String BYTES_IN = "bytesIn";
     private static final String BYTES_OUT = "bytesOut";
     private static final String MESSAGES_IN = "messagesIn";
     private static final String MESSAGES_OUT = "messagesOut";
+    private static final String MESSAGE_SIZE_IN = "messageSizeIn";
+    private static final String MESSAGE_SIZE_OUT = "messageSizeOut";
 
-    private static final Collection<String> STATISTIC_NAMES =
-            Collections.unmodifiableCollection(Arrays.asList(BYTES_IN, BYTES_OUT, MESSAGES_IN, MESSAGES_OUT));
+    private final Collection<String> _statisticNames;
 
     
 
@@ -48,16 +55,36 @@ class StatisticsAdapter implements Statistics
         _statistics.put(BYTES_IN, statGatherer.getDataReceiptStatistics());
         _statistics.put(MESSAGES_OUT, statGatherer.getMessageDeliveryStatistics());
         _statistics.put(MESSAGES_IN, statGatherer.getMessageReceiptStatistics());
+
+        addHistogram(MESSAGE_SIZE_OUT, statGatherer.getDataDeliveryStatistics());
+        addHistogram(MESSAGE_SIZE_IN, statGatherer.getDataReceiptStatistics());
+
+        List<String> names = new ArrayList<String>(Arrays.asList(BYTES_IN, BYTES_OUT, MESSAGES_IN, MESSAGES_OUT));
+        names.addAll(_histograms.keySet());
+        _statisticNames = Collections.unmodifiableCollection(names);
+    }
+
+    private void addHistogram(String name, StatisticsCounter counter)
+    {
+        if (counter instanceof HistogramStatisticsCounter)
+        {
+            _histograms.put(name, (HistogramStatisticsCounter) counter);
+        }
     }
 
     
     public Collection<String> getStatisticNames()
     {
-        return STATISTIC_NAMES;
+        return _statisticNames;
     }
 
     public Object getStatistic(String name)
     {
+        HistogramStatisticsCounter histogram = _histograms.get(name);
+        if (histogram != null)
+        {
+            return histogram.getSummary();
+        }
         StatisticsCounter counter = _statistics.get(name);
         return counter == null ? null : counter.getTotal();
 
@@ -73,12 +73,14 @@ import org.apache.qpid.server.queue.QueueRegistry;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.auth.AuthenticatedPrincipal;
 import org.apache.qpid.server.stats.StatisticsGatherer;
+import org.apache.qpid.server.store.MessageContentCache;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.txn.LocalTransaction;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.MapValueConverter;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 import org.apache.qpid.server.virtualhost.VirtualHostRegistry;
+import org.apache.qpid.transport.util.ByteBufferPool;
 import org.apache.qpid.util.FileUtils;
 
 public final class VirtualHostAdapter extends AbstractAdapter implements VirtualHost, ExchangeRegistry.RegistryChangeListener,
@@ -897,7 +899,15 @@ public final class VirtualHostAdapter extends AbstractAdapter implements Virtual
         private static final Collection<String> VHOST_STATS = Arrays.asList(
                 VirtualHost.QUEUE_COUNT,
                 VirtualHost.EXCHANGE_COUNT,
-                VirtualHost.CONNECTION_COUNT);
+                VirtualHost.CONNECTION_COUNT,
+                VirtualHost.CONTENT_CACHE_BYTES,
+                VirtualHost.CONTENT_CACHE_EVICTIONS,
+                VirtualHost.BUFFER_POOL_HITS,
+                VirtualHost.BUFFER_POOL_MISSES,
+                VirtualHost.BUFFER_POOL_UNPOOLED,
+                VirtualHost.BUFFER_POOL_RECYCLED,
+                VirtualHost.BUFFER_POOL_DISCARDED,
+                VirtualHost.BUFFER_POOL_FREE_COUNT);
 
         public VirtualHostStatisticsAdapter(org.apache.qpid.server.virtualhost.VirtualHost virtualHost)
         {
@@ -928,6 +938,41 @@ public final class VirtualHostAdapter extends AbstractAdapter implements Virtual
             {
                 return _vhost.getConnectionRegistry().getConnections().size();
             }
+            else if(VirtualHost.CONTENT_CACHE_BYTES.equals(name))
+            {
+                MessageContentCache.Region region = MessageContentCache.getInstance().getRegion(_vhost.getName());
+                return region == null ? 0l : region.getCachedBytes();
+            }
+            else if(VirtualHost.CONTENT_CACHE_EVICTIONS.equals(name))
+            {
+                MessageContentCache.Region region = MessageContentCache.getInstance().getRegion(_vhost.getName());
+                return region == null ? 0l : region.getEvictions();
+            }
+            // the transport buffer pool is shared by all virtualhosts
+            else if(VirtualHost.BUFFER_POOL_HITS.equals(name))
+            {
+                return ByteBufferPool.getInstance().getHits();
+            }
+            else if(VirtualHost.BUFFER_POOL_MISSES.equals(name))
+            {
+                return ByteBufferPool.getInstance().getMisses();
+            }
+            else if(VirtualHost.BUFFER_POOL_UNPOOLED.equals(name))
+            {
+                return ByteBufferPool.getInstance().getUnpooled();
+            }
+            else if(VirtualHost.BUFFER_POOL_RECYCLED.equals(name))
+            {
+                return ByteBufferPool.getInstance().getRecycled();
+            }
+            else if(VirtualHost.BUFFER_POOL_DISCARDED.equals(name))
+            {
+                return ByteBufferPool.getInstance().getDiscarded();
+            }
+            else if(VirtualHost.BUFFER_POOL_FREE_COUNT.equals(name))
+            {
+                return ByteBufferPool.getInstance().getFreeCount();
+            }
             else
             {
                 return super.getStatistic(name);
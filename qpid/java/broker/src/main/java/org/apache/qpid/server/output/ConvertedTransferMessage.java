@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.output;
+
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.server.message.MessageConverter;
+import org.apache.qpid.server.message.MessageTransferMessage;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.virtualhost.VirtualHost;
+import org.apache.qpid.transport.DeliveryProperties;
+
+/**
+ * The 0-8/0-9 content header, exchange and routing key of a message which arrived over 0-10, converted once and
+ * then shared by all of its 0-8/0-9 deliveries.
+ */
+final class ConvertedTransferMessage
+{
+    private static final int BASIC_CLASS_ID = 60;
+
+    static final MessageConverter<ConvertedTransferMessage> CONVERTER = new MessageConverter<ConvertedTransferMessage>()
+    {
+        public ConvertedTransferMessage convert(ServerMessage message, VirtualHost virtualHost)
+        {
+            return new ConvertedTransferMessage((MessageTransferMessage) message, virtualHost);
+        }
+    };
+
+    private final ContentHeaderBody _contentHeaderBody;
+    private final AMQShortString _exchangeName;
+    private final AMQShortString _routingKey;
+
+    private ConvertedTransferMessage(MessageTransferMessage message, VirtualHost virtualHost)
+    {
+        BasicContentHeaderProperties props = HeaderPropertiesConverter.convert(message, virtualHost);
+        _contentHeaderBody = new ContentHeaderBody(props, BASIC_CLASS_ID);
+        _contentHeaderBody.setBodySize(message.getSize());
+
+        DeliveryProperties delvProps = message.getHeader().getDeliveryProperties();
+        _exchangeName = (delvProps == null || delvProps.getExchange() == null) ? null : new AMQShortString(delvProps.getExchange());
+        _routingKey = (delvProps == null || delvProps.getRoutingKey() == null) ? null : new AMQShortString(delvProps.getRoutingKey());
+    }
+
+    ContentHeaderBody getContentHeaderBody()
+    {
+        return _contentHeaderBody;
+    }
+
+    AMQShortString getExchangeName()
+    {
+        return _exchangeName;
+    }
+
+    AMQShortString getRoutingKey()
+    {
+        return _routingKey;
+    }
+}
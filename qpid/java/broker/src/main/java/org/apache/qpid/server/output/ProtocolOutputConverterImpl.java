@@ -27,7 +27,6 @@ import org.apache.qpid.framing.AMQFrame;
 import org.apache.qpid.framing.AMQMethodBody;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicCancelOkBody;
-import org.apache.qpid.framing.BasicContentHeaderProperties;
 import org.apache.qpid.framing.BasicGetOkBody;
 import org.apache.qpid.framing.BasicReturnBody;
 import org.apache.qpid.framing.ContentHeaderBody;
@@ -36,19 +35,14 @@ import org.apache.qpid.framing.abstraction.MessagePublishInfo;
 import org.apache.qpid.protocol.AMQVersionAwareProtocolSession;
 import org.apache.qpid.server.message.AMQMessage;
 import org.apache.qpid.server.message.MessageContentSource;
-import org.apache.qpid.server.message.MessageTransferMessage;
 import org.apache.qpid.server.protocol.AMQProtocolSession;
 import org.apache.qpid.server.queue.QueueEntry;
-import org.apache.qpid.transport.DeliveryProperties;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 class ProtocolOutputConverterImpl implements ProtocolOutputConverter
 {
-    private static final int BASIC_CLASS_ID = 60;
-
     private final MethodRegistry _methodRegistry;
     private final AMQProtocolSession _protocolSession;
 
@@ -81,15 +75,16 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
         }
         else
         {
-            final MessageTransferMessage message = (MessageTransferMessage) entry.getMessage();
-            BasicContentHeaderProperties props = HeaderPropertiesConverter.convert(message, entry.getQueue().getVirtualHost());
-            ContentHeaderBody chb = new ContentHeaderBody(props, BASIC_CLASS_ID);
-            chb.setBodySize(message.getSize());
-            return chb;
+            return getConverted(entry).getContentHeaderBody();
         }
     }
 
 
+    private ConvertedTransferMessage getConverted(QueueEntry entry) throws AMQException
+    {
+        return entry.getMessage().getConverted(ConvertedTransferMessage.CONVERTER, entry.getQueue().getVirtualHost());
+    }
+
     private void writeMessageDelivery(QueueEntry entry, int channelId, AMQBody deliverBody)
             throws AMQException
     {
@@ -114,74 +109,11 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
         {
             int maxBodySize = (int) getProtocolSession().getMaxFrameSize() - AMQFrame.getFrameOverhead();
 
-
-            int capacity = bodySize > maxBodySize ? maxBodySize : bodySize;
-
-            int writtenSize = capacity;
-
-            AMQBody firstContentBody = new MessageContentSourceBody(message,0,capacity);
-
-            CompositeAMQBodyBlock
-                    compositeBlock = new CompositeAMQBodyBlock(channelId, deliverBody, contentHeaderBody, firstContentBody);
-            writeFrame(compositeBlock);
-
-            while(writtenSize < bodySize)
-            {
-                capacity = bodySize - writtenSize > maxBodySize ? maxBodySize : bodySize - writtenSize;
-                MessageContentSourceBody body = new MessageContentSourceBody(message, writtenSize, capacity);
-                writtenSize += capacity;
-
-                writeFrame(new AMQFrame(channelId, body));
-            }
-        }
-    }
-
-    private class MessageContentSourceBody implements AMQBody
-    {
-        public static final byte TYPE = 3;
-        private int _length;
-        private MessageContentSource _message;
-        private int _offset;
-
-        public MessageContentSourceBody(MessageContentSource message, int offset, int length)
-        {
-            _message = message;
-            _offset = offset;
-            _length = length;
-        }
-
-        public byte getFrameType()
-        {
-            return TYPE;
-        }
-
-        public int getSize()
-        {
-            return _length;
-        }
-
-        public void writePayload(DataOutput buffer) throws IOException
-        {
-            ByteBuffer buf = _message.getContent(_offset, _length);
-
-            if(buf.hasArray())
-            {
-                buffer.write(buf.array(), buf.arrayOffset()+buf.position(), buf.remaining());
-            }
-            else
-            {
-
-                byte[] data = new byte[_length];
-
-                buf.get(data);
-
-                buffer.write(data);
-            }
-        }
-
-        public void handle(int channelId, AMQVersionAwareProtocolSession amqProtocolSession) throws AMQException
-        {
-            throw new UnsupportedOperationException();
+            // the content is fetched a frame at a time and passed on in the buffers the message holds it in, rather
+            // than being copied into frames, so that it can be written straight to the network
+            SmallCompositeAMQBodyBlock compositeBlock = new SmallCompositeAMQBodyBlock(channelId, deliverBody,
+                                                                                       contentHeaderBody);
+            getProtocolSession().writeFrames(compositeBlock, channelId, message, maxBodySize);
         }
     }
 
@@ -210,10 +142,9 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
         }
         else
         {
-            MessageTransferMessage message = (MessageTransferMessage) entry.getMessage();
-            DeliveryProperties delvProps = message.getHeader().getDeliveryProperties();
-            exchangeName = (delvProps == null || delvProps.getExchange() == null) ? null : new AMQShortString(delvProps.getExchange());
-            routingKey = (delvProps == null || delvProps.getRoutingKey() == null) ? null : new AMQShortString(delvProps.getRoutingKey());
+            ConvertedTransferMessage converted = getConverted(entry);
+            exchangeName = converted.getExchangeName();
+            routingKey = converted.getRoutingKey();
         }
 
         final boolean isRedelivered = entry.isRedelivered();
@@ -300,10 +231,9 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
         }
         else
         {
-            MessageTransferMessage message = (MessageTransferMessage) entry.getMessage();
-            DeliveryProperties delvProps = message.getHeader().getDeliveryProperties();
-            exchangeName = (delvProps == null || delvProps.getExchange() == null) ? null : new AMQShortString(delvProps.getExchange());
-            routingKey = (delvProps == null || delvProps.getRoutingKey() == null) ? null : new AMQShortString(delvProps.getRoutingKey());
+            ConvertedTransferMessage converted = getConverted(entry);
+            exchangeName = converted.getExchangeName();
+            routingKey = converted.getRoutingKey();
         }
 
         final boolean isRedelivered = entry.isRedelivered();
@@ -368,48 +298,6 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
     }
 
 
-    public static final class CompositeAMQBodyBlock extends AMQDataBlock
-    {
-        public static final int OVERHEAD = 3 * AMQFrame.getFrameOverhead();
-
-        private final AMQBody _methodBody;
-        private final AMQBody _headerBody;
-        private final AMQBody _contentBody;
-        private final int _channel;
-
-
-        public CompositeAMQBodyBlock(int channel, AMQBody methodBody, AMQBody headerBody, AMQBody contentBody)
-        {
-            _channel = channel;
-            _methodBody = methodBody;
-            _headerBody = headerBody;
-            _contentBody = contentBody;
-        }
-
-        public long getSize()
-        {
-            return OVERHEAD + _methodBody.getSize() + _headerBody.getSize() + _contentBody.getSize();
-        }
-
-        public void writePayload(DataOutput buffer) throws IOException
-        {
-            AMQFrame.writeFrames(buffer, _channel, _methodBody, _headerBody, _contentBody);
-        }
-
-        @Override
-        public String toString()
-        {
-            StringBuilder builder = new StringBuilder();
-            builder.append("[").append(getClass().getSimpleName())
-                .append(" methodBody=").append(_methodBody)
-                .append(", headerBody=").append(_headerBody)
-                .append(", contentBody=").append(_contentBody)
-                .append(", channel=").append(_channel).append("]");
-            return builder.toString();
-        }
-
-    }
-
     public static final class SmallCompositeAMQBodyBlock extends AMQDataBlock
     {
         public static final int OVERHEAD = 2 * AMQFrame.getFrameOverhead();
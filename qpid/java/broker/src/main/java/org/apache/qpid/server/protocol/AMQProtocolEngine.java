@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.server.protocol;
 
+import java.io.DataOutput;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
@@ -50,6 +51,7 @@ import org.apache.qpid.properties.ConnectionStartProperties;
 import org.apache.qpid.protocol.AMQConstant;
 import org.apache.qpid.protocol.AMQMethodEvent;
 import org.apache.qpid.protocol.AMQMethodListener;
+import org.apache.qpid.protocol.AMQVersionAwareProtocolSession;
 import org.apache.qpid.protocol.ServerProtocolEngine;
 import org.apache.qpid.server.AMQChannel;
 import org.apache.qpid.server.configuration.BrokerProperties;
@@ -61,6 +63,7 @@ import org.apache.qpid.server.logging.actors.CurrentActor;
 import org.apache.qpid.server.logging.actors.ManagementActor;
 import org.apache.qpid.server.logging.messages.ConnectionMessages;
 import org.apache.qpid.server.logging.subjects.ConnectionLogSubject;
+import org.apache.qpid.server.message.MessageContentSource;
 import org.apache.qpid.server.model.Broker;
 import org.apache.qpid.server.output.ProtocolOutputConverter;
 import org.apache.qpid.server.output.ProtocolOutputConverterRegistry;
@@ -69,13 +72,16 @@ import org.apache.qpid.server.security.auth.AuthenticatedPrincipal;
 import org.apache.qpid.server.state.AMQState;
 import org.apache.qpid.server.state.AMQStateManager;
 import org.apache.qpid.server.stats.StatisticsCounter;
+import org.apache.qpid.server.store.PooledContent;
 import org.apache.qpid.server.subscription.ClientDeliveryMethod;
 import org.apache.qpid.server.subscription.Subscription;
 import org.apache.qpid.server.subscription.SubscriptionImpl;
 import org.apache.qpid.server.virtualhost.VirtualHost;
 import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.SharedBufferSender;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
 import org.apache.qpid.util.BytesDataOutput;
 
 public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSession
@@ -572,6 +578,148 @@ public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSessi
         }
     }
 
+    /**
+     * Writes the given block followed by the content of the given source in content body frames.
+     *
+     * The content is fetched from the source one frame at a time, so that the whole of a large message need not
+     * be held in memory to deliver it. If the sender can share buffers, each content buffer is handed to it as it
+     * is, between the frame header and end byte, so that message content goes to the network straight from the
+     * buffer the store holds it in. Otherwise each content frame is encoded into the reusable buffer in the usual
+     * way.
+     */
+    public synchronized void writeFrames(AMQDataBlock block, int channelId, MessageContentSource source,
+                                         int maxContentBodySize)
+    {
+        ByteBuffer buf = asByteBuffer(block);
+        _writtenBytes += buf.remaining();
+
+        int bodySize = (int) source.getSize();
+        if(_logger.isDebugEnabled())
+        {
+            _logger.debug("SEND: " + block + " followed by " + bodySize + " byte(s) of content");
+        }
+
+        _sender.send(buf);
+
+        if(_sender instanceof SharedBufferSender)
+        {
+            SharedBufferSender sender = (SharedBufferSender) _sender;
+            // pooled content is retained for each shared frame, as the message may be removed, and its content
+            // released, before the frame is written
+            PooledBuffer pooledContent = source instanceof PooledContent
+                                         ? ((PooledContent) source).retainContent()
+                                         : null;
+            boolean first = true;
+            try
+            {
+                for(int offset = 0; offset < bodySize; offset += maxContentBodySize)
+                {
+                    ByteBuffer content = source.getContent(offset, Math.min(maxContentBodySize, bodySize - offset));
+                    _reusableDataOutput.setBuffer(_reusableBytes);
+                    try
+                    {
+                        if(!first)
+                        {
+                            _reusableDataOutput.writeByte(AMQFrame.FRAME_END_BYTE);
+                        }
+                        _reusableDataOutput.writeByte(ContentBody.TYPE);
+                        EncodingUtils.writeUnsignedShort(_reusableDataOutput, channelId);
+                        EncodingUtils.writeUnsignedInteger(_reusableDataOutput, content.remaining());
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    _reusableByteBuffer.position(0);
+                    _reusableByteBuffer.limit(_reusableDataOutput.length());
+                    _writtenBytes += AMQFrame.getFrameOverhead() + content.remaining();
+                    sender.send(_reusableByteBuffer);
+                    if(pooledContent == null)
+                    {
+                        sender.sendShared(content.duplicate());
+                    }
+                    else
+                    {
+                        sender.sendShared(content.duplicate(), pooledContent.retain());
+                    }
+                    first = false;
+                }
+            }
+            finally
+            {
+                if(pooledContent != null)
+                {
+                    pooledContent.release();
+                }
+            }
+            if(!first)
+            {
+                sender.send(ByteBuffer.wrap(new byte[] { AMQFrame.FRAME_END_BYTE }));
+            }
+        }
+        else
+        {
+            for(int offset = 0; offset < bodySize; offset += maxContentBodySize)
+            {
+                ByteBuffer content = source.getContent(offset, Math.min(maxContentBodySize, bodySize - offset));
+                buf = asByteBuffer(new AMQFrame(channelId, new ContentBufferBody(content)));
+                _writtenBytes += buf.remaining();
+                _sender.send(buf);
+            }
+        }
+
+        final long time = System.currentTimeMillis();
+        _lastIoTime = time;
+        _lastWriteTime.set(time);
+
+        if(!_deferFlush)
+        {
+            _sender.flush();
+        }
+    }
+
+    /**
+     * A content body whose payload is the content of a buffer.
+     */
+    private static final class ContentBufferBody implements AMQBody
+    {
+        private final ByteBuffer _content;
+
+        private ContentBufferBody(ByteBuffer content)
+        {
+            _content = content;
+        }
+
+        public byte getFrameType()
+        {
+            return ContentBody.TYPE;
+        }
+
+        public int getSize()
+        {
+            return _content.remaining();
+        }
+
+        public void writePayload(DataOutput buffer) throws IOException
+        {
+            if(_content.hasArray())
+            {
+                buffer.write(_content.array(), _content.arrayOffset() + _content.position(), _content.remaining());
+            }
+            else
+            {
+                byte[] data = new byte[_content.remaining()];
+                _content.duplicate().get(data);
+                buffer.write(data);
+            }
+        }
+
+        public void handle(int channelId, AMQVersionAwareProtocolSession session) throws AMQException
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     public AMQShortString getContextKey()
     {
         return _contextKey;
@@ -29,6 +29,7 @@ import javax.security.auth.Subject;
 import javax.security.sasl.SaslServer;
 
 import org.apache.qpid.AMQException;
+import org.apache.qpid.framing.AMQDataBlock;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.framing.MethodDispatcher;
@@ -36,6 +37,7 @@ import org.apache.qpid.framing.MethodRegistry;
 import org.apache.qpid.protocol.AMQVersionAwareProtocolSession;
 import org.apache.qpid.server.AMQChannel;
 import org.apache.qpid.server.logging.LogActor;
+import org.apache.qpid.server.message.MessageContentSource;
 import org.apache.qpid.server.output.ProtocolOutputConverter;
 import org.apache.qpid.server.security.AuthorizationHolder;
 import org.apache.qpid.server.subscription.ClientDeliveryMethod;
@@ -58,6 +60,13 @@ public interface AMQProtocolSession extends AMQVersionAwareProtocolSession, Auth
 
     void setDeferFlush(boolean defer);
 
+    /**
+     * Writes a block of frames followed by the given content as content body frames of at most the given size on
+     * the given channel. The content is fetched from the source a frame at a time, and the buffers it returns may
+     * be written to the network without being copied, so they must not be modified afterwards.
+     */
+    void writeFrames(AMQDataBlock block, int channelId, MessageContentSource content, int maxContentBodySize);
+
     ClientDeliveryMethod createDeliveryMethod(int channelId);
 
     long getLastReceivedTime();
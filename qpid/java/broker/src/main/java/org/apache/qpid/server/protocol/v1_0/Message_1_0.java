@@ -26,12 +26,17 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.apache.qpid.AMQException;
 import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.server.message.ConvertedMessageCache;
 import org.apache.qpid.server.message.InboundMessage;
 import org.apache.qpid.server.message.MessageMetaData_1_0;
+import org.apache.qpid.server.message.MessageConverter;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.virtualhost.VirtualHost;
 
 public class Message_1_0 implements ServerMessage, InboundMessage
 {
@@ -40,7 +45,11 @@ public class Message_1_0 implements ServerMessage, InboundMessage
     private static final AtomicIntegerFieldUpdater<Message_1_0> _refCountUpdater =
             AtomicIntegerFieldUpdater.newUpdater(Message_1_0.class, "_referenceCount");
 
+    private static final AtomicReferenceFieldUpdater<Message_1_0, Object[]> _convertedUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Message_1_0.class, Object[].class, "_converted");
+
     private volatile int _referenceCount = 0;
+    private volatile Object[] _converted = ConvertedMessageCache.NONE;
 
     private final StoredMessage<MessageMetaData_1_0> _storedMessage;
     private List<ByteBuffer> _fragments;
@@ -171,6 +180,11 @@ public class Message_1_0 implements ServerMessage, InboundMessage
         return buf;
     }
 
+    public <V> V getConverted(MessageConverter<V> converter, VirtualHost virtualHost) throws AMQException
+    {
+        return ConvertedMessageCache.getConverted(this, _convertedUpdater, this, converter, virtualHost);
+    }
+
     public List<ByteBuffer> getFragments()
     {
         return _fragments;
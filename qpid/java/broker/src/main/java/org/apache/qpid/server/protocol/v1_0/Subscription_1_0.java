@@ -48,12 +48,14 @@ import org.apache.qpid.amqp_1_0.type.transport.SenderSettleMode;
 import org.apache.qpid.amqp_1_0.type.transport.Transfer;
 import org.apache.qpid.server.filter.FilterManager;
 import org.apache.qpid.server.logging.LogActor;
+import org.apache.qpid.server.message.MessageConverter;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.QueueEntry;
 import org.apache.qpid.server.subscription.Subscription;
 import org.apache.qpid.server.txn.ServerTransaction;
+import org.apache.qpid.server.virtualhost.VirtualHost;
 
 class Subscription_1_0 implements Subscription
 {
@@ -61,6 +63,37 @@ class Subscription_1_0 implements Subscription
 
     private AMQQueue _queue;
 
+    /**
+     * Assembles the fragments of a message into a single payload, once however many links it is sent on.
+     */
+    private static final MessageConverter<ByteBuffer> PAYLOAD_CONVERTER = new MessageConverter<ByteBuffer>()
+    {
+        public ByteBuffer convert(ServerMessage message, VirtualHost virtualHost)
+        {
+            List<ByteBuffer> fragments = ((Message_1_0) message).getFragments();
+            if(fragments.size() == 1)
+            {
+                return fragments.get(0);
+            }
+
+            int size = 0;
+            for(ByteBuffer fragment : fragments)
+            {
+                size += fragment.remaining();
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(size);
+
+            for(ByteBuffer fragment : fragments)
+            {
+                payload.put(fragment.duplicate());
+            }
+
+            payload.flip();
+            return payload;
+        }
+    };
+
     private final AtomicReference<State> _state = new AtomicReference<State>(State.SUSPENDED);
 
     private final QueueEntry.SubscriptionAcquiredState _owningState = new QueueEntry.SubscriptionAcquiredState(this);
@@ -210,29 +243,7 @@ class Subscription_1_0 implements Subscription
             //TODO
 
 
-            List<ByteBuffer> fragments = message.getFragments();
-            ByteBuffer payload;
-            if(fragments.size() == 1)
-            {
-                payload = fragments.get(0);
-            }
-            else
-            {
-                int size = 0;
-                for(ByteBuffer fragment : fragments)
-                {
-                    size += fragment.remaining();
-                }
-
-                payload = ByteBuffer.allocate(size);
-
-                for(ByteBuffer fragment : fragments)
-                {
-                    payload.put(fragment.duplicate());
-                }
-
-                payload.flip();
-            }
+            ByteBuffer payload = message.getConverted(PAYLOAD_CONVERTER, getQueue().getVirtualHost()).duplicate();
 
             if(queueEntry.getDeliveryCount() != 0)
             {
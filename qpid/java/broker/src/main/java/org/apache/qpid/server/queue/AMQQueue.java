@@ -87,6 +87,18 @@ public interface AMQQueue extends Comparable<AMQQueue>, ExchangeReferrer, Transa
 
     void registerSubscription(final Subscription subscription, final boolean exclusive) throws AMQException;
 
+    /**
+     * Sets the recovery of the queue's entries from the message store, which holds back new enqueues, subscriptions,
+     * purges and deletion of the queue until it has run.
+     */
+    void setRecovery(Runnable recovery);
+
+    /**
+     * Runs the queue's recovery if it has not yet been run, or waits for the thread running it, so that the
+     * recovered entries are in place.
+     */
+    void completeRecovery();
+
     void unregisterSubscription(final Subscription subscription) throws AMQException;
 
     Collection<Subscription> getConsumers();
@@ -327,4 +339,14 @@ public interface AMQQueue extends Comparable<AMQQueue>, ExchangeReferrer, Transa
 
     long getUnackedMessageCount();
 
+    /**
+     * Returns the number of times the queue's asynchronous delivery runners have been run.
+     */
+    long getDeliveryRunCount();
+
+    /**
+     * Returns the total time, in milliseconds, spent running the queue's asynchronous delivery runners.
+     */
+    long getDeliveryRunTime();
+
 }
@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * An implementation of QueueEntryImpl to be used in ConcurrentSortedQueueEntryList.
+ *
+ * Entries hold no links of their own; their position is determined entirely by the sort key and entry id,
+ * which are fixed on creation.
+ */
+public class ConcurrentSortedQueueEntryImpl extends QueueEntryImpl
+{
+    private final ConcurrentSortedQueueEntryList _queueEntryList;
+    private final String _key;
+
+    public ConcurrentSortedQueueEntryImpl(final ConcurrentSortedQueueEntryList queueEntryList)
+    {
+        super(queueEntryList);
+        _queueEntryList = queueEntryList;
+        _key = null;
+    }
+
+    public ConcurrentSortedQueueEntryImpl(final ConcurrentSortedQueueEntryList queueEntryList,
+                                          final ServerMessage message, final long entryId, final String key)
+    {
+        super(queueEntryList, message, entryId);
+        _queueEntryList = queueEntryList;
+        _key = key;
+    }
+
+    @Override
+    public int compareTo(final QueueEntry o)
+    {
+        final String otherKey = ((ConcurrentSortedQueueEntryImpl) o)._key;
+        final int compare = _key == null ? (otherKey == null ? 0 : -1) : otherKey == null ? 1 : _key.compareTo(otherKey);
+        return compare == 0 ? super.compareTo(o) : compare;
+    }
+
+    public String getKey()
+    {
+        return _key;
+    }
+
+    public ConcurrentSortedQueueEntryImpl getNextNode()
+    {
+        return _queueEntryList.next(this);
+    }
+
+    public ConcurrentSortedQueueEntryImpl getNextValidEntry()
+    {
+        ConcurrentSortedQueueEntryImpl next = getNextNode();
+        while(next != null && next.isDispensed())
+        {
+            next = _queueEntryList.next(next);
+        }
+        return next;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + _key + "," + getEntryId() + ")";
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * A sorted implementation of QueueEntryList backed by a {@link ConcurrentSkipListMap}, allowing producers
+ * and consumers to add, traverse and remove entries without a common lock.
+ *
+ * Entries are ordered by the value of the sort property (entries without the property sorting first) and
+ * then by arrival. Because an entry's position is derived from its key and entry id, the successor of an
+ * entry can be found even after that entry has itself been removed from the list, so deleted entries are
+ * removed immediately and no scavenging is needed.
+ */
+public class ConcurrentSortedQueueEntryList implements QueueEntryList<ConcurrentSortedQueueEntryImpl>
+{
+    private final ConcurrentSortedQueueEntryImpl _head;
+    private final ConcurrentSkipListMap<ConcurrentSortedQueueEntryImpl, Boolean> _entries =
+            new ConcurrentSkipListMap<ConcurrentSortedQueueEntryImpl, Boolean>();
+    private final AtomicLong _entryId = new AtomicLong(Long.MIN_VALUE);
+    private final AMQQueue _queue;
+    private final String _propertyName;
+
+    public ConcurrentSortedQueueEntryList(final AMQQueue queue, final String propertyName)
+    {
+        _queue = queue;
+        _head = new ConcurrentSortedQueueEntryImpl(this);
+        _propertyName = propertyName;
+    }
+
+    public AMQQueue getQueue()
+    {
+        return _queue;
+    }
+
+    public ConcurrentSortedQueueEntryImpl add(final ServerMessage message)
+    {
+        String key = null;
+        final Object val = message.getMessageHeader().getHeader(_propertyName);
+        if(val != null)
+        {
+            key = val.toString();
+        }
+
+        final ConcurrentSortedQueueEntryImpl entry =
+                new ConcurrentSortedQueueEntryImpl(this, message, _entryId.incrementAndGet(), key);
+        _entries.put(entry, Boolean.TRUE);
+
+        return entry;
+    }
+
+    public ConcurrentSortedQueueEntryImpl next(final ConcurrentSortedQueueEntryImpl node)
+    {
+        if(node == _head)
+        {
+            // the head sorts before every entry, but is never a member of the map
+            final Map.Entry<ConcurrentSortedQueueEntryImpl, Boolean> first = _entries.firstEntry();
+            return first == null ? null : first.getKey();
+        }
+        else if(node.isDispensed())
+        {
+            ConcurrentSortedQueueEntryImpl next = _entries.higherKey(node);
+            while(next != null && next.isDispensed())
+            {
+                next = _entries.higherKey(next);
+            }
+            return next;
+        }
+        else
+        {
+            return _entries.higherKey(node);
+        }
+    }
+
+    public QueueEntryIterator<ConcurrentSortedQueueEntryImpl> iterator()
+    {
+        return new QueueEntryIteratorImpl(_head);
+    }
+
+    public ConcurrentSortedQueueEntryImpl getHead()
+    {
+        return _head;
+    }
+
+    public void entryDeleted(final ConcurrentSortedQueueEntryImpl entry)
+    {
+        _entries.remove(entry);
+    }
+
+    public int getPriorities()
+    {
+        return 0;
+    }
+
+    public class QueueEntryIteratorImpl implements QueueEntryIterator<ConcurrentSortedQueueEntryImpl>
+    {
+        private ConcurrentSortedQueueEntryImpl _lastNode;
+
+        public QueueEntryIteratorImpl(final ConcurrentSortedQueueEntryImpl startNode)
+        {
+            _lastNode = startNode;
+        }
+
+        public boolean atTail()
+        {
+            return next(_lastNode) == null;
+        }
+
+        public ConcurrentSortedQueueEntryImpl getNode()
+        {
+            return _lastNode;
+        }
+
+        public boolean advance()
+        {
+            ConcurrentSortedQueueEntryImpl nextNode = next(_lastNode);
+            if(nextNode != null)
+            {
+                ConcurrentSortedQueueEntryImpl afterNext;
+                while(nextNode.isDispensed() && (afterNext = next(nextNode)) != null)
+                {
+                    nextNode = afterNext;
+                }
+                _lastNode = nextNode;
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import org.apache.qpid.server.filter.MessageFilter;
+
+/**
+ * A filter of one or more subscriptions to a queue, whose results for the queue's entries are recorded on the
+ * entries under its index in the queue's {@link QueueFilterIndex}.
+ */
+final class IndexedFilter implements MessageFilter
+{
+    private final MessageFilter _filter;
+    private final int _index;
+    private final long _bit;
+    private final long _generation;
+    private final QueueFilterIndex _filterIndex;
+
+    /** guarded by the filter index */
+    private int _references;
+    private volatile boolean _released;
+
+    IndexedFilter(MessageFilter filter, int index, long generation, QueueFilterIndex filterIndex)
+    {
+        _filter = filter;
+        _index = index;
+        _bit = 1L << index;
+        _generation = generation;
+        _filterIndex = filterIndex;
+    }
+
+    public boolean matches(Filterable message)
+    {
+        if (message instanceof QueueEntryImpl)
+        {
+            // read the generation first: if the index is then still held, it is not reassigned before that
+            // generation, and results recorded under it up to that generation are ours
+            long generation = _filterIndex.getGeneration();
+            if (!_released)
+            {
+                return ((QueueEntryImpl) message).matches(this, _generation, generation);
+            }
+        }
+        return _filter.matches(message);
+    }
+
+    MessageFilter getFilter()
+    {
+        return _filter;
+    }
+
+    int getIndex()
+    {
+        return _index;
+    }
+
+    long getBit()
+    {
+        return _bit;
+    }
+
+    QueueFilterIndex getFilterIndex()
+    {
+        return _filterIndex;
+    }
+
+    void addReference()
+    {
+        _references++;
+    }
+
+    /**
+     * @return true if no subscription uses the filter any longer
+     */
+    boolean removeReference()
+    {
+        return --_references == 0;
+    }
+
+    void release()
+    {
+        _released = true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _filter.toString();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.pool.ReferenceCountingExecutorService;
+import org.apache.qpid.server.configuration.BrokerProperties;
+
+/**
+ * Provides the {@link QueueDeliveryScheduler} used by all queues in the broker, selected by the
+ * {@link BrokerProperties#PROPERTY_QUEUE_DELIVERY_SCHEDULER} system property:
+ * <ul>
+ * <li><tt>shared</tt> (default) - all queues share the fixed pool of {@link ReferenceCountingExecutorService}</li>
+ * <li><tt>forkjoin</tt> - all queues share a work stealing ForkJoinPool (requires Java 7)</li>
+ * <li><tt>pinned</tt> - each queue is always run on the same single threaded executor, chosen by the hash of the
+ * queue name, so that a queue's delivery work stays on one thread</li>
+ * </ul>
+ * The work stealing and pinned schedulers are sized by <tt>amqj.read_write_pool_size</tt>, as is the shared pool.
+ */
+public final class QueueDeliverySchedulers
+{
+    public static final String SHARED = "shared";
+    public static final String FORK_JOIN = "forkjoin";
+    public static final String PINNED = "pinned";
+
+    private static final int MINIMUM_POOL_SIZE = 4;
+    private static final int POOL_SIZE = Integer.getInteger("amqj.read_write_pool_size",
+                                                            Math.max(Runtime.getRuntime().availableProcessors(),
+                                                                     MINIMUM_POOL_SIZE));
+
+    private static final QueueDeliveryScheduler _instance =
+            create(System.getProperty(BrokerProperties.PROPERTY_QUEUE_DELIVERY_SCHEDULER, SHARED));
+
+    private QueueDeliverySchedulers()
+    {
+    }
+
+    public static QueueDeliveryScheduler getInstance()
+    {
+        return _instance;
+    }
+
+    static QueueDeliveryScheduler create(String type)
+    {
+        if (SHARED.equalsIgnoreCase(type))
+        {
+            return new SharedPoolScheduler();
+        }
+        else if (FORK_JOIN.equalsIgnoreCase(type))
+        {
+            return new ForkJoinScheduler(POOL_SIZE);
+        }
+        else if (PINNED.equalsIgnoreCase(type))
+        {
+            return new PinnedScheduler(POOL_SIZE);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown queue delivery scheduler '" + type + "', expected one of "
+                                               + SHARED + ", " + FORK_JOIN + " or " + PINNED);
+        }
+    }
+
+    /**
+     * Delegates to the process wide {@link ReferenceCountingExecutorService}.
+     */
+    static class SharedPoolScheduler implements QueueDeliveryScheduler
+    {
+        public Executor acquireExecutor(AMQQueue queue)
+        {
+            return ReferenceCountingExecutorService.getInstance().acquireExecutorService();
+        }
+
+        public void releaseExecutor(AMQQueue queue)
+        {
+            ReferenceCountingExecutorService.getInstance().releaseExecutorService();
+        }
+    }
+
+    /**
+     * Starts its executors when the first queue acquires one, and shuts them down when the last is released.
+     */
+    static abstract class ReferenceCountingScheduler implements QueueDeliveryScheduler
+    {
+        private final Object _lock = new Object();
+        private int _refCount = 0;
+
+        public Executor acquireExecutor(AMQQueue queue)
+        {
+            synchronized (_lock)
+            {
+                if (_refCount++ == 0)
+                {
+                    start();
+                }
+                return getExecutor(queue);
+            }
+        }
+
+        public void releaseExecutor(AMQQueue queue)
+        {
+            synchronized (_lock)
+            {
+                if (--_refCount == 0)
+                {
+                    stop();
+                }
+            }
+        }
+
+        int getReferenceCount()
+        {
+            synchronized (_lock)
+            {
+                return _refCount;
+            }
+        }
+
+        protected abstract void start();
+
+        protected abstract void stop();
+
+        protected abstract Executor getExecutor(AMQQueue queue);
+    }
+
+    static class ForkJoinScheduler extends ReferenceCountingScheduler
+    {
+        private static final String FORK_JOIN_POOL_CLASSNAME = "java.util.concurrent.ForkJoinPool";
+
+        private final int _parallelism;
+        private ExecutorService _pool;
+
+        ForkJoinScheduler(int parallelism)
+        {
+            _parallelism = parallelism;
+        }
+
+        protected void start()
+        {
+            // Loaded reflectively so that the broker continues to run on Java 6 when this scheduler is not selected
+            try
+            {
+                Constructor<?> constructor = Class.forName(FORK_JOIN_POOL_CLASSNAME).getConstructor(int.class);
+                _pool = (ExecutorService) constructor.newInstance(_parallelism);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException("The " + FORK_JOIN + " queue delivery scheduler requires "
+                                                 + FORK_JOIN_POOL_CLASSNAME, e);
+            }
+        }
+
+        protected void stop()
+        {
+            _pool.shutdownNow();
+        }
+
+        protected Executor getExecutor(AMQQueue queue)
+        {
+            return _pool;
+        }
+    }
+
+    static class PinnedScheduler extends ReferenceCountingScheduler
+    {
+        private final ExecutorService[] _executors;
+
+        PinnedScheduler(int size)
+        {
+            _executors = new ExecutorService[size];
+        }
+
+        protected void start()
+        {
+            for (int i = 0; i < _executors.length; i++)
+            {
+                _executors[i] = Executors.newSingleThreadExecutor(new NamedThreadFactory("QueueDelivery-" + i));
+            }
+        }
+
+        protected void stop()
+        {
+            for (ExecutorService executor : _executors)
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        protected Executor getExecutor(AMQQueue queue)
+        {
+            return _executors[indexFor(queue)];
+        }
+
+        int indexFor(AMQQueue queue)
+        {
+            return (queue.getName().hashCode() & Integer.MAX_VALUE) % _executors.length;
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory
+    {
+        private final ThreadFactory _delegate = Executors.defaultThreadFactory();
+        private final String _name;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        private NamedThreadFactory(String name)
+        {
+            _name = name;
+        }
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = _delegate.newThread(r);
+            thread.setName(_name + "-" + _count.incrementAndGet());
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * Index of the entries on a queue whose messages carry an expiration time, ordered by that time.
+ *
+ * Entries are added as they are enqueued and removed as they are dequeued, so the entries which have
+ * expired at a given instant can be found without walking the whole queue.
+ */
+final class QueueEntryExpiryIndex
+{
+    private final ConcurrentSkipListMap<ExpiryKey, QueueEntry> _entries =
+            new ConcurrentSkipListMap<ExpiryKey, QueueEntry>();
+
+    void add(QueueEntry entry)
+    {
+        ExpiryKey key = keyFor(entry);
+        if(key != null)
+        {
+            _entries.put(key, entry);
+        }
+    }
+
+    void remove(QueueEntry entry)
+    {
+        ExpiryKey key = keyFor(entry);
+        if(key != null)
+        {
+            _entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * @return a live view, in order of expiration, of the entries whose messages expired before the given time.
+     * Entries may be removed through the view's iterator.
+     */
+    Collection<QueueEntry> expiredBefore(long time)
+    {
+        return _entries.headMap(new ExpiryKey(time, Long.MIN_VALUE)).values();
+    }
+
+    int size()
+    {
+        return _entries.size();
+    }
+
+    private static ExpiryKey keyFor(QueueEntry entry)
+    {
+        ServerMessage message = entry.getMessage();
+        if(message != null)
+        {
+            long expiration = message.getExpiration();
+            if(expiration != 0L)
+            {
+                return new ExpiryKey(expiration, message.getMessageNumber());
+            }
+        }
+        return null;
+    }
+
+    static final class ExpiryKey implements Comparable<ExpiryKey>
+    {
+        private final long _expiration;
+        private final long _messageNumber;
+
+        ExpiryKey(long expiration, long messageNumber)
+        {
+            _expiration = expiration;
+            _messageNumber = messageNumber;
+        }
+
+        public int compareTo(ExpiryKey o)
+        {
+            if(_expiration != o._expiration)
+            {
+                return _expiration < o._expiration ? -1 : 1;
+            }
+            return _messageNumber < o._messageNumber ? -1 : _messageNumber == o._messageNumber ? 0 : 1;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof ExpiryKey && compareTo((ExpiryKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (int) (_expiration ^ (_expiration >>> 32) ^ _messageNumber ^ (_messageNumber >>> 32));
+        }
+    }
+}
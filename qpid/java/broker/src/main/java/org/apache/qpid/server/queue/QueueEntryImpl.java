@@ -24,6 +24,7 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.AMQException;
 import org.apache.qpid.server.exchange.Exchange;
+import org.apache.qpid.server.filter.MessageFilter;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
@@ -86,6 +87,11 @@ public abstract class QueueEntryImpl implements QueueEntry
     private static final AtomicIntegerFieldUpdater<QueueEntryImpl> _deliveryCountUpdater = AtomicIntegerFieldUpdater
                     .newUpdater(QueueEntryImpl.class, "_deliveryCount");
 
+    /** the results of the indexed filters of the queue's subscriptions, created when the first is evaluated */
+    private volatile FilterResults _filterResults;
+    private static final AtomicReferenceFieldUpdater<QueueEntryImpl, FilterResults> _filterResultsUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(QueueEntryImpl.class, FilterResults.class, "_filterResults");
+
 
 
     public QueueEntryImpl(QueueEntryList<?> queueEntryList)
@@ -347,6 +353,28 @@ public abstract class QueueEntryImpl implements QueueEntry
         }
     }
 
+    /**
+     * Evaluates an indexed filter against the entry, unless its result has already been recorded under the
+     * filter's index between the generation in which the index was assigned to the filter and the given current
+     * generation of the queue's filter index.
+     */
+    boolean matches(IndexedFilter filter, long assignedGeneration, long generation)
+    {
+        FilterResults results = _filterResults;
+        if (results == null || results.getGeneration() < assignedGeneration)
+        {
+            FilterResults replacement = new FilterResults(generation, results, filter.getFilterIndex());
+            results = _filterResultsUpdater.compareAndSet(this, results, replacement) ? replacement : _filterResults;
+        }
+
+        if (results.getGeneration() < assignedGeneration || results.getGeneration() > generation)
+        {
+            // another thread has a newer view of the index than ours
+            return filter.getFilter().matches(this);
+        }
+        return results.matches(filter.getFilter(), filter.getBit(), this);
+    }
+
     public boolean isRejectedBy(long subscriptionId)
     {
 
@@ -566,4 +594,65 @@ public abstract class QueueEntryImpl implements QueueEntry
                 ", _state=" + _state +
                 '}';
     }
+
+    private static final class FilterResults
+    {
+        private static final AtomicLongFieldUpdater<FilterResults> _evaluatedUpdater =
+                AtomicLongFieldUpdater.newUpdater(FilterResults.class, "_evaluated");
+        private static final AtomicLongFieldUpdater<FilterResults> _matchedUpdater =
+                AtomicLongFieldUpdater.newUpdater(FilterResults.class, "_matched");
+
+        private final long _generation;
+        private volatile long _evaluated;
+        private volatile long _matched;
+
+        /**
+         * Starts a new generation of results, keeping those of the previous one under the indexes which have not
+         * been reassigned since.
+         */
+        private FilterResults(long generation, FilterResults previous, QueueFilterIndex filterIndex)
+        {
+            _generation = generation;
+            if (previous != null)
+            {
+                long kept = ~filterIndex.getReassignedIndexes(previous._generation);
+                // read the marks before the results, which are recorded first
+                long evaluated = previous._evaluated & kept;
+                _evaluated = evaluated;
+                _matched = previous._matched & evaluated;
+            }
+        }
+
+        long getGeneration()
+        {
+            return _generation;
+        }
+
+        boolean matches(MessageFilter filter, long bit, Filterable entry)
+        {
+            if ((_evaluated & bit) != 0)
+            {
+                return (_matched & bit) != 0;
+            }
+
+            boolean match = filter.matches(entry);
+            // record the result before marking it evaluated, so that it is seen by whoever sees the mark
+            if (match)
+            {
+                setBit(_matchedUpdater, bit);
+            }
+            setBit(_evaluatedUpdater, bit);
+            return match;
+        }
+
+        private void setBit(AtomicLongFieldUpdater<FilterResults> updater, long bit)
+        {
+            long bits;
+            do
+            {
+                bits = updater.get(this);
+            }
+            while ((bits & bit) == 0 && !updater.compareAndSet(this, bits, bits | bit));
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.qpid.server.filter.FilterManager;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.MessageFilter;
+
+/**
+ * Assigns each distinct selector of the subscriptions to a queue one of a fixed number of indexes, under which
+ * the result of evaluating it against an entry is recorded on the entry. Subscriptions with equal selectors share
+ * an index, so a selector is evaluated at most once for each entry however many subscriptions use it, and a
+ * subscription passing over an entry again finds the result without evaluating its selector.
+ *
+ * An index freed by the last subscription using it may be assigned to another selector. Each assignment of an
+ * index starts a new generation, and the results an entry recorded before the generation in which an index was
+ * last assigned are discarded for that index only; the results recorded under the other indexes are kept.
+ *
+ * Selectors which test whether a message is redelivered, whose result may change while the message is on the
+ * queue, and selectors registered while all the indexes are in use, are evaluated for each subscription as before.
+ */
+final class QueueFilterIndex
+{
+    static final int MAX_INDEXED_FILTERS = 64;
+
+    private final Map<MessageFilter, IndexedFilter> _filters = new HashMap<MessageFilter, IndexedFilter>();
+    private long _usedIndexes;
+    private volatile long _generation;
+    private final AtomicLongArray _assignedGenerations = new AtomicLongArray(MAX_INDEXED_FILTERS);
+
+    /**
+     * Replaces the filters of a subscription being registered with the queue by indexed ones.
+     */
+    synchronized void register(FilterManager filters)
+    {
+        for (MessageFilter filter : filters.getFilters())
+        {
+            MessageFilter indexed = register(filter);
+            if (indexed != filter)
+            {
+                filters.replace(filter, indexed);
+            }
+        }
+    }
+
+    /**
+     * Restores the filters of a subscription being unregistered from the queue, freeing the indexes which no
+     * other subscription uses.
+     */
+    synchronized void unregister(FilterManager filters)
+    {
+        for (MessageFilter filter : filters.getFilters())
+        {
+            if (filter instanceof IndexedFilter && ((IndexedFilter) filter).getFilterIndex() == this)
+            {
+                IndexedFilter indexed = (IndexedFilter) filter;
+                unregister(indexed);
+                filters.replace(indexed, indexed.getFilter());
+            }
+        }
+    }
+
+    private MessageFilter register(MessageFilter filter)
+    {
+        if (!(filter instanceof JMSSelectorFilter) || ((JMSSelectorFilter) filter).isRedeliveryDependent())
+        {
+            return filter;
+        }
+
+        IndexedFilter indexed = _filters.get(filter);
+        if (indexed == null)
+        {
+            if (_usedIndexes == -1L)
+            {
+                return filter;
+            }
+
+            int index = Long.numberOfTrailingZeros(~_usedIndexes);
+            _usedIndexes |= 1L << index;
+            long generation = _generation + 1;
+            // record the assignment before publishing its generation, so that whoever sees the generation sees it
+            _assignedGenerations.set(index, generation);
+            _generation = generation;
+            indexed = new IndexedFilter(filter, index, generation, this);
+            _filters.put(filter, indexed);
+        }
+        indexed.addReference();
+        return indexed;
+    }
+
+    private void unregister(IndexedFilter indexed)
+    {
+        if (indexed.removeReference())
+        {
+            _filters.remove(indexed.getFilter());
+            indexed.release();
+            _usedIndexes &= ~(1L << indexed.getIndex());
+        }
+    }
+
+    long getGeneration()
+    {
+        return _generation;
+    }
+
+    /**
+     * @return the bits of the indexes assigned after the given generation, whose results recorded in that
+     * generation belong to an earlier selector
+     */
+    long getReassignedIndexes(long generation)
+    {
+        long reassigned = 0L;
+        for (int index = 0; index < MAX_INDEXED_FILTERS; index++)
+        {
+            if (_assignedGenerations.get(index) > generation)
+            {
+                reassigned |= 1L << index;
+            }
+        }
+        return reassigned;
+    }
+
+    synchronized int size()
+    {
+        return _filters.size();
+    }
+}
@@ -64,6 +64,7 @@ public class QueueRunner implements Runnable
         {
             long runAgain = Long.MIN_VALUE;
             _stateChange.set(false);
+            final long startTime = System.nanoTime();
             try
             {
                 CurrentActor.set(_queue.getLogActor());
@@ -93,6 +94,7 @@ public class QueueRunner implements Runnable
                 final long stateChangeCount = _queue.getStateChangeCount();
                 _lastRunAgain.set(runAgain);
                 _lastRunTime.set(System.nanoTime());
+                _queue.recordDeliveryRun(_lastRunTime.get() - startTime);
                 if(runAgain == 0L || runAgain != stateChangeCount || _stateChange.compareAndSet(true,false))
                 {
                     if(_scheduled.compareAndSet(IDLE, SCHEDULED))
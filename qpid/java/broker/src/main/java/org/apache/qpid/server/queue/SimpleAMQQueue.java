@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,19 +32,21 @@ import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.AMQException;
 import org.apache.qpid.AMQSecurityException;
 import org.apache.qpid.framing.AMQShortString;
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.binding.Binding;
 import org.apache.qpid.server.configuration.QueueConfiguration;
 import org.apache.qpid.server.configuration.plugins.AbstractConfiguration;
 import org.apache.qpid.server.exchange.Exchange;
+import org.apache.qpid.server.filter.FilterManager;
 import org.apache.qpid.server.logging.LogActor;
 import org.apache.qpid.server.logging.LogSubject;
 import org.apache.qpid.server.logging.actors.CurrentActor;
@@ -53,6 +56,7 @@ import org.apache.qpid.server.logging.subjects.QueueLogSubject;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.security.AuthorizationHolder;
+import org.apache.qpid.server.stats.StripedAccumulator;
 import org.apache.qpid.server.subscription.AssignedSubscriptionMessageGroupManager;
 import org.apache.qpid.server.subscription.DefinedGroupMessageGroupManager;
 import org.apache.qpid.server.subscription.MessageGroupManager;
@@ -99,6 +103,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     private final SubscriptionList _subscriptionList = new SubscriptionList();
 
+    private final QueueFilterIndex _filterIndex = new QueueFilterIndex();
+
     private volatile Subscription _exclusiveSubscriber;
 
 
@@ -109,21 +115,27 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     private final AtomicInteger _activeSubscriberCount = new AtomicInteger();
 
-    private final AtomicLong _totalMessagesReceived = new AtomicLong();
+    /*
+     * Cumulative enqueue and dequeue statistics. These are only ever reported, so unlike the queue depth above,
+     * which capacity and flow control checks depend upon, they are kept in striped cells rather than shared
+     * atomics to spare concurrent publishers and consumers from contending on them.
+     */
+    private static final int ENQUEUE_COUNT = 0;
+    private static final int ENQUEUE_SIZE = 1;
+    private static final int DEQUEUE_COUNT = 2;
+    private static final int DEQUEUE_SIZE = 3;
+    private static final int PERSISTENT_ENQUEUE_COUNT = 4;
+    private static final int PERSISTENT_ENQUEUE_SIZE = 5;
+    private static final int PERSISTENT_DEQUEUE_COUNT = 6;
+    private static final int PERSISTENT_DEQUEUE_SIZE = 7;
+    private static final int TXN_ENQUEUE_COUNT = 8;
+    private static final int TXN_ENQUEUE_SIZE = 9;
+    private static final int TXN_DEQUEUE_COUNT = 10;
+    private static final int TXN_DEQUEUE_SIZE = 11;
+
+    private final StripedAccumulator _statistics = new StripedAccumulator(12);
 
-    private final AtomicLong _dequeueCount = new AtomicLong();
-    private final AtomicLong _dequeueSize = new AtomicLong();
-    private final AtomicLong _enqueueCount = new AtomicLong();
-    private final AtomicLong _enqueueSize = new AtomicLong();
-    private final AtomicLong _persistentMessageEnqueueSize = new AtomicLong();
-    private final AtomicLong _persistentMessageDequeueSize = new AtomicLong();
-    private final AtomicLong _persistentMessageEnqueueCount = new AtomicLong();
-    private final AtomicLong _persistentMessageDequeueCount = new AtomicLong();
     private final AtomicInteger _counsumerCountHigh = new AtomicInteger(0);
-    private final AtomicLong _msgTxnEnqueues = new AtomicLong(0);
-    private final AtomicLong _byteTxnEnqueues = new AtomicLong(0);
-    private final AtomicLong _msgTxnDequeues = new AtomicLong(0);
-    private final AtomicLong _byteTxnDequeues = new AtomicLong(0);
     private final AtomicLong _unackedMsgCount = new AtomicLong(0);
     private final AtomicLong _unackedMsgCountHigh = new AtomicLong(0);
     private final AtomicLong _unackedMsgBytes = new AtomicLong();
@@ -151,6 +163,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     private final Set<NotificationCheck> _notificationChecks = EnumSet.noneOf(NotificationCheck.class);
 
+    private final QueueEntryExpiryIndex _expiryIndex = new QueueEntryExpiryIndex();
+
 
     static final int MAX_ASYNC_DELIVERIES = 80;
 
@@ -158,6 +172,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
     private final AtomicLong _stateChangeCount = new AtomicLong(Long.MIN_VALUE);
 
     private final Executor _asyncDelivery;
+    private final AtomicLong _deliveryRunCount = new AtomicLong();
+    private final AtomicLong _deliveryRunTime = new AtomicLong();
     private AtomicInteger _deliveredMessages = new AtomicInteger();
     private AtomicBoolean _stopped = new AtomicBoolean(false);
 
@@ -193,6 +209,10 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
     private AMQQueue.NotificationListener _notificationListener;
     private final long[] _lastNotificationTimes = new long[NotificationCheck.values().length];
 
+    /** the recovery of the queue's entries from the store, until it has run */
+    private volatile Runnable _recovery;
+    private final ReentrantLock _recoveryLock = new ReentrantLock();
+
     protected SimpleAMQQueue(UUID id, AMQShortString name, boolean durable, AMQShortString owner, boolean autoDelete, boolean exclusive, VirtualHost virtualHost, Map<String,Object> arguments)
     {
         this(id, name, durable, owner, autoDelete, exclusive,virtualHost, new SimpleQueueEntryList.Factory(), arguments);
@@ -238,7 +258,7 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
         _arguments = arguments == null ? new HashMap<String, Object>() : new HashMap<String, Object>(arguments);
 
         _id = id;
-        _asyncDelivery = ReferenceCountingExecutorService.getInstance().acquireExecutorService();
+        _asyncDelivery = QueueDeliverySchedulers.getInstance().acquireExecutor(this);
 
         _logSubject = new QueueLogSubject(this);
         _logActor = new QueueActor(this, CurrentActor.get().getRootMessageLogger());
@@ -396,9 +416,53 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
         return getNameShortString().toString();
     }
 
+    public void setRecovery(Runnable recovery)
+    {
+        _recovery = recovery;
+    }
+
+    /**
+     * The recovery runs on the first thread to need it, unless a recovery thread has already started it, in which
+     * case this waits for it to complete. Enqueues made by the recovery itself are not held back.
+     */
+    public void completeRecovery()
+    {
+        if(_recovery != null && !_recoveryLock.isHeldByCurrentThread())
+        {
+            _recoveryLock.lock();
+            try
+            {
+                Runnable recovery = _recovery;
+                if(recovery != null)
+                {
+                    try
+                    {
+                        recovery.run();
+                    }
+                    finally
+                    {
+                        _recovery = null;
+                    }
+                }
+            }
+            finally
+            {
+                _recoveryLock.unlock();
+            }
+        }
+    }
+
     // ------ Manage Subscriptions
 
-    public synchronized void registerSubscription(final Subscription subscription, final boolean exclusive)
+    public void registerSubscription(final Subscription subscription, final boolean exclusive)
+            throws AMQSecurityException, ExistingExclusiveSubscription, ExistingSubscriptionPreventsExclusive
+    {
+        // the recovered entries must be in place before the subscription, not delivered after it
+        completeRecovery();
+        addSubscription(subscription, exclusive);
+    }
+
+    private synchronized void addSubscription(final Subscription subscription, final boolean exclusive)
             throws AMQSecurityException, ExistingExclusiveSubscription, ExistingSubscriptionPreventsExclusive
     {
         // Access control
@@ -448,6 +512,12 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
                 }
             }
 
+            FilterManager filters = subscription.getFilters();
+            if (filters != null)
+            {
+                _filterIndex.register(filters);
+            }
+
             _subscriptionList.add(subscription);
 
             //Increment consumerCountHigh if necessary. (un)registerSubscription are both
@@ -483,6 +553,11 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
         if (removed)
         {
             subscription.close();
+            FilterManager filters = subscription.getFilters();
+            if (filters != null)
+            {
+                _filterIndex.unregister(filters);
+            }
             // No longer can the queue have an exclusive consumer
             setExclusiveSubscriber(null);
             subscription.setQueueContext(null);
@@ -637,6 +712,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     public void enqueue(ServerMessage message, boolean transactional, PostEnqueueAction action) throws AMQException
     {
+        // new messages are held back until the recovered ones are ahead of them
+        completeRecovery();
 
         if(transactional)
         {
@@ -645,12 +722,14 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
         incrementQueueCount();
         incrementQueueSize(message);
 
-        _totalMessagesReceived.incrementAndGet();
-
 
         QueueEntry entry;
         final Subscription exclusiveSub = _exclusiveSubscriber;
         entry = _entries.add(message);
+        if(message.getExpiration() != 0L && !entry.isDispensed())
+        {
+            _expiryIndex.add(entry);
+        }
 
         if(action != null || (exclusiveSub == null  && _queueRunner.isIdle()))
         {
@@ -768,12 +847,7 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     private boolean mightAssign(final Subscription sub, final QueueEntry entry)
     {
-        if(_messageGroupManager == null || !sub.acquires())
-        {
-            return true;
-        }
-        Subscription assigned = _messageGroupManager.getAssignedSubscription(entry);
-        return (assigned == null) || (assigned == sub);
+        return _messageGroupManager == null || !sub.acquires() || _messageGroupManager.mightAssign(sub, entry);
     }
 
     protected void checkSubscriptionsNotAheadOfDelivery(final QueueEntry entry)
@@ -786,23 +860,23 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
     {
         long size = message.getSize();
         getAtomicQueueSize().addAndGet(size);
-        _enqueueCount.incrementAndGet();
-        _enqueueSize.addAndGet(size);
+        _statistics.increment(ENQUEUE_COUNT);
+        _statistics.add(ENQUEUE_SIZE, size);
         if(message.isPersistent() && isDurable())
         {
-            _persistentMessageEnqueueSize.addAndGet(size);
-            _persistentMessageEnqueueCount.incrementAndGet();
+            _statistics.add(PERSISTENT_ENQUEUE_SIZE, size);
+            _statistics.increment(PERSISTENT_ENQUEUE_COUNT);
         }
     }
 
     public long getTotalDequeueCount()
     {
-        return _dequeueCount.get();
+        return _statistics.get(DEQUEUE_COUNT);
     }
 
     public long getTotalEnqueueCount()
     {
-        return _enqueueCount.get();
+        return _statistics.get(ENQUEUE_COUNT);
     }
 
     private void incrementQueueCount()
@@ -812,14 +886,14 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     private void incrementTxnEnqueueStats(final ServerMessage message)
     {
-        _msgTxnEnqueues.incrementAndGet();
-        _byteTxnEnqueues.addAndGet(message.getSize());
+        _statistics.increment(TXN_ENQUEUE_COUNT);
+        _statistics.add(TXN_ENQUEUE_SIZE, message.getSize());
     }
 
     private void incrementTxnDequeueStats(QueueEntry entry)
     {
-        _msgTxnDequeues.incrementAndGet();
-        _byteTxnDequeues.addAndGet(entry.getSize());
+        _statistics.increment(TXN_DEQUEUE_COUNT);
+        _statistics.add(TXN_DEQUEUE_SIZE, entry.getSize());
     }
 
     private void deliverMessage(final Subscription sub, final QueueEntry entry, boolean batch)
@@ -893,6 +967,7 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     public void dequeue(QueueEntry entry, Subscription sub)
     {
+        _expiryIndex.remove(entry);
         decrementQueueCount();
         decrementQueueSize(entry);
         if (entry.acquiredBySubscription())
@@ -914,18 +989,18 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
         final ServerMessage message = entry.getMessage();
         long size = message.getSize();
         getAtomicQueueSize().addAndGet(-size);
-        _dequeueSize.addAndGet(size);
+        _statistics.add(DEQUEUE_SIZE, size);
         if(message.isPersistent() && isDurable())
         {
-            _persistentMessageDequeueSize.addAndGet(size);
-            _persistentMessageDequeueCount.incrementAndGet();
+            _statistics.add(PERSISTENT_DEQUEUE_SIZE, size);
+            _statistics.increment(PERSISTENT_DEQUEUE_COUNT);
         }
     }
 
     void decrementQueueCount()
     {
         getAtomicQueueCount().decrementAndGet();
-        _dequeueCount.incrementAndGet();
+        _statistics.increment(DEQUEUE_COUNT);
     }
 
     public boolean resend(final QueueEntry entry, final Subscription subscription) throws AMQException
@@ -1004,7 +1079,7 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     public long getReceivedMessageCount()
     {
-        return _totalMessagesReceived.get();
+        return _statistics.get(ENQUEUE_COUNT);
     }
 
     public long getOldestMessageArrivalTime()
@@ -1252,6 +1327,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
             throw new AMQSecurityException("Permission denied: queue " + getName());
         }
 
+        completeRecovery();
+
         QueueEntryIterator queueListIterator = _entries.iterator();
         long count = 0;
 
@@ -1319,6 +1396,8 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
             throw new AMQSecurityException("Permission denied: " + getName());
         }
 
+        completeRecovery();
+
         if (!_deleted.getAndSet(true))
         {
 
@@ -1465,7 +1544,7 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
     {
         if (!_stopped.getAndSet(true))
         {
-            ReferenceCountingExecutorService.getInstance().releaseExecutorService();
+            QueueDeliverySchedulers.getInstance().releaseExecutor(this);
         }
     }
 
@@ -1901,40 +1980,51 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     }
 
+    /**
+     * Dequeues the entries whose messages have expired, found through the expiry index rather than by walking
+     * the queue, then checks for alerts against the oldest remaining message.
+     */
     public void checkMessageStatus() throws AMQException
     {
-        QueueEntryIterator queueListIterator = _entries.iterator();
+        Iterator<QueueEntry> expired = _expiryIndex.expiredBefore(System.currentTimeMillis()).iterator();
 
-        while (queueListIterator.advance())
+        while (expired.hasNext())
         {
-            QueueEntry node = queueListIterator.getNode();
-            // Only process nodes that are not currently deleted and not dequeued
-            if (!node.isDispensed())
+            QueueEntry node = expired.next();
+            if (node.isDispensed())
+            {
+                expired.remove();
+            }
+            // If the node has expired then acquire it, entries currently acquired by a subscription
+            // remain indexed in case they are released
+            else if (node.expired() && node.acquire())
             {
-                // If the node has exired then acquire it
-                if (node.expired() && node.acquire())
+                if (_logger.isDebugEnabled())
                 {
-                    if (_logger.isDebugEnabled())
-                    {
-                        _logger.debug("Dequeuing expired node " + node);
-                    }
-                    // Then dequeue it.
-                    dequeueEntry(node);
-                }
-                else
-                {
-                    // There is a chance that the node could be deleted by
-                    // the time the check actually occurs. So verify we
-                    // can actually get the message to perform the check.
-                    ServerMessage msg = node.getMessage();
-                    if (msg != null)
-                    {
-                        checkForNotification(msg);
-                    }
+                    _logger.debug("Dequeuing expired node " + node);
                 }
+                // Then dequeue it.
+                dequeueEntry(node);
             }
         }
 
+        QueueEntry oldest = getOldestQueueEntry();
+        if (oldest != null)
+        {
+            // There is a chance that the node could be deleted by
+            // the time the check actually occurs. So verify we
+            // can actually get the message to perform the check.
+            ServerMessage msg = oldest.getMessage();
+            if (msg != null)
+            {
+                checkForNotification(msg);
+            }
+        }
+    }
+
+    int getExpiryIndexSize()
+    {
+        return _expiryIndex.size();
     }
 
     public long getMinimumAlertRepeatGap()
@@ -2133,57 +2223,73 @@ public class SimpleAMQQueue implements AMQQueue, Subscription.StateListener, Mes
 
     public long getMessageDequeueCount()
     {
-        return  _dequeueCount.get();
+        return _statistics.get(DEQUEUE_COUNT);
     }
 
     public long getTotalEnqueueSize()
     {
-        return _enqueueSize.get();
+        return _statistics.get(ENQUEUE_SIZE);
     }
 
     public long getTotalDequeueSize()
     {
-        return _dequeueSize.get();
+        return _statistics.get(DEQUEUE_SIZE);
     }
 
     public long getByteTxnEnqueues()
     {
-        return _byteTxnEnqueues.get();
+        return _statistics.get(TXN_ENQUEUE_SIZE);
     }
 
     public long getByteTxnDequeues()
     {
-        return _byteTxnDequeues.get();
+        return _statistics.get(TXN_DEQUEUE_SIZE);
     }
 
     public long getMsgTxnEnqueues()
     {
-        return _msgTxnEnqueues.get();
+        return _statistics.get(TXN_ENQUEUE_COUNT);
     }
 
     public long getMsgTxnDequeues()
     {
-        return _msgTxnDequeues.get();
+        return _statistics.get(TXN_DEQUEUE_COUNT);
     }
 
     public long getPersistentByteEnqueues()
     {
-        return _persistentMessageEnqueueSize.get();
+        return _statistics.get(PERSISTENT_ENQUEUE_SIZE);
     }
 
     public long getPersistentByteDequeues()
     {
-        return _persistentMessageDequeueSize.get();
+        return _statistics.get(PERSISTENT_DEQUEUE_SIZE);
     }
 
     public long getPersistentMsgEnqueues()
     {
-        return _persistentMessageEnqueueCount.get();
+        return _statistics.get(PERSISTENT_ENQUEUE_COUNT);
     }
 
     public long getPersistentMsgDequeues()
     {
-        return _persistentMessageDequeueCount.get();
+        return _statistics.get(PERSISTENT_DEQUEUE_COUNT);
+    }
+
+    void recordDeliveryRun(long durationNanos)
+    {
+        _deliveryRunCount.incrementAndGet();
+        _deliveryRunTime.addAndGet(durationNanos);
+    }
+
+    public long getDeliveryRunCount()
+    {
+        return _deliveryRunCount.get();
+    }
+
+    public long getDeliveryRunTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_deliveryRunTime.get());
     }
 
 
@@ -30,7 +30,12 @@ public class SortedQueue extends OutOfOrderQueue
 {
     //Lock object to synchronize enqueue. Used instead of the object
     //monitor to prevent lock order issues with subscription sendLocks
-    //and consumer updates in the super classes
+    //and consumer updates in the super classes.
+    //Enqueue offers the new entry straight to an idle subscription, so
+    //without the lock an entry could be delivered while a concurrently
+    //enqueued entry sorting before it is already on the list. This holds
+    //whichever entry list is used, so the lock is needed even with the
+    //ConcurrentSortedQueueEntryList.
     private final Object _sortedQueueLock = new Object();
     private final String _sortedPropertyName;
 
@@ -50,6 +55,8 @@ public class SortedQueue extends OutOfOrderQueue
 
     public void enqueue(ServerMessage message, PostEnqueueAction action) throws AMQException
     {
+        // the recovery enqueues through this method, so it must not be waited for under the lock
+        completeRecovery();
         synchronized (_sortedQueueLock)
         {
             super.enqueue(message, action);
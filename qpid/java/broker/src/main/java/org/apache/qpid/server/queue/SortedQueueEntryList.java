@@ -639,12 +639,13 @@ public class SortedQueueEntryList implements QueueEntryList<SortedQueueEntryImpl
 
         public boolean advance()
         {
-            if(!atTail())
+            SortedQueueEntryImpl nextNode = next(_lastNode);
+            if(nextNode != null)
             {
-                SortedQueueEntryImpl nextNode = next(_lastNode);
-                while(nextNode.isDispensed() && next(nextNode) != null)
+                SortedQueueEntryImpl afterNext;
+                while(nextNode.isDispensed() && (afterNext = next(nextNode)) != null)
                 {
-                    nextNode = next(nextNode);
+                    nextNode = afterNext;
                 }
                 _lastNode = nextNode;
                 return true;
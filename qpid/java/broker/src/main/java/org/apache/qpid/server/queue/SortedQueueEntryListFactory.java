@@ -19,6 +19,16 @@
  */
 package org.apache.qpid.server.queue;
 
+import org.apache.qpid.server.configuration.BrokerProperties;
+
+/**
+ * Creates the entry lists for sorted queues. By default these are {@link SortedQueueEntryList}s; setting the
+ * {@value BrokerProperties#PROPERTY_CONCURRENT_SORTED_QUEUE_ENTRY_LIST} system property to true selects the
+ * {@link ConcurrentSortedQueueEntryList} instead.
+ *
+ * Enqueues to a sorted queue are serialised by the queue itself, so the concurrent list only removes contention
+ * between consumers, and between consumers and the producer; single threaded it is slower than the red black tree.
+ */
 public class SortedQueueEntryListFactory implements QueueEntryListFactory
 {
 
@@ -30,8 +40,12 @@ public class SortedQueueEntryListFactory implements QueueEntryListFactory
     }
 
     @Override
-    public QueueEntryList<SortedQueueEntryImpl> createQueueEntryList(final AMQQueue queue)
+    public QueueEntryList<? extends QueueEntry> createQueueEntryList(final AMQQueue queue)
     {
+        if(Boolean.getBoolean(BrokerProperties.PROPERTY_CONCURRENT_SORTED_QUEUE_ENTRY_LIST))
+        {
+            return new ConcurrentSortedQueueEntryList(queue, _propertyName);
+        }
         return new SortedQueueEntryList(queue, _propertyName);
     }
 
@@ -62,6 +62,7 @@ class SubFlushRunner implements Runnable
         {
             boolean complete = false;
             _stateChange.set(false);
+            final long startTime = System.nanoTime();
             try
             {
                 CurrentActor.set(_sub.getLogActor());
@@ -86,6 +87,7 @@ class SubFlushRunner implements Runnable
             finally
             {
                 CurrentActor.remove();
+                getQueue().recordDeliveryRun(System.nanoTime() - startTime);
                 _scheduled.compareAndSet(RUNNING, IDLE);
                 if ((!complete || _stateChange.compareAndSet(true,false))&& !_sub.isSuspended())
                 {
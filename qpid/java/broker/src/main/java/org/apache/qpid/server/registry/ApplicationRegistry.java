@@ -48,6 +48,7 @@ import org.apache.qpid.server.model.Broker;
 import org.apache.qpid.server.model.ConfiguredObject;
 import org.apache.qpid.server.model.State;
 import org.apache.qpid.server.configuration.updater.TaskExecutor;
+import org.apache.qpid.server.stats.HistogramStatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsGatherer;
 import org.apache.qpid.server.virtualhost.VirtualHost;
@@ -325,9 +326,9 @@ public class ApplicationRegistry implements IApplicationRegistry
     public void initialiseStatistics()
     {
         _messagesDelivered = new StatisticsCounter("messages-delivered");
-        _dataDelivered = new StatisticsCounter("bytes-delivered");
+        _dataDelivered = new HistogramStatisticsCounter("bytes-delivered");
         _messagesReceived = new StatisticsCounter("messages-received");
-        _dataReceived = new StatisticsCounter("bytes-received");
+        _dataReceived = new HistogramStatisticsCounter("bytes-received");
     }
 
     private void logStartupMessages(LogActor logActor)
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link StatisticsCounter} which also records the distribution of the values registered with it, such
+ * as message sizes or latencies, in a histogram.
+ *
+ * The histogram has a bucket per power of two: bucket 0 counts values of zero and bucket <i>n</i> counts
+ * values from 2<sup>n-1</sup> up to 2<sup>n</sup> - 1. As with the counter itself the buckets are
+ * striped across threads, so recording a value takes no locks.
+ */
+public class HistogramStatisticsCounter extends StatisticsCounter
+{
+    public static final int BUCKETS = 64;
+
+    /** Keys of the map returned by {@link #getSummary()} */
+    public static final String COUNT = "count";
+    public static final String MEAN = "mean";
+    public static final String MAXIMUM = "maximum";
+    public static final String MEDIAN = "median";
+    public static final String PERCENTILE_95 = "95thPercentile";
+    public static final String PERCENTILE_99 = "99thPercentile";
+    public static final String HISTOGRAM = "histogram";
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+    private final StripedCounter _count = new StripedCounter();
+    private final AtomicLong _maximum = new AtomicLong();
+
+    public HistogramStatisticsCounter(String name)
+    {
+        super(name);
+    }
+
+    public HistogramStatisticsCounter(String name, long period)
+    {
+        super(name, period);
+    }
+
+    @Override
+    public void registerEvent(long value, long timestamp)
+    {
+        super.registerEvent(value, timestamp);
+        if (value >= 0L)
+        {
+            _buckets.incrementAndGet(StripedCounter.stripe() * BUCKETS + bucketFor(value));
+            _count.add(1L);
+            long maximum;
+            while (value > (maximum = _maximum.get()) && !_maximum.compareAndSet(maximum, value))
+            {
+                // retry
+            }
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        // the superclass constructor resets the counter before our fields are initialised
+        if (_buckets != null)
+        {
+            for (int i = 0; i < _buckets.length(); i++)
+            {
+                _buckets.set(i, 0L);
+            }
+            _count.reset();
+            _maximum.set(0L);
+        }
+    }
+
+    /**
+     * @return the number of values recorded in each bucket, with trailing empty buckets omitted
+     */
+    public long[] getHistogram()
+    {
+        long[] histogram = new long[BUCKETS];
+        int length = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++)
+        {
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+            {
+                long count = _buckets.get(stripe * BUCKETS + bucket);
+                if (count != 0L)
+                {
+                    histogram[bucket] += count;
+                    length = Math.max(length, bucket + 1);
+                }
+            }
+        }
+        return Arrays.copyOf(histogram, length);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount()
+    {
+        return _count.sum();
+    }
+
+    public long getMaximum()
+    {
+        return _maximum.get();
+    }
+
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0L ? 0.0d : (double) getTotal() / (double) count;
+    }
+
+    /**
+     * Estimates a percentile of the recorded values from the histogram.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket containing the percentile, or the maximum recorded value if that
+     * is smaller
+     */
+    public long getPercentile(double percentile)
+    {
+        if (percentile < 0.0d || percentile > 100.0d)
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long[] histogram = getHistogram();
+        long count = 0L;
+        for (long bucketCount : histogram)
+        {
+            count += bucketCount;
+        }
+        if (count == 0L)
+        {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100.0d);
+        long seen = 0L;
+        for (int bucket = 0; bucket < histogram.length; bucket++)
+        {
+            seen += histogram[bucket];
+            if (seen >= rank && seen > 0L)
+            {
+                return Math.min(getBucketUpperBound(bucket), getMaximum());
+            }
+        }
+        return getMaximum();
+    }
+
+    /**
+     * @return the statistics derived from the histogram, keyed by the constants defined by this class, in a
+     * form suitable for the management interfaces
+     */
+    public Map<String, Object> getSummary()
+    {
+        Map<String, Object> summary = new LinkedHashMap<String, Object>();
+        summary.put(COUNT, getCount());
+        summary.put(MEAN, getMean());
+        summary.put(MAXIMUM, getMaximum());
+        summary.put(MEDIAN, getPercentile(50.0d));
+        summary.put(PERCENTILE_95, getPercentile(95.0d));
+        summary.put(PERCENTILE_99, getPercentile(99.0d));
+        summary.put(HISTOGRAM, getHistogram());
+        return summary;
+    }
+
+    /**
+     * @return the largest value counted by the given bucket
+     */
+    public static long getBucketUpperBound(int bucket)
+    {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+    }
+
+    static int bucketFor(long value)
+    {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+}
@@ -27,6 +27,11 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * This class collects statistics and counts the total, rate per second and
  * peak rate per second values for the events that are registered with it. 
+ *
+ * Counters are updated for every message passing through the broker from many threads at once, so
+ * registering an event takes no locks: the running total and the count for the current sample period
+ * are kept in {@link StripedCounter}s, and the thread which first registers an event in a new sample
+ * period moves the count for the previous period into the rate and peak.
  */
 public class StatisticsCounter
 {
@@ -37,13 +42,13 @@ public class StatisticsCounter
     private static final String COUNTER = "counter";
     private static final AtomicLong _counterIds = new AtomicLong(0L);
     
-    private long _peak = 0L;
-    private long _total = 0L;
-    private long _temp = 0L;
-    private long _last = 0L;
-    private long _rate = 0L;
+    private final AtomicLong _peak = new AtomicLong();
+    private final StripedCounter _total = new StripedCounter();
+    private final StripedCounter _temp = new StripedCounter();
+    private final AtomicLong _last = new AtomicLong();
+    private volatile long _rate = 0L;
 
-    private long _start;
+    private volatile long _start;
     
     private final long _period;
     private final String _name;
@@ -77,32 +82,42 @@ public class StatisticsCounter
 
     public void registerEvent(long value, long timestamp)
     {
-        long thisSample = (timestamp / _period);
-        synchronized (this)
+        update(timestamp);
+
+        if (value != 0L)
         {
-            if (thisSample > _last)
-            {
-                _last = thisSample;
-                _rate = _temp;
-                _temp = 0L;
-                if (_rate > _peak)
-                {
-                    _peak = _rate;
-                }
-            }
-            
-            _total += value;
-            _temp += value;
+            _total.add(value);
+            _temp.add(value);
         }
     }
-    
+
     /**
      * Update the current rate and peak - may reset rate to zero if a new
      * sample period has started.
      */
     private void update()
     {
-        registerEvent(0L, System.currentTimeMillis());
+        update(System.currentTimeMillis());
+    }
+
+    private void update(long timestamp)
+    {
+        long thisSample = (timestamp / _period);
+        long last;
+        while (thisSample > (last = _last.get()))
+        {
+            if (_last.compareAndSet(last, thisSample))
+            {
+                long rate = _temp.sumThenReset();
+                _rate = rate;
+                long peak;
+                while (rate > (peak = _peak.get()) && !_peak.compareAndSet(peak, rate))
+                {
+                    // retry
+                }
+                break;
+            }
+        }
     }
 
     /**
@@ -111,17 +126,18 @@ public class StatisticsCounter
     public void reset()
     {
         _log.info("Resetting statistics for counter: " + _name);
-        _peak = 0L;
+        _peak.set(0L);
         _rate = 0L;
-        _total = 0L;
+        _total.reset();
+        _temp.reset();
         _start = System.currentTimeMillis();
-        _last = _start / _period;
+        _last.set(_start / _period);
     }
 
     public double getPeak()
     {
         update();
-        return (double) _peak / ((double) _period / 1000.0d);
+        return (double) _peak.get() / ((double) _period / 1000.0d);
     }
 
     public double getRate()
@@ -132,7 +148,7 @@ public class StatisticsCounter
 
     public long getTotal()
     {
-        return _total;
+        return _total.sum();
     }
 
     public long getStart()
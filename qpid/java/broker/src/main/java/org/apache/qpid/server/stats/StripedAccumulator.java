@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of long valued counters, striped across threads in the same way as {@link StripedCounter}.
+ *
+ * Each stripe holds a row with one cell for every counter, so an object that maintains several statistics
+ * with each update touches only the cache lines of its own stripe, and the whole set takes far less
+ * memory than a separate {@link StripedCounter} per statistic. Reading a counter sums its cells across the
+ * stripes; counters are not read atomically with respect to each other.
+ */
+public class StripedAccumulator
+{
+    /** Number of longs per cache line; rows are padded to a whole number of lines. */
+    private static final int LINE = 8;
+
+    private final int _counters;
+    private final int _rowLength;
+    private final AtomicLongArray _cells;
+
+    public StripedAccumulator(int counters)
+    {
+        _counters = counters;
+        _rowLength = ((counters + LINE - 1) / LINE) * LINE;
+        _cells = new AtomicLongArray(StripedCounter.STRIPES * _rowLength);
+    }
+
+    public void increment(int counter)
+    {
+        add(counter, 1L);
+    }
+
+    public void add(int counter, long value)
+    {
+        _cells.addAndGet(StripedCounter.stripe() * _rowLength + index(counter), value);
+    }
+
+    public long get(int counter)
+    {
+        int index = index(counter);
+        long sum = 0L;
+        for (int i = 0; i < StripedCounter.STRIPES; i++)
+        {
+            sum += _cells.get(i * _rowLength + index);
+        }
+        return sum;
+    }
+
+    private int index(int counter)
+    {
+        if (counter < 0 || counter >= _counters)
+        {
+            throw new IndexOutOfBoundsException("No counter " + counter + " in accumulator of " + _counters);
+        }
+        return counter;
+    }
+}
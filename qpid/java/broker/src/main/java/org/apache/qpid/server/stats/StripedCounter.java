@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A long valued counter spread over a number of cells so that threads updating it concurrently do not
+ * contend on a single memory location. Each thread adds to the cell selected by its thread id, and the
+ * value of the counter is the sum of all of the cells.
+ *
+ * Cells are padded apart so that neighbouring cells do not share a cache line.
+ */
+class StripedCounter
+{
+    /** Number of longs between the start of adjacent cells, to keep them on separate cache lines. */
+    private static final int PADDING = 8;
+
+    static final int STRIPES = stripes();
+
+    private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void add(long value)
+    {
+        _cells.addAndGet(cell(), value);
+    }
+
+    long sum()
+    {
+        long sum = 0L;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            sum += _cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the cells, clearing each one as it is read. Values added concurrently are either
+     * included in the returned sum or left in the counter, but never lost.
+     */
+    long sumThenReset()
+    {
+        long sum = 0L;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            sum += _cells.getAndSet(i * PADDING, 0L);
+        }
+        return sum;
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < STRIPES; i++)
+        {
+            _cells.set(i * PADDING, 0L);
+        }
+    }
+
+    private static int cell()
+    {
+        return stripe() * PADDING;
+    }
+
+    /**
+     * @return the stripe, between 0 and {@link #STRIPES} - 1, that the calling thread should update
+     */
+    static int stripe()
+    {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & (STRIPES - 1);
+    }
+
+    private static int stripes()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < 64)
+        {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
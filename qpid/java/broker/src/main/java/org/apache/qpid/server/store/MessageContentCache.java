@@ -0,0 +1,416 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.qpid.server.configuration.BrokerProperties;
+
+/**
+ * A broker wide, byte bounded cache of the content of messages which has been written to a message store.
+ *
+ * Each store holds the content of its messages in the cache through a {@link Region}, which accounts for the
+ * content cached for, and evicted from, a single virtual host. Once the content cached across all regions
+ * exceeds the size of the cache, content is evicted in approximately least recently used order: entries are
+ * queued as they are cached and, as the head of the queue is considered for eviction, an entry read since it was
+ * last considered is given a second chance at the tail of the queue. Evicted content is read back from the store
+ * as it is required, and cached again.
+ *
+ * The content of transient messages is only cached if an overflow directory is configured, in which case it is
+ * spilled to a file in the directory of its region when evicted. Otherwise it is held in memory until its message
+ * is removed, bounded only by any flow control configured on the queues the messages are enqueued on.
+ */
+public final class MessageContentCache
+{
+    private static final Logger _logger = Logger.getLogger(MessageContentCache.class);
+
+    private static final MessageContentCache INSTANCE =
+            new MessageContentCache(Long.getLong(BrokerProperties.PROPERTY_CONTENT_CACHE_SIZE,
+                                                 Runtime.getRuntime().maxMemory() / 4),
+                                    getOverflowDirectoryProperty());
+
+    public static MessageContentCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /** released entries are purged from the queue once there are at least this many, and they are half of it */
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final long _maximumBytes;
+    /** the directory holding the overflow directory of each region, or null if transient content is not spilled */
+    private final File _overflowDirectory;
+    private final AtomicLong _cachedBytes = new AtomicLong();
+    private final Queue<Entry<?>> _entries = new ConcurrentLinkedQueue<Entry<?>>();
+    /** the approximate number of entries queued, and of those whose content has since been discarded */
+    private final AtomicInteger _queuedEntries = new AtomicInteger();
+    private final AtomicInteger _releasedEntries = new AtomicInteger();
+    private final Object _evictionLock = new Object();
+    private final ConcurrentMap<String, Region> _regions = new ConcurrentHashMap<String, Region>();
+
+    MessageContentCache(long maximumBytes)
+    {
+        this(maximumBytes, null);
+    }
+
+    MessageContentCache(long maximumBytes, File overflowDirectory)
+    {
+        _maximumBytes = maximumBytes;
+        _overflowDirectory = overflowDirectory;
+    }
+
+    private static File getOverflowDirectoryProperty()
+    {
+        String overflowDirectory = System.getProperty(BrokerProperties.PROPERTY_CONTENT_OVERFLOW_DIRECTORY);
+        return overflowDirectory == null ? null : new File(overflowDirectory);
+    }
+
+    /**
+     * Creates the region through which a store caches content, replacing any region of the same name.
+     *
+     * @param name the name of the virtual host using the store
+     */
+    public Region createRegion(String name)
+    {
+        Region region = new Region(name);
+        Region previous = _regions.put(name, region);
+        if (previous != null)
+        {
+            previous.evictAll();
+        }
+        return region;
+    }
+
+    /**
+     * @return the region of the given virtual host, or null if its store caches no content
+     */
+    public Region getRegion(String name)
+    {
+        return _regions.get(name);
+    }
+
+    public long getMaximumBytes()
+    {
+        return _maximumBytes;
+    }
+
+    public long getCachedBytes()
+    {
+        return _cachedBytes.get();
+    }
+
+    private void added(Entry<?> entry)
+    {
+        _entries.add(entry);
+        _queuedEntries.incrementAndGet();
+        if (_cachedBytes.addAndGet(entry._size) > _maximumBytes)
+        {
+            evict();
+        }
+    }
+
+    private void evict()
+    {
+        // listeners are notified once the lock is released, as they may write the evicted content out
+        List<EvictionListener> listeners = new ArrayList<EvictionListener>();
+        synchronized (_evictionLock)
+        {
+            // every entry is considered at most twice: once to clear its referenced flag, once to evict it
+            int remaining = 2 * _queuedEntries.get();
+            Entry<?> entry;
+            while (_cachedBytes.get() > _maximumBytes && remaining-- > 0 && (entry = _entries.poll()) != null)
+            {
+                if (entry._content == null)
+                {
+                    _queuedEntries.decrementAndGet();
+                    _releasedEntries.decrementAndGet();
+                }
+                else if (entry._referenced)
+                {
+                    entry._referenced = false;
+                    _entries.add(entry);
+                }
+                else
+                {
+                    _queuedEntries.decrementAndGet();
+                    if (entry.release())
+                    {
+                        entry._region._evictions.incrementAndGet();
+                        if (entry._listener != null)
+                        {
+                            listeners.add(entry._listener);
+                        }
+                    }
+                }
+            }
+        }
+        for (EvictionListener listener : listeners)
+        {
+            listener.evicted();
+        }
+    }
+
+    private void discarded()
+    {
+        int released = _releasedEntries.incrementAndGet();
+        if (released >= PURGE_THRESHOLD && 2 * released >= _queuedEntries.get())
+        {
+            removeEntries(null);
+        }
+    }
+
+    /**
+     * Removes from the queue the entries whose content has been released, and releases and removes those of the
+     * given region.
+     */
+    private void removeEntries(Region region)
+    {
+        synchronized (_evictionLock)
+        {
+            int queued = 0;
+            Iterator<Entry<?>> iterator = _entries.iterator();
+            while (iterator.hasNext())
+            {
+                Entry<?> entry = iterator.next();
+                if (entry._region == region)
+                {
+                    entry.release();
+                    iterator.remove();
+                }
+                else if (entry._content == null)
+                {
+                    iterator.remove();
+                }
+                else
+                {
+                    queued++;
+                }
+            }
+            _queuedEntries.set(queued);
+            _releasedEntries.set(0);
+        }
+    }
+
+    /**
+     * Notified when the content of an entry is evicted to make space in the cache, so that it can be kept elsewhere.
+     */
+    public interface EvictionListener
+    {
+        void evicted();
+    }
+
+    /**
+     * The content cached by the store of a single virtual host.
+     */
+    public final class Region
+    {
+        private final String _name;
+        private final File _overflowDirectory;
+        private final AtomicLong _cachedBytes = new AtomicLong();
+        private final AtomicLong _evictions = new AtomicLong();
+
+        private Region(String name)
+        {
+            _name = name;
+            if (MessageContentCache.this._overflowDirectory == null)
+            {
+                _overflowDirectory = null;
+            }
+            else
+            {
+                _overflowDirectory = new File(MessageContentCache.this._overflowDirectory, name);
+                // any files left are those of transient messages which did not survive a previous run
+                deleteOverflowFiles();
+                if (!_overflowDirectory.isDirectory() && !_overflowDirectory.mkdirs())
+                {
+                    throw new IllegalArgumentException("Cannot create content overflow directory "
+                                                       + _overflowDirectory);
+                }
+            }
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        /**
+         * @return the directory transient content is spilled to, or null if transient content is not to be cached
+         */
+        public File getOverflowDirectory()
+        {
+            return _overflowDirectory;
+        }
+
+        /**
+         * @return true if content of the given size can be held in the cache at all
+         */
+        public boolean fits(long size)
+        {
+            return size <= _maximumBytes;
+        }
+
+        /**
+         * Caches content, which may be evicted immediately if the cache is full.
+         *
+         * @param size the number of bytes of content
+         * @return the entry holding the content
+         */
+        public <T> Entry<T> add(T content, int size)
+        {
+            return add(content, size, null);
+        }
+
+        /**
+         * Caches content, which may be evicted immediately if the cache is full, in which case the listener is
+         * notified before this returns.
+         *
+         * @param size the number of bytes of content
+         * @param listener notified if the content is evicted, or null
+         * @return the entry holding the content
+         */
+        public <T> Entry<T> add(T content, int size, EvictionListener listener)
+        {
+            Entry<T> entry = new Entry<T>(this, content, size, listener);
+            _cachedBytes.addAndGet(size);
+            added(entry);
+            return entry;
+        }
+
+        /** @return the number of bytes of content currently cached */
+        public long getCachedBytes()
+        {
+            return _cachedBytes.get();
+        }
+
+        /** @return the number of entries whose content has been evicted to make space in the cache */
+        public long getEvictions()
+        {
+            return _evictions.get();
+        }
+
+        /**
+         * Discards all the content cached by the region, which should no longer be used.
+         */
+        public void close()
+        {
+            _regions.remove(_name, this);
+            evictAll();
+        }
+
+        private void evictAll()
+        {
+            removeEntries(this);
+            deleteOverflowFiles();
+            if (_logger.isDebugEnabled())
+            {
+                _logger.debug("Closed content cache region " + _name + " after " + _evictions.get() + " evictions");
+            }
+        }
+
+        private void deleteOverflowFiles()
+        {
+            File[] files = _overflowDirectory == null ? null : _overflowDirectory.listFiles();
+            if (files != null)
+            {
+                for (File file : files)
+                {
+                    if (!file.delete())
+                    {
+                        _logger.warn("Unable to delete content overflow file " + file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The cached content of a single message.
+     */
+    public final class Entry<T>
+    {
+        private final Region _region;
+        private final int _size;
+        private final EvictionListener _listener;
+        private volatile T _content;
+        private volatile boolean _referenced;
+
+        private Entry(Region region, T content, int size, EvictionListener listener)
+        {
+            _region = region;
+            _content = content;
+            _size = size;
+            _listener = listener;
+        }
+
+        /**
+         * @return the content, or null if it has been evicted
+         */
+        public T get()
+        {
+            T content = _content;
+            if (content != null)
+            {
+                _referenced = true;
+            }
+            return content;
+        }
+
+        /**
+         * Discards the content, as the message has been removed.
+         */
+        public void discard()
+        {
+            if (release())
+            {
+                discarded();
+            }
+        }
+
+        /**
+         * @return true if this call released the content
+         */
+        private boolean release()
+        {
+            synchronized (this)
+            {
+                if (_content == null)
+                {
+                    return false;
+                }
+                _content = null;
+            }
+            _region._cachedBytes.addAndGet(-_size);
+            _cachedBytes.addAndGet(-_size);
+            return true;
+        }
+    }
+}
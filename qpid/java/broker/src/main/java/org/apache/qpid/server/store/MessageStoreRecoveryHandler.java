@@ -24,10 +24,12 @@ public interface MessageStoreRecoveryHandler
 {
     StoredMessageRecoveryHandler begin();
 
+    /**
+     * The messages themselves are read back through the {@link QueueEntryReader} as the queues holding them are
+     * recovered.
+     */
     public static interface StoredMessageRecoveryHandler
     {
-        void message(StoredMessage message);
-
         void completeMessageRecovery();
     }
 }
@@ -0,0 +1,37 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package org.apache.qpid.server.store;
+
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
+
+/**
+ * Implemented by messages whose content may be held in a buffer taken from the
+ * {@link org.apache.qpid.transport.util.ByteBufferPool}.  Anything that keeps hold of a content buffer after the
+ * message may have been removed, such as a pending network write, must first retain the pooled buffer.
+ */
+public interface PooledContent
+{
+    /**
+     * @return the pooled buffer backing the message content, retained once on behalf of the caller who must
+     *         release it, or null if the content is not pooled
+     */
+    PooledBuffer retainContent();
+}
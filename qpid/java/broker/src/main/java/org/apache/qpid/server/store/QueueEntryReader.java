@@ -0,0 +1,62 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package org.apache.qpid.server.store;
+
+import java.util.UUID;
+
+import org.apache.qpid.AMQStoreException;
+
+/**
+ * Reads back the queue entries and messages a message store held when it was activated. The store is in use as soon
+ * as it is active, so the entries of each queue are read when that queue is recovered, on whichever thread recovers
+ * it, rather than all being replayed during activation.
+ *
+ * Entries enqueued since the store was activated are not read. Each queue reads its own copy of a message which is
+ * on several queues, and the store only removes the message once no queue holds an entry for it.
+ */
+public interface QueueEntryReader
+{
+    /**
+     * Passes the entries of the queue to the handler, in the order they were enqueued.
+     */
+    void readQueueEntries(UUID queueId, QueueEntryHandler handler) throws AMQStoreException;
+
+    /**
+     * @return the message with the given id, or null if the store does not hold it
+     */
+    StoredMessage<?> readMessage(long messageId) throws AMQStoreException;
+
+    /**
+     * Called once the entries of every queue have been read, to remove the entries of queues which are no longer
+     * configured and the messages which are neither on a queue nor part of a prepared transaction.
+     */
+    void removeUnreferenced() throws AMQStoreException;
+
+    public static interface QueueEntryHandler
+    {
+        /**
+         * @param message the message of the entry, or null if the store does not hold it
+         *
+         * @return false to stop reading the entries of the queue
+         */
+        boolean queueEntry(long messageId, StoredMessage<?> message);
+    }
+}
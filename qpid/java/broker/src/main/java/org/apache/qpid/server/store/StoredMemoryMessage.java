@@ -21,18 +21,57 @@
 
 package org.apache.qpid.server.store;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-public class StoredMemoryMessage implements StoredMessage
+import org.apache.log4j.Logger;
+import org.apache.qpid.transport.util.ByteBufferPool;
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
+
+/**
+ * Holds the content of a message in memory.  Content arriving in a single buffer is kept as a slice of that buffer,
+ * while content assembled from several buffers is copied into a buffer taken from the {@link ByteBufferPool},
+ * which is released when the message is removed.
+ *
+ * If created with a {@link MessageContentCache.Region} which has an overflow directory, the content is held in the
+ * cache once complete, and is spilled to a file in the overflow directory when evicted, from which it is read back,
+ * and cached again, as it is required.
+ */
+public class StoredMemoryMessage implements StoredMessage, PooledContent, MessageContentCache.EvictionListener
 {
+    private static final Logger _logger = Logger.getLogger(StoredMemoryMessage.class);
+
     private final long _messageNumber;
-    private ByteBuffer _content;
+    private volatile ByteBuffer _content;
+    private PooledBuffer _pooledContent;
     private final StorableMessageMetaData _metaData;
 
+    /** the region the content is cached through, or null if the content is never spilled */
+    private final MessageContentCache.Region _contentCache;
+    private volatile MessageContentCache.Entry<ByteBuffer> _cachedContent;
+    /** the file the content has been spilled to, if any */
+    private File _overflowFile;
+    private volatile boolean _removed;
+
     public StoredMemoryMessage(long messageNumber, StorableMessageMetaData metaData)
+    {
+        this(messageNumber, metaData, null);
+    }
+
+    /**
+     * @param contentCache the region through which the content is cached, and spilled if the region has an
+     *                     overflow directory
+     */
+    public StoredMemoryMessage(long messageNumber, StorableMessageMetaData metaData,
+                               MessageContentCache.Region contentCache)
     {
         _messageNumber = messageNumber;
         _metaData = metaData;
+        _contentCache = contentCache == null || contentCache.getOverflowDirectory() == null ? null : contentCache;
     }
 
     public long getMessageNumber()
@@ -41,6 +80,22 @@ public class StoredMemoryMessage implements StoredMessage
     }
 
     public void addContent(int offsetInMessage, ByteBuffer src)
+    {
+        int end = offsetInMessage + src.remaining();
+        ByteBuffer content;
+        synchronized (this)
+        {
+            appendContent(offsetInMessage, src);
+            content = _content;
+        }
+        if(_contentCache != null && end >= _metaData.getContentSize() && content != null && content.hasRemaining())
+        {
+            // cached outside the lock, as adding content may spill that of other messages
+            cache(content);
+        }
+    }
+
+    private void appendContent(int offsetInMessage, ByteBuffer src)
     {
         if(_content == null)
         {
@@ -54,8 +109,8 @@ public class StoredMemoryMessage implements StoredMessage
                 int size = (contentSize < offsetInMessage + src.remaining())
                         ? offsetInMessage + src.remaining()
                         : contentSize;
-                _content = ByteBuffer.allocate(size);
-                addContent(offsetInMessage, src);
+                allocateContent(size, null);
+                appendContent(offsetInMessage, src);
             }
         }
         else
@@ -72,45 +127,194 @@ public class StoredMemoryMessage implements StoredMessage
                 int size = (contentSize < offsetInMessage + src.remaining())
                         ? offsetInMessage + src.remaining()
                         : contentSize;
-                ByteBuffer oldContent = _content;
-                _content = ByteBuffer.allocate(size);
-                _content.put(oldContent);
-                _content.position(0);
-                addContent(offsetInMessage, src);
+                allocateContent(size, _content);
+                appendContent(offsetInMessage, src);
             }
 
         }
     }
 
-    public int getContent(int offset, ByteBuffer dst)
+    private void allocateContent(int size, ByteBuffer oldContent)
     {
-        if(_content == null)
+        PooledBuffer oldPooledContent = _pooledContent;
+        _pooledContent = ByteBufferPool.getInstance().acquire(size);
+        ByteBuffer content = _pooledContent.getBuffer();
+        content.limit(size);
+        if(oldContent != null)
+        {
+            content.put(oldContent);
+            content.position(0);
+        }
+        _content = content;
+        if(oldPooledContent != null)
+        {
+            oldPooledContent.release();
+        }
+    }
+
+    private void cache(ByteBuffer content)
+    {
+        MessageContentCache.Entry<ByteBuffer> cachedContent = _contentCache.add(content, content.remaining(), this);
+        _cachedContent = cachedContent;
+        if(_removed)
+        {
+            cachedContent.discard();
+        }
+    }
+
+    /**
+     * Spills the content to the overflow directory, as it has been evicted from the cache.  Content which cannot be
+     * written out is kept in memory.
+     */
+    public synchronized void evicted()
+    {
+        ByteBuffer content = _content;
+        if(_removed || content == null)
+        {
+            return;
+        }
+        try
+        {
+            if(_overflowFile == null)
+            {
+                File file = File.createTempFile("message-" + _messageNumber + "-", ".overflow",
+                                                _contentCache.getOverflowDirectory());
+                FileChannel channel = new FileOutputStream(file).getChannel();
+                try
+                {
+                    ByteBuffer src = content.duplicate();
+                    while(src.hasRemaining())
+                    {
+                        channel.write(src);
+                    }
+                }
+                finally
+                {
+                    channel.close();
+                }
+                _overflowFile = file;
+            }
+            _content = null;
+            // a pooled buffer is left to the garbage collector, as readers may still hold it
+            _pooledContent = null;
+        }
+        catch (IOException e)
+        {
+            _logger.warn("Unable to spill the content of message " + _messageNumber + ", keeping it in memory", e);
+        }
+    }
+
+    private ByteBuffer getContentBuffer()
+    {
+        ByteBuffer content = _content;
+        if(content != null)
         {
-            return 0;
+            MessageContentCache.Entry<ByteBuffer> cachedContent = _cachedContent;
+            if(cachedContent != null)
+            {
+                cachedContent.get();
+            }
+            return content;
         }
-        ByteBuffer src = _content.duplicate();
+        return _contentCache == null ? null : readOverflow();
+    }
 
-        int oldPosition = src.position();
+    private ByteBuffer readOverflow()
+    {
+        ByteBuffer content;
+        synchronized (this)
+        {
+            content = _content;
+            if(content != null || _overflowFile == null)
+            {
+                return content;
+            }
+            try
+            {
+                RandomAccessFile file = new RandomAccessFile(_overflowFile, "r");
+                try
+                {
+                    FileChannel channel = file.getChannel();
+                    content = ByteBuffer.allocate((int) channel.size());
+                    while(content.hasRemaining())
+                    {
+                        if(channel.read(content) < 0)
+                        {
+                            break;
+                        }
+                    }
+                    content.flip();
+                }
+                finally
+                {
+                    file.close();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Unable to read the spilled content of message " + _messageNumber, e);
+            }
+            _content = content;
+        }
+        cache(content);
+        return content;
+    }
+
+    public int getContent(int offset, ByteBuffer dst)
+    {
+        // pooled content is retained while it is read, so that removing the message cannot recycle it meanwhile
+        PooledBuffer pooledContent = retainContent();
+        try
+        {
+            ByteBuffer content = getContentBuffer();
+            if(content == null)
+            {
+                return 0;
+            }
+            ByteBuffer src = content.duplicate();
+            int oldPosition = src.position();
 
-        src.position(oldPosition + offset);
+            src.position(oldPosition + offset);
 
-        int length = dst.remaining() < src.remaining() ? dst.remaining() : src.remaining();
-        src.limit(oldPosition + length);
+            int length = dst.remaining() < src.remaining() ? dst.remaining() : src.remaining();
+            src.limit(oldPosition + length);
 
-        dst.put(src);
+            dst.put(src);
 
 
-        return length;
+            return length;
+        }
+        finally
+        {
+            if(pooledContent != null)
+            {
+                pooledContent.release();
+            }
+        }
     }
 
 
     public ByteBuffer getContent(int offsetInMessage, int size)
     {
-        if(_content == null)
+        synchronized (this)
         {
-            return null;
+            if(_pooledContent != null)
+            {
+                // a view of pooled content would outlive its return to the pool, so the content is copied out
+                ByteBuffer src = getContent(getContentBuffer(), offsetInMessage, size);
+                ByteBuffer buf = ByteBuffer.allocate(src.remaining());
+                buf.put(src);
+                buf.flip();
+                return buf;
+            }
         }
-        ByteBuffer buf = _content.duplicate();
+        ByteBuffer content = getContentBuffer();
+        return content == null ? null : getContent(content, offsetInMessage, size);
+    }
+
+    private static ByteBuffer getContent(ByteBuffer content, int offsetInMessage, int size)
+    {
+        ByteBuffer buf = content.duplicate();
 
         if(offsetInMessage != 0)
         {
@@ -133,7 +337,36 @@ public class StoredMemoryMessage implements StoredMessage
         return _metaData;
     }
 
+    public synchronized PooledBuffer retainContent()
+    {
+        return _pooledContent == null ? null : _pooledContent.retain();
+    }
+
     public void remove()
     {
+        synchronized (this)
+        {
+            _removed = true;
+            if(_pooledContent != null)
+            {
+                _content = null;
+                _pooledContent.release();
+                _pooledContent = null;
+            }
+            if(_overflowFile != null)
+            {
+                _content = null;
+                if(!_overflowFile.delete())
+                {
+                    _logger.warn("Unable to delete content overflow file " + _overflowFile);
+                }
+                _overflowFile = null;
+            }
+        }
+        MessageContentCache.Entry<ByteBuffer> cachedContent = _cachedContent;
+        if(cachedContent != null)
+        {
+            cachedContent.discard();
+        }
     }
 }
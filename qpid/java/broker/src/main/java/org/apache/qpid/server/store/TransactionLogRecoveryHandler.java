@@ -20,17 +20,18 @@
 */
 package org.apache.qpid.server.store;
 
-import java.util.UUID;
-
 public interface TransactionLogRecoveryHandler
 {
     QueueEntryRecoveryHandler begin(MessageStore log);
 
     public static interface QueueEntryRecoveryHandler
     {
-        DtxRecordRecoveryHandler completeQueueEntryRecovery();
-
-        void queueEntry(UUID queueId, long messageId);
+        /**
+         * Passed the reader through which the entries of each queue are read back, which may happen on any thread
+         * until the store is closed. The entries of the queues named by prepared transactions may be read before the
+         * dtx records are passed on.
+         */
+        DtxRecordRecoveryHandler completeQueueEntryRecovery(QueueEntryReader reader);
     }
 
     public static interface DtxRecordRecoveryHandler
@@ -0,0 +1,388 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.derby;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.qpid.AMQStoreException;
+import org.apache.qpid.server.store.StoreFuture;
+
+/**
+ * The Derby counterpart of the BDB store's CommitThreadWrapper.
+ *
+ * Connections handed to {@link #commit(Connection)} are queued and committed by the commit thread, which
+ * takes every commit queued since its last pass as a single batch. The commits within a batch are issued
+ * concurrently, so Derby's log writer can cover all of their commit records with one log sync rather than
+ * syncing once per transaction. The returned futures complete once the commit is durable; a future whose
+ * commit failed throws the failure from {@link StoreFuture#isComplete()} and {@link StoreFuture#waitForCompletion()}.
+ */
+public class DerbyCommitThreadWrapper
+{
+    private static final int MAX_CONCURRENT_COMMITS = 16;
+
+    private final CommitThread _commitThread;
+
+    public DerbyCommitThreadWrapper(String name)
+    {
+        _commitThread = new CommitThread(name);
+    }
+
+    public void startCommitThread()
+    {
+        _commitThread.start();
+    }
+
+    public void stopCommitThread() throws InterruptedException
+    {
+        _commitThread.close();
+        _commitThread.join();
+    }
+
+    public StoreFuture commit(Connection conn)
+    {
+        DerbyCommitFuture commitFuture = new DerbyCommitFuture(_commitThread, conn);
+        _commitThread.addJob(commitFuture);
+        return commitFuture;
+    }
+
+    /** @return the number of transactions committed by the commit thread */
+    public long getCommitCount()
+    {
+        return _commitThread._commitCount.get();
+    }
+
+    /** @return the number of batches committed by the commit thread */
+    public long getBatchCount()
+    {
+        return _commitThread._batchCount.get();
+    }
+
+    /** @return the largest number of transactions committed in a single batch */
+    public int getMaxBatchSize()
+    {
+        return _commitThread._maxBatchSize.get();
+    }
+
+    public double getAverageBatchSize()
+    {
+        long batches = getBatchCount();
+        return batches == 0 ? 0d : (double) getCommitCount() / batches;
+    }
+
+    /** @return the mean time in milliseconds between a commit being requested and it completing */
+    public double getAverageCommitLatency()
+    {
+        long commits = getCommitCount();
+        return commits == 0 ? 0d : _commitThread._totalLatency.get() / (commits * 1000000d);
+    }
+
+    private static final class DerbyCommitFuture implements StoreFuture
+    {
+        private static final Logger LOGGER = Logger.getLogger(DerbyCommitFuture.class);
+
+        private final CommitThread _commitThread;
+        private final Connection _connection;
+        private final long _requestTime = System.nanoTime();
+        private boolean _complete;
+        private SQLException _exception;
+
+        public DerbyCommitFuture(CommitThread commitThread, Connection connection)
+        {
+            _commitThread = commitThread;
+            _connection = connection;
+        }
+
+        /**
+         * Called on a commit thread to perform the commit and release the connection.
+         */
+        void commit()
+        {
+            SQLException exception = null;
+            try
+            {
+                _connection.commit();
+            }
+            catch (SQLException e)
+            {
+                LOGGER.error("Exception during asynchronous commit of transaction " + _connection, e);
+                exception = e;
+                try
+                {
+                    _connection.rollback();
+                }
+                catch (SQLException t)
+                {
+                    // ignore - we are already reporting the underlying exception
+                }
+            }
+            finally
+            {
+                try
+                {
+                    _connection.close();
+                }
+                catch (SQLException e)
+                {
+                    LOGGER.error("Exception closing connection after asynchronous commit", e);
+                }
+                _commitThread.recordCommit(System.nanoTime() - _requestTime);
+                complete(exception);
+            }
+        }
+
+        private synchronized void complete(SQLException exception)
+        {
+            _exception = exception;
+            _complete = true;
+            notifyAll();
+        }
+
+        public synchronized boolean isComplete()
+        {
+            if (_complete)
+            {
+                checkCommitted();
+            }
+            return _complete;
+        }
+
+        public synchronized void waitForCompletion()
+        {
+            while (!_complete)
+            {
+                _commitThread.explicitNotify();
+                try
+                {
+                    wait(250);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+            checkCommitted();
+        }
+
+        private void checkCommitted()
+        {
+            if (_exception != null)
+            {
+                throw new RuntimeException(new AMQStoreException("Error commit tx: " + _exception.getMessage(),
+                                                                 _exception));
+            }
+        }
+    }
+
+    /**
+     * Takes batches of queued {@link DerbyCommitFuture}s and commits them, issuing the commits of a batch
+     * in parallel on a small pool of helper threads so that their log syncs are coalesced by Derby.
+     */
+    private static class CommitThread extends Thread
+    {
+        private static final Logger LOGGER = Logger.getLogger(CommitThread.class);
+
+        private final AtomicBoolean _stopped = new AtomicBoolean(false);
+        private final Queue<DerbyCommitFuture> _jobQueue = new ConcurrentLinkedQueue<DerbyCommitFuture>();
+        private final Object _lock = new Object();
+        private final ThreadPoolExecutor _committers;
+
+        private final AtomicLong _commitCount = new AtomicLong();
+        private final AtomicLong _batchCount = new AtomicLong();
+        private final AtomicInteger _maxBatchSize = new AtomicInteger();
+        private final AtomicLong _totalLatency = new AtomicLong();
+
+        public CommitThread(final String name)
+        {
+            super(name);
+            _committers = new ThreadPoolExecutor(MAX_CONCURRENT_COMMITS, MAX_CONCURRENT_COMMITS,
+                                                 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                                 new ThreadFactory()
+                                                 {
+                                                     private final AtomicInteger _count = new AtomicInteger();
+
+                                                     public Thread newThread(Runnable r)
+                                                     {
+                                                         Thread thread = new Thread(r, name + "-" + _count.incrementAndGet());
+                                                         thread.setDaemon(true);
+                                                         return thread;
+                                                     }
+                                                 });
+            _committers.allowCoreThreadTimeOut(true);
+        }
+
+        public void explicitNotify()
+        {
+            synchronized (_lock)
+            {
+                _lock.notify();
+            }
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (!_stopped.get())
+                {
+                    synchronized (_lock)
+                    {
+                        while (!_stopped.get() && !hasJobs())
+                        {
+                            try
+                            {
+                                // Periodically wake up and check, just in case we missed a notification.
+                                _lock.wait(1000);
+                            }
+                            catch (InterruptedException e)
+                            {
+                            }
+                        }
+                    }
+                    processJobs();
+                }
+                // commit anything queued before the store was closed
+                while (hasJobs())
+                {
+                    processJobs();
+                }
+            }
+            finally
+            {
+                _committers.shutdown();
+            }
+        }
+
+        private void processJobs()
+        {
+            List<DerbyCommitFuture> batch = new ArrayList<DerbyCommitFuture>();
+            DerbyCommitFuture job;
+            while ((job = _jobQueue.poll()) != null)
+            {
+                batch.add(job);
+            }
+
+            int size = batch.size();
+            if (size == 0)
+            {
+                return;
+            }
+
+            long startTime = System.nanoTime();
+
+            _batchCount.incrementAndGet();
+            int max;
+            while (size > (max = _maxBatchSize.get()) && !_maxBatchSize.compareAndSet(max, size))
+            {
+                // retry
+            }
+
+            if (size == 1)
+            {
+                batch.get(0).commit();
+            }
+            else
+            {
+                final CountDownLatch latch = new CountDownLatch(size - 1);
+                for (int i = 1; i < size; i++)
+                {
+                    final DerbyCommitFuture commit = batch.get(i);
+                    _committers.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                commit.commit();
+                            }
+                            finally
+                            {
+                                latch.countDown();
+                            }
+                        }
+                    });
+                }
+                batch.get(0).commit();
+                try
+                {
+                    latch.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Committed batch of " + size + " transaction(s) in "
+                             + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+            }
+        }
+
+        /**
+         * Called as each commit completes, before its future is completed, so that the statistics account for
+         * every commit whose future has completed.
+         */
+        void recordCommit(long latency)
+        {
+            _totalLatency.addAndGet(latency);
+            _commitCount.incrementAndGet();
+        }
+
+        private boolean hasJobs()
+        {
+            return !_jobQueue.isEmpty();
+        }
+
+        public void addJob(DerbyCommitFuture commit)
+        {
+            _jobQueue.add(commit);
+            synchronized (_lock)
+            {
+                _lock.notifyAll();
+            }
+        }
+
+        public void close()
+        {
+            synchronized (_lock)
+            {
+                _stopped.set(true);
+                _lock.notifyAll();
+            }
+        }
+    }
+}
@@ -40,9 +40,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.configuration.Configuration;
@@ -55,16 +59,19 @@ import org.apache.qpid.server.binding.Binding;
 import org.apache.qpid.server.exchange.Exchange;
 import org.apache.qpid.server.message.EnqueableMessage;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.store.ConfigurationRecoveryHandler;
 import org.apache.qpid.server.store.ConfiguredObjectHelper;
 import org.apache.qpid.server.store.ConfiguredObjectRecord;
 import org.apache.qpid.server.store.Event;
 import org.apache.qpid.server.store.EventListener;
 import org.apache.qpid.server.store.EventManager;
+import org.apache.qpid.server.store.MessageContentCache;
 import org.apache.qpid.server.store.MessageMetaDataType;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.MessageStoreConstants;
 import org.apache.qpid.server.store.MessageStoreRecoveryHandler;
+import org.apache.qpid.server.store.QueueEntryReader;
 import org.apache.qpid.server.store.State;
 import org.apache.qpid.server.store.StateManager;
 import org.apache.qpid.server.store.StorableMessageMetaData;
@@ -106,7 +113,7 @@ public class DerbyMessageStore implements MessageStore
 
     private static final String CONFIGURED_OBJECTS_TABLE_NAME = "QPID_CONFIGURED_OBJECTS";
 
-    private static final int DB_VERSION = 6;
+    private static final int DB_VERSION = 7;
 
 
 
@@ -114,30 +121,62 @@ public class DerbyMessageStore implements MessageStore
     public static final String MEMORY_STORE_LOCATION = ":memory:";
 
     private final AtomicLong _messageId = new AtomicLong(0);
+    /** the queues configured when the store was activated or created since, which alone may hold entries */
+    private volatile Set<UUID> _queueIds = new CopyOnWriteArraySet<UUID>();
+    /** the highest message id in use when the store was activated */
+    private volatile long _recoveredMaxMessageId;
+    /** the messages referenced by the prepared transactions recovered on activation */
+    private final Set<Long> _preparedMessageIds = Collections.synchronizedSet(new HashSet<Long>());
     private AtomicBoolean _closed = new AtomicBoolean(false);
 
     private String _connectionURL;
 
     private static final String TABLE_EXISTANCE_QUERY = "SELECT 1 FROM SYS.SYSTABLES WHERE TABLENAME = ?";
+    private static final String COLUMN_EXISTANCE_QUERY = "SELECT 1 FROM SYS.SYSCOLUMNS c, SYS.SYSTABLES t"
+            + " WHERE c.REFERENCEID = t.TABLEID AND t.TABLENAME = ? AND c.COLUMNNAME = ?";
 
     private static final String CREATE_DB_VERSION_TABLE = "CREATE TABLE "+DB_VERSION_TABLE_NAME+" ( version int not null )";
     private static final String INSERT_INTO_DB_VERSION = "INSERT INTO "+DB_VERSION_TABLE_NAME+" ( version ) VALUES ( ? )";
+    private static final String UPDATE_DB_VERSION = "UPDATE "+DB_VERSION_TABLE_NAME+" SET version = ?";
 
     private static final String CREATE_QUEUE_ENTRY_TABLE = "CREATE TABLE "+QUEUE_ENTRY_TABLE_NAME+" ( queue_id varchar(36) not null, message_id bigint not null, PRIMARY KEY (queue_id, message_id) )";
     private static final String INSERT_INTO_QUEUE_ENTRY = "INSERT INTO " + QUEUE_ENTRY_TABLE_NAME + " (queue_id, message_id) values (?,?)";
     private static final String DELETE_FROM_QUEUE_ENTRY = "DELETE FROM " + QUEUE_ENTRY_TABLE_NAME + " WHERE queue_id = ? AND message_id =?";
-    private static final String SELECT_FROM_QUEUE_ENTRY = "SELECT queue_id, message_id FROM " + QUEUE_ENTRY_TABLE_NAME + " ORDER BY queue_id, message_id";
+    private static final String SELECT_FROM_QUEUE_ENTRY = "SELECT e.message_id, m.meta_data FROM " + QUEUE_ENTRY_TABLE_NAME
+            + " e LEFT OUTER JOIN " + META_DATA_TABLE_NAME + " m ON e.message_id = m.message_id"
+            + " WHERE e.queue_id = ? AND e.message_id <= ? ORDER BY e.message_id";
+    private static final String FIND_QUEUE_ENTRY = "SELECT 1 FROM " + QUEUE_ENTRY_TABLE_NAME + " WHERE queue_id = ? AND message_id = ?";
+    private static final String SELECT_MAX_MESSAGE_ID_FROM_QUEUE_ENTRY = "SELECT MAX(message_id) FROM " + QUEUE_ENTRY_TABLE_NAME
+            + " WHERE queue_id = ?";
+    private static final String SELECT_QUEUE_IDS_FROM_QUEUE_ENTRY = "SELECT DISTINCT queue_id FROM " + QUEUE_ENTRY_TABLE_NAME;
+    private static final String DELETE_QUEUE_FROM_QUEUE_ENTRY = "DELETE FROM " + QUEUE_ENTRY_TABLE_NAME + " WHERE queue_id = ?";
+    private static final String SELECT_MESSAGE_IDS_FROM_QUEUE_ENTRY = "SELECT message_id FROM " + QUEUE_ENTRY_TABLE_NAME
+            + " WHERE message_id <= ? ORDER BY message_id";
 
 
     private static final String CREATE_META_DATA_TABLE = "CREATE TABLE " + META_DATA_TABLE_NAME
             + " ( message_id bigint not null, meta_data blob, PRIMARY KEY ( message_id ) )";
     private static final String CREATE_MESSAGE_CONTENT_TABLE = "CREATE TABLE " + MESSAGE_CONTENT_TABLE_NAME
-            + " ( message_id bigint not null, content blob , PRIMARY KEY (message_id) )";
+            + " ( message_id bigint not null, chunk_index int not null, content blob ,"
+            + " PRIMARY KEY (message_id, chunk_index) )";
 
     private static final String INSERT_INTO_MESSAGE_CONTENT = "INSERT INTO " + MESSAGE_CONTENT_TABLE_NAME
-            + "( message_id, content ) values (?, ?)";
-    private static final String SELECT_FROM_MESSAGE_CONTENT = "SELECT content FROM " + MESSAGE_CONTENT_TABLE_NAME
-            + " WHERE message_id = ?";
+            + "( message_id, chunk_index, content ) values (?, ?, ?)";
+    private static final String SELECT_FROM_MESSAGE_CONTENT = "SELECT chunk_index, content FROM " + MESSAGE_CONTENT_TABLE_NAME
+            + " WHERE message_id = ? AND chunk_index >= ? AND chunk_index <= ? ORDER BY chunk_index";
+    private static final String SELECT_LAST_FROM_MESSAGE_CONTENT = "SELECT chunk_index, content FROM " + MESSAGE_CONTENT_TABLE_NAME
+            + " WHERE message_id = ? ORDER BY chunk_index DESC";
+
+    /** Prior to version 7 each message's content was held in a single row, without a chunk_index column. */
+    private static final String MESSAGE_CONTENT_V6_TABLE_NAME = "QPID_MESSAGE_CONTENT_V6";
+    private static final String RENAME_MESSAGE_CONTENT_TABLE_TO_V6 = "RENAME TABLE " + MESSAGE_CONTENT_TABLE_NAME
+            + " TO " + MESSAGE_CONTENT_V6_TABLE_NAME;
+    private static final String SELECT_ALL_FROM_MESSAGE_CONTENT_V6 = "SELECT message_id, content FROM "
+            + MESSAGE_CONTENT_V6_TABLE_NAME;
+    private static final String DROP_MESSAGE_CONTENT_V6_TABLE = "DROP TABLE " + MESSAGE_CONTENT_V6_TABLE_NAME;
+
+    /** Message content is stored in rows of at most this many bytes, so that ranged reads fetch only the chunks needed. */
+    static final int CONTENT_CHUNK_SIZE = 64 * 1024;
     private static final String DELETE_FROM_MESSAGE_CONTENT = "DELETE FROM " + MESSAGE_CONTENT_TABLE_NAME
             + " WHERE message_id = ?";
 
@@ -145,7 +184,9 @@ public class DerbyMessageStore implements MessageStore
     private static final String SELECT_FROM_META_DATA =
             "SELECT meta_data FROM " + META_DATA_TABLE_NAME + " WHERE message_id = ?";
     private static final String DELETE_FROM_META_DATA = "DELETE FROM " + META_DATA_TABLE_NAME + " WHERE message_id = ?";
-    private static final String SELECT_ALL_FROM_META_DATA = "SELECT message_id, meta_data FROM " + META_DATA_TABLE_NAME;
+    private static final String SELECT_MAX_MESSAGE_ID_FROM_META_DATA = "SELECT MAX(message_id) FROM " + META_DATA_TABLE_NAME;
+    private static final String SELECT_MESSAGE_IDS_FROM_META_DATA = "SELECT message_id FROM " + META_DATA_TABLE_NAME
+            + " WHERE message_id <= ? ORDER BY message_id";
 
     private static final String CREATE_LINKS_TABLE =
             "CREATE TABLE "+LINKS_TABLE_NAME+" ( id_lsb bigint not null,"
@@ -243,6 +284,7 @@ public class DerbyMessageStore implements MessageStore
     private long _persistentSizeHighThreshold;
 
     private MessageStoreRecoveryHandler _messageRecoveryHandler;
+    private MessageContentCache.Region _contentCache;
 
     private TransactionLogRecoveryHandler _tlogRecoveryHandler;
 
@@ -256,6 +298,8 @@ public class DerbyMessageStore implements MessageStore
 
     private ConfiguredObjectHelper _configuredObjectHelper = new ConfiguredObjectHelper();
 
+    private DerbyCommitThreadWrapper _commitThreadWrapper;
+
     @Override
     public void configureConfigStore(String name,
                           ConfigurationRecoveryHandler configRecoveryHandler,
@@ -276,6 +320,7 @@ public class DerbyMessageStore implements MessageStore
     {
         _tlogRecoveryHandler = tlogRecoveryHandler;
         _messageRecoveryHandler = recoveryHandler;
+        _contentCache = MessageContentCache.getInstance().createRegion(name);
 
         _stateManager.attainState(State.INITIALISED);
     }
@@ -328,6 +373,9 @@ public class DerbyMessageStore implements MessageStore
 
         createOrOpenDatabase(name, databasePath);
 
+        _commitThreadWrapper = new DerbyCommitThreadWrapper("Commit-Thread-" + name);
+        _commitThreadWrapper.startCommitThread();
+
         Connection conn = newAutoCommitConnection();;
         try
         {
@@ -461,9 +509,116 @@ public class DerbyMessageStore implements MessageStore
                 stmt.close();
             }
         }
+        else if(!columnExists(MESSAGE_CONTENT_TABLE_NAME, "CHUNK_INDEX", conn))
+        {
+            upgradeMessageContentTable(conn);
+        }
 
     }
 
+    /**
+     * Converts a pre version 7 content table, holding each message body in a single row, to the chunked layout.
+     * The conversion is made in a single transaction so that an interrupted upgrade leaves the old table intact.
+     */
+    private void upgradeMessageContentTable(final Connection conn) throws SQLException
+    {
+        _logger.info("Upgrading message content table to chunked storage");
+
+        conn.setAutoCommit(false);
+        try
+        {
+            Statement stmt = conn.createStatement();
+            try
+            {
+                stmt.execute(RENAME_MESSAGE_CONTENT_TABLE_TO_V6);
+                stmt.execute(CREATE_MESSAGE_CONTENT_TABLE);
+            }
+            finally
+            {
+                stmt.close();
+            }
+
+            int messageCount = 0;
+            stmt = conn.createStatement();
+            try
+            {
+                ResultSet rs = stmt.executeQuery(SELECT_ALL_FROM_MESSAGE_CONTENT_V6);
+                try
+                {
+                    while (rs.next())
+                    {
+                        long messageId = rs.getLong(1);
+                        Blob blob = rs.getBlob(2);
+                        int size = blob == null ? 0 : (int) blob.length();
+                        for(int chunkOffset = 0; chunkOffset < size; chunkOffset += CONTENT_CHUNK_SIZE)
+                        {
+                            byte[] chunk = blob.getBytes(chunkOffset + 1, Math.min(CONTENT_CHUNK_SIZE, size - chunkOffset));
+                            insertContentChunk(conn, messageId, chunkOffset / CONTENT_CHUNK_SIZE, chunk);
+                        }
+                        messageCount++;
+                    }
+                }
+                finally
+                {
+                    rs.close();
+                }
+
+                stmt.execute(DROP_MESSAGE_CONTENT_V6_TABLE);
+            }
+            finally
+            {
+                stmt.close();
+            }
+
+            PreparedStatement pstmt = conn.prepareStatement(UPDATE_DB_VERSION);
+            try
+            {
+                pstmt.setInt(1, DB_VERSION);
+                pstmt.execute();
+            }
+            finally
+            {
+                pstmt.close();
+            }
+
+            conn.commit();
+            _logger.info("Upgraded content of " + messageCount + " message(s) to chunked storage");
+        }
+        catch(SQLException e)
+        {
+            try
+            {
+                conn.rollback();
+            }
+            catch(SQLException t)
+            {
+                // ignore - we are re-throwing underlying exception
+            }
+            throw e;
+        }
+        finally
+        {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void insertContentChunk(final Connection conn, long messageId, int chunkIndex, byte[] chunk)
+            throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
+        try
+        {
+            stmt.setLong(1, messageId);
+            stmt.setInt(2, chunkIndex);
+            stmt.setBinaryStream(3, new ByteArrayInputStream(chunk), chunk.length);
+            stmt.executeUpdate();
+        }
+        finally
+        {
+            stmt.close();
+        }
+    }
+
     private void createLinkTable(final Connection conn) throws SQLException
     {
         if(!tableExists(LINKS_TABLE_NAME, conn))
@@ -552,12 +707,46 @@ public class DerbyMessageStore implements MessageStore
         }
     }
 
+    private boolean columnExists(final String tableName, final String columnName, final Connection conn)
+            throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement(COLUMN_EXISTANCE_QUERY);
+        try
+        {
+            stmt.setString(1, tableName);
+            stmt.setString(2, columnName);
+            ResultSet rs = stmt.executeQuery();
+            try
+            {
+                return rs.next();
+            }
+            finally
+            {
+                rs.close();
+            }
+        }
+        finally
+        {
+            stmt.close();
+        }
+    }
+
     private void recoverConfiguration(ConfigurationRecoveryHandler recoveryHandler) throws AMQException
     {
         try
         {
             List<ConfiguredObjectRecord> configuredObjects = loadConfiguredObjects();
 
+            Set<UUID> queueIds = new CopyOnWriteArraySet<UUID>();
+            for(ConfiguredObjectRecord configuredObject : configuredObjects)
+            {
+                if(Queue.class.getName().equals(configuredObject.getType()))
+                {
+                    queueIds.add(configuredObject.getId());
+                }
+            }
+            _queueIds = queueIds;
+
             ExchangeRecoveryHandler erh = recoveryHandler.begin(this);
             _configuredObjectHelper.recoverExchanges(erh, configuredObjects);
 
@@ -581,6 +770,21 @@ public class DerbyMessageStore implements MessageStore
         _closed.getAndSet(true);
         _stateManager.attainState(State.CLOSING);
 
+        if(_contentCache != null)
+        {
+            _contentCache.close();
+        }
+
+        if(_commitThreadWrapper != null)
+        {
+            _commitThreadWrapper.stopCommitThread();
+            _logger.info("Commit thread committed " + _commitThreadWrapper.getCommitCount() + " transaction(s) in "
+                         + _commitThreadWrapper.getBatchCount() + " batch(es), average batch size "
+                         + _commitThreadWrapper.getAverageBatchSize() + ", maximum batch size "
+                         + _commitThreadWrapper.getMaxBatchSize() + ", average commit latency "
+                         + _commitThreadWrapper.getAverageCommitLatency() + " ms");
+        }
+
         try
         {
             Connection conn = DriverManager.getConnection(_connectionURL + ";shutdown=true");
@@ -612,7 +816,7 @@ public class DerbyMessageStore implements MessageStore
         }
         else
         {
-            return new StoredMemoryMessage(_messageId.incrementAndGet(), metaData);
+            return new StoredMemoryMessage(_messageId.incrementAndGet(), metaData, _contentCache);
         }
     }
 
@@ -738,6 +942,7 @@ public class DerbyMessageStore implements MessageStore
         if (_stateManager.isInState(State.ACTIVE))
         {
             ConfiguredObjectRecord queueConfiguredObject = _configuredObjectHelper.createQueueConfiguredObject(queue, arguments);
+            _queueIds.add(queue.getId());
             insertConfiguredObject(queueConfiguredObject);
         }
     }
@@ -1110,8 +1315,12 @@ public class DerbyMessageStore implements MessageStore
 
     public StoreFuture commitTranAsync(ConnectionWrapper connWrapper) throws AMQStoreException
     {
-        commitTran(connWrapper);
-        return StoreFuture.IMMEDIATE_FUTURE;
+        return _commitThreadWrapper.commit(connWrapper.getConnection());
+    }
+
+    DerbyCommitThreadWrapper getCommitThreadWrapper()
+    {
+        return _commitThreadWrapper;
     }
 
     public void abortTran(ConnectionWrapper connWrapper) throws AMQStoreException
@@ -1208,77 +1417,122 @@ public class DerbyMessageStore implements MessageStore
         {
             MessageStoreRecoveryHandler.StoredMessageRecoveryHandler messageHandler = recoveryHandler.begin();
 
-            Statement stmt = conn.createStatement();
-            try
+            // messages are read as the queues holding them are recovered; an entry may outlive its message, so new
+            // messages must not reuse the id of either
+            long maxId = selectMaxMessageId(conn, SELECT_MAX_MESSAGE_ID_FROM_META_DATA, null);
+            for(UUID queueId : _queueIds)
             {
-                ResultSet rs = stmt.executeQuery(SELECT_ALL_FROM_META_DATA);
-                try
-                {
+                maxId = Math.max(maxId, selectMaxMessageId(conn, SELECT_MAX_MESSAGE_ID_FROM_QUEUE_ENTRY, queueId));
+            }
 
-                    long maxId = 0;
+            _messageId.set(maxId);
+            _recoveredMaxMessageId = maxId;
 
-                    while(rs.next())
-                    {
+            messageHandler.completeMessageRecovery();
+        }
+        finally
+        {
+            conn.close();
+        }
+    }
 
-                        long messageId = rs.getLong(1);
-                        Blob dataAsBlob = rs.getBlob(2);
+    private long selectMaxMessageId(Connection conn, String sql, UUID queueId) throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        try
+        {
+            if(queueId != null)
+            {
+                stmt.setString(1, queueId.toString());
+            }
+            ResultSet rs = stmt.executeQuery();
+            try
+            {
+                return rs.next() ? rs.getLong(1) : 0l;
+            }
+            finally
+            {
+                rs.close();
+            }
+        }
+        finally
+        {
+            stmt.close();
+        }
+    }
 
-                        if(messageId > maxId)
+    private TransactionLogRecoveryHandler.DtxRecordRecoveryHandler recoverQueueEntries(TransactionLogRecoveryHandler recoveryHandler)
+    {
+        return recoveryHandler.begin(this).completeQueueEntryRecovery(new DerbyQueueEntryReader());
+    }
+
+    /**
+     * @return whether any queue still holds an entry for the message
+     */
+    private boolean isEnqueued(long messageId)
+    {
+        try
+        {
+            Connection conn = newAutoCommitConnection();
+            try
+            {
+                PreparedStatement stmt = conn.prepareStatement(FIND_QUEUE_ENTRY);
+                try
+                {
+                    stmt.setLong(2, messageId);
+                    for(UUID queueId : _queueIds)
+                    {
+                        stmt.setString(1, queueId.toString());
+                        ResultSet rs = stmt.executeQuery();
+                        try
                         {
-                            maxId = messageId;
+                            if(rs.next())
+                            {
+                                return true;
+                            }
+                        }
+                        finally
+                        {
+                            rs.close();
                         }
-
-                        byte[] dataAsBytes = dataAsBlob.getBytes(1,(int) dataAsBlob.length());
-                        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(dataAsBytes);
-                        buf.position(1);
-                        buf = buf.slice();
-                        MessageMetaDataType type = MessageMetaDataType.values()[dataAsBytes[0]];
-                        StorableMessageMetaData metaData = type.getFactory().createMetaData(buf);
-                        StoredDerbyMessage message = new StoredDerbyMessage(messageId, metaData, true);
-                        messageHandler.message(message);
                     }
-
-                    _messageId.set(maxId);
-
-                    messageHandler.completeMessageRecovery();
+                    return false;
                 }
                 finally
                 {
-                    rs.close();
+                    stmt.close();
                 }
             }
             finally
             {
-                stmt.close();
+                conn.close();
             }
         }
-        finally
+        catch (SQLException e)
         {
-            conn.close();
+            throw new RuntimeException("Error finding the entries of message " + messageId + ": " + e.getMessage(), e);
         }
     }
 
-
-
-    private TransactionLogRecoveryHandler.DtxRecordRecoveryHandler recoverQueueEntries(TransactionLogRecoveryHandler recoveryHandler) throws SQLException
+    private void removeUnconfiguredQueueEntries() throws SQLException
     {
         Connection conn = newAutoCommitConnection();
         try
         {
-            TransactionLogRecoveryHandler.QueueEntryRecoveryHandler queueEntryHandler = recoveryHandler.begin(this);
-
+            List<UUID> queueIds = new ArrayList<UUID>();
             Statement stmt = conn.createStatement();
             try
             {
-                ResultSet rs = stmt.executeQuery(SELECT_FROM_QUEUE_ENTRY);
+                ResultSet rs = stmt.executeQuery(SELECT_QUEUE_IDS_FROM_QUEUE_ENTRY);
                 try
                 {
                     while(rs.next())
                     {
-
-                        String id = rs.getString(1);
-                        long messageId = rs.getLong(2);
-                        queueEntryHandler.queueEntry(UUID.fromString(id), messageId);
+                        UUID queueId = UUID.fromString(rs.getString(1));
+                        if(!_queueIds.contains(queueId))
+                        {
+                            queueIds.add(queueId);
+                        }
                     }
                 }
                 finally
@@ -1291,12 +1545,87 @@ public class DerbyMessageStore implements MessageStore
                 stmt.close();
             }
 
-            return queueEntryHandler.completeQueueEntryRecovery();
+            for(UUID queueId : queueIds)
+            {
+                PreparedStatement pstmt = conn.prepareStatement(DELETE_QUEUE_FROM_QUEUE_ENTRY);
+                try
+                {
+                    pstmt.setString(1, queueId.toString());
+                    int count = pstmt.executeUpdate();
+                    _logger.warn(count + " message(s) referenced in log as enqueued in unknown queue " + queueId
+                                 + ", entries have been discarded");
+                }
+                finally
+                {
+                    pstmt.close();
+                }
+            }
+        }
+        finally
+        {
+            conn.close();
+        }
+    }
+
+    private void removeUnreferencedMessages() throws SQLException
+    {
+        List<Long> messageIds = new ArrayList<Long>();
+        Connection conn = newConnection();
+        try
+        {
+            PreparedStatement messageStmt = conn.prepareStatement(SELECT_MESSAGE_IDS_FROM_META_DATA);
+            PreparedStatement entryStmt = conn.prepareStatement(SELECT_MESSAGE_IDS_FROM_QUEUE_ENTRY);
+            try
+            {
+                messageStmt.setLong(1, _recoveredMaxMessageId);
+                entryStmt.setLong(1, _recoveredMaxMessageId);
+                ResultSet messages = messageStmt.executeQuery();
+                ResultSet entries = entryStmt.executeQuery();
+                try
+                {
+                    // both are ordered by message id, so a message is unreferenced if the entries skip past it
+                    boolean hasEntry = entries.next();
+                    while(messages.next())
+                    {
+                        long messageId = messages.getLong(1);
+                        while(hasEntry && entries.getLong(1) < messageId)
+                        {
+                            hasEntry = entries.next();
+                        }
+                        if(!(hasEntry && entries.getLong(1) == messageId) && !_preparedMessageIds.contains(messageId))
+                        {
+                            messageIds.add(messageId);
+                        }
+                    }
+                }
+                finally
+                {
+                    messages.close();
+                    entries.close();
+                }
+            }
+            finally
+            {
+                messageStmt.close();
+                entryStmt.close();
+            }
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            conn.rollback();
+            throw e;
         }
         finally
         {
             conn.close();
         }
+
+        for(Long messageId : messageIds)
+        {
+            _logger.warn("Message id " + messageId + " in store, but not in any queue - removing....");
+            removeMessage(messageId);
+        }
     }
 
     private static final class Xid
@@ -1380,6 +1709,7 @@ public class DerbyMessageStore implements MessageStore
 
     private void recoverXids(TransactionLogRecoveryHandler.DtxRecordRecoveryHandler dtxrh) throws SQLException
     {
+        _preparedMessageIds.clear();
         Connection conn = newAutoCommitConnection();
         try
         {
@@ -1436,6 +1766,7 @@ public class DerbyMessageStore implements MessageStore
                             long messageId = rs.getLong(3);
 
                             RecordImpl record = new RecordImpl(queueId, messageId);
+                            _preparedMessageIds.add(messageId);
                             List<RecordImpl> records = "E".equals(actionType) ? enqueues : dequeues;
                             records.add(record);
                         }
@@ -1467,7 +1798,16 @@ public class DerbyMessageStore implements MessageStore
 
     StorableMessageMetaData getMetaData(long messageId) throws SQLException
     {
+        byte[] dataAsBytes = getMetaDataBytes(messageId);
+        if(dataAsBytes == null)
+        {
+            throw new RuntimeException("Meta data not found for message with id " + messageId);
+        }
+        return createMetaData(dataAsBytes);
+    }
 
+    private byte[] getMetaDataBytes(long messageId) throws SQLException
+    {
         Connection conn = newAutoCommitConnection();
         try
         {
@@ -1478,23 +1818,14 @@ public class DerbyMessageStore implements MessageStore
                 ResultSet rs = stmt.executeQuery();
                 try
                 {
-
                     if(rs.next())
                     {
                         Blob dataAsBlob = rs.getBlob(1);
-
-                        byte[] dataAsBytes = dataAsBlob.getBytes(1,(int) dataAsBlob.length());
-                        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(dataAsBytes);
-                        buf.position(1);
-                        buf = buf.slice();
-                        MessageMetaDataType type = MessageMetaDataType.values()[dataAsBytes[0]];
-                        StorableMessageMetaData metaData = type.getFactory().createMetaData(buf);
-
-                        return metaData;
+                        return dataAsBlob.getBytes(1,(int) dataAsBlob.length());
                     }
                     else
                     {
-                        throw new RuntimeException("Meta data not found for message with id " + messageId);
+                        return null;
                     }
                 }
                 finally
@@ -1514,6 +1845,15 @@ public class DerbyMessageStore implements MessageStore
     }
 
 
+    private static StorableMessageMetaData createMetaData(byte[] dataAsBytes)
+    {
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(dataAsBytes);
+        buf.position(1);
+        buf = buf.slice();
+        MessageMetaDataType type = MessageMetaDataType.values()[dataAsBytes[0]];
+        return type.getFactory().createMetaData(buf);
+    }
+
     private void addContent(Connection conn, long messageId, ByteBuffer src)
     {
         if(_logger.isDebugEnabled())
@@ -1526,15 +1866,22 @@ public class DerbyMessageStore implements MessageStore
         {
             src = src.slice();
 
-            byte[] chunkData = new byte[src.limit()];
-            src.duplicate().get(chunkData);
-
             stmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
-            stmt.setLong(1,messageId);
+            int chunkIndex = 0;
+            while(src.hasRemaining())
+            {
+                byte[] chunkData = new byte[Math.min(CONTENT_CHUNK_SIZE, src.remaining())];
+                src.get(chunkData);
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(chunkData);
-            stmt.setBinaryStream(2, bis, chunkData.length);
-            stmt.executeUpdate();
+                stmt.setLong(1,messageId);
+                stmt.setInt(2, chunkIndex++);
+                stmt.setBinaryStream(3, new ByteArrayInputStream(chunkData), chunkData.length);
+                stmt.addBatch();
+            }
+            if(chunkIndex != 0)
+            {
+                stmt.executeBatch();
+            }
         }
         catch (SQLException e)
         {
@@ -1549,43 +1896,74 @@ public class DerbyMessageStore implements MessageStore
     }
 
 
+    /**
+     * Copies message content starting at the given offset into the destination buffer, reading only the content
+     * chunks which overlap the requested range.
+     *
+     * @return the number of bytes copied
+     */
     public int getContent(long messageId, int offset, ByteBuffer dst)
     {
         Connection conn = null;
         PreparedStatement stmt = null;
 
+        if(!dst.hasRemaining())
+        {
+            return 0;
+        }
+
         try
         {
             conn = newAutoCommitConnection();
 
             stmt = conn.prepareStatement(SELECT_FROM_MESSAGE_CONTENT);
             stmt.setLong(1,messageId);
+            stmt.setInt(2, offset / CONTENT_CHUNK_SIZE);
+            stmt.setInt(3, (int) (((long) offset + dst.remaining() - 1) / CONTENT_CHUNK_SIZE));
             ResultSet rs = stmt.executeQuery();
 
             int written = 0;
-
-            if (rs.next())
+            try
             {
+                while (rs.next() && dst.hasRemaining())
+                {
+                    final int position = offset + written;
+                    if(rs.getInt(1) != position / CONTENT_CHUNK_SIZE)
+                    {
+                        // content ends before the requested range
+                        break;
+                    }
 
-                Blob dataAsBlob = rs.getBlob(1);
+                    Blob dataAsBlob = rs.getBlob(2);
+                    final int chunkSize = (int) dataAsBlob.length();
+                    final int positionInChunk = position % CONTENT_CHUNK_SIZE;
+                    final int length = Math.min(chunkSize - positionInChunk, dst.remaining());
 
-                final int size = (int) dataAsBlob.length();
-                byte[] dataAsBytes = dataAsBlob.getBytes(1, size);
+                    if(length > 0)
+                    {
+                        dst.put(dataAsBlob.getBytes(positionInChunk + 1, length));
+                        written += length;
+                    }
+                    if(positionInChunk + length < CONTENT_CHUNK_SIZE)
+                    {
+                        // a partial chunk is always the last
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                rs.close();
+            }
 
-                if (offset > size)
+            if(written == 0 && offset > 0)
+            {
+                final int size = getContentSize(conn, messageId);
+                if (size >= 0 && offset > size)
                 {
                     throw new RuntimeException("Offset " + offset + " is greater than message size " + size
                             + " for message id " + messageId + "!");
-
-                }
-
-                written = size - offset;
-                if(written > dst.remaining())
-                {
-                    written = dst.remaining();
                 }
-
-                dst.put(dataAsBytes, offset, written);
             }
 
             return written;
@@ -1604,6 +1982,32 @@ public class DerbyMessageStore implements MessageStore
 
     }
 
+    /**
+     * @return the size of the message content, from the size of its last chunk, or -1 if the store holds none
+     */
+    private int getContentSize(Connection conn, long messageId) throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement(SELECT_LAST_FROM_MESSAGE_CONTENT);
+        try
+        {
+            stmt.setLong(1, messageId);
+            stmt.setMaxRows(1);
+            ResultSet rs = stmt.executeQuery();
+            try
+            {
+                return rs.next() ? rs.getInt(1) * CONTENT_CHUNK_SIZE + (int) rs.getBlob(2).length() : -1;
+            }
+            finally
+            {
+                rs.close();
+            }
+        }
+        finally
+        {
+            stmt.close();
+        }
+    }
+
     @Override
     public boolean isPersistent()
     {
@@ -1692,6 +2096,85 @@ public class DerbyMessageStore implements MessageStore
 
 
 
+    private class DerbyQueueEntryReader implements QueueEntryReader
+    {
+        @Override
+        public void readQueueEntries(UUID queueId, QueueEntryHandler handler) throws AMQStoreException
+        {
+            try
+            {
+                Connection conn = newAutoCommitConnection();
+                try
+                {
+                    PreparedStatement stmt = conn.prepareStatement(SELECT_FROM_QUEUE_ENTRY);
+                    try
+                    {
+                        stmt.setString(1, queueId.toString());
+                        stmt.setLong(2, _recoveredMaxMessageId);
+                        ResultSet rs = stmt.executeQuery();
+                        try
+                        {
+                            boolean more = true;
+                            while(more && rs.next())
+                            {
+                                long messageId = rs.getLong(1);
+                                Blob dataAsBlob = rs.getBlob(2);
+                                StoredDerbyMessage message = dataAsBlob == null
+                                        ? null
+                                        : new StoredDerbyMessage(messageId, dataAsBlob.getBytes(1, (int) dataAsBlob.length()));
+                                more = handler.queueEntry(messageId, message);
+                            }
+                        }
+                        finally
+                        {
+                            rs.close();
+                        }
+                    }
+                    finally
+                    {
+                        stmt.close();
+                    }
+                }
+                finally
+                {
+                    conn.close();
+                }
+            }
+            catch (SQLException e)
+            {
+                throw new AMQStoreException("Error reading the entries of queue " + queueId + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public StoredMessage<?> readMessage(long messageId) throws AMQStoreException
+        {
+            try
+            {
+                byte[] metaData = getMetaDataBytes(messageId);
+                return metaData == null ? null : new StoredDerbyMessage(messageId, metaData);
+            }
+            catch (SQLException e)
+            {
+                throw new AMQStoreException("Error reading message " + messageId + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void removeUnreferenced() throws AMQStoreException
+        {
+            try
+            {
+                removeUnconfiguredQueueEntries();
+                removeUnreferencedMessages();
+            }
+            catch (SQLException e)
+            {
+                throw new AMQStoreException("Error removing unreferenced messages: " + e.getMessage(), e);
+            }
+        }
+    }
+
     private class StoredDerbyMessage implements StoredMessage
     {
 
@@ -1700,8 +2183,13 @@ public class DerbyMessageStore implements MessageStore
 
         private StorableMessageMetaData _metaData;
         private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
-        private byte[] _data;
-        private volatile SoftReference<byte[]> _dataRef;
+        /** the stored meta data of a recovered message, until it is first decoded */
+        private volatile byte[] _recoveredMetaData;
+        /** content not yet stored */
+        private volatile byte[] _data;
+        /** stored content, until it is evicted from the cache */
+        private volatile MessageContentCache.Entry<byte[]> _cachedData;
+        private volatile boolean _removed;
 
 
         StoredDerbyMessage(long messageId, StorableMessageMetaData metaData)
@@ -1723,19 +2211,34 @@ public class DerbyMessageStore implements MessageStore
             _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
         }
 
+        StoredDerbyMessage(long messageId, byte[] recoveredMetaData)
+        {
+            this(messageId, null, true);
+            _recoveredMetaData = recoveredMetaData;
+        }
+
         @Override
         public StorableMessageMetaData getMetaData()
         {
             StorableMessageMetaData metaData = _metaData == null ? _metaDataRef.get() : _metaData;
             if(metaData == null)
             {
-                try
+                byte[] recoveredMetaData = _recoveredMetaData;
+                if(recoveredMetaData != null)
                 {
-                    metaData = DerbyMessageStore.this.getMetaData(_messageId);
+                    metaData = createMetaData(recoveredMetaData);
+                    _recoveredMetaData = null;
                 }
-                catch (SQLException e)
+                else
                 {
-                    throw new RuntimeException(e);
+                    try
+                    {
+                        metaData = DerbyMessageStore.this.getMetaData(_messageId);
+                    }
+                    catch (SQLException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
                 }
                 _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
             }
@@ -1757,25 +2260,68 @@ public class DerbyMessageStore implements MessageStore
             if(_data == null)
             {
                 _data = new byte[src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
                 src.duplicate().get(_data);
             }
             else
             {
                 byte[] oldData = _data;
-                _data = new byte[oldData.length + src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
+                byte[] data = new byte[oldData.length + src.remaining()];
+
+                System.arraycopy(oldData,0,data,0,oldData.length);
+                src.duplicate().get(data, oldData.length, src.remaining());
+                _data = data;
+            }
+
+        }
 
-                System.arraycopy(oldData,0,_data,0,oldData.length);
-                src.duplicate().get(_data, oldData.length, src.remaining());
+        private byte[] getData()
+        {
+            byte[] data = _data;
+            if(data == null)
+            {
+                MessageContentCache.Entry<byte[]> cachedData = _cachedData;
+                data = cachedData == null ? null : cachedData.get();
+                if(data == null && _contentCache != null && !_removed && stored())
+                {
+                    data = readContent();
+                }
             }
+            return data;
+        }
 
+        /**
+         * Reads the stored content back into the cache, unless it is too large to be cached.
+         */
+        private synchronized byte[] readContent()
+        {
+            MessageContentCache.Entry<byte[]> cachedData = _cachedData;
+            byte[] data = cachedData == null ? null : cachedData.get();
+            if(data == null)
+            {
+                int size = getMetaData().getContentSize();
+                if(size == 0 || !_contentCache.fits(size))
+                {
+                    return null;
+                }
+                data = new byte[size];
+                if(DerbyMessageStore.this.getContent(_messageId, 0, ByteBuffer.wrap(data)) != size)
+                {
+                    return null;
+                }
+                cachedData = _contentCache.add(data, size);
+                _cachedData = cachedData;
+                if(_removed)
+                {
+                    cachedData.discard();
+                }
+            }
+            return data;
         }
 
         @Override
         public int getContent(int offsetInMessage, java.nio.ByteBuffer dst)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
+            byte[] data = getData();
             if(data != null)
             {
                 int length = Math.min(dst.remaining(), data.length - offsetInMessage);
@@ -1792,6 +2338,13 @@ public class DerbyMessageStore implements MessageStore
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
+            byte[] data = getData();
+            if(data != null)
+            {
+                // a slice, as for the other stores, so that the buffer's array offset is that of the content
+                return ByteBuffer.wrap(data, offsetInMessage, Math.min(size, data.length - offsetInMessage)).slice();
+            }
+
             ByteBuffer buf = ByteBuffer.allocate(size);
             int length = getContent(offsetInMessage, buf);
             buf.position(0);
@@ -1834,8 +2387,18 @@ public class DerbyMessageStore implements MessageStore
         public void remove()
         {
             int delta = getMetaData().getContentSize();
-            DerbyMessageStore.this.removeMessage(_messageId);
-            storedSizeChange(-delta);
+            _removed = true;
+            MessageContentCache.Entry<byte[]> cachedData = _cachedData;
+            if(cachedData != null)
+            {
+                cachedData.discard();
+            }
+            // each queue holding a recovered message reads its own copy, and the last of them removes it
+            if(!_isRecovered || !isEnqueued(_messageId))
+            {
+                DerbyMessageStore.this.removeMessage(_messageId);
+                storedSizeChange(-delta);
+            }
         }
 
         private synchronized void store(final Connection conn) throws SQLException
@@ -1847,6 +2410,10 @@ public class DerbyMessageStore implements MessageStore
                     storeMetaData(conn, _messageId, _metaData);
                     DerbyMessageStore.this.addContent(conn, _messageId,
                                                       _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    if(_contentCache != null && _data != null && _data.length > 0)
+                    {
+                        _cachedData = _contentCache.add(_data, _data.length);
+                    }
                 }
                 finally
                 {
@@ -55,10 +55,11 @@ public class AssignedSubscriptionMessageGroupManager implements MessageGroupMana
         return val;
     }
 
-    public Subscription getAssignedSubscription(final QueueEntry entry)
+    public boolean mightAssign(final Subscription sub, final QueueEntry entry)
     {
         Object groupVal = entry.getMessage().getMessageHeader().getHeader(_groupId);
-        return groupVal == null ? null : _groupMap.get(groupVal.hashCode() & _groupMask);
+        Subscription assignedSub = groupVal == null ? null : _groupMap.get(groupVal.hashCode() & _groupMask);
+        return assignedSub == null || assignedSub == sub;
     }
 
     public boolean acceptMessage(Subscription sub, QueueEntry entry)
@@ -20,7 +20,6 @@
  */
 package org.apache.qpid.server.subscription;
 
-import org.apache.qpid.server.queue.QueueEntryVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,79 +27,111 @@ import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.queue.QueueEntry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Assigns each group to the subscription which first accepts one of its messages, for as long as that
+ * subscription has messages of the group acquired.
+ *
+ * No lock is taken: groups are held in a concurrent map, and a group which is released is marked dead and replaced
+ * rather than reassigned. Each group remembers the available entries which other subscriptions have passed over
+ * while it was assigned, so that when it is released the subscriptions can be moved back to the earliest of them
+ * without searching the queue.
+ */
 public class DefinedGroupMessageGroupManager implements MessageGroupManager
 {
     private static final Logger _logger = LoggerFactory.getLogger(DefinedGroupMessageGroupManager.class);
 
+    /** the active count of a group which has been released, and can no longer be assigned */
+    private static final int DEAD = Integer.MIN_VALUE;
+
     private final String _groupId;
     private final String _defaultGroup;
-    private final Map<Object, Group> _groupMap = new HashMap<Object, Group>();
+    private final ConcurrentMap<Object, Group> _groupMap = new ConcurrentHashMap<Object, Group>();
+    private final ConcurrentMap<Subscription, Set<Group>> _subscriptionGroups =
+            new ConcurrentHashMap<Subscription, Set<Group>>();
     private final SubscriptionResetHelper _resetHelper;
 
     private final class Group
     {
         private final Object _group;
-        private Subscription _subscription;
-        private int _activeCount;
+        private final Subscription _subscription;
+        private final AtomicInteger _activeCount = new AtomicInteger();
+        private final ConcurrentSkipListSet<QueueEntry> _skippedEntries = new ConcurrentSkipListSet<QueueEntry>();
 
         private Group(final Object key, final Subscription subscription)
         {
             _group = key;
             _subscription = subscription;
         }
-        
+
         public boolean add()
         {
-            if(_subscription != null)
+            int count;
+            do
             {
-                _activeCount++;
-                return true;
-            }
-            else
-            {
-                return false;
+                count = _activeCount.get();
+                if(count == DEAD)
+                {
+                    return false;
+                }
             }
+            while(!_activeCount.compareAndSet(count, count + 1));
+            return true;
         }
-        
+
         public void subtract()
         {
-            if(--_activeCount == 0)
+            int count;
+            do
             {
+                count = _activeCount.get();
+                if(count == DEAD)
+                {
+                    return;
+                }
+            }
+            while(!_activeCount.compareAndSet(count, count - 1));
+
+            if(count == 1 && _activeCount.compareAndSet(0, DEAD))
+            {
+                // the group is still registered to the subscription, so its skipped entries are found by the reset
                 _resetHelper.resetSubPointersForGroups(_subscription, false);
-                _subscription = null;
-                _groupMap.remove(_group);
+                release();
             }
         }
 
-        @Override
-        public boolean equals(final Object o)
+        /**
+         * Marks a group with no acquired messages as dead.
+         *
+         * @return true if the group was idle, and is now dead
+         */
+        boolean releaseIfIdle()
         {
-            if (this == o)
+            if(_activeCount.compareAndSet(0, DEAD))
             {
+                release();
                 return true;
             }
-            if (o == null || getClass() != o.getClass())
-            {
-                return false;
-            }
-
-            Group group = (Group) o;
-
-            return _group.equals(group._group);
+            return false;
         }
 
-        @Override
-        public int hashCode()
+        private void release()
         {
-            return _group.hashCode();
+            _groupMap.remove(_group, this);
+            unregisterGroup(this);
+            _skippedEntries.clear();
         }
 
         public boolean isValid()
         {
-            return !(_subscription == null || (_activeCount == 0 && _subscription.isClosed()));
+            int count = _activeCount.get();
+            return !(count == DEAD || (count == 0 && _subscription.isClosed()));
         }
 
         public Subscription getSubscription()
@@ -108,6 +139,43 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             return _subscription;
         }
 
+        /**
+         * Records an available entry of the group which another subscription has passed over.
+         */
+        void skipped(QueueEntry entry)
+        {
+            pruneSkippedEntries();
+            _skippedEntries.add(entry);
+        }
+
+        QueueEntry getEarliestAvailableEntry()
+        {
+            pruneSkippedEntries();
+            for(QueueEntry entry : _skippedEntries)
+            {
+                if(entry.isAvailable())
+                {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /** entries at the head which have since been acquired or deleted can no longer be passed over */
+        private void pruneSkippedEntries()
+        {
+            QueueEntry entry;
+            while((entry = firstSkippedEntry()) != null && !entry.isAvailable())
+            {
+                _skippedEntries.remove(entry);
+            }
+        }
+
+        private QueueEntry firstSkippedEntry()
+        {
+            return _skippedEntries.isEmpty() ? null : _skippedEntries.first();
+        }
+
         @Override
         public String toString()
         {
@@ -125,99 +193,132 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         _defaultGroup = defaultGroup;
         _resetHelper = resetHelper;
     }
-    
-    public synchronized Subscription getAssignedSubscription(final QueueEntry entry)
+
+    public boolean mightAssign(final Subscription sub, final QueueEntry entry)
     {
-        Object groupId = getKey(entry);
+        Group group = _groupMap.get(getKey(entry));
+        if(group == null || !group.isValid() || group.getSubscription() == sub)
+        {
+            return true;
+        }
 
-        Group group = _groupMap.get(groupId);
-        return group == null || !group.isValid() ? null : group.getSubscription();
+        group.skipped(entry);
+        // if the group was released while the entry was being recorded, the reset may have missed it
+        return !group.isValid();
     }
 
-    public synchronized boolean acceptMessage(final Subscription sub, final QueueEntry entry)
+    public boolean acceptMessage(final Subscription sub, final QueueEntry entry)
     {
         Object groupId = getKey(entry);
-        Group group = _groupMap.get(groupId);
-        
-        if(group == null || !group.isValid())
+
+        while(true)
         {
-            group = new Group(groupId, sub);
+            Group group = _groupMap.get(groupId);
+
+            if(group == null || !group.isValid())
+            {
+                Group newGroup = new Group(groupId, sub);
+                boolean installed = group == null
+                                    ? _groupMap.putIfAbsent(groupId, newGroup) == null
+                                    : _groupMap.replace(groupId, group, newGroup);
+                if(!installed)
+                {
+                    continue;
+                }
+                if(group != null)
+                {
+                    unregisterGroup(group);
+                }
+                registerGroup(newGroup);
+                group = newGroup;
 
-            _groupMap.put(groupId, group);
+                // there's a small change that the group became empty between the point at which getNextAvailable() was
+                // called on the subscription, and when accept message is called... in that case we want to avoid delivering
+                // out of order
+                if(_resetHelper.isEntryAheadOfSubscription(entry, sub))
+                {
+                    return false;
+                }
+            }
 
-            // there's a small change that the group became empty between the point at which getNextAvailable() was
-            // called on the subscription, and when accept message is called... in that case we want to avoid delivering
-            // out of order
-            if(_resetHelper.isEntryAheadOfSubscription(entry, sub))
+            if(group.getSubscription() == sub)
+            {
+                entry.addStateChangeListener(new GroupStateChangeListener(group, entry));
+                return true;
+            }
+            else
             {
                 return false;
             }
-
-        }
-        
-        Subscription assignedSub = group.getSubscription();
-        
-        if(assignedSub == sub)
-        {
-            entry.addStateChangeListener(new GroupStateChangeListener(group, entry));
-            return true;
-        }
-        else
-        {
-            return false;            
         }
     }
-    
-    
-    public synchronized QueueEntry findEarliestAssignedAvailableEntry(final Subscription sub)
-    {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
-    }
 
-    private class EntryFinder implements QueueEntryVisitor
+    public QueueEntry findEarliestAssignedAvailableEntry(final Subscription sub)
     {
-        private QueueEntry _entry;
-        private Subscription _sub;
-
-        public EntryFinder(final Subscription sub)
+        Set<Group> groups = _subscriptionGroups.get(sub);
+        QueueEntry earliest = null;
+        if(groups != null)
         {
-            _sub = sub;
+            for(Group group : groups)
+            {
+                QueueEntry entry = group.getEarliestAvailableEntry();
+                if(entry != null && (earliest == null || entry.compareTo(earliest) < 0))
+                {
+                    earliest = entry;
+                }
+            }
         }
+        return earliest;
+    }
 
-        public boolean visit(final QueueEntry entry)
+    public void clearAssignments(final Subscription sub)
+    {
+        // groups with messages still acquired are released as those messages are
+        Set<Group> groups = _subscriptionGroups.get(sub);
+        if(groups != null)
         {
-            if(!entry.isAvailable())
+            for(Group group : groups)
             {
-                return false;
+                group.releaseIfIdle();
             }
+        }
+    }
 
-            Object groupId = getKey(entry);
-
-            Group group = _groupMap.get(groupId);
-            if(group != null && group.getSubscription() == _sub)
+    private void registerGroup(Group group)
+    {
+        Subscription sub = group.getSubscription();
+        while(true)
+        {
+            Set<Group> groups = _subscriptionGroups.get(sub);
+            if(groups == null)
             {
-                _entry = entry;
-                return true;
+                Set<Group> newGroups = Collections.newSetFromMap(new ConcurrentHashMap<Group, Boolean>());
+                groups = _subscriptionGroups.putIfAbsent(sub, newGroups);
+                if(groups == null)
+                {
+                    groups = newGroups;
+                }
             }
-            else
+            groups.add(group);
+
+            // retry if the set was discarded as empty while the group was added
+            if(_subscriptionGroups.get(sub) == groups)
             {
-                return false;
+                return;
             }
         }
+    }
 
-        public QueueEntry getEntry()
+    private void unregisterGroup(Group group)
+    {
+        Subscription sub = group.getSubscription();
+        Set<Group> groups = _subscriptionGroups.get(sub);
+        if(groups != null && groups.remove(group) && groups.isEmpty())
         {
-            return _entry;
+            _subscriptionGroups.remove(sub, groups);
         }
     }
 
-    
-    public void clearAssignments(final Subscription sub)
-    {
-    }
-    
     private Object getKey(QueueEntry entry)
     {
         ServerMessage message = entry.getMessage();
@@ -244,26 +345,23 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
                                  final QueueEntry.State oldState,
                                  final QueueEntry.State newState)
         {
-            synchronized (DefinedGroupMessageGroupManager.this)
+            if(_group.isValid())
             {
-                if(_group.isValid())
+                if(oldState != newState)
                 {
-                    if(oldState != newState)
+                    if(newState == QueueEntry.State.ACQUIRED)
                     {
-                        if(newState == QueueEntry.State.ACQUIRED)
-                        {
-                            _group.add();
-                        }
-                        else if(oldState == QueueEntry.State.ACQUIRED)
-                        {
-                            _group.subtract();
-                        }
+                        _group.add();
+                    }
+                    else if(oldState == QueueEntry.State.ACQUIRED)
+                    {
+                        _group.subtract();
                     }
                 }
-                else
-                {
-                    entry.removeStateChangeListener(this);
-                }
+            }
+            else
+            {
+                entry.removeStateChangeListener(this);
             }
         }
     }
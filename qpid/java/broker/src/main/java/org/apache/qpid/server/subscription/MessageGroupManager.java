@@ -31,7 +31,10 @@ public interface MessageGroupManager
         boolean isEntryAheadOfSubscription(QueueEntry entry, Subscription sub);
     }
 
-    Subscription getAssignedSubscription(QueueEntry entry);
+    /**
+     * @return false if the entry's group is assigned to another subscription, which the entry must be left for
+     */
+    boolean mightAssign(Subscription sub, QueueEntry entry);
 
     boolean acceptMessage(Subscription sub, QueueEntry entry);
 
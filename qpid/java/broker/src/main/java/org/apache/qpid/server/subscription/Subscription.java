@@ -22,6 +22,7 @@ package org.apache.qpid.server.subscription;
 
 import org.apache.qpid.AMQException;
 import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.server.filter.FilterManager;
 import org.apache.qpid.server.logging.LogActor;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.queue.AMQQueue;
@@ -70,6 +71,11 @@ public interface Subscription
 
     boolean hasInterest(QueueEntry msg);
 
+    /**
+     * @return the filters applied by {@link #hasInterest(QueueEntry)}, or null if there are none
+     */
+    FilterManager getFilters();
+
     boolean isClosed();
 
     boolean acquires();
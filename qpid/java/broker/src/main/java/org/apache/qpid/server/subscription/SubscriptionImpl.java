@@ -490,6 +490,11 @@ public abstract class SubscriptionImpl implements Subscription, FlowCreditManage
 
     }
 
+    public FilterManager getFilters()
+    {
+        return _filters;
+    }
+
     private boolean checkFilters(QueueEntry msg)
     {
         return (_filters == null) || _filters.allAllow(msg);
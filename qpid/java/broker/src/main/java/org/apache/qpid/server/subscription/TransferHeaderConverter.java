@@ -0,0 +1,178 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.subscription;
+
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.qpid.AMQException;
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.FieldTable;
+import org.apache.qpid.server.message.AMQMessage;
+import org.apache.qpid.server.message.MessageConverter;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.virtualhost.VirtualHost;
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.Header;
+import org.apache.qpid.transport.MessageDeliveryPriority;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.ReplyTo;
+import org.apache.qpid.url.AMQBindingURL;
+
+/**
+ * Converts messages which did not arrive over 0-10 into the header of a 0-10 message transfer. The delivery
+ * properties which differ between deliveries, redelivered and immediate, are set on a copy for each delivery by
+ * {@link Subscription_0_10}.
+ */
+final class TransferHeaderConverter implements MessageConverter<Header>
+{
+    static final TransferHeaderConverter INSTANCE = new TransferHeaderConverter();
+
+    private TransferHeaderConverter()
+    {
+    }
+
+    public Header convert(ServerMessage message, VirtualHost virtualHost) throws AMQException
+    {
+        if(message instanceof AMQMessage)
+        {
+            return convert((AMQMessage) message);
+        }
+        else
+        {
+            DeliveryProperties deliveryProps = new DeliveryProperties();
+            MessageProperties messageProps = new MessageProperties();
+
+            deliveryProps.setExpiration(message.getExpiration());
+            deliveryProps.setPriority(MessageDeliveryPriority.get(message.getMessageHeader().getPriority()));
+            deliveryProps.setRoutingKey(message.getRoutingKey());
+            deliveryProps.setTimestamp(message.getMessageHeader().getTimestamp());
+
+            messageProps.setContentEncoding(message.getMessageHeader().getEncoding());
+            messageProps.setContentLength(message.getSize());
+            messageProps.setContentType(message.getMessageHeader().getMimeType());
+            if(message.getMessageHeader().getCorrelationId() != null)
+            {
+                messageProps.setCorrelationId(message.getMessageHeader().getCorrelationId().getBytes());
+            }
+
+            // TODO - ReplyTo
+
+            return new Header(deliveryProps, messageProps, null);
+        }
+    }
+
+    private Header convert(AMQMessage message_0_8) throws AMQException
+    {
+        DeliveryProperties deliveryProps = new DeliveryProperties();
+        MessageProperties messageProps = new MessageProperties();
+
+        BasicContentHeaderProperties properties =
+                (BasicContentHeaderProperties) message_0_8.getContentHeaderBody().getProperties();
+        final AMQShortString exchange = message_0_8.getMessagePublishInfo().getExchange();
+        if(exchange != null)
+        {
+            deliveryProps.setExchange(exchange.toString());
+        }
+        deliveryProps.setExpiration(message_0_8.getExpiration());
+        deliveryProps.setPriority(MessageDeliveryPriority.get(properties.getPriority()));
+        deliveryProps.setRoutingKey(message_0_8.getRoutingKey());
+        deliveryProps.setTimestamp(properties.getTimestamp());
+
+        messageProps.setContentEncoding(properties.getEncodingAsString());
+        messageProps.setContentLength(message_0_8.getSize());
+        if(properties.getAppId() != null)
+        {
+            messageProps.setAppId(properties.getAppId().getBytes());
+        }
+        messageProps.setContentType(properties.getContentTypeAsString());
+        if(properties.getCorrelationId() != null)
+        {
+            messageProps.setCorrelationId(properties.getCorrelationId().getBytes());
+        }
+
+        if(properties.getReplyTo() != null && properties.getReplyTo().length() != 0)
+        {
+            String origReplyToString = properties.getReplyTo().asString();
+            ReplyTo replyTo = new ReplyTo();
+            // if the string looks like a binding URL, then attempt to parse it...
+            try
+            {
+                AMQBindingURL burl = new AMQBindingURL(origReplyToString);
+                AMQShortString routingKey = burl.getRoutingKey();
+                if(routingKey != null)
+                {
+                    replyTo.setRoutingKey(routingKey.asString());
+                }
+
+                AMQShortString exchangeName = burl.getExchangeName();
+                if(exchangeName != null)
+                {
+                    replyTo.setExchange(exchangeName.asString());
+                }
+            }
+            catch (URISyntaxException e)
+            {
+                replyTo.setRoutingKey(origReplyToString);
+            }
+            messageProps.setReplyTo(replyTo);
+
+        }
+
+        if(properties.getMessageId() != null)
+        {
+            try
+            {
+                String messageIdAsString = properties.getMessageIdAsString();
+                if(messageIdAsString.startsWith("ID:"))
+                {
+                    messageIdAsString = messageIdAsString.substring(3);
+                }
+                UUID uuid = UUID.fromString(messageIdAsString);
+                messageProps.setMessageId(uuid);
+            }
+            catch(IllegalArgumentException e)
+            {
+                // ignore - can't parse
+            }
+        }
+
+        if(properties.getUserId() != null)
+        {
+            messageProps.setUserId(properties.getUserId().getBytes());
+        }
+
+        FieldTable fieldTable = properties.getHeaders();
+
+        Map<String, Object> appHeaders = FieldTable.convertToMap(fieldTable);
+
+        if(properties.getType() != null)
+        {
+            appHeaders.put("x-jms-type", properties.getTypeAsString());
+        }
+
+        messageProps.setApplicationHeaders(appHeaders);
+
+        return new Header(deliveryProps, messageProps, null);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import static org.apache.qpid.util.Serial.gt;
+import static org.apache.qpid.util.Serial.lt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.qpid.server.transport.ServerSession.MessageDispositionChangeListener;
+import org.apache.qpid.transport.Range;
+import org.apache.qpid.util.Serial;
+
+/**
+ * The disposition listeners of the transfers a session has sent and not yet settled, indexed by command id.
+ *
+ * The listeners are held in a ring buffer, in the slot given by the command id modulo its size. The ring spans the
+ * command ids from the oldest unsettled transfer to the newest, doubling in size as the span grows, up to a maximum
+ * window. Transfers left unsettled once the window has moved past them are moved to an ordered map, so that a
+ * client holding on to a few old transfers does not hold the ring open. Command ids are compared with serial
+ * arithmetic, so the ring may span their wrap around.
+ *
+ * Each listener is added and removed under the ring's lock, but the listeners are never called holding it, since
+ * settling a transfer may deliver further messages on the same session.
+ */
+final class MessageDispositionListenerRing
+{
+    static final int INITIAL_CAPACITY = 64;
+    static final int MAXIMUM_CAPACITY = 1 << 16;
+
+    /**
+     * Called for a listener of a transfer within a range, without the ring's lock held.
+     */
+    static interface Visitor
+    {
+        void visit(int commandId, MessageDispositionChangeListener listener);
+    }
+
+    private MessageDispositionChangeListener[] _listeners = new MessageDispositionChangeListener[INITIAL_CAPACITY];
+    private int _mask = INITIAL_CAPACITY - 1;
+
+    /** the oldest command id in the ring which may hold a listener */
+    private int _head;
+    /** one after the newest command id in the ring holding a listener */
+    private int _tail;
+    /** the number of listeners in the ring */
+    private int _size;
+
+    /** the listeners of transfers older than the ring's window */
+    private final TreeMap<Integer, MessageDispositionChangeListener> _stragglers =
+            new TreeMap<Integer, MessageDispositionChangeListener>(Serial.COMPARATOR);
+
+    synchronized void put(int commandId, MessageDispositionChangeListener listener)
+    {
+        if(_size == 0)
+        {
+            _head = commandId;
+            _tail = commandId + 1;
+        }
+        else if(lt(commandId, _head))
+        {
+            if(_tail - commandId > MAXIMUM_CAPACITY)
+            {
+                _stragglers.put(commandId, listener);
+                return;
+            }
+            ensureCapacity(_tail - commandId);
+            _head = commandId;
+        }
+        else if(!lt(commandId, _tail))
+        {
+            if(commandId + 1 - _head > MAXIMUM_CAPACITY)
+            {
+                moveToStragglers(commandId + 1 - MAXIMUM_CAPACITY);
+            }
+            ensureCapacity(commandId + 1 - _head);
+            _tail = commandId + 1;
+        }
+
+        int index = commandId & _mask;
+        if(_listeners[index] == null)
+        {
+            _size++;
+        }
+        _listeners[index] = listener;
+    }
+
+    synchronized MessageDispositionChangeListener get(int commandId)
+    {
+        return inRing(commandId) ? _listeners[commandId & _mask] : _stragglers.get(commandId);
+    }
+
+    synchronized MessageDispositionChangeListener remove(int commandId)
+    {
+        if(!inRing(commandId))
+        {
+            return _stragglers.isEmpty() ? null : _stragglers.remove(commandId);
+        }
+
+        int index = commandId & _mask;
+        MessageDispositionChangeListener listener = _listeners[index];
+        if(listener != null)
+        {
+            _listeners[index] = null;
+            if(--_size == 0)
+            {
+                _head = _tail;
+            }
+            else if(commandId == _head)
+            {
+                do
+                {
+                    _head++;
+                }
+                while(_listeners[_head & _mask] == null);
+            }
+        }
+        return listener;
+    }
+
+    /**
+     * Removes the listeners of the transfers within the range, passing each to the visitor.
+     */
+    void remove(Range range, Visitor visitor)
+    {
+        visit(range, visitor, true);
+    }
+
+    /**
+     * Passes the listeners of the transfers within the range to the visitor, leaving them in place.
+     */
+    void visit(Range range, Visitor visitor)
+    {
+        visit(range, visitor, false);
+    }
+
+    synchronized int size()
+    {
+        return _size + _stragglers.size();
+    }
+
+    synchronized List<MessageDispositionChangeListener> removeAll()
+    {
+        List<MessageDispositionChangeListener> listeners = new ArrayList<MessageDispositionChangeListener>(size());
+        listeners.addAll(_stragglers.values());
+        _stragglers.clear();
+        for(int commandId = _head; _size != 0; commandId++)
+        {
+            int index = commandId & _mask;
+            if(_listeners[index] != null)
+            {
+                listeners.add(_listeners[index]);
+                _listeners[index] = null;
+                _size--;
+            }
+        }
+        _head = _tail;
+        return listeners;
+    }
+
+    private void visit(Range range, Visitor visitor, boolean remove)
+    {
+        int lower = range.getLower();
+        int upper = range.getUpper();
+
+        // the ring first, as transfers only ever move from the ring to the stragglers
+        int first;
+        int last;
+        synchronized (this)
+        {
+            if(_size == 0 || !lt(lower, _tail) || lt(upper, _head))
+            {
+                first = 0;
+                last = -1;
+            }
+            else
+            {
+                first = lt(lower, _head) ? _head : lower;
+                last = lt(upper, _tail) ? upper : _tail - 1;
+            }
+        }
+
+        for(int commandId = first; !gt(commandId, last); commandId++)
+        {
+            MessageDispositionChangeListener listener = remove ? remove(commandId) : get(commandId);
+            if(listener != null)
+            {
+                visitor.visit(commandId, listener);
+            }
+        }
+
+        int from = lower;
+        while(true)
+        {
+            Map.Entry<Integer, MessageDispositionChangeListener> straggler;
+            synchronized (this)
+            {
+                if(_stragglers.isEmpty())
+                {
+                    return;
+                }
+                straggler = _stragglers.ceilingEntry(from);
+                if(straggler == null || gt(straggler.getKey(), upper))
+                {
+                    return;
+                }
+                if(remove)
+                {
+                    _stragglers.remove(straggler.getKey());
+                }
+            }
+
+            int commandId = straggler.getKey();
+            visitor.visit(commandId, straggler.getValue());
+            if(commandId == upper)
+            {
+                return;
+            }
+            from = commandId + 1;
+        }
+    }
+
+    private boolean inRing(int commandId)
+    {
+        return _size != 0 && !lt(commandId, _head) && lt(commandId, _tail);
+    }
+
+    private void moveToStragglers(int head)
+    {
+        while(_size != 0 && lt(_head, head))
+        {
+            int index = _head & _mask;
+            if(_listeners[index] != null)
+            {
+                _stragglers.put(_head, _listeners[index]);
+                _listeners[index] = null;
+                _size--;
+            }
+            _head++;
+        }
+        if(_size == 0)
+        {
+            _head = head;
+            _tail = head;
+        }
+    }
+
+    private void ensureCapacity(int span)
+    {
+        if(span > _listeners.length)
+        {
+            int capacity = _listeners.length;
+            while(capacity < span)
+            {
+                capacity <<= 1;
+            }
+
+            MessageDispositionChangeListener[] listeners = new MessageDispositionChangeListener[capacity];
+            int mask = capacity - 1;
+            if(_size != 0)
+            {
+                for(int commandId = _head; commandId != _tail; commandId++)
+                {
+                    listeners[commandId & mask] = _listeners[commandId & _mask];
+                }
+            }
+            _listeners = listeners;
+            _mask = mask;
+        }
+    }
+}
@@ -25,15 +25,12 @@ import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -83,7 +80,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.apache.qpid.server.logging.subjects.LogSubjectFormat.CHANNEL_FORMAT;
-import static org.apache.qpid.util.Serial.gt;
 
 public class ServerSession extends Session
         implements AuthorizationHolder,
@@ -124,8 +120,7 @@ public class ServerSession extends Session
     }
 
 
-    private final SortedMap<Integer, MessageDispositionChangeListener> _messageDispositionListenerMap =
-            new ConcurrentSkipListMap<Integer, MessageDispositionChangeListener>();
+    private final MessageDispositionListenerRing _messageDispositionListeners = new MessageDispositionListenerRing();
 
     private ServerTransaction _transaction;
 
@@ -207,7 +202,7 @@ public class ServerSession extends Session
 
     public void onMessageDispositionChange(MessageTransfer xfr, MessageDispositionChangeListener acceptListener)
     {
-        _messageDispositionListenerMap.put(xfr.getId(), acceptListener);
+        _messageDispositionListeners.put(xfr.getId(), acceptListener);
     }
 
 
@@ -252,110 +247,50 @@ public class ServerSession extends Session
 
     public RangeSet acquire(RangeSet transfers)
     {
-        RangeSet acquired = RangeSetFactory.createRangeSet();
+        final RangeSet acquired = RangeSetFactory.createRangeSet();
 
-        if(!_messageDispositionListenerMap.isEmpty())
+        if(_messageDispositionListeners.size() != 0)
         {
-            Iterator<Integer> unacceptedMessages = _messageDispositionListenerMap.keySet().iterator();
-            Iterator<Range> rangeIter = transfers.iterator();
-
-            if(rangeIter.hasNext())
+            MessageDispositionListenerRing.Visitor acquirer = new MessageDispositionListenerRing.Visitor()
             {
-                Range range = rangeIter.next();
-
-                while(range != null && unacceptedMessages.hasNext())
+                public void visit(int commandId, MessageDispositionChangeListener listener)
                 {
-                    int next = unacceptedMessages.next();
-                    while(gt(next, range.getUpper()))
-                    {
-                        if(rangeIter.hasNext())
-                        {
-                            range = rangeIter.next();
-                        }
-                        else
-                        {
-                            range = null;
-                            break;
-                        }
-                    }
-                    if(range != null && range.includes(next))
+                    if(listener.acquire())
                     {
-                        MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.get(next);
-                        if(changeListener != null && changeListener.acquire())
-                        {
-                            acquired.add(next);
-                        }
+                        acquired.add(commandId);
                     }
-
-
                 }
-
+            };
+            for(Range range : transfers)
+            {
+                _messageDispositionListeners.visit(range, acquirer);
             }
-
-
         }
 
         return acquired;
     }
 
-    public void dispositionChange(RangeSet ranges, MessageDispositionAction action)
+    public void dispositionChange(RangeSet ranges, final MessageDispositionAction action)
     {
-        if(ranges != null)
+        if(ranges != null && _messageDispositionListeners.size() != 0)
         {
-
-            if(ranges.size() == 1)
+            MessageDispositionListenerRing.Visitor performer = new MessageDispositionListenerRing.Visitor()
             {
-                Range r = ranges.getFirst();
-                for(int i = r.getLower(); i <= r.getUpper(); i++)
+                public void visit(int commandId, MessageDispositionChangeListener listener)
                 {
-                    MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.remove(i);
-                    if(changeListener != null)
-                    {
-                        action.performAction(changeListener);
-                    }
+                    action.performAction(listener);
                 }
-            }
-            else if(!_messageDispositionListenerMap.isEmpty())
+            };
+            for(Range range : ranges)
             {
-                Iterator<Integer> unacceptedMessages = _messageDispositionListenerMap.keySet().iterator();
-                Iterator<Range> rangeIter = ranges.iterator();
-
-                if(rangeIter.hasNext())
-                {
-                    Range range = rangeIter.next();
-
-                    while(range != null && unacceptedMessages.hasNext())
-                    {
-                        int next = unacceptedMessages.next();
-                        while(gt(next, range.getUpper()))
-                        {
-                            if(rangeIter.hasNext())
-                            {
-                                range = rangeIter.next();
-                            }
-                            else
-                            {
-                                range = null;
-                                break;
-                            }
-                        }
-                        if(range != null && range.includes(next))
-                        {
-                            MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.remove(next);
-                            action.performAction(changeListener);
-                        }
-
-
-                    }
-
-                }
+                _messageDispositionListeners.remove(range, performer);
             }
         }
     }
 
     public void removeDispositionListener(Method method)
     {
-        _messageDispositionListenerMap.remove(method.getId());
+        _messageDispositionListeners.remove(method.getId());
     }
 
     public void onClose()
@@ -369,11 +304,10 @@ public class ServerSession extends Session
             getVirtualHost().getDtxRegistry().endAssociations(this);
         }
 
-        for(MessageDispositionChangeListener listener : _messageDispositionListenerMap.values())
+        for(MessageDispositionChangeListener listener : _messageDispositionListeners.removeAll())
         {
             listener.onRelease(true);
         }
-        _messageDispositionListenerMap.clear();
 
         for (Task task : _taskList)
         {
@@ -548,9 +482,21 @@ public class ServerSession extends Session
     }
 
 
-    public void commit()
+    /**
+     * Commits the session's transaction, running the completion action, as for the other asynchronous commands,
+     * once the store has completed the transaction, rather than waiting for it.
+     */
+    public void commit(ServerTransaction.Action completionAction)
     {
-        _transaction.commit();
+        if(_transaction instanceof LocalTransaction)
+        {
+            recordFuture(((LocalTransaction) _transaction).commitAsync(null), completionAction);
+        }
+        else
+        {
+            _transaction.commit();
+            recordFuture(StoreFuture.IMMEDIATE_FUTURE, completionAction);
+        }
 
         _txnCommits.incrementAndGet();
         _txnStarts.incrementAndGet();
@@ -875,7 +821,7 @@ public class ServerSession extends Session
 
     public int getUnacknowledgedMessageCount()
     {
-        return _messageDispositionListenerMap.size();
+        return _messageDispositionListeners.size();
     }
 
     public boolean getBlocking()
@@ -890,8 +836,8 @@ public class ServerSession extends Session
         AsyncCommand cmd;
         while((cmd = _unfinishedCommandsQueue.peek()) != null && cmd.isReadyForCompletion())
         {
-            cmd.complete();
             _unfinishedCommandsQueue.poll();
+            cmd.complete();
         }
         while(_unfinishedCommandsQueue.size() > UNFINISHED_COMMAND_QUEUE_THRESHOLD)
         {
@@ -936,14 +882,30 @@ public class ServerSession extends Session
 
         void awaitReadyForCompletion()
         {
-            _future.waitForCompletion();
+            try
+            {
+                _future.waitForCompletion();
+            }
+            catch(RuntimeException e)
+            {
+                // the failure is reported by complete()
+            }
         }
 
         void complete()
         {
-            if(!_future.isComplete())
+            try
             {
-                _future.waitForCompletion();
+                if(!_future.isComplete())
+                {
+                    _future.waitForCompletion();
+                }
+            }
+            catch(RuntimeException e)
+            {
+                _action.onRollback();
+                _action = null;
+                throw e;
             }
             _action.postCommit();
             _action = null;
@@ -951,7 +913,15 @@ public class ServerSession extends Session
 
         boolean isReadyForCompletion()
         {
-            return _future.isComplete();
+            try
+            {
+                return _future.isComplete();
+            }
+            catch(RuntimeException e)
+            {
+                // the failure is reported by complete()
+                return true;
+            }
         }
     }
 
@@ -108,8 +108,17 @@ public class ServerSessionDelegate extends SessionDelegate
 
                 if (method.isSync())
                 {
-                    ((ServerSession)session).awaitCommandCompletion();
-                    session.flushProcessed();
+                    if(((ServerSession)session).getAsyncCommandMark() == null)
+                    {
+                        session.flushProcessed();
+                    }
+                    else
+                    {
+                        // rather than block the connection, report completion once the store has completed the
+                        // outstanding commands, letting the commits of other sessions be flushed together
+                        ((ServerSession)session).recordFuture(StoreFuture.IMMEDIATE_FUTURE,
+                                                              new FlushProcessedAction((ServerSession)session));
+                    }
                 }
             }
         }
@@ -431,7 +440,8 @@ public class ServerSessionDelegate extends SessionDelegate
     public void txCommit(Session session, TxCommit method)
     {
         // TODO - check current tx mode
-        ((ServerSession)session).commit();
+        ServerSession serverSession = (ServerSession) session;
+        serverSession.commit(new CommandProcessedAction(serverSession, method));
     }
 
     @Override
@@ -1575,6 +1585,25 @@ public class ServerSessionDelegate extends SessionDelegate
         SecurityManager.setThreadSubject(scon.getAuthorizedSubject());
     }
 
+    private static class FlushProcessedAction implements ServerTransaction.Action
+    {
+        private final ServerSession _serverSession;
+
+        public FlushProcessedAction(final ServerSession serverSession)
+        {
+            _serverSession = serverSession;
+        }
+
+        public void postCommit()
+        {
+            _serverSession.flushProcessed();
+        }
+
+        public void onRollback()
+        {
+        }
+    }
+
     private static class CommandProcessedAction implements ServerTransaction.Action
     {
         private final ServerSession _serverSession;
@@ -34,6 +34,7 @@ import org.apache.qpid.server.store.Transaction;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -41,6 +42,10 @@ import java.util.List;
  * operations share a single long-lived transaction.
  * 
  * The caller is responsible for invoking commit() (or rollback()) as necessary.
+ *
+ * A transaction committed with commitAsync() is handed to the store and a new transaction may be started
+ * straight away. The post transaction actions of asynchronously committed transactions are run in the order
+ * the transactions were committed, once the store has completed each of them and every earlier one.
  */
 public class LocalTransaction implements ServerTransaction
 {
@@ -53,7 +58,8 @@ public class LocalTransaction implements ServerTransaction
     private final MessageStore _transactionLog;
     private volatile long _txnStartTime = 0L;
     private volatile long _txnUpdateTime = 0l;
-    private StoreFuture _asyncTran;
+    /** transactions committed asynchronously whose post transaction actions may not yet have been run */
+    private final LinkedList<AsyncCommit> _asyncCommits = new LinkedList<AsyncCommit>();
 
     public LocalTransaction(MessageStore transactionLog)
     {
@@ -87,13 +93,11 @@ public class LocalTransaction implements ServerTransaction
 
     public void addPostTransactionAction(Action postTransactionAction)
     {
-        sync();
         _postTransactionActions.add(postTransactionAction);
     }
 
     public void dequeue(BaseQueue queue, EnqueableMessage message, Action postTransactionAction)
     {
-        sync();
         _postTransactionActions.add(postTransactionAction);
         initTransactionStartTimeIfNecessaryAndAdvanceUpdateTime();
 
@@ -120,7 +124,6 @@ public class LocalTransaction implements ServerTransaction
 
     public void dequeue(Collection<QueueEntry> queueEntries, Action postTransactionAction)
     {
-        sync();
         _postTransactionActions.add(postTransactionAction);
         initTransactionStartTimeIfNecessaryAndAdvanceUpdateTime();
 
@@ -197,7 +200,6 @@ public class LocalTransaction implements ServerTransaction
 
     public void enqueue(BaseQueue queue, EnqueableMessage message, Action postTransactionAction)
     {
-        sync();
         _postTransactionActions.add(postTransactionAction);
         initTransactionStartTimeIfNecessaryAndAdvanceUpdateTime();
 
@@ -224,7 +226,6 @@ public class LocalTransaction implements ServerTransaction
 
     public void enqueue(List<? extends BaseQueue> queues, EnqueableMessage message, Action postTransactionAction)
     {
-        sync();
         _postTransactionActions.add(postTransactionAction);
         initTransactionStartTimeIfNecessaryAndAdvanceUpdateTime();
 
@@ -294,7 +295,12 @@ public class LocalTransaction implements ServerTransaction
 
     private void doRollbackActions()
     {
-        for(Action action : _postTransactionActions)
+        doRollbackActions(_postTransactionActions);
+    }
+
+    private static void doRollbackActions(List<Action> postTransactionActions)
+    {
+        for(Action action : postTransactionActions)
         {
             action.onRollback();
         }
@@ -302,109 +308,53 @@ public class LocalTransaction implements ServerTransaction
 
     public StoreFuture commitAsync(final Runnable deferred)
     {
-        sync();
+        removeCompletedAsyncCommits();
+
+        final Transaction transaction = _transaction;
+        final List<Action> postTransactionActions = new ArrayList<Action>(_postTransactionActions);
+        resetDetails();
+
         try
         {
-            StoreFuture future = StoreFuture.IMMEDIATE_FUTURE;
-            if(_transaction != null)
+            if(transaction == null && _asyncCommits.isEmpty())
             {
-                future = new StoreFuture()
-                        {
-                            private volatile boolean _completed = false;
-                            private StoreFuture _underlying = _transaction.commitTranAsync();
-
-                            @Override
-                            public boolean isComplete()
-                            {
-                                return _completed || checkUnderlyingCompletion();
-                            }
-
-                            @Override
-                            public void waitForCompletion()
-                            {
-                                if(!_completed)
-                                {
-                                    _underlying.waitForCompletion();
-                                    checkUnderlyingCompletion();
-                                }
-                            }
-
-                            private synchronized boolean checkUnderlyingCompletion()
-                            {
-                                if(!_completed && _underlying.isComplete())
-                                {
-                                    completeDeferredWork();
-                                    _completed = true;
-                                }
-                                return _completed;
-
-                            }
-
-                            private void completeDeferredWork()
-                            {
-                                try
-                                {
-                                    doPostTransactionActions();
-                                    deferred.run();
-
-                                }
-                                catch (Exception e)
-                                {
-                                    _logger.error("Failed to commit transaction", e);
-
-                                    doRollbackActions();
-                                    throw new RuntimeException("Failed to commit transaction", e);
-                                }
-                                finally
-                                {
-                                    resetDetails();
-                                }
-                            }
-
-                };
-                _asyncTran = future;
-            }
-            else
-            {
-                try
+                doPostTransactionActions(postTransactionActions);
+                if(deferred != null)
                 {
-                    doPostTransactionActions();
-
                     deferred.run();
                 }
-                finally
-                {
-                    resetDetails();
-                }
+                return StoreFuture.IMMEDIATE_FUTURE;
             }
 
+            // without store work the commit must still wait for the earlier ones to complete, to keep their order
+            StoreFuture underlying = transaction == null ? StoreFuture.IMMEDIATE_FUTURE : transaction.commitTranAsync();
+            AsyncCommit future = new AsyncCommit(underlying, postTransactionActions, deferred, _asyncCommits.peekLast());
+            _asyncCommits.add(future);
             return future;
         }
         catch (Exception e)
         {
             _logger.error("Failed to commit transaction", e);
-            try
-            {
-                doRollbackActions();
-            }
-            finally
-            {
-                resetDetails();
-            }
+            doRollbackActions(postTransactionActions);
             throw new RuntimeException("Failed to commit transaction", e);
         }
     }
 
     private void doPostTransactionActions()
+    {
+        doPostTransactionActions(_postTransactionActions);
+    }
+
+    private static void doPostTransactionActions(List<Action> postTransactionActions)
     {
         if(_logger.isDebugEnabled())
         {
-            _logger.debug("Beginning " + _postTransactionActions.size() + " post transaction actions");
+            _logger.debug("Beginning " + postTransactionActions.size() + " post transaction actions");
         }
 
-        for(int i = 0; i < _postTransactionActions.size(); i++)
+        for(int i = 0; i < postTransactionActions.size(); i++)
         {
-            _postTransactionActions.get(i).postCommit();
+            postTransactionActions.get(i).postCommit();
         }
 
         if(_logger.isDebugEnabled())
@@ -441,12 +391,46 @@ public class LocalTransaction implements ServerTransaction
         }
     }
 
+    /**
+     * Waits for the asynchronous commits to complete, running their post transaction actions.  Failed commits
+     * are reported through their own futures, not thrown from here.
+     */
     public void sync()
     {
-        if(_asyncTran != null)
+        completeAsyncCommits(null);
+    }
+
+    /**
+     * Runs the post transaction actions of the asynchronous commits which the store has already completed.  A
+     * failed commit is reported through its own future.
+     */
+    private void removeCompletedAsyncCommits()
+    {
+        AsyncCommit commit;
+        while((commit = _asyncCommits.peek()) != null && commit.checkUnderlyingCompletion())
         {
-            _asyncTran.waitForCompletion();
-            _asyncTran = null;
+            _asyncCommits.poll();
+        }
+    }
+
+    /**
+     * Waits for the asynchronous commits up to and including the given one to complete, or for all of them.
+     */
+    private void completeAsyncCommits(AsyncCommit last)
+    {
+        if(last != null && last._completed)
+        {
+            return;
+        }
+
+        AsyncCommit commit;
+        while((commit = _asyncCommits.poll()) != null)
+        {
+            commit.awaitUnderlyingCompletion();
+            if(commit == last)
+            {
+                break;
+            }
         }
     }
 
@@ -463,7 +447,6 @@ public class LocalTransaction implements ServerTransaction
 
     private void resetDetails()
     {
-        _asyncTran = null;
         _transaction = null;
         _postTransactionActions.clear();
         _txnStartTime = 0L;
@@ -480,4 +463,150 @@ public class LocalTransaction implements ServerTransaction
         long getActivityTime();
     }
 
+    /**
+     * A transaction handed to the store by commitAsync(), with the post transaction actions to run once it and
+     * every earlier asynchronous commit are complete. If the store fails to commit the transaction the rollback
+     * actions are run instead, and the failure is thrown from isComplete() and waitForCompletion() only.
+     */
+    private final class AsyncCommit implements StoreFuture
+    {
+        private final StoreFuture _underlying;
+        private final List<Action> _postTransactionActions;
+        private final Runnable _deferred;
+        private volatile AsyncCommit _previous;
+        private volatile boolean _completed;
+        private volatile RuntimeException _failure;
+
+        private AsyncCommit(StoreFuture underlying, List<Action> postTransactionActions, Runnable deferred,
+                            AsyncCommit previous)
+        {
+            _underlying = underlying;
+            _postTransactionActions = postTransactionActions;
+            _deferred = deferred;
+            _previous = previous;
+        }
+
+        @Override
+        public boolean isComplete()
+        {
+            if(!_completed)
+            {
+                // the earlier commits complete first, so that the post transaction actions run in commit order
+                for(AsyncCommit commit : _asyncCommits)
+                {
+                    if(commit == this || !commit.checkUnderlyingCompletion())
+                    {
+                        break;
+                    }
+                }
+                checkUnderlyingCompletion();
+            }
+            checkCommitted();
+            return _completed;
+        }
+
+        @Override
+        public void waitForCompletion()
+        {
+            if(!_completed)
+            {
+                completeAsyncCommits(this);
+            }
+            checkCommitted();
+        }
+
+        private void checkCommitted()
+        {
+            RuntimeException failure = _failure;
+            if(failure != null)
+            {
+                throw failure;
+            }
+        }
+
+        /**
+         * Called once every earlier asynchronous commit is complete.  A failure is reported only through this
+         * commit's own future, never to whoever is waiting for a later commit, or for all of them.
+         */
+        private void awaitUnderlyingCompletion()
+        {
+            if(!_completed)
+            {
+                try
+                {
+                    _underlying.waitForCompletion();
+                }
+                catch(RuntimeException e)
+                {
+                    fail(e);
+                }
+                checkUnderlyingCompletion();
+            }
+        }
+
+        /**
+         * Completes the commit if it and the earlier ones are complete, without throwing if it failed.
+         */
+        private synchronized boolean checkUnderlyingCompletion()
+        {
+            AsyncCommit previous = _previous;
+            if(!_completed && (previous == null || previous._completed))
+            {
+                boolean complete;
+                try
+                {
+                    complete = _underlying.isComplete();
+                }
+                catch(RuntimeException e)
+                {
+                    fail(e);
+                    return true;
+                }
+
+                if(complete)
+                {
+                    // the store has made the transaction durable, so it is never rolled back from here: an
+                    // action which fails is logged, and the remaining actions are still run
+                    for(Action action : _postTransactionActions)
+                    {
+                        try
+                        {
+                            action.postCommit();
+                        }
+                        catch(RuntimeException e)
+                        {
+                            _logger.error("Failed to run post commit action " + action, e);
+                        }
+                    }
+                    if(_deferred != null)
+                    {
+                        try
+                        {
+                            _deferred.run();
+                        }
+                        catch(RuntimeException e)
+                        {
+                            _logger.error("Failed to run deferred action " + _deferred, e);
+                        }
+                    }
+                    _completed = true;
+                    _previous = null;
+                }
+            }
+            return _completed;
+        }
+
+        private synchronized void fail(RuntimeException e)
+        {
+            if(!_completed)
+            {
+                _logger.error("Failed to commit transaction", e);
+                _failure = new RuntimeException("Failed to commit transaction", e);
+                _completed = true;
+                _previous = null;
+                doRollbackActions(_postTransactionActions);
+            }
+        }
+    }
+
 }
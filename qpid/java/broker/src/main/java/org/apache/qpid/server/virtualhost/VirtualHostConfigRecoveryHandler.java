@@ -23,10 +23,15 @@ package org.apache.qpid.server.virtualhost;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.AMQException;
@@ -34,12 +39,13 @@ import org.apache.qpid.AMQStoreException;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.server.binding.BindingFactory;
+import org.apache.qpid.server.configuration.BrokerProperties;
 import org.apache.qpid.server.exchange.Exchange;
+import org.apache.qpid.server.logging.LogActor;
 import org.apache.qpid.server.logging.actors.CurrentActor;
 import org.apache.qpid.server.logging.messages.TransactionLogMessages;
 import org.apache.qpid.server.logging.subjects.MessageStoreLogSubject;
 import org.apache.qpid.server.message.AMQMessage;
-import org.apache.qpid.server.message.AbstractServerMessageImpl;
 import org.apache.qpid.server.message.EnqueableMessage;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.MessageTransferMessage;
@@ -51,10 +57,10 @@ import org.apache.qpid.server.queue.QueueEntry;
 import org.apache.qpid.server.store.ConfigurationRecoveryHandler;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.MessageStoreRecoveryHandler;
+import org.apache.qpid.server.store.QueueEntryReader;
 import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.store.Transaction;
 import org.apache.qpid.server.store.TransactionLogRecoveryHandler;
-import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.txn.DtxBranch;
 import org.apache.qpid.server.txn.DtxRegistry;
 import org.apache.qpid.server.txn.ServerTransaction;
@@ -62,6 +68,14 @@ import org.apache.qpid.transport.Xid;
 import org.apache.qpid.transport.util.Functions;
 import org.apache.qpid.util.ByteBufferInputStream;
 
+/**
+ * Recovers the durable state of a virtualhost from its message store.
+ *
+ * The exchanges, queues and bindings are recovered as the store is activated, so that the virtualhost can accept
+ * connections straight away. The entries of each queue are then read back from the store on a pool of
+ * qpid.broker_recovery_threads threads, or by the first thread to use the queue before its turn. New enqueues and
+ * subscriptions on a queue are held back until its entries have been recovered, so they cannot overtake them.
+ */
 public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHandler,
                                                         ConfigurationRecoveryHandler.QueueRecoveryHandler,
                                                         ConfigurationRecoveryHandler.ExchangeRecoveryHandler,
@@ -74,14 +88,18 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
 {
     private static final Logger _logger = Logger.getLogger(VirtualHostConfigRecoveryHandler.class);
 
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
     private final VirtualHost _virtualHost;
 
-    private final Map<String, Integer> _queueRecoveries = new TreeMap<String, Integer>();
-    private final Map<Long, ServerMessage> _recoveredMessages = new HashMap<Long, ServerMessage>();
-    private final Map<Long, StoredMessage> _unusedMessages = new HashMap<Long, StoredMessage>();
+    /** the queues whose entries are to be recovered from the store */
+    private final List<AMQQueue> _recoveringQueues = new ArrayList<AMQQueue>();
 
     private MessageStoreLogSubject _logSubject;
     private MessageStore _store;
+    private QueueEntryReader _reader;
+    private ExecutorService _recoveryExecutor;
+    private volatile boolean _stopped;
 
     public VirtualHostConfigRecoveryHandler(VirtualHost virtualHost)
     {
@@ -92,6 +110,7 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
     {
         _logSubject = new MessageStoreLogSubject(_virtualHost,store.getClass().getSimpleName());
         _store = store;
+        _stopped = false;
         CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_START(null, false));
 
         return this;
@@ -115,16 +134,18 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
                     if (altExchange == null)
                     {
                         _logger.error("Unknown exchange id " + alternateExchangeId + ", cannot set alternate exchange on queue with id " + id);
-                        return;
                     }
-                    q.setAlternateExchange(altExchange);
+                    else
+                    {
+                        q.setAlternateExchange(altExchange);
+                    }
                 }
             }
     
             CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_START(queueName, true));
     
             //Record that we have a queue for recovery
-            _queueRecoveries.put(queueName, 0);
+            _recoveringQueues.add(q);
         }
         catch (AMQException e)
         {
@@ -167,26 +188,33 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
         return this;
     }
 
-    public void message(StoredMessage message)
+    private ServerMessage readMessage(long messageId)
+    {
+        try
+        {
+            StoredMessage storedMessage = _reader.readMessage(messageId);
+            return storedMessage == null ? null : createServerMessage(storedMessage);
+        }
+        catch (AMQStoreException e)
+        {
+            throw new RuntimeException("Error reading message " + messageId + " from the store", e);
+        }
+    }
+
+    private static ServerMessage createServerMessage(StoredMessage storedMessage)
     {
-        ServerMessage serverMessage;
-        switch(message.getMetaData().getType())
+        switch(storedMessage.getMetaData().getType())
         {
             case META_DATA_0_8:
-                serverMessage = new AMQMessage(message);
-                break;
+                return new AMQMessage(storedMessage);
             case META_DATA_0_10:
-                serverMessage = new MessageTransferMessage(message, null);
-                break;
+                return new MessageTransferMessage(storedMessage, null);
             case META_DATA_1_0:
-                serverMessage = new Message_1_0(message);
-                break;
+                return new Message_1_0(storedMessage);
             default:
-                throw new RuntimeException("Unknown message type retrieved from store " + message.getMetaData().getClass());
+                throw new RuntimeException("Unknown message type retrieved from store "
+                                           + storedMessage.getMetaData().getClass());
         }
-
-        _recoveredMessages.put(message.getMessageNumber(), serverMessage);
-        _unusedMessages.put(message.getMessageNumber(), message);
     }
 
     public void completeMessageRecovery()
@@ -210,9 +238,10 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
             final AMQQueue queue = _virtualHost.getQueueRegistry().getQueue(record.getQueue().getId());
             if(queue != null)
             {
+                // the queue's own entries are read before the branch holds locks on any new ones in the store
+                queue.completeRecovery();
                 final long messageId = record.getMessage().getMessageNumber();
-                final ServerMessage message = _recoveredMessages.get(messageId);
-                _unusedMessages.remove(messageId);
+                final ServerMessage message = readMessage(messageId);
 
                 if(message != null)
                 {
@@ -271,13 +300,15 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
             if(queue != null)
             {
                 final long messageId = record.getMessage().getMessageNumber();
-                final ServerMessage message = _recoveredMessages.get(messageId);
-                _unusedMessages.remove(messageId);
 
-                if(message != null)
+                // the entry is only on the queue once the queue's own entries have been recovered
+                queue.completeRecovery();
+                final QueueEntry entry = queue.getMessageOnTheQueue(messageId);
+
+                if(entry != null)
                 {
-                    final QueueEntry entry = queue.getMessageOnTheQueue(messageId);
-                    
+                    final ServerMessage message = entry.getMessage();
+
                     entry.acquire();
                     
                     branch.dequeue(queue, message);
@@ -340,14 +371,97 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
                     .append(')');
     }
 
+    /**
+     * Starts recovering the entries of the queues not already recovered for a prepared transaction. The store, and
+     * so the virtualhost, becomes active meanwhile.
+     */
     public void completeDtxRecordRecovery()
     {
-        for(StoredMessage m : _unusedMessages.values())
+        final List<AMQQueue> queues = new ArrayList<AMQQueue>(_recoveringQueues);
+        _recoveringQueues.clear();
+        final LogActor actor = CurrentActor.get();
+        if(queues.isEmpty())
+        {
+            completeStoreRecovery();
+            return;
+        }
+
+        int threads = Integer.getInteger(BrokerProperties.PROPERTY_RECOVERY_THREADS,
+                                         Runtime.getRuntime().availableProcessors());
+        _recoveryExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, queues.size())), new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "QueueRecovery-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final AtomicInteger remaining = new AtomicInteger(queues.size());
+        for(final AMQQueue queue : queues)
+        {
+            _recoveryExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    queue.completeRecovery();
+                    if(remaining.decrementAndGet() == 0)
+                    {
+                        CurrentActor.set(actor);
+                        try
+                        {
+                            completeStoreRecovery();
+                        }
+                        finally
+                        {
+                            CurrentActor.remove();
+                        }
+                    }
+                }
+            });
+        }
+        _recoveryExecutor.shutdown();
+    }
+
+    private void completeStoreRecovery()
+    {
+        if(!_stopped)
         {
-            _logger.warn("Message id " + m.getMessageNumber() + " in store, but not in any queue - removing....");
-            m.remove();
+            try
+            {
+                _reader.removeUnreferenced();
+            }
+            catch (AMQStoreException e)
+            {
+                _logger.error("Failed to remove unreferenced queue entries and messages from the store", e);
+            }
+            CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_COMPLETE(null, false));
+        }
+    }
+
+    /**
+     * Stops recovering queue entries, leaving queues not yet recovered partially or wholly empty, so that the store
+     * can be closed.
+     */
+    public void stopRecovery()
+    {
+        _stopped = true;
+        ExecutorService executor = _recoveryExecutor;
+        if(executor != null)
+        {
+            try
+            {
+                while(!executor.awaitTermination(1, TimeUnit.MINUTES))
+                {
+                    _logger.info("Waiting for the recovery of queue entries to stop");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
         }
-        CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_COMPLETE(null, false));
     }
 
     @Override
@@ -413,81 +527,107 @@ public class VirtualHostConfigRecoveryHandler implements ConfigurationRecoveryHa
 
     }
 
-    public void queueEntry(final UUID queueId, long messageId)
+    public DtxRecordRecoveryHandler completeQueueEntryRecovery(QueueEntryReader reader)
     {
-        AMQQueue queue = _virtualHost.getQueueRegistry().getQueue(queueId);
-        try
+        _reader = reader;
+        final LogActor actor = CurrentActor.get();
+        for(final AMQQueue queue : _recoveringQueues)
         {
-            if(queue != null)
+            queue.setRecovery(new Runnable()
             {
-                String queueName = queue.getName();
-                ServerMessage message = _recoveredMessages.get(messageId);
-                _unusedMessages.remove(messageId);
-
-                if(message != null)
+                public void run()
                 {
-
-
-                    if (_logger.isDebugEnabled())
+                    CurrentActor.set(actor);
+                    try
                     {
-                        _logger.debug("On recovery, delivering " + message.getMessageNumber() + " to " + queueName);
+                        recoverQueueEntries(queue);
                     }
-
-                    Integer count = _queueRecoveries.get(queueName);
-                    if (count == null)
+                    finally
                     {
-                        count = 0;
+                        CurrentActor.remove();
                     }
+                }
+            });
+        }
+        return this;
+    }
 
-                    queue.enqueue(message);
+    private void recoverQueueEntries(final AMQQueue queue)
+    {
+        if(_stopped)
+        {
+            return;
+        }
 
-                    _queueRecoveries.put(queueName, ++count);
+        final String queueName = queue.getName();
+        final AtomicInteger count = new AtomicInteger();
+        final List<Long> unknownMessageIds = new ArrayList<Long>();
+        try
+        {
+            _reader.readQueueEntries(queue.getId(), new QueueEntryReader.QueueEntryHandler()
+            {
+                public boolean queueEntry(long messageId, StoredMessage<?> storedMessage)
+                {
+                    if(_stopped)
+                    {
+                        return false;
+                    }
+                    if(storedMessage == null)
+                    {
+                        unknownMessageIds.add(messageId);
+                    }
+                    else
+                    {
+                        recoverQueueEntry(queue, createServerMessage(storedMessage));
+                        count.incrementAndGet();
+                    }
+                    return true;
                 }
-                else
+            });
+
+            // the entries are discarded once the read is over, as the store may hold the entry being read
+            if(!unknownMessageIds.isEmpty())
+            {
+                Transaction txn = _store.newTransaction();
+                for(Long messageId : unknownMessageIds)
                 {
                     _logger.warn("Message id " + messageId + " referenced in log as enqueued in queue " + queueName + " is unknown, entry will be discarded");
-                    Transaction txn = _store.newTransaction();
                     txn.dequeueMessage(queue, new DummyMessage(messageId));
-                    txn.commitTranAsync();
                 }
-            }
-            else
-            {
-                _logger.warn("Message id " + messageId + " in log references queue with id " + queueId + " which is not in the configuration, entry will be discarded");
-                Transaction txn = _store.newTransaction();
-                TransactionLogResource mockQueue =
-                        new TransactionLogResource()
-                        {
-                            @Override
-                            public UUID getId()
-                            {
-                                return queueId;
-                            }
-                        };
-                txn.dequeueMessage(mockQueue, new DummyMessage(messageId));
                 txn.commitTranAsync();
             }
 
+            if(!_stopped)
+            {
+                CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERED(count.get(), queueName));
+                CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_COMPLETE(queueName, true));
+            }
         }
-        catch(AMQException e)
+        catch (AMQStoreException e)
         {
-            throw new RuntimeException(e);
+            _logger.error("Failed to recover the entries of queue " + queueName, e);
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Failed to recover the entries of queue " + queueName, e);
         }
     }
 
-    public DtxRecordRecoveryHandler completeQueueEntryRecovery()
+    private void recoverQueueEntry(AMQQueue queue, ServerMessage message)
     {
-
-        for(Map.Entry<String,Integer> entry : _queueRecoveries.entrySet())
+        if (_logger.isDebugEnabled())
         {
-            CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERED(entry.getValue(), entry.getKey()));
-
-            CurrentActor.get().message(_logSubject, TransactionLogMessages.RECOVERY_COMPLETE(entry.getKey(), true));
+            _logger.debug("On recovery, delivering " + message.getMessageNumber() + " to " + queue.getName());
         }
 
-
-
-        return this;
+        try
+        {
+            queue.enqueue(message);
+        }
+        catch(AMQException e)
+        {
+            throw new RuntimeException(e);
+        }
     }
 
     private static class DummyMessage implements EnqueableMessage
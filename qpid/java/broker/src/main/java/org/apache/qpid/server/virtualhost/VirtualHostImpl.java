@@ -56,6 +56,7 @@ import org.apache.qpid.server.queue.AMQQueueFactory;
 import org.apache.qpid.server.queue.DefaultQueueRegistry;
 import org.apache.qpid.server.queue.QueueRegistry;
 import org.apache.qpid.server.security.SecurityManager;
+import org.apache.qpid.server.stats.HistogramStatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsGatherer;
 import org.apache.qpid.server.store.Event;
@@ -102,6 +103,8 @@ public class VirtualHostImpl implements VirtualHost, IConnectionRegistry.Registr
 
     private final MessageStore _messageStore;
 
+    private VirtualHostConfigRecoveryHandler _recoveryHandler;
+
     private volatile State _state = State.INITIALISING;
 
     private StatisticsCounter _messagesDelivered, _dataDelivered, _messagesReceived, _dataReceived;
@@ -297,10 +300,10 @@ public class VirtualHostImpl implements VirtualHost, IConnectionRegistry.Registr
         messageStore.addEventListener(new BeforeCloseListener(), Event.BEFORE_CLOSE);
         messageStore.addEventListener(new BeforePassivationListener(), Event.BEFORE_PASSIVATE);
 
-        VirtualHostConfigRecoveryHandler recoveryHandler = new VirtualHostConfigRecoveryHandler(this);
+        _recoveryHandler = new VirtualHostConfigRecoveryHandler(this);
 
-        messageStore.configureConfigStore(getName(), recoveryHandler, hostConfig.getStoreConfiguration());
-        messageStore.configureMessageStore(getName(), recoveryHandler, recoveryHandler, hostConfig.getStoreConfiguration());
+        messageStore.configureConfigStore(getName(), _recoveryHandler, hostConfig.getStoreConfiguration());
+        messageStore.configureMessageStore(getName(), _recoveryHandler, _recoveryHandler, hostConfig.getStoreConfiguration());
 
         return messageStore;
     }
@@ -533,9 +536,9 @@ public class VirtualHostImpl implements VirtualHost, IConnectionRegistry.Registr
     public void initialiseStatistics()
     {
         _messagesDelivered = new StatisticsCounter("messages-delivered-" + getName());
-        _dataDelivered = new StatisticsCounter("bytes-delivered-" + getName());
+        _dataDelivered = new HistogramStatisticsCounter("bytes-delivered-" + getName());
         _messagesReceived = new StatisticsCounter("messages-received-" + getName());
-        _dataReceived = new StatisticsCounter("bytes-received-" + getName());
+        _dataReceived = new HistogramStatisticsCounter("bytes-received-" + getName());
     }
 
     public synchronized LinkRegistry getLinkRegistry(String remoteContainerId)
@@ -673,6 +676,7 @@ public class VirtualHostImpl implements VirtualHost, IConnectionRegistry.Registr
 
                 _connectionRegistry.close(IConnectionRegistry.VHOST_PASSIVATE_REPLY_TEXT);
                 removeHouseKeepingTasks();
+                _recoveryHandler.stopRecovery();
 
                 _queueRegistry.stopAllAndUnregisterMBeans();
                 _exchangeRegistry.clearAndUnregisterMbeans();
@@ -695,6 +699,7 @@ public class VirtualHostImpl implements VirtualHost, IConnectionRegistry.Registr
         public void event(Event event)
         {
             shutdownHouseKeeping();
+            _recoveryHandler.stopRecovery();
         }
     }
 
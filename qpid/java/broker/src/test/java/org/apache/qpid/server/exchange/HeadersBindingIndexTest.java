@@ -0,0 +1,290 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.server.binding.Binding;
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.queue.BaseQueue;
+import org.apache.qpid.server.queue.MockAMQQueue;
+
+public class HeadersBindingIndexTest extends TestCase
+{
+    private static class MockHeader implements AMQMessageHeader
+    {
+
+        private final Map<String, Object> _headers = new HashMap<String, Object>();
+
+        public String getCorrelationId()
+        {
+            return null;
+        }
+
+        public long getExpiration()
+        {
+            return 0;
+        }
+
+        public String getUserId()
+        {
+            return null;
+        }
+
+        public String getAppId()
+        {
+            return null;
+        }
+
+        public String getMessageId()
+        {
+            return null;
+        }
+
+        public String getMimeType()
+        {
+            return null;
+        }
+
+        public String getEncoding()
+        {
+            return null;
+        }
+
+        public byte getPriority()
+        {
+            return 0;
+        }
+
+        public long getTimestamp()
+        {
+            return 0;
+        }
+
+        public String getType()
+        {
+            return null;
+        }
+
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        public String getReplyToExchange()
+        {
+            return null;
+        }
+
+        public String getReplyToRoutingKey()
+        {
+            return null;
+        }
+
+        public Object getHeader(String name)
+        {
+            return _headers.get(name);
+        }
+
+        public boolean containsHeaders(Set<String> names)
+        {
+            return _headers.keySet().containsAll(names);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames()
+        {
+            return _headers.keySet();
+        }
+
+        public boolean containsHeader(String name)
+        {
+            return _headers.containsKey(name);
+        }
+
+        public void setString(String key, String value)
+        {
+            setObject(key,value);
+        }
+
+        public void setObject(String key, Object value)
+        {
+            _headers.put(key,value);
+        }
+    }
+
+    private HeadersBindingIndex _index = new HeadersBindingIndex();
+    private MockAMQQueue _queue1 = new MockAMQQueue("Queue1");
+    private MockAMQQueue _queue2 = new MockAMQQueue("Queue2");
+    private MockAMQQueue _queue3 = new MockAMQQueue("Queue3");
+
+    public void testMatchAll()
+    {
+        bind("key1", _queue1, "x-match", "all", "A", "Value of A", "B", "");
+        bind("key2", _queue2, "x-match", "all", "A", "Value of A", "B", "Value of B");
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B"), _queue1, _queue2);
+        assertRoutedTo(headers("A", "Value of A", "B", "Other value"), _queue1);
+        assertRoutedTo(headers("A", "Value of A"));
+        assertRoutedTo(headers("B", "Value of B"));
+        assertRoutedTo(null);
+    }
+
+    public void testMatchAllPresenceOnly()
+    {
+        bind("key1", _queue1, "A", null, "B", "");
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B", "C", "Value of C"), _queue1);
+        assertRoutedTo(headers("A", "Value of A"));
+    }
+
+    public void testMatchAny()
+    {
+        bind("key1", _queue1, "x-match", "any", "A", "Value of A", "B", "Value of B", "C", "");
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B", "C", "Value of C"), _queue1);
+        assertRoutedTo(headers("B", "Value of B"), _queue1);
+        assertRoutedTo(headers("C", "Value of C"), _queue1);
+        assertRoutedTo(headers("A", "Other value", "B", "Other value"));
+        assertRoutedTo(headers("D", "Value of D"));
+    }
+
+    public void testMatchAnyCountsEachBindingOnce()
+    {
+        Binding binding = bind("key1", _queue1, "x-match", "any", "A", "Value of A", "B", "Value of B");
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B"), _queue1);
+        assertEquals("Unexpected match count", 1, binding.getMatches());
+    }
+
+    public void testUnconditionalBindingMatchesEveryMessage()
+    {
+        bind("key1", _queue1);
+        bind("key2", _queue2, "x-match", "any");
+
+        assertRoutedTo(headers("A", "Value of A"), _queue1, _queue2);
+        assertRoutedTo(null, _queue1, _queue2);
+    }
+
+    public void testQueueBoundMoreThanOnceIsRoutedToOnce()
+    {
+        bind("key1", _queue1, "A", "Value of A");
+        bind("key2", _queue1, "x-match", "any", "A", "", "B", "");
+        bind("key3", _queue2, "B", "Value of B");
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B"), _queue1, _queue2);
+    }
+
+    public void testRemove()
+    {
+        bind("key1", _queue1, "A", "Value of A");
+        bind("key2", _queue2, "x-match", "any", "A", "Value of A", "B", "");
+
+        assertTrue("Binding should have been removed",
+                   _index.remove(new Binding(null, "key2", _queue2, null, Collections.<String, Object>emptyMap())));
+        assertFalse("Binding should already have been removed",
+                    _index.remove(new Binding(null, "key2", _queue2, null, Collections.<String, Object>emptyMap())));
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B"), _queue1);
+        assertRoutedTo(headers("B", "Value of B"));
+        assertEquals(1, _index.size());
+    }
+
+    public void testRebindReplacesArguments()
+    {
+        bind("key1", _queue1, "A", "Value of A");
+        bind("key1", _queue1, "B", "Value of B");
+
+        assertEquals(1, _index.size());
+        assertRoutedTo(headers("A", "Value of A"));
+        assertRoutedTo(headers("B", "Value of B"), _queue1);
+    }
+
+    public void testManyQueues()
+    {
+        MockAMQQueue[] queues = new MockAMQQueue[20];
+        for(int i = 0; i < queues.length; i++)
+        {
+            queues[i] = new MockAMQQueue("Queue" + i);
+            bind("key" + i, queues[i], "x-match", "any", "A", "", "B", "Value of B");
+            bind("other" + i, queues[i], "B", "");
+        }
+
+        assertRoutedTo(headers("A", "Value of A", "B", "Value of B"), queues);
+        bind("key", _queue3, "C", "Value of C");
+        assertRoutedTo(headers("C", "Value of C"), _queue3);
+    }
+
+    public void testRoutedQueuesUnchangedByLaterRouting()
+    {
+        bind("key1", _queue1, "A", "");
+        bind("key2", _queue2, "A", "Value of A");
+        bind("key3", _queue3, "B", "");
+
+        List<BaseQueue> single = _index.route(headers("A", "Other value"));
+        List<BaseQueue> multiple = _index.route(headers("A", "Value of A"));
+        _index.route(headers("B", "Value of B"));
+
+        assertEquals(Collections.<BaseQueue>singletonList(_queue1), single);
+        assertEquals(2, multiple.size());
+        assertTrue(multiple.contains(_queue1));
+        assertTrue(multiple.contains(_queue2));
+    }
+
+    private Binding bind(String key, MockAMQQueue queue, Object... arguments)
+    {
+        Map<String, Object> bindArguments = new HashMap<String, Object>();
+        for(int i = 0; i < arguments.length; i += 2)
+        {
+            bindArguments.put((String) arguments[i], arguments[i + 1]);
+        }
+        Binding binding = new Binding(null, key, queue, null, bindArguments);
+        _index.add(new HeadersBinding(binding));
+        return binding;
+    }
+
+    private MockHeader headers(String... namesAndValues)
+    {
+        MockHeader headers = new MockHeader();
+        for(int i = 0; i < namesAndValues.length; i += 2)
+        {
+            headers.setString(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private void assertRoutedTo(AMQMessageHeader headers, BaseQueue... expected)
+    {
+        List<BaseQueue> queues = _index.route(headers);
+        assertEquals("Unexpected queues for headers " + headers, expected.length, queues.size());
+        for(BaseQueue queue : expected)
+        {
+            assertTrue("Expected " + queue + " for headers " + headers, queues.contains(queue));
+        }
+    }
+}
@@ -23,11 +23,14 @@ package org.apache.qpid.server.exchange;
 import junit.framework.Assert;
 
 import org.apache.qpid.AMQException;
+import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicContentHeaderProperties;
 import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.framing.abstraction.MessagePublishInfo;
 import org.apache.qpid.server.binding.Binding;
+import org.apache.qpid.server.configuration.BrokerProperties;
 import org.apache.qpid.server.message.AMQMessage;
 import org.apache.qpid.server.message.MessageMetaData;
 import org.apache.qpid.server.model.UUIDGenerator;
@@ -41,6 +44,8 @@ import org.apache.qpid.server.util.BrokerTestHelper;
 import org.apache.qpid.server.virtualhost.VirtualHost;
 import org.apache.qpid.test.utils.QpidTestCase;
 
+import java.util.Collections;
+
 public class TopicExchangeTest extends QpidTestCase
 {
 
@@ -361,6 +366,72 @@ public class TopicExchangeTest extends QpidTestCase
 
     }
 
+    public void testRouteCacheReusedUntilBindingsChange() throws AMQException
+    {
+        AMQQueue queue1 = AMQQueueFactory.createAMQQueueImpl(UUIDGenerator.generateRandomUUID(), "q1", false, null, false, false, _vhost, null);
+        AMQQueue queue2 = AMQQueueFactory.createAMQQueueImpl(UUIDGenerator.generateRandomUUID(), "q2", false, null, false, false, _vhost, null);
+        _exchange.registerQueue(new Binding(null, "a.*", queue1, _exchange, null));
+        long invalidations = _exchange.getRouteCacheInvalidations();
+
+        Assert.assertEquals(1, routeMessage(createMessage("a.b")));
+        Assert.assertEquals(1, routeMessage(createMessage("a.b")));
+        Assert.assertEquals("Unexpected cache misses", 1, _exchange.getRouteCacheMisses());
+        Assert.assertEquals("Unexpected cache hits", 1, _exchange.getRouteCacheHits());
+
+        Binding binding2 = new Binding(null, "#.b", queue2, _exchange, null);
+        _exchange.registerQueue(binding2);
+        Assert.assertEquals("Binding should invalidate cached routes", invalidations + 1, _exchange.getRouteCacheInvalidations());
+
+        Assert.assertEquals(2, routeMessage(createMessage("a.b")));
+        Assert.assertEquals(2, routeMessage(createMessage("a.b")));
+        Assert.assertEquals("Unexpected cache misses", 2, _exchange.getRouteCacheMisses());
+        Assert.assertEquals("Unexpected cache hits", 2, _exchange.getRouteCacheHits());
+        Assert.assertEquals("Matches should be counted on cache hits", 2, binding2.getMatches());
+
+        _exchange.onUnbind(binding2);
+        Assert.assertEquals("Unbinding should invalidate cached routes", invalidations + 2, _exchange.getRouteCacheInvalidations());
+
+        Assert.assertEquals(1, routeMessage(createMessage("a.b")));
+        Assert.assertEquals("Unexpected cache misses", 3, _exchange.getRouteCacheMisses());
+        Assert.assertEquals(5, queue1.getMessageCount());
+        Assert.assertEquals(2, queue2.getMessageCount());
+    }
+
+    public void testRouteCacheClearedWhenFull() throws AMQException
+    {
+        setTestSystemProperty(BrokerProperties.PROPERTY_TOPIC_ROUTE_CACHE_SIZE, "2");
+        _exchange = new TopicExchange();
+        AMQQueue queue = AMQQueueFactory.createAMQQueueImpl(UUIDGenerator.generateRandomUUID(), "q1", false, null, false, false, _vhost, null);
+        _exchange.registerQueue(new Binding(null, "a.*", queue, _exchange, null));
+
+        Assert.assertEquals(1, routeMessage(createMessage("a.b")));
+        Assert.assertEquals(1, routeMessage(createMessage("a.c")));
+        Assert.assertEquals("Unexpected cache misses", 2, _exchange.getRouteCacheMisses());
+
+        // the cache is full, so is cleared to make room for the new routing key
+        Assert.assertEquals(1, routeMessage(createMessage("a.d")));
+        Assert.assertEquals(1, routeMessage(createMessage("a.d")));
+        Assert.assertEquals("Unexpected cache misses", 3, _exchange.getRouteCacheMisses());
+        Assert.assertEquals("New routing key should be cached", 1, _exchange.getRouteCacheHits());
+
+        Assert.assertEquals(1, routeMessage(createMessage("a.b")));
+        Assert.assertEquals("Cleared routing key should not be cached", 4, _exchange.getRouteCacheMisses());
+        Assert.assertEquals(5, queue.getMessageCount());
+    }
+
+    public void testFilteredBindingEvaluatedOnCacheHit() throws AMQException
+    {
+        AMQQueue queue = AMQQueueFactory.createAMQQueueImpl(UUIDGenerator.generateRandomUUID(), "filtered", false, null, false, false, _vhost, null);
+        _exchange.registerQueue(new Binding(null, "a.b", queue, _exchange,
+                                            Collections.<String, Object>singletonMap(AMQPFilterTypes.JMS_SELECTOR.getValue().toString(), "colour = 'red'")));
+
+        Assert.assertEquals(1, routeMessage(createMessage("a.b", "red")));
+        Assert.assertEquals(0, routeMessage(createMessage("a.b", "blue")));
+        Assert.assertEquals(1, routeMessage(createMessage("a.b", "red")));
+        Assert.assertEquals("Unexpected cache hits", 2, _exchange.getRouteCacheHits());
+        Assert.assertEquals(2, queue.getMessageCount());
+    }
+
     private int routeMessage(final IncomingMessage message)
             throws AMQException
     {
@@ -407,12 +478,23 @@ public class TopicExchangeTest extends QpidTestCase
     }
 
     private IncomingMessage createMessage(String s) throws AMQException
+    {
+        return createMessage(s, null);
+    }
+
+    private IncomingMessage createMessage(String s, String colour) throws AMQException
     {
         MessagePublishInfo info = new PublishInfo(new AMQShortString(s));
 
         IncomingMessage message = new IncomingMessage(info);
         final ContentHeaderBody chb = new ContentHeaderBody();
         BasicContentHeaderProperties props = new BasicContentHeaderProperties();
+        if(colour != null)
+        {
+            FieldTable headers = new FieldTable();
+            headers.setString("colour", colour);
+            props.setHeaders(headers);
+        }
         chb.setProperties(props);
         message.setContentHeaderBody(chb);
 
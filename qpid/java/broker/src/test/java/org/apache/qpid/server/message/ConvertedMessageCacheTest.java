@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.message;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.apache.qpid.AMQException;
+import org.apache.qpid.server.virtualhost.VirtualHost;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ConvertedMessageCacheTest extends QpidTestCase
+{
+    private static final AtomicReferenceFieldUpdater<ConvertedMessageCacheTest, Object[]> _convertedUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(ConvertedMessageCacheTest.class, Object[].class, "_converted");
+
+    private volatile Object[] _converted = ConvertedMessageCache.NONE;
+
+    public void testConvertsOnce() throws Exception
+    {
+        CountingConverter converter = new CountingConverter("converted");
+
+        Object first = getConverted(converter);
+        Object second = getConverted(converter);
+
+        assertEquals("converted1", first);
+        assertSame("Conversion should be reused", first, second);
+        assertEquals("Unexpected number of conversions", 1, converter.getConversions());
+    }
+
+    public void testConvertersKeptApart() throws Exception
+    {
+        CountingConverter converter1 = new CountingConverter("first");
+        CountingConverter converter2 = new CountingConverter("second");
+
+        assertEquals("first1", getConverted(converter1));
+        assertEquals("second1", getConverted(converter2));
+        assertEquals("first1", getConverted(converter1));
+        assertEquals("second1", getConverted(converter2));
+        assertEquals(1, converter1.getConversions());
+        assertEquals(1, converter2.getConversions());
+    }
+
+    public void testConcurrentConversionsShareResult() throws Exception
+    {
+        final CountingConverter converter = new CountingConverter("converted");
+        final CountDownLatch start = new CountDownLatch(1);
+        final Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for(int i = 0; i < threads.length; i++)
+        {
+            final int index = i;
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        results[index] = getConverted(converter);
+                    }
+                    catch (Exception e)
+                    {
+                        results[index] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join(10000L);
+        }
+
+        for(Object result : results)
+        {
+            assertSame("All threads should see the same conversion", results[0], result);
+        }
+        assertSame(results[0], getConverted(converter));
+    }
+
+    private Object getConverted(CountingConverter converter) throws AMQException
+    {
+        return ConvertedMessageCache.getConverted(this, _convertedUpdater, null, converter, null);
+    }
+
+    private static class CountingConverter implements MessageConverter<String>
+    {
+        private final String _prefix;
+        private final AtomicInteger _conversions = new AtomicInteger();
+
+        CountingConverter(String prefix)
+        {
+            _prefix = prefix;
+        }
+
+        public String convert(ServerMessage message, VirtualHost virtualHost)
+        {
+            return _prefix + _conversions.incrementAndGet();
+        }
+
+        int getConversions()
+        {
+            return _conversions.get();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.framing.AMQFrame;
+import org.apache.qpid.framing.ContentBody;
+import org.apache.qpid.framing.HeartbeatBody;
+import org.apache.qpid.server.message.MessageContentSource;
+import org.apache.qpid.server.store.PooledContent;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.SharedBufferSender;
+import org.apache.qpid.transport.TestNetworkConnection;
+import org.apache.qpid.transport.util.ByteBufferPool;
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
+import org.apache.qpid.util.BytesDataOutput;
+
+public class AMQProtocolEngineTest extends QpidTestCase
+{
+    private static final int CHANNEL = 3;
+
+    private AMQProtocolEngine _session;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        BrokerTestHelper.setUp();
+        _session = BrokerTestHelper.createSession();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _session.getVirtualHost().close();
+            _session.closeSession();
+        }
+        finally
+        {
+            BrokerTestHelper.tearDown();
+            super.tearDown();
+        }
+    }
+
+    public void testWriteFramesSharesContentBuffers() throws Exception
+    {
+        RecordingSender sender = new RecordingSender();
+        _session.setNetworkConnection(new TestNetworkConnection(), sender);
+
+        byte[] content = createContent(2500);
+        TestContentSource source = new TestContentSource(content);
+
+        _session.writeFrames(HeartbeatBody.FRAME, CHANNEL, source, 2000);
+
+        byte[] expectedEncoding = expectedEncoding(Arrays.copyOfRange(content, 0, 2000),
+                                                   Arrays.copyOfRange(content, 2000, 2500));
+        assertTrue("Unexpected encoding", Arrays.equals(expectedEncoding, sender.getData()));
+        assertEquals("Content should have been fetched a frame at a time", Arrays.asList(2000, 500),
+                     source.getRequestedSizes());
+        assertEquals("Content buffers should have been shared", 2, sender.getSharedBuffers().size());
+        assertSame("Content buffer should not have been copied", content, sender.getSharedBuffers().get(0).array());
+        assertEquals("Unexpected number of bytes written", expectedEncoding.length, _session.getWrittenBytes());
+        assertEquals("Sender not flushed", 1, sender.getFlushCount());
+    }
+
+    public void testWriteFramesRetainsPooledContentUntilWritten() throws Exception
+    {
+        RecordingSender sender = new RecordingSender();
+        _session.setNetworkConnection(new TestNetworkConnection(), sender);
+
+        ByteBufferPool pool = new ByteBufferPool(false, 64 * 1024);
+        PooledBuffer pooled = pool.acquire(2500);
+        byte[] content = createContent(2500);
+        pooled.getBuffer().put(content);
+        pooled.getBuffer().flip();
+        PooledContentSource source = new PooledContentSource(pooled);
+
+        _session.writeFrames(HeartbeatBody.FRAME, CHANNEL, source, 2000);
+
+        byte[] expectedEncoding = expectedEncoding(Arrays.copyOfRange(content, 0, 2000),
+                                                   Arrays.copyOfRange(content, 2000, 2500));
+        assertTrue("Unexpected encoding", Arrays.equals(expectedEncoding, sender.getData()));
+        assertEquals("Each shared frame should hold the pooled content", Arrays.asList(pooled, pooled),
+                     sender.getOwners());
+
+        pooled.release();
+        assertEquals("Pooled content released while frames are pending", 0, pool.getRecycled());
+
+        for (PooledBuffer owner : sender.getOwners())
+        {
+            owner.release();
+        }
+        assertEquals("Pooled content not released once frames are written", 1, pool.getRecycled());
+    }
+
+    public void testWriteFramesCopiesContentForOtherSenders() throws Exception
+    {
+        RecordingSender sender = new RecordingSender();
+        _session.setNetworkConnection(new TestNetworkConnection(), new CopyingSender(sender));
+
+        byte[] content = createContent(2500);
+        TestContentSource source = new TestContentSource(content);
+
+        _session.writeFrames(HeartbeatBody.FRAME, CHANNEL, source, 2000);
+
+        byte[] expectedEncoding = expectedEncoding(Arrays.copyOfRange(content, 0, 2000),
+                                                   Arrays.copyOfRange(content, 2000, 2500));
+        assertTrue("Unexpected encoding", Arrays.equals(expectedEncoding, sender.getData()));
+        assertEquals("Content should have been fetched a frame at a time", Arrays.asList(2000, 500),
+                     source.getRequestedSizes());
+        assertTrue("Content buffers should not have been shared", sender.getSharedBuffers().isEmpty());
+    }
+
+    private byte[] expectedEncoding(byte[] first, byte[] second) throws Exception
+    {
+        AMQFrame firstFrame = new AMQFrame(CHANNEL, new ContentBody(first));
+        AMQFrame secondFrame = new AMQFrame(CHANNEL, new ContentBody(second));
+        int size = (int) (HeartbeatBody.FRAME.getSize() + firstFrame.getSize() + secondFrame.getSize());
+        byte[] expected = new byte[size];
+        BytesDataOutput output = new BytesDataOutput(expected);
+        HeartbeatBody.FRAME.writePayload(output);
+        firstFrame.writePayload(output);
+        secondFrame.writePayload(output);
+        return expected;
+    }
+
+    private byte[] createContent(int length)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private static class TestContentSource implements MessageContentSource
+    {
+        private final byte[] _content;
+        private final List<Integer> _requestedSizes = new ArrayList<Integer>();
+
+        private TestContentSource(byte[] content)
+        {
+            _content = content;
+        }
+
+        public int getContent(ByteBuffer buf, int offset)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public ByteBuffer getContent(int offset, int size)
+        {
+            _requestedSizes.add(size);
+            return ByteBuffer.wrap(_content, offset, size);
+        }
+
+        public long getSize()
+        {
+            return _content.length;
+        }
+
+        public List<Integer> getRequestedSizes()
+        {
+            return _requestedSizes;
+        }
+    }
+
+    private static class PooledContentSource extends TestContentSource implements PooledContent
+    {
+        private final PooledBuffer _pooled;
+
+        private PooledContentSource(PooledBuffer pooled)
+        {
+            super(null);
+            _pooled = pooled;
+        }
+
+        public ByteBuffer getContent(int offset, int size)
+        {
+            ByteBuffer buf = _pooled.getBuffer().duplicate();
+            buf.position(offset);
+            buf.limit(offset + size);
+            return buf.slice();
+        }
+
+        public long getSize()
+        {
+            return _pooled.getBuffer().remaining();
+        }
+
+        public PooledBuffer retainContent()
+        {
+            return _pooled.retain();
+        }
+    }
+
+    private static class RecordingSender implements SharedBufferSender
+    {
+        private final ByteArrayOutputStream _data = new ByteArrayOutputStream();
+        private final List<ByteBuffer> _sharedBuffers = new ArrayList<ByteBuffer>();
+        private final List<PooledBuffer> _owners = new ArrayList<PooledBuffer>();
+        private int _flushCount;
+
+        public void send(ByteBuffer msg)
+        {
+            byte[] data = new byte[msg.remaining()];
+            msg.get(data);
+            _data.write(data, 0, data.length);
+        }
+
+        public void sendShared(ByteBuffer buf)
+        {
+            _sharedBuffers.add(buf);
+            send(buf.duplicate());
+        }
+
+        public void sendShared(ByteBuffer buf, PooledBuffer owner)
+        {
+            _owners.add(owner);
+            sendShared(buf);
+        }
+
+        public void flush()
+        {
+            _flushCount++;
+        }
+
+        public void setIdleTimeout(int i)
+        {
+        }
+
+        public void close()
+        {
+        }
+
+        byte[] getData()
+        {
+            return _data.toByteArray();
+        }
+
+        List<ByteBuffer> getSharedBuffers()
+        {
+            return _sharedBuffers;
+        }
+
+        List<PooledBuffer> getOwners()
+        {
+            return _owners;
+        }
+
+        int getFlushCount()
+        {
+            return _flushCount;
+        }
+    }
+
+    private static class CopyingSender implements Sender<ByteBuffer>
+    {
+        private final Sender<ByteBuffer> _delegate;
+
+        private CopyingSender(Sender<ByteBuffer> delegate)
+        {
+            _delegate = delegate;
+        }
+
+        public void send(ByteBuffer msg)
+        {
+            _delegate.send(msg);
+        }
+
+        public void flush()
+        {
+            _delegate.flush();
+        }
+
+        public void setIdleTimeout(int i)
+        {
+        }
+
+        public void close()
+        {
+        }
+    }
+}
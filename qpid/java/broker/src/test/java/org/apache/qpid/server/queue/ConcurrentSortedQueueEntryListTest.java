@@ -0,0 +1,219 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.AMQException;
+import org.apache.qpid.server.message.AMQMessage;
+import org.apache.qpid.server.message.ServerMessage;
+
+public class ConcurrentSortedQueueEntryListTest extends QueueEntryListTestBase
+{
+    private static final String[] KEYS = SortedQueueEntryListTest.keys;
+
+    private ConcurrentSortedQueueEntryList _list;
+    private final String[] _keysSorted = KEYS.clone();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        Arrays.sort(_keysSorted);
+
+        _list = new ConcurrentSortedQueueEntryList(_testQueue, "KEY");
+
+        long messageId = 0L;
+        for(final String key : KEYS)
+        {
+            _list.add(generateTestMessage(messageId++, key));
+        }
+    }
+
+    @Override
+    public QueueEntryList getTestList()
+    {
+        return getTestList(false);
+    }
+
+    @Override
+    public QueueEntryList getTestList(boolean newList)
+    {
+        if(newList)
+        {
+            return new ConcurrentSortedQueueEntryList(_testQueue, "KEY");
+        }
+        else
+        {
+            return _list;
+        }
+    }
+
+    public int getExpectedListLength()
+    {
+        return KEYS.length;
+    }
+
+    public long getExpectedFirstMsgId()
+    {
+        return 67L;
+    }
+
+    public ServerMessage getTestMessageToAdd() throws AMQException
+    {
+        return generateTestMessage(1, "test value");
+    }
+
+    private ServerMessage generateTestMessage(final long id, final String keyValue) throws AMQException
+    {
+        return new AMQMessage(new MockStoredMessage(id, "KEY", keyValue));
+    }
+
+    public void testIterator()
+    {
+        super.testIterator();
+
+        final QueueEntryIterator<?> iter = getTestList().iterator();
+        int count = 0;
+        while(iter.advance())
+        {
+            assertEquals("Sorted queue entry value does not match sorted key array",
+                         _keysSorted[count++], iter.getNode().getMessage().getMessageHeader().getHeader("KEY"));
+        }
+    }
+
+    public void testNonUniqueAndNullSortKeysKeepArrivalOrder() throws Exception
+    {
+        _list = new ConcurrentSortedQueueEntryList(_testQueue, "KEY");
+
+        for(long messageId = 0; messageId < 200; messageId++)
+        {
+            _list.add(generateTestMessage(messageId, messageId % 2 == 0 ? null : "samekey"));
+        }
+
+        final QueueEntryIterator<?> iter = _list.iterator();
+        long expectedId = 0;
+        while(iter.advance())
+        {
+            final ServerMessage message = iter.getNode().getMessage();
+            assertEquals("Message id not as expected", expectedId, message.getMessageNumber());
+            expectedId += 2;
+            if(expectedId == 200)
+            {
+                expectedId = 1;
+            }
+        }
+        assertEquals("Not all entries were iterated", 201, expectedId);
+    }
+
+    public void testNextOfDeletedEntry() throws Exception
+    {
+        _list = new ConcurrentSortedQueueEntryList(_testQueue, "KEY");
+
+        final QueueEntry a = _list.add(generateTestMessage(1, "A"));
+        final QueueEntry b = _list.add(generateTestMessage(2, "B"));
+        final QueueEntry c = _list.add(generateTestMessage(3, "C"));
+
+        assertTrue("Could not delete entry", b.delete());
+        assertTrue("Could not delete entry", a.delete());
+
+        assertSame("Unexpected successor of deleted entry", c, _list.next((ConcurrentSortedQueueEntryImpl) a));
+        assertSame("Unexpected successor of head", c, _list.next(_list.getHead()));
+    }
+
+    public void testConcurrentAddAndDelete() throws Exception
+    {
+        final ConcurrentSortedQueueEntryList list = new ConcurrentSortedQueueEntryList(_testQueue, "KEY");
+        final int producers = 4;
+        final int messagesPerProducer = 2000;
+        final AtomicInteger deleted = new AtomicInteger();
+
+        Thread[] threads = new Thread[producers + 1];
+        for(int i = 0; i < producers; i++)
+        {
+            final int producer = i;
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for(int j = 0; j < messagesPerProducer; j++)
+                    {
+                        try
+                        {
+                            list.add(generateTestMessage(producer * messagesPerProducer + j,
+                                                         String.valueOf((j * 7919) % 1000)));
+                        }
+                        catch (AMQException e)
+                        {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            });
+        }
+        threads[producers] = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                while(deleted.get() < producers * messagesPerProducer / 2)
+                {
+                    QueueEntryIterator<ConcurrentSortedQueueEntryImpl> iter = list.iterator();
+                    while(iter.advance() && deleted.get() < producers * messagesPerProducer / 2)
+                    {
+                        ConcurrentSortedQueueEntryImpl node = iter.getNode();
+                        if(node.acquire())
+                        {
+                            node.delete();
+                            deleted.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        });
+
+        for(Thread thread : threads)
+        {
+            thread.start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join(30000);
+            assertFalse("Thread did not finish", thread.isAlive());
+        }
+
+        final QueueEntryIterator<ConcurrentSortedQueueEntryImpl> iter = list.iterator();
+        ConcurrentSortedQueueEntryImpl previous = null;
+        int count = 0;
+        while(iter.advance())
+        {
+            ConcurrentSortedQueueEntryImpl node = iter.getNode();
+            if(previous != null)
+            {
+                assertTrue("Entries are out of order", previous.compareTo(node) < 0);
+            }
+            previous = node;
+            count++;
+        }
+        assertEquals("Unexpected number of remaining entries", producers * messagesPerProducer - deleted.get(), count);
+    }
+}
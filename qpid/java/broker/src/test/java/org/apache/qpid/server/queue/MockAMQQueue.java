@@ -220,6 +220,14 @@ public class MockAMQQueue implements AMQQueue
 
     }
 
+    public void setRecovery(Runnable recovery)
+    {
+    }
+
+    public void completeRecovery()
+    {
+    }
+
     public void unregisterSubscription(Subscription subscription) throws AMQException
     {
 
@@ -579,6 +587,16 @@ public class MockAMQQueue implements AMQQueue
         return 0;
     }
 
+    public long getDeliveryRunCount()
+    {
+        return 0;
+    }
+
+    public long getDeliveryRunTime()
+    {
+        return 0;
+    }
+
     public void setExclusive(boolean exclusive)
     {
     }
@@ -0,0 +1,94 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class QueueDeliverySchedulersTest extends QpidTestCase
+{
+    public void testUnknownSchedulerType()
+    {
+        try
+        {
+            QueueDeliverySchedulers.create("unknown");
+            fail("Exception not thrown");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // pass
+        }
+    }
+
+    public void testSharedScheduler()
+    {
+        assertTrue("Unexpected scheduler type",
+                   QueueDeliverySchedulers.create(QueueDeliverySchedulers.SHARED) instanceof QueueDeliverySchedulers.SharedPoolScheduler);
+    }
+
+    public void testPinnedSchedulerUsesSameExecutorForQueue() throws Exception
+    {
+        QueueDeliverySchedulers.PinnedScheduler scheduler = new QueueDeliverySchedulers.PinnedScheduler(4);
+        AMQQueue queue = new MockAMQQueue("queue");
+
+        Executor first = scheduler.acquireExecutor(queue);
+        Executor second = scheduler.acquireExecutor(new MockAMQQueue("queue"));
+
+        assertSame("Queue with same name should be pinned to the same executor", first, second);
+        assertEquals("Unexpected reference count", 2, scheduler.getReferenceCount());
+        assertRunsTask(first);
+
+        scheduler.releaseExecutor(queue);
+        assertFalse("Executor should still be running", ((ExecutorService) first).isShutdown());
+
+        scheduler.releaseExecutor(queue);
+        assertTrue("Executor should be shut down after last release", ((ExecutorService) first).isShutdown());
+    }
+
+    public void testForkJoinScheduler() throws Exception
+    {
+        QueueDeliverySchedulers.ForkJoinScheduler scheduler = new QueueDeliverySchedulers.ForkJoinScheduler(2);
+        AMQQueue queue = new MockAMQQueue("queue");
+
+        Executor executor = scheduler.acquireExecutor(queue);
+        assertRunsTask(executor);
+
+        scheduler.releaseExecutor(queue);
+        assertTrue("Pool should be shut down after last release", ((ExecutorService) executor).isShutdown());
+    }
+
+    private void assertRunsTask(Executor executor) throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        });
+        assertTrue("Task was not run", latch.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.server.filter.FilterManager;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.MessageFilter;
+import org.apache.qpid.server.filter.SimpleFilterManager;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class QueueFilterIndexTest extends QpidTestCase
+{
+    private QueueFilterIndex _index;
+    private SimpleQueueEntryList _entries;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _index = new QueueFilterIndex();
+        _entries = new SimpleQueueEntryList(new MockAMQQueue(getTestName()));
+    }
+
+    public void testEqualSelectorsShareEvaluation() throws Exception
+    {
+        CountingSelectorFilter first = new CountingSelectorFilter("colour = 'red'");
+        CountingSelectorFilter second = new CountingSelectorFilter("colour = 'red'");
+        FilterManager firstFilters = new SimpleFilterManager(first);
+        FilterManager secondFilters = new SimpleFilterManager(second);
+
+        _index.register(firstFilters);
+        _index.register(secondFilters);
+        assertEquals("Unexpected number of indexed filters", 1, _index.size());
+
+        QueueEntry red = _entries.add(new MockAMQMessage(1, "colour", "red"));
+        QueueEntry blue = _entries.add(new MockAMQMessage(2, "colour", "blue"));
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(firstFilters.allAllow(red));
+            assertTrue(secondFilters.allAllow(red));
+            assertFalse(firstFilters.allAllow(blue));
+            assertFalse(secondFilters.allAllow(blue));
+        }
+        assertEquals("Selector should be evaluated once per entry", 2, first.getEvaluations() + second.getEvaluations());
+    }
+
+    public void testUnregisterRestoresFilters() throws Exception
+    {
+        CountingSelectorFilter filter = new CountingSelectorFilter("colour = 'red'");
+        FilterManager filters = new SimpleFilterManager(filter);
+
+        _index.register(filters);
+        assertNotSame(filter, filters.getFilters().iterator().next());
+
+        _index.unregister(filters);
+        assertSame(filter, filters.getFilters().iterator().next());
+        assertEquals("Unexpected number of indexed filters", 0, _index.size());
+    }
+
+    public void testReassignedIndexDiscardsEarlierResults() throws Exception
+    {
+        FilterManager redFilters = new SimpleFilterManager(new CountingSelectorFilter("colour = 'red'"));
+        _index.register(redFilters);
+
+        QueueEntry red = _entries.add(new MockAMQMessage(1, "colour", "red"));
+        assertTrue(redFilters.allAllow(red));
+        _index.unregister(redFilters);
+
+        CountingSelectorFilter blue = new CountingSelectorFilter("colour = 'blue'");
+        FilterManager blueFilters = new SimpleFilterManager(blue);
+        _index.register(blueFilters);
+
+        assertFalse("Result for the previous selector under the same index was used", blueFilters.allAllow(red));
+        assertFalse(blueFilters.allAllow(red));
+        assertEquals("Unexpected number of evaluations", 1, blue.getEvaluations());
+    }
+
+    public void testReassignedIndexKeepsResultsOfOtherIndexes() throws Exception
+    {
+        CountingSelectorFilter red = new CountingSelectorFilter("colour = 'red'");
+        FilterManager redFilters = new SimpleFilterManager(red);
+        FilterManager greenFilters = new SimpleFilterManager(new CountingSelectorFilter("colour = 'green'"));
+        _index.register(redFilters);
+        _index.register(greenFilters);
+
+        QueueEntry entry = _entries.add(new MockAMQMessage(1, "colour", "red"));
+        assertTrue(redFilters.allAllow(entry));
+        assertFalse(greenFilters.allAllow(entry));
+
+        _index.unregister(greenFilters);
+        CountingSelectorFilter blue = new CountingSelectorFilter("colour = 'blue'");
+        FilterManager blueFilters = new SimpleFilterManager(blue);
+        _index.register(blueFilters);
+
+        assertFalse(blueFilters.allAllow(entry));
+        assertTrue(redFilters.allAllow(entry));
+        assertEquals("Result of a selector whose index was not reassigned was discarded", 1, red.getEvaluations());
+        assertEquals("Unexpected number of evaluations", 1, blue.getEvaluations());
+    }
+
+    public void testRedeliveryDependentSelectorIsNotIndexed() throws Exception
+    {
+        CountingSelectorFilter filter = new CountingSelectorFilter("JMSRedelivered = TRUE OR colour = 'red'");
+        FilterManager filters = new SimpleFilterManager(filter);
+
+        _index.register(filters);
+
+        assertSame(filter, filters.getFilters().iterator().next());
+        assertEquals("Unexpected number of indexed filters", 0, _index.size());
+    }
+
+    public void testSelectorsBeyondIndexCapacityAreNotIndexed() throws Exception
+    {
+        for (int i = 0; i < QueueFilterIndex.MAX_INDEXED_FILTERS; i++)
+        {
+            _index.register(new SimpleFilterManager(new JMSSelectorFilter("size = " + i)));
+        }
+
+        JMSSelectorFilter filter = new JMSSelectorFilter("size > 1000");
+        FilterManager filters = new SimpleFilterManager(filter);
+        _index.register(filters);
+
+        MessageFilter registered = filters.getFilters().iterator().next();
+        assertSame(filter, registered);
+        assertEquals("Unexpected number of indexed filters", QueueFilterIndex.MAX_INDEXED_FILTERS, _index.size());
+    }
+
+    private static class CountingSelectorFilter extends JMSSelectorFilter
+    {
+        private final AtomicInteger _evaluations = new AtomicInteger();
+
+        CountingSelectorFilter(String selector) throws Exception
+        {
+            super(selector);
+        }
+
+        @Override
+        public boolean matches(Filterable message)
+        {
+            _evaluations.incrementAndGet();
+            return super.matches(message);
+        }
+
+        int getEvaluations()
+        {
+            return _evaluations.get();
+        }
+    }
+}
@@ -55,6 +55,7 @@ import org.apache.qpid.server.virtualhost.VirtualHost;
 import org.apache.qpid.test.utils.QpidTestCase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -522,6 +523,57 @@ public class SimpleAMQQueueTest extends QpidTestCase
         assertEquals("Message ID was wrong", messageId, testmsgid);
     }
 
+    public void testRecoveryCompletedBeforeEnqueue() throws Exception
+    {
+        final AMQMessage recoveredMessage = createMessage(new Long(23));
+        _queue.setRecovery(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    _queue.enqueue(recoveredMessage);
+                }
+                catch (AMQException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        _queue.enqueue(createMessage(new Long(24)));
+
+        assertEquals("Unexpected messages on queue", Arrays.asList(23l, 24l), _queue.getMessagesOnTheQueue(2));
+
+        _queue.completeRecovery();
+        assertEquals("Recovery should run only once", 2, _queue.getMessageCount());
+    }
+
+    public void testRecoveryCompletedBeforeRegisterSubscription() throws Exception
+    {
+        final AMQMessage recoveredMessage = createMessage(new Long(23));
+        _queue.setRecovery(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    _queue.enqueue(recoveredMessage);
+                }
+                catch (AMQException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        assertEquals("Recovery should not run until the queue is used", 0, _queue.getMessageCount());
+
+        _queue.registerSubscription(_subscription, false);
+
+        assertEquals("Recovered message not on queue", 1, _queue.getMessageCount());
+    }
+
     public void testGetFirstFiveMessageIds() throws Exception
     {
         for (int i = 0 ; i < 5; i++)
@@ -1139,6 +1191,52 @@ public class SimpleAMQQueueTest extends QpidTestCase
         verify(listener, atLeastOnce()).notifyClients(eq(NotificationCheck.MESSAGE_COUNT_ALERT), eq(_queue), contains("Maximum count on queue threshold"));
     }
 
+    public void testCheckMessageStatusDequeuesExpiredEntries() throws Exception
+    {
+        AMQMessage expired = createMessage(new Long(24));
+        expired.setExpiration(System.currentTimeMillis() - 1000);
+        AMQMessage unexpired = createMessage(new Long(25));
+        unexpired.setExpiration(System.currentTimeMillis() + 60000);
+        AMQMessage noExpiry = createMessage(new Long(26));
+
+        _queue.enqueue(expired);
+        _queue.enqueue(unexpired);
+        _queue.enqueue(noExpiry);
+
+        assertEquals("Unexpected number of indexed entries", 2, _queue.getExpiryIndexSize());
+
+        _queue.checkMessageStatus();
+
+        assertEquals("Expired message was not dequeued", 2, _queue.getMessageCount());
+        assertEquals("Unexpected number of indexed entries", 1, _queue.getExpiryIndexSize());
+        List<QueueEntry> entries = _queue.getMessagesOnTheQueue();
+        assertEquals("Unexpected message on queue", unexpired, entries.get(0).getMessage());
+        assertEquals("Unexpected message on queue", noExpiry, entries.get(1).getMessage());
+    }
+
+    public void testDequeueRemovesEntryFromExpiryIndex() throws Exception
+    {
+        final ArrayList<QueueEntry> queueEntries = new ArrayList<QueueEntry>();
+        PostEnqueueAction postEnqueueAction = new PostEnqueueAction()
+        {
+            public void onEnqueue(QueueEntry entry)
+            {
+                queueEntries.add(entry);
+            }
+        };
+
+        AMQMessage message = createMessage(new Long(24));
+        message.setExpiration(System.currentTimeMillis() + 60000);
+        _queue.enqueue(message, postEnqueueAction);
+        assertEquals("Unexpected number of indexed entries", 1, _queue.getExpiryIndexSize());
+
+        QueueEntry entry = queueEntries.get(0);
+        assertTrue("Could not acquire entry", entry.acquire());
+        entry.dequeue();
+
+        assertEquals("Dequeued entry still indexed", 0, _queue.getExpiryIndexSize());
+    }
+
     public void testNotificationFiredAsync() throws Exception
     {
         AMQQueue.NotificationListener listener = mock(AMQQueue.NotificationListener.class);
@@ -0,0 +1,142 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link HistogramStatisticsCounter} class.
+ */
+public class HistogramStatisticsCounterTest extends TestCase
+{
+    /**
+     * Check that values are counted in the bucket for their power of two.
+     */
+    public void testHistogram()
+    {
+        HistogramStatisticsCounter counter = new HistogramStatisticsCounter("test", 1000L);
+        assertEquals(0, counter.getHistogram().length);
+
+        counter.registerEvent(0L);
+        counter.registerEvent(1L);
+        counter.registerEvent(2L);
+        counter.registerEvent(3L);
+        counter.registerEvent(4L);
+        counter.registerEvent(1023L);
+        counter.registerEvent(1024L);
+
+        long[] expected = new long[12];
+        expected[0] = 1L;
+        expected[1] = 1L;
+        expected[2] = 2L;
+        expected[3] = 1L;
+        expected[10] = 1L;
+        expected[11] = 1L;
+        assertTrue("Unexpected histogram " + Arrays.toString(counter.getHistogram()),
+                   Arrays.equals(expected, counter.getHistogram()));
+        assertEquals(7L, counter.getCount());
+        assertEquals(2057L, counter.getTotal());
+        assertEquals(1024L, counter.getMaximum());
+        assertEquals(2057.0d / 7.0d, counter.getMean());
+    }
+
+    /**
+     * Check that percentiles are estimated from the upper bound of the bucket they fall in.
+     */
+    public void testPercentile()
+    {
+        HistogramStatisticsCounter counter = new HistogramStatisticsCounter("test", 1000L);
+        assertEquals(0L, counter.getPercentile(50.0d));
+
+        for (int i = 0; i < 90; i++)
+        {
+            counter.registerEvent(100L);
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            counter.registerEvent(5000L);
+        }
+
+        assertEquals(127L, counter.getPercentile(50.0d));
+        assertEquals(127L, counter.getPercentile(90.0d));
+        assertEquals(5000L, counter.getPercentile(95.0d));
+        assertEquals(5000L, counter.getPercentile(100.0d));
+
+        try
+        {
+            counter.getPercentile(101.0d);
+            fail("Exception not thrown");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // pass
+        }
+    }
+
+    /**
+     * Check that the summary exposed to the management interfaces agrees with the counter.
+     */
+    public void testSummary()
+    {
+        HistogramStatisticsCounter counter = new HistogramStatisticsCounter("test", 1000L);
+        counter.registerEvent(10L);
+        counter.registerEvent(30L);
+
+        Map<String, Object> summary = counter.getSummary();
+        assertEquals(2L, summary.get(HistogramStatisticsCounter.COUNT));
+        assertEquals(20.0d, summary.get(HistogramStatisticsCounter.MEAN));
+        assertEquals(30L, summary.get(HistogramStatisticsCounter.MAXIMUM));
+        assertEquals(15L, summary.get(HistogramStatisticsCounter.MEDIAN));
+        assertEquals(30L, summary.get(HistogramStatisticsCounter.PERCENTILE_99));
+        assertTrue(Arrays.equals(counter.getHistogram(), (long[]) summary.get(HistogramStatisticsCounter.HISTOGRAM)));
+    }
+
+    /**
+     * Check that reset clears the histogram as well as the counter.
+     */
+    public void testReset()
+    {
+        HistogramStatisticsCounter counter = new HistogramStatisticsCounter("test", 1000L);
+        counter.registerEvent(10L);
+        counter.reset();
+
+        assertEquals(0, counter.getHistogram().length);
+        assertEquals(0L, counter.getCount());
+        assertEquals(0L, counter.getMaximum());
+        assertEquals(0L, counter.getTotal());
+    }
+
+    /**
+     * Check that the rate and peak are unaffected by the histogram.
+     */
+    public void testPeak()
+    {
+        HistogramStatisticsCounter counter = new HistogramStatisticsCounter("test", 1000L);
+        long start = counter.getStart();
+        counter.registerEvent(1000L, start);
+        counter.registerEvent(1000L, start + 1000L);
+        assertEquals(1000.0, counter.getPeak());
+        assertEquals(2L, counter.getCount());
+    }
+}
@@ -146,4 +146,54 @@ public class StatisticsCounterTest extends TestCase
         Thread.sleep(1000);
         assertEquals(0.0, counter.getRate());
     }
+
+    /**
+     * Test that events registered concurrently from several threads are all counted.
+     */
+    public void testConcurrentTotal() throws Exception
+    {
+        final StatisticsCounter counter = new StatisticsCounter("test", 1000L);
+        final int threads = 4;
+        final int events = 10000;
+        Thread[] registering = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            registering[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < events; j++)
+                    {
+                        counter.registerEvent(2L);
+                    }
+                }
+            });
+            registering[i].start();
+        }
+        for (Thread thread : registering)
+        {
+            thread.join();
+        }
+        assertEquals(2L * threads * events, counter.getTotal());
+    }
+
+    /**
+     * Test that reset clears the total, rate and peak.
+     */
+    public void testReset() throws Exception
+    {
+        StatisticsCounter counter = new StatisticsCounter("test", 1000L);
+        long start = counter.getStart();
+        counter.registerEvent(1000, start);
+        counter.registerEvent(1000, start + 1000);
+        assertEquals(2000, counter.getTotal());
+        assertEquals(1000.0, counter.getPeak());
+
+        Thread.sleep(10);
+        counter.reset();
+        assertTrue(counter.getStart() > start);
+        assertEquals(0, counter.getTotal());
+        assertEquals(0.0, counter.getPeak());
+        assertEquals(0.0, counter.getRate());
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.stats;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link StripedAccumulator} class.
+ */
+public class StripedAccumulatorTest extends TestCase
+{
+    /**
+     * Check that each counter accumulates independently.
+     */
+    public void testCounters()
+    {
+        StripedAccumulator accumulator = new StripedAccumulator(9);
+        accumulator.increment(0);
+        accumulator.increment(0);
+        accumulator.add(8, 100L);
+        accumulator.add(8, -40L);
+
+        assertEquals(2L, accumulator.get(0));
+        assertEquals(0L, accumulator.get(1));
+        assertEquals(60L, accumulator.get(8));
+
+        try
+        {
+            accumulator.increment(9);
+            fail("Exception not thrown");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // pass
+        }
+    }
+
+    /**
+     * Check that updates made concurrently from several threads are all counted.
+     */
+    public void testConcurrentUpdates() throws Exception
+    {
+        final StripedAccumulator accumulator = new StripedAccumulator(2);
+        final int threads = 4;
+        final int updates = 10000;
+        Thread[] updating = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            updating[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < updates; j++)
+                    {
+                        accumulator.increment(0);
+                        accumulator.add(1, 3L);
+                    }
+                }
+            });
+            updating[i].start();
+        }
+        for (Thread thread : updating)
+        {
+            thread.join();
+        }
+        assertEquals((long) threads * updates, accumulator.get(0));
+        assertEquals(3L * threads * updates, accumulator.get(1));
+    }
+}
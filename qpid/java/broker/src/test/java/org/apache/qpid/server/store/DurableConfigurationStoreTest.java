@@ -25,6 +25,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -33,7 +34,9 @@ import static org.mockito.Mockito.times;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -41,13 +44,20 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.qpid.AMQStoreException;
 import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentHeaderBody;
 import org.apache.qpid.framing.FieldTable;
+import org.apache.qpid.framing.MethodRegistry;
+import org.apache.qpid.framing.ProtocolVersion;
+import org.apache.qpid.framing.abstraction.MessagePublishInfo;
+import org.apache.qpid.framing.abstraction.MessagePublishInfoImpl;
 import org.apache.qpid.server.binding.Binding;
 import org.apache.qpid.server.exchange.Exchange;
 import org.apache.qpid.server.logging.SystemOutMessageLogger;
 import org.apache.qpid.server.logging.actors.CurrentActor;
 import org.apache.qpid.server.logging.actors.TestLogActor;
 import org.apache.qpid.server.message.EnqueableMessage;
+import org.apache.qpid.server.message.MessageMetaData;
 import org.apache.qpid.server.model.UUIDGenerator;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.MockStoredMessage;
@@ -59,6 +69,7 @@ import org.apache.qpid.server.store.Transaction.Record;
 import org.apache.qpid.server.store.derby.DerbyMessageStore;
 import org.apache.qpid.test.utils.QpidTestCase;
 import org.apache.qpid.util.FileUtils;
+import org.mockito.ArgumentCaptor;
 
 public class DurableConfigurationStoreTest extends QpidTestCase
 {
@@ -112,7 +123,7 @@ public class DurableConfigurationStoreTest extends QpidTestCase
         when(_exchangeRecoveryHandler.completeExchangeRecovery()).thenReturn(_queueRecoveryHandler);
         when(_queueRecoveryHandler.completeQueueRecovery()).thenReturn(_bindingRecoveryHandler);
         when(_logRecoveryHandler.begin(any(MessageStore.class))).thenReturn(_queueEntryRecoveryHandler);
-        when(_queueEntryRecoveryHandler.completeQueueEntryRecovery()).thenReturn(_dtxRecordRecoveryHandler);
+        when(_queueEntryRecoveryHandler.completeQueueEntryRecovery(any(QueueEntryReader.class))).thenReturn(_dtxRecordRecoveryHandler);
         when(_exchange.getNameShortString()).thenReturn(AMQShortString.valueOf(EXCHANGE_NAME));
         when(_exchange.getId()).thenReturn(_exchangeId);
         when(_configuration.getString(eq(MessageStoreConstants.ENVIRONMENT_PATH_PROPERTY), anyString())).thenReturn(
@@ -352,6 +363,103 @@ public class DurableConfigurationStoreTest extends QpidTestCase
         verify(_dtxRecordRecoveryHandler, times(1)).dtxRecord(1l, globalId, branchId, enqueues, dequeues);
     }
 
+    public void testRecoveredMessageRemovedWithLastQueueEntry() throws Exception
+    {
+        AMQQueue queue1 = createTestQueue(QUEUE_NAME, "queueOwner", false);
+        AMQQueue queue2 = createTestQueue(QUEUE_NAME + "2", "queueOwner", false);
+        when(queue2.getId()).thenReturn(UUIDGenerator.generateRandomUUID());
+        _store.createQueue(queue1);
+        _store.createQueue(queue2);
+
+        StoredMessage<MessageMetaData> message = _store.addMessage(createMetaData());
+        message.flushToStore();
+        long messageId = message.getMessageNumber();
+        Transaction transaction = _store.newTransaction();
+        transaction.enqueueMessage(queue1, getTestMessage(message));
+        transaction.enqueueMessage(queue2, getTestMessage(message));
+        transaction.commitTran();
+
+        reopenStore();
+
+        QueueEntryReader reader = getQueueEntryReader();
+        StoredMessage<?> message1 = readQueueEntry(reader, queue1.getId());
+        StoredMessage<?> message2 = readQueueEntry(reader, queue2.getId());
+        assertEquals("Unexpected message on queue", messageId, message1.getMessageNumber());
+        assertEquals("Unexpected message on queue", messageId, message2.getMessageNumber());
+
+        transaction = _store.newTransaction();
+        transaction.dequeueMessage(queue1, getTestMessage(message1));
+        transaction.commitTran();
+        message1.remove();
+        assertNotNull("Message removed while still enqueued", reader.readMessage(messageId));
+
+        transaction = _store.newTransaction();
+        transaction.dequeueMessage(queue2, getTestMessage(message2));
+        transaction.commitTran();
+        message2.remove();
+        assertNull("Message not removed with its last queue entry", reader.readMessage(messageId));
+    }
+
+    public void testUnreferencedMessageRemovedAfterRecovery() throws Exception
+    {
+        StoredMessage<MessageMetaData> message = _store.addMessage(createMetaData());
+        message.flushToStore();
+        long messageId = message.getMessageNumber();
+
+        reopenStore();
+
+        QueueEntryReader reader = getQueueEntryReader();
+        assertNotNull("Message not found", reader.readMessage(messageId));
+
+        reader.removeUnreferenced();
+        assertNull("Unreferenced message not removed", reader.readMessage(messageId));
+    }
+
+    private QueueEntryReader getQueueEntryReader()
+    {
+        ArgumentCaptor<QueueEntryReader> reader = ArgumentCaptor.forClass(QueueEntryReader.class);
+        verify(_queueEntryRecoveryHandler, atLeastOnce()).completeQueueEntryRecovery(reader.capture());
+        return reader.getValue();
+    }
+
+    private StoredMessage<?> readQueueEntry(QueueEntryReader reader, UUID queueId) throws AMQStoreException
+    {
+        final List<StoredMessage<?>> messages = new ArrayList<StoredMessage<?>>();
+        reader.readQueueEntries(queueId, new QueueEntryReader.QueueEntryHandler()
+        {
+            public boolean queueEntry(long messageId, StoredMessage<?> message)
+            {
+                messages.add(message);
+                return true;
+            }
+        });
+        assertEquals("Unexpected number of entries on queue " + queueId, 1, messages.size());
+        return messages.get(0);
+    }
+
+    private EnqueableMessage getTestMessage(StoredMessage<?> storedMessage)
+    {
+        EnqueableMessage message = mock(EnqueableMessage.class);
+        when(message.isPersistent()).thenReturn(true);
+        when(message.getMessageNumber()).thenReturn(storedMessage.getMessageNumber());
+        when(message.getStoredMessage()).thenReturn(storedMessage);
+        return message;
+    }
+
+    private MessageMetaData createMetaData()
+    {
+        MessagePublishInfo pubInfoBody = new MessagePublishInfoImpl(new AMQShortString(getName()), false, false,
+                new AMQShortString(getName()));
+        BasicContentHeaderProperties props = new BasicContentHeaderProperties();
+        props.setDeliveryMode(Integer.valueOf(BasicContentHeaderProperties.PERSISTENT).byteValue());
+
+        MethodRegistry methodRegistry = MethodRegistry.getMethodRegistry(ProtocolVersion.v0_9);
+        int classForBasic = methodRegistry.createBasicQosOkBody().getClazz();
+        ContentHeaderBody contentHeaderBody = new ContentHeaderBody(classForBasic, 1, props, 0);
+
+        return new MessageMetaData(pubInfoBody, contentHeaderBody, 1);
+    }
+
     private Record getTestRecord(long messageNumber)
     {
         UUID queueId1 = UUIDGenerator.generateRandomUUID();
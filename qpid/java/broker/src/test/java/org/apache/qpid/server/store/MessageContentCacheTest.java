@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageContentCacheTest extends QpidTestCase
+{
+    private MessageContentCache _cache;
+    private MessageContentCache.Region _region;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _cache = new MessageContentCache(1000);
+        _region = _cache.createRegion("test");
+    }
+
+    public void testContentIsCachedWithinBudget()
+    {
+        MessageContentCache.Entry<byte[]> first = _region.add(new byte[400], 400);
+        MessageContentCache.Entry<byte[]> second = _region.add(new byte[400], 400);
+
+        assertNotNull("Content should be cached", first.get());
+        assertNotNull("Content should be cached", second.get());
+        assertEquals("Unexpected cached bytes", 800, _region.getCachedBytes());
+        assertEquals("Unexpected cached bytes", 800, _cache.getCachedBytes());
+        assertEquals("Unexpected evictions", 0, _region.getEvictions());
+    }
+
+    public void testLeastRecentlyUsedContentIsEvicted()
+    {
+        MessageContentCache.Entry<byte[]> first = _region.add(new byte[400], 400);
+        MessageContentCache.Entry<byte[]> second = _region.add(new byte[400], 400);
+
+        // reading the first gives it a second chance, so the second is evicted in its place
+        first.get();
+        MessageContentCache.Entry<byte[]> third = _region.add(new byte[400], 400);
+
+        assertNotNull("Recently read content should be kept", first.get());
+        assertNull("Unread content should be evicted", second.get());
+        assertNotNull("New content should be cached", third.get());
+        assertEquals("Unexpected cached bytes", 800, _region.getCachedBytes());
+        assertEquals("Unexpected evictions", 1, _region.getEvictions());
+    }
+
+    public void testContentLargerThanCacheIsEvicted()
+    {
+        MessageContentCache.Entry<byte[]> entry = _region.add(new byte[2000], 2000);
+
+        assertNull("Content should be evicted", entry.get());
+        assertEquals("Unexpected cached bytes", 0, _cache.getCachedBytes());
+        assertEquals("Unexpected evictions", 1, _region.getEvictions());
+    }
+
+    public void testEvictionListenerIsNotified()
+    {
+        final AtomicInteger evictions = new AtomicInteger();
+        MessageContentCache.EvictionListener listener = new MessageContentCache.EvictionListener()
+        {
+            public void evicted()
+            {
+                evictions.incrementAndGet();
+            }
+        };
+        MessageContentCache.Entry<byte[]> first = _region.add(new byte[600], 600, listener);
+        first.discard();
+        assertEquals("Discarded content should not notify the listener", 0, evictions.get());
+
+        _region.add(new byte[600], 600, listener);
+        _region.add(new byte[600], 600);
+        assertEquals("Evicted content should notify the listener", 1, evictions.get());
+    }
+
+    public void testDiscardReleasesContent()
+    {
+        MessageContentCache.Entry<byte[]> entry = _region.add(new byte[400], 400);
+        entry.discard();
+        entry.discard();
+
+        assertNull("Content should be discarded", entry.get());
+        assertEquals("Unexpected cached bytes", 0, _region.getCachedBytes());
+        assertEquals("Unexpected cached bytes", 0, _cache.getCachedBytes());
+        assertEquals("Discarded content should not count as evicted", 0, _region.getEvictions());
+    }
+
+    public void testManyDiscardedEntries()
+    {
+        MessageContentCache.Entry<byte[]> retained = _region.add(new byte[10], 10);
+        for (int i = 0; i < 10000; i++)
+        {
+            _region.add(new byte[10], 10).discard();
+        }
+
+        assertNotNull("Content should be cached", retained.get());
+        assertEquals("Unexpected cached bytes", 10, _cache.getCachedBytes());
+        assertEquals("Unexpected evictions", 0, _region.getEvictions());
+    }
+
+    public void testRegionsAreAccountedSeparately()
+    {
+        MessageContentCache.Region other = _cache.createRegion("other");
+        MessageContentCache.Entry<byte[]> first = _region.add(new byte[600], 600);
+        MessageContentCache.Entry<byte[]> second = other.add(new byte[600], 600);
+
+        assertNull("Content should be evicted", first.get());
+        assertNotNull("Content should be cached", second.get());
+        assertEquals("Unexpected evictions", 1, _region.getEvictions());
+        assertEquals("Unexpected evictions", 0, other.getEvictions());
+        assertEquals("Unexpected cached bytes", 0, _region.getCachedBytes());
+        assertEquals("Unexpected cached bytes", 600, other.getCachedBytes());
+        assertSame("Unexpected region", other, _cache.getRegion("other"));
+    }
+
+    public void testCloseReleasesRegionContent()
+    {
+        MessageContentCache.Region other = _cache.createRegion("other");
+        MessageContentCache.Entry<byte[]> first = _region.add(new byte[400], 400);
+        MessageContentCache.Entry<byte[]> second = other.add(new byte[400], 400);
+
+        _region.close();
+
+        assertNull("Content of closed region should be released", first.get());
+        assertNotNull("Content of other region should be kept", second.get());
+        assertEquals("Unexpected cached bytes", 400, _cache.getCachedBytes());
+        assertNull("Closed region should be unregistered", _cache.getRegion("test"));
+    }
+}
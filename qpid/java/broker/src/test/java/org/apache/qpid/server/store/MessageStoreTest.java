@@ -887,6 +887,8 @@ public class MessageStoreTest extends QpidTestCase
 
         assertNotNull("Queue(" + queueName + ") not correctly registered:", queue);
 
+        // the entries of a queue are recovered in the background, unless the queue is used first
+        queue.completeRecovery();
         assertEquals("Incorrect Message count on queue:" + queueName, messageCount, queue.getMessageCount());
     }
 
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.util.ByteBufferPool;
+import org.apache.qpid.transport.util.ByteBufferPool.PooledBuffer;
+import org.apache.qpid.util.FileUtils;
+
+public class StoredMemoryMessageTest extends QpidTestCase
+{
+    private final ByteBufferPool _pool = ByteBufferPool.getInstance();
+
+    public void testSingleBufferContentIsNotPooled()
+    {
+        StoredMemoryMessage message = createMessage(1000);
+        message.addContent(0, ByteBuffer.wrap(createContent(1000)));
+
+        assertNull("Content should not be pooled", message.retainContent());
+        assertContent(createContent(1000), message);
+    }
+
+    public void testAssembledContentIsPooledAndReleasedOnRemove()
+    {
+        byte[] content = createContent(2000);
+        StoredMemoryMessage message = createMessage(2000);
+        message.addContent(0, ByteBuffer.wrap(content, 0, 1000));
+        message.addContent(1000, ByteBuffer.wrap(content, 1000, 1000));
+        assertContent(content, message);
+
+        PooledBuffer pooled = message.retainContent();
+        assertNotNull("Content should be pooled", pooled);
+
+        long returned = returnedCount();
+        message.remove();
+        assertNull("Removed message should not retain content", message.retainContent());
+        assertEquals("Content released while still retained", returned, returnedCount());
+
+        pooled.release();
+        assertEquals("Content not released", returned + 1, returnedCount());
+    }
+
+    public void testPooledContentIsCopiedOut()
+    {
+        byte[] content = createContent(2000);
+        StoredMemoryMessage message = createMessage(2000);
+        message.addContent(0, ByteBuffer.wrap(content, 0, 1000));
+        message.addContent(1000, ByteBuffer.wrap(content, 1000, 1000));
+
+        ByteBuffer buf = message.getContent(0, content.length);
+        long returned = returnedCount();
+        message.remove();
+        assertEquals("Content not released", returned + 1, returnedCount());
+
+        // the recycled buffer is reused and overwritten, which must not show through the content read earlier
+        PooledBuffer reused = _pool.acquire(2000);
+        try
+        {
+            reused.getBuffer().put(new byte[2000]);
+        }
+        finally
+        {
+            reused.release();
+        }
+
+        byte[] actual = new byte[buf.remaining()];
+        buf.get(actual);
+        assertTrue("Unexpected content", Arrays.equals(content, actual));
+    }
+
+    public void testEvictedContentIsSpilledAndReadBack()
+    {
+        File overflowDirectory = new File(TMP_FOLDER, getTestName());
+        MessageContentCache cache = new MessageContentCache(1500, overflowDirectory);
+        MessageContentCache.Region region = cache.createRegion("test");
+        try
+        {
+            byte[] content = createContent(1000);
+            StoredMemoryMessage first = createMessage(1000, region);
+            first.addContent(0, ByteBuffer.wrap(content));
+            StoredMemoryMessage second = createMessage(1000, region);
+            second.addContent(0, ByteBuffer.wrap(createContent(1000)));
+
+            assertEquals("Unexpected evictions", 1, region.getEvictions());
+            assertEquals("Evicted content should be spilled", 1, region.getOverflowDirectory().list().length);
+            assertEquals("Unexpected cached bytes", 1000, region.getCachedBytes());
+
+            // reading the spilled content caches it again, evicting the other message's
+            assertContent(content, first);
+            assertEquals("Unexpected evictions", 2, region.getEvictions());
+            assertEquals("Unexpected cached bytes", 1000, region.getCachedBytes());
+
+            first.remove();
+            second.remove();
+            assertEquals("Spilled content should be deleted", 0, region.getOverflowDirectory().list().length);
+            assertEquals("Unexpected cached bytes", 0, region.getCachedBytes());
+        }
+        finally
+        {
+            region.close();
+            FileUtils.delete(overflowDirectory, true);
+        }
+    }
+
+    public void testTransientContentIsNotCachedWithoutOverflowDirectory()
+    {
+        MessageContentCache cache = new MessageContentCache(1500);
+        MessageContentCache.Region region = cache.createRegion("test");
+
+        StoredMemoryMessage message = createMessage(1000, region);
+        message.addContent(0, ByteBuffer.wrap(createContent(1000)));
+
+        assertEquals("Transient content should not be cached", 0, region.getCachedBytes());
+    }
+
+    private long returnedCount()
+    {
+        return _pool.getRecycled() + _pool.getDiscarded();
+    }
+
+    private void assertContent(byte[] expected, StoredMemoryMessage message)
+    {
+        ByteBuffer buf = message.getContent(0, expected.length);
+        byte[] actual = new byte[buf.remaining()];
+        buf.get(actual);
+        assertTrue("Unexpected content", Arrays.equals(expected, actual));
+    }
+
+    private StoredMemoryMessage createMessage(int contentSize)
+    {
+        return createMessage(contentSize, null);
+    }
+
+    private StoredMemoryMessage createMessage(int contentSize, MessageContentCache.Region region)
+    {
+        StorableMessageMetaData metaData = mock(StorableMessageMetaData.class);
+        when(metaData.getContentSize()).thenReturn(contentSize);
+        return new StoredMemoryMessage(1L, metaData, region);
+    }
+
+    private byte[] createContent(int length)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.derby;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.qpid.AMQStoreException;
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class DerbyCommitThreadWrapperTest extends QpidTestCase
+{
+    private DerbyCommitThreadWrapper _commitThreadWrapper;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _commitThreadWrapper = new DerbyCommitThreadWrapper("test-commit-thread");
+        _commitThreadWrapper.startCommitThread();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try
+        {
+            _commitThreadWrapper.stopCommitThread();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testCommit() throws Exception
+    {
+        Connection connection = mock(Connection.class);
+
+        StoreFuture future = _commitThreadWrapper.commit(connection);
+        future.waitForCompletion();
+
+        assertTrue("Commit should be complete", future.isComplete());
+        verify(connection).commit();
+        verify(connection).close();
+    }
+
+    public void testFailedCommitIsReportedByFuture() throws Exception
+    {
+        Connection connection = mock(Connection.class);
+        SQLException failure = new SQLException("commit failed");
+        doThrow(failure).when(connection).commit();
+
+        StoreFuture future = _commitThreadWrapper.commit(connection);
+        try
+        {
+            future.waitForCompletion();
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException e)
+        {
+            assertStoreException(failure, e);
+        }
+
+        try
+        {
+            future.isComplete();
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException e)
+        {
+            assertStoreException(failure, e);
+        }
+
+        verify(connection).rollback();
+        verify(connection).close();
+    }
+
+    private void assertStoreException(SQLException expectedCause, RuntimeException e)
+    {
+        assertTrue("Unexpected cause " + e.getCause(), e.getCause() instanceof AMQStoreException);
+        assertSame("Unexpected store exception cause", expectedCause, e.getCause().getCause());
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.derby;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.framing.MethodRegistry;
+import org.apache.qpid.framing.ProtocolVersion;
+import org.apache.qpid.framing.abstraction.MessagePublishInfo;
+import org.apache.qpid.framing.abstraction.MessagePublishInfoImpl;
+import org.apache.qpid.server.message.EnqueableMessage;
+import org.apache.qpid.server.message.MessageMetaData;
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.Transaction;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.util.FileUtils;
+
+public class DerbyMessageStoreTest extends QpidTestCase
+{
+    private static final String STORE_NAME = "test";
+
+    private File _storeLocation;
+    private DerbyMessageStore _store;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _storeLocation = new File(new File(TMP_FOLDER), getTestName());
+        FileUtils.delete(_storeLocation, true);
+        _storeLocation.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (_store != null)
+            {
+                _store.close();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+            FileUtils.delete(_storeLocation, true);
+        }
+    }
+
+    public void testMultiChunkContentRoundTrip() throws Exception
+    {
+        openStore();
+
+        byte[] data = createData(2 * DerbyMessageStore.CONTENT_CHUNK_SIZE + 1000);
+        StoredMessage<MessageMetaData> message = _store.addMessage(createMetaData(data.length));
+        message.addContent(0, ByteBuffer.wrap(data));
+        message.flushToStore();
+
+        long messageId = message.getMessageNumber();
+        assertContent(data, messageId, 0, data.length);
+        assertContent(data, messageId, DerbyMessageStore.CONTENT_CHUNK_SIZE - 10, 20);
+        assertContent(data, messageId, DerbyMessageStore.CONTENT_CHUNK_SIZE, DerbyMessageStore.CONTENT_CHUNK_SIZE);
+        assertContent(data, messageId, 2 * DerbyMessageStore.CONTENT_CHUNK_SIZE + 500, 500);
+
+        ByteBuffer dst = ByteBuffer.allocate(100);
+        assertEquals("Unexpected number of bytes read past end of content",
+                     50, _store.getContent(messageId, data.length - 50, dst));
+        dst = ByteBuffer.allocate(100);
+        assertEquals("Unexpected number of bytes read at end of content", 0, _store.getContent(messageId, data.length, dst));
+        try
+        {
+            _store.getContent(messageId, data.length + 1, dst);
+            fail("Reading beyond content should fail");
+        }
+        catch (RuntimeException e)
+        {
+            assertTrue("Unexpected exception: " + e.getMessage(), e.getMessage().contains("is greater than message size"));
+        }
+
+        message.remove();
+        dst = ByteBuffer.allocate(100);
+        assertEquals("Content not removed", 0, _store.getContent(messageId, 0, dst));
+    }
+
+    public void testEmptyContent() throws Exception
+    {
+        openStore();
+
+        StoredMessage<MessageMetaData> message = _store.addMessage(createMetaData(0));
+        message.flushToStore();
+
+        assertEquals("Unexpected content", 0, _store.getContent(message.getMessageNumber(), 0, ByteBuffer.allocate(10)));
+    }
+
+    public void testUpgradeOfUnchunkedContent() throws Exception
+    {
+        byte[] data = createData(DerbyMessageStore.CONTENT_CHUNK_SIZE + 1);
+        createVersion6Store(1l, data);
+
+        openStore();
+
+        assertContent(data, 1l, 0, data.length);
+        assertContent(data, 1l, DerbyMessageStore.CONTENT_CHUNK_SIZE, 1);
+
+        Connection conn = DriverManager.getConnection(getConnectionURL());
+        try
+        {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT version FROM QPID_DB_VERSION");
+            assertTrue("Version not found", rs.next());
+            assertEquals("Unexpected version after upgrade", 7, rs.getInt(1));
+            rs.close();
+            stmt.close();
+        }
+        finally
+        {
+            conn.close();
+        }
+    }
+
+    public void testAsyncCommitsAreBatched() throws Exception
+    {
+        openStore();
+
+        final int numberOfThreads = 4;
+        final int commitsPerThread = 25;
+        final TransactionLogResource queue = new TransactionLogResource()
+        {
+            private final UUID _id = UUID.randomUUID();
+
+            public UUID getId()
+            {
+                return _id;
+            }
+        };
+
+        final List<StoreFuture> futures = new ArrayList<StoreFuture>();
+        final List<Exception> exceptions = new ArrayList<Exception>();
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < commitsPerThread; j++)
+                        {
+                            final StoredMessage<MessageMetaData> message = _store.addMessage(createMetaData(1));
+                            message.addContent(0, ByteBuffer.wrap(new byte[] { (byte) j }));
+                            Transaction txn = _store.newTransaction();
+                            txn.enqueueMessage(queue, new TestMessage(message));
+                            StoreFuture future = txn.commitTranAsync();
+                            synchronized (futures)
+                            {
+                                futures.add(future);
+                            }
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        synchronized (exceptions)
+                        {
+                            exceptions.add(e);
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(10000);
+        }
+
+        assertTrue("Unexpected exceptions: " + exceptions, exceptions.isEmpty());
+        assertEquals("Unexpected number of futures", numberOfThreads * commitsPerThread, futures.size());
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+            assertTrue("Commit not complete", future.isComplete());
+        }
+
+        DerbyCommitThreadWrapper commitThreadWrapper = _store.getCommitThreadWrapper();
+        assertEquals("Unexpected number of commits", numberOfThreads * commitsPerThread,
+                     commitThreadWrapper.getCommitCount());
+        assertTrue("Unexpected number of batches", commitThreadWrapper.getBatchCount() > 0
+                   && commitThreadWrapper.getBatchCount() <= numberOfThreads * commitsPerThread);
+        assertTrue("Unexpected maximum batch size", commitThreadWrapper.getMaxBatchSize() >= 1);
+    }
+
+    private void assertContent(byte[] expected, long messageId, int offset, int length)
+    {
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        assertEquals("Unexpected number of bytes read at offset " + offset,
+                     length, _store.getContent(messageId, offset, dst));
+        assertTrue("Unexpected content at offset " + offset,
+                   Arrays.equals(Arrays.copyOfRange(expected, offset, offset + length), dst.array()));
+    }
+
+    private void openStore() throws Exception
+    {
+        XMLConfiguration config = new XMLConfiguration();
+        config.addProperty("environment-path", _storeLocation.getAbsolutePath());
+
+        _store = new DerbyMessageStore();
+        _store.configureConfigStore(STORE_NAME, null, config);
+        _store.configureMessageStore(STORE_NAME, null, null, config);
+    }
+
+    private String getConnectionURL()
+    {
+        return "jdbc:derby:" + _storeLocation.getAbsolutePath() + "/" + STORE_NAME + ";create=true";
+    }
+
+    private void createVersion6Store(long messageId, byte[] content) throws Exception
+    {
+        Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+        Connection conn = DriverManager.getConnection(getConnectionURL());
+        try
+        {
+            Statement stmt = conn.createStatement();
+            stmt.execute("CREATE TABLE QPID_DB_VERSION ( version int not null )");
+            stmt.execute("INSERT INTO QPID_DB_VERSION ( version ) VALUES ( 6 )");
+            stmt.execute("CREATE TABLE QPID_MESSAGE_CONTENT"
+                         + " ( message_id bigint not null, content blob , PRIMARY KEY (message_id) )");
+            stmt.close();
+
+            PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO QPID_MESSAGE_CONTENT( message_id, content ) values (?, ?)");
+            pstmt.setLong(1, messageId);
+            pstmt.setBinaryStream(2, new ByteArrayInputStream(content), content.length);
+            pstmt.executeUpdate();
+            pstmt.close();
+        }
+        finally
+        {
+            conn.close();
+        }
+    }
+
+    private byte[] createData(int length)
+    {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private MessageMetaData createMetaData(int contentSize)
+    {
+        MessagePublishInfo pubInfoBody = new MessagePublishInfoImpl(new AMQShortString(getName()), false, false,
+                new AMQShortString(getName()));
+        BasicContentHeaderProperties props = new BasicContentHeaderProperties();
+        props.setDeliveryMode(Integer.valueOf(BasicContentHeaderProperties.PERSISTENT).byteValue());
+
+        MethodRegistry methodRegistry = MethodRegistry.getMethodRegistry(ProtocolVersion.v0_9);
+        int classForBasic = methodRegistry.createBasicQosOkBody().getClazz();
+        ContentHeaderBody contentHeaderBody = new ContentHeaderBody(classForBasic, 1, props, contentSize);
+
+        return new MessageMetaData(pubInfoBody, contentHeaderBody, 1);
+    }
+
+    private static class TestMessage implements EnqueableMessage
+    {
+        private final StoredMessage<?> _handle;
+
+        public TestMessage(StoredMessage<?> handle)
+        {
+            _handle = handle;
+        }
+
+        public long getMessageNumber()
+        {
+            return _handle.getMessageNumber();
+        }
+
+        public boolean isPersistent()
+        {
+            return true;
+        }
+
+        public StoredMessage<?> getStoredMessage()
+        {
+            return _handle;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.server.message.AMQMessage;
+import org.apache.qpid.server.queue.MockAMQQueue;
+import org.apache.qpid.server.queue.MockStoredMessage;
+import org.apache.qpid.server.queue.QueueEntry;
+import org.apache.qpid.server.queue.SimpleQueueEntryList;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class DefinedGroupMessageGroupManagerTest extends QpidTestCase
+{
+    private static final String GROUP_HEADER = "group";
+    private static final String DEFAULT_GROUP = "default";
+
+    private SimpleQueueEntryList _entries;
+    private RecordingResetHelper _resetHelper;
+    private DefinedGroupMessageGroupManager _groupManager;
+    private MockSubscription _sub1;
+    private MockSubscription _sub2;
+    private long _messageId;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _entries = new SimpleQueueEntryList(new MockAMQQueue(getTestName()));
+        _resetHelper = new RecordingResetHelper();
+        _groupManager = new DefinedGroupMessageGroupManager(GROUP_HEADER, DEFAULT_GROUP, _resetHelper);
+        _sub1 = new MockSubscription();
+        _sub2 = new MockSubscription();
+    }
+
+    public void testGroupAssignedToFirstAcceptingSubscription()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+        QueueEntry other = createEntry("B");
+
+        assertTrue("First subscription should be assigned the group", _groupManager.acceptMessage(_sub1, entry1));
+        assertTrue("Entry should be acquired", entry1.acquire(_sub1));
+
+        assertFalse("Group is assigned to the first subscription", _groupManager.acceptMessage(_sub2, entry2));
+        assertFalse("Entry should be left for the first subscription", _groupManager.mightAssign(_sub2, entry2));
+        assertTrue("Group should be assigned to the first subscription", _groupManager.mightAssign(_sub1, entry2));
+        assertTrue("Group should be assigned to the first subscription", _groupManager.acceptMessage(_sub1, entry2));
+
+        assertTrue("Unassigned group should be accepted", _groupManager.mightAssign(_sub2, other));
+        assertTrue("Unassigned group should be assigned", _groupManager.acceptMessage(_sub2, other));
+    }
+
+    public void testMessagesWithoutGroupBelongToDefaultGroup()
+    {
+        QueueEntry entry1 = createEntry(null);
+        QueueEntry entry2 = createEntry(DEFAULT_GROUP);
+
+        assertTrue("First subscription should be assigned the group", _groupManager.acceptMessage(_sub1, entry1));
+        assertTrue("Entry should be acquired", entry1.acquire(_sub1));
+
+        assertFalse("Default group is assigned to the first subscription", _groupManager.acceptMessage(_sub2, entry2));
+    }
+
+    public void testGroupReleasedWhenLastAcquiredEntryReleased()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+        QueueEntry entry3 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        assertTrue(entry1.acquire(_sub1));
+        assertTrue(_groupManager.acceptMessage(_sub1, entry2));
+        assertTrue(entry2.acquire(_sub1));
+
+        entry1.release();
+        assertTrue("Group released while a message is still acquired", _resetHelper.getResets().isEmpty());
+        assertFalse("Group should still be assigned", _groupManager.acceptMessage(_sub2, entry3));
+
+        entry2.release();
+        assertEquals("Subscription pointers should have been reset once", 1, _resetHelper.getResets().size());
+        assertSame("Unexpected subscription reset", _sub1, _resetHelper.getResets().get(0));
+
+        assertTrue("Released group should be assigned to another subscription",
+                   _groupManager.acceptMessage(_sub2, entry3));
+        assertNull("Released group should no longer be assigned to the first subscription",
+                   _groupManager.findEarliestAssignedAvailableEntry(_sub1));
+    }
+
+    public void testGroupReleasedWhenLastAcquiredEntryDequeued()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        assertTrue(entry1.acquire(_sub1));
+        entry1.dequeue();
+
+        assertEquals("Subscription pointers should have been reset", 1, _resetHelper.getResets().size());
+        assertTrue("Released group should be assigned to another subscription",
+                   _groupManager.acceptMessage(_sub2, entry2));
+    }
+
+    public void testFindEarliestAssignedAvailableEntryReturnsEarliestSkippedEntry()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+        QueueEntry entry3 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        assertTrue(entry1.acquire(_sub1));
+        assertNull("No entry has been passed over", _groupManager.findEarliestAssignedAvailableEntry(_sub1));
+
+        assertFalse(_groupManager.mightAssign(_sub2, entry3));
+        assertFalse(_groupManager.mightAssign(_sub2, entry2));
+
+        assertSame("Unexpected earliest entry", entry2, _groupManager.findEarliestAssignedAvailableEntry(_sub1));
+        assertNull("Second subscription has no groups", _groupManager.findEarliestAssignedAvailableEntry(_sub2));
+
+        assertTrue(entry2.acquire());
+        assertSame("Acquired entry should no longer be earliest",
+                   entry3, _groupManager.findEarliestAssignedAvailableEntry(_sub1));
+    }
+
+    public void testReleaseResetsToEarliestSkippedEntry()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+        QueueEntry entry3 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        assertTrue(entry1.acquire(_sub1));
+        assertFalse(_groupManager.mightAssign(_sub2, entry2));
+        assertFalse(_groupManager.mightAssign(_sub2, entry3));
+
+        entry1.release();
+
+        assertEquals("Subscription pointers should have been reset", 1, _resetHelper.getResets().size());
+        assertSame("Reset should find the earliest skipped entry of the released group",
+                   entry2, _resetHelper.getEarliestEntries().get(0));
+    }
+
+    public void testClearAssignmentsReleasesIdleGroups()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+
+        assertTrue("Group should be assigned", _groupManager.acceptMessage(_sub1, entry1));
+        assertFalse("Group should be assigned to the first subscription", _groupManager.acceptMessage(_sub2, entry2));
+
+        _groupManager.clearAssignments(_sub1);
+
+        assertTrue("Idle group should have been released", _groupManager.acceptMessage(_sub2, entry2));
+    }
+
+    public void testClearAssignmentsKeepsGroupsWithAcquiredEntries()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        assertTrue(entry1.acquire(_sub1));
+
+        _groupManager.clearAssignments(_sub1);
+
+        assertFalse("Group with an acquired entry should remain assigned",
+                    _groupManager.acceptMessage(_sub2, entry2));
+
+        entry1.release();
+
+        assertTrue("Group should be released with its last acquired entry",
+                   _groupManager.acceptMessage(_sub2, entry2));
+    }
+
+    public void testGroupOfClosedSubscriptionReassignedOnceIdle()
+    {
+        QueueEntry entry1 = createEntry("A");
+        QueueEntry entry2 = createEntry("A");
+
+        assertTrue(_groupManager.acceptMessage(_sub1, entry1));
+        _sub1.close();
+
+        assertTrue("Idle group of a closed subscription should be reassigned",
+                   _groupManager.acceptMessage(_sub2, entry2));
+    }
+
+    /**
+     * Subscriptions on several threads repeatedly accept, acquire and release the entries of a single group,
+     * checking that no subscription acquires an entry of the group while another holds one.
+     */
+    public void testConcurrentAcquireAndReleaseNeverAssignsGroupTwice() throws Exception
+    {
+        final int threadCount = 4;
+        final int iterations = 20000;
+        final List<QueueEntry> entries = new ArrayList<QueueEntry>();
+        for(int i = 0; i < 8; i++)
+        {
+            entries.add(createEntry("A"));
+        }
+
+        final AtomicReference<Subscription> holder = new AtomicReference<Subscription>();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger acquisitions = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        Thread[] threads = new Thread[threadCount];
+        for(int t = 0; t < threadCount; t++)
+        {
+            final MockSubscription sub = new MockSubscription();
+            final int offset = t;
+            threads[t] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for(int i = 0; i < iterations; i++)
+                        {
+                            QueueEntry entry = entries.get((i + offset) % entries.size());
+                            if(_groupManager.acceptMessage(sub, entry) && entry.acquire(sub))
+                            {
+                                Subscription previous = holder.getAndSet(sub);
+                                if(previous != null && previous != sub)
+                                {
+                                    violations.incrementAndGet();
+                                }
+                                acquisitions.incrementAndGet();
+                                holder.compareAndSet(sub, null);
+                                entry.release();
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }, getTestName() + "-" + t);
+            threads[t].start();
+        }
+
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join(60000);
+            assertFalse("Thread did not finish", thread.isAlive());
+        }
+
+        assertTrue("Unexpected failures " + failures, failures.isEmpty());
+        assertTrue("No entry was acquired", acquisitions.get() > 0);
+        assertEquals("Group was assigned to two subscriptions at once", 0, violations.get());
+    }
+
+    private QueueEntry createEntry(String group)
+    {
+        return _entries.add(new AMQMessage(new MockStoredMessage(_messageId++, GROUP_HEADER, group)));
+    }
+
+    private class RecordingResetHelper implements MessageGroupManager.SubscriptionResetHelper
+    {
+        private final List<Subscription> _resets = new ArrayList<Subscription>();
+        private final List<QueueEntry> _earliestEntries = new ArrayList<QueueEntry>();
+
+        public synchronized void resetSubPointersForGroups(Subscription subscription, boolean clearAssignments)
+        {
+            _resets.add(subscription);
+            _earliestEntries.add(_groupManager.findEarliestAssignedAvailableEntry(subscription));
+        }
+
+        public boolean isEntryAheadOfSubscription(QueueEntry entry, Subscription sub)
+        {
+            return false;
+        }
+
+        public synchronized List<Subscription> getResets()
+        {
+            return _resets;
+        }
+
+        public synchronized List<QueueEntry> getEarliestEntries()
+        {
+            return _earliestEntries;
+        }
+    }
+}
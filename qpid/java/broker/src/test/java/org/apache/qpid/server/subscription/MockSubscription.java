@@ -24,6 +24,7 @@ package org.apache.qpid.server.subscription;
 import org.apache.qpid.AMQException;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.protocol.AMQConstant;
+import org.apache.qpid.server.filter.FilterManager;
 import org.apache.qpid.server.logging.LogActor;
 import org.apache.qpid.server.logging.LogSubject;
 import org.apache.qpid.server.message.InboundMessage;
@@ -53,6 +54,7 @@ public class MockSubscription implements Subscription
     private ArrayList<QueueEntry> messages = new ArrayList<QueueEntry>();
     private final Lock _stateChangeLock = new ReentrantLock();
     private List<QueueEntry> _acceptEntries = null;
+    private FilterManager _filters = null;
 
     private final QueueEntry.SubscriptionAcquiredState _owningState = new QueueEntry.SubscriptionAcquiredState(this);
     private final QueueEntry.SubscriptionAssignedState _assignedState = new QueueEntry.SubscriptionAssignedState(this);
@@ -72,6 +74,11 @@ public class MockSubscription implements Subscription
         _acceptEntries = acceptEntries;
     }
 
+    public MockSubscription(FilterManager filters)
+    {
+        _filters = filters;
+    }
+
     public void close()
     {
         _closed = true;
@@ -167,7 +174,12 @@ public class MockSubscription implements Subscription
             return _acceptEntries.contains(entry);
         }
 
-        return true;
+        return _filters == null || _filters.allAllow(entry);
+    }
+
+    public FilterManager getFilters()
+    {
+        return _filters;
     }
 
     public boolean isActive()
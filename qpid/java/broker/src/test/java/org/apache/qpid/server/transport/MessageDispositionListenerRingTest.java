@@ -0,0 +1,189 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.qpid.server.transport.ServerSession.MessageDispositionChangeListener;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.Range;
+
+public class MessageDispositionListenerRingTest extends QpidTestCase
+{
+    private MessageDispositionListenerRing _ring = new MessageDispositionListenerRing();
+    private RecordingVisitor _visitor = new RecordingVisitor();
+
+    public void testPutAndRemove()
+    {
+        MessageDispositionChangeListener first = putListener(1);
+        MessageDispositionChangeListener second = putListener(2);
+        assertEquals("Unexpected size", 2, _ring.size());
+
+        assertSame("Unexpected listener", second, _ring.get(2));
+        assertSame("Unexpected listener", first, _ring.remove(1));
+        assertNull("Listener should already be removed", _ring.remove(1));
+        assertNull("Unknown command should have no listener", _ring.remove(3));
+        assertEquals("Unexpected size", 1, _ring.size());
+
+        assertSame("Unexpected listener", second, _ring.remove(2));
+        assertEquals("Unexpected size", 0, _ring.size());
+    }
+
+    public void testRemoveRange()
+    {
+        for(int i = 0; i < 10; i++)
+        {
+            putListener(i * 2);
+        }
+
+        _ring.remove(Range.newInstance(3, 9), _visitor);
+
+        assertCommandIds(_visitor._commandIds, 4, 6, 8);
+        assertEquals("Unexpected size", 7, _ring.size());
+        assertNull("Listener should be removed", _ring.get(6));
+        assertNotNull("Listener should remain", _ring.get(10));
+    }
+
+    public void testRemoveRangeBeyondListeners()
+    {
+        putListener(100);
+        putListener(101);
+
+        _ring.remove(Range.newInstance(0, 99), _visitor);
+        _ring.remove(Range.newInstance(102, Integer.MAX_VALUE), _visitor);
+        assertCommandIds(_visitor._commandIds);
+
+        _ring.remove(Range.newInstance(-1000000, 1000000), _visitor);
+        assertCommandIds(_visitor._commandIds, 100, 101);
+        assertEquals("Unexpected size", 0, _ring.size());
+    }
+
+    public void testVisitLeavesListeners()
+    {
+        putListener(5);
+        putListener(6);
+
+        _ring.visit(Range.newInstance(0, 10), _visitor);
+
+        assertCommandIds(_visitor._commandIds, 5, 6);
+        assertEquals("Unexpected size", 2, _ring.size());
+    }
+
+    public void testGrowth()
+    {
+        int count = MessageDispositionListenerRing.INITIAL_CAPACITY * 4 + 3;
+        List<MessageDispositionChangeListener> listeners = new ArrayList<MessageDispositionChangeListener>();
+        for(int i = 0; i < count; i++)
+        {
+            listeners.add(putListener(i));
+        }
+
+        assertEquals("Unexpected size", count, _ring.size());
+        for(int i = 0; i < count; i++)
+        {
+            assertSame("Unexpected listener", listeners.get(i), _ring.get(i));
+        }
+    }
+
+    public void testOutOfOrderPut()
+    {
+        putListener(10);
+        putListener(5);
+        putListener(12);
+
+        _ring.remove(Range.newInstance(0, 20), _visitor);
+        assertCommandIds(_visitor._commandIds, 5, 10, 12);
+    }
+
+    public void testCommandIdWrapAround()
+    {
+        int first = Integer.MAX_VALUE - 2;
+        for(int i = 0; i < 6; i++)
+        {
+            putListener(first + i);
+        }
+
+        _ring.remove(Range.newInstance(Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1), _visitor);
+
+        assertCommandIds(_visitor._commandIds, Integer.MAX_VALUE - 1, Integer.MAX_VALUE,
+                         Integer.MIN_VALUE, Integer.MIN_VALUE + 1);
+        assertEquals("Unexpected size", 2, _ring.size());
+    }
+
+    public void testTransfersOutsideWindowAreKept()
+    {
+        MessageDispositionChangeListener straggler = putListener(0);
+        MessageDispositionChangeListener settled = mock(MessageDispositionChangeListener.class);
+        int window = MessageDispositionListenerRing.MAXIMUM_CAPACITY;
+        for(int i = 1; i <= 2 * window; i++)
+        {
+            _ring.put(i, settled);
+            _ring.remove(i);
+        }
+        putListener(2 * window + 1);
+
+        assertEquals("Unexpected size", 2, _ring.size());
+        assertSame("Unexpected listener", straggler, _ring.get(0));
+
+        _ring.remove(Range.newInstance(0, 2 * window + 1), _visitor);
+        assertCommandIds(_visitor._commandIds, 2 * window + 1, 0);
+        assertEquals("Unexpected size", 0, _ring.size());
+    }
+
+    public void testRemoveAll()
+    {
+        putListener(1);
+        putListener(3);
+
+        assertEquals("Unexpected listeners", 2, _ring.removeAll().size());
+        assertEquals("Unexpected size", 0, _ring.size());
+        assertNull("Listener should be removed", _ring.get(1));
+    }
+
+    private MessageDispositionChangeListener putListener(int commandId)
+    {
+        MessageDispositionChangeListener listener = mock(MessageDispositionChangeListener.class);
+        _ring.put(commandId, listener);
+        return listener;
+    }
+
+    private void assertCommandIds(List<Integer> actual, int... expected)
+    {
+        assertEquals("Unexpected number of listeners visited", expected.length, actual.size());
+        for(int i = 0; i < expected.length; i++)
+        {
+            assertEquals("Unexpected command id", expected[i], actual.get(i).intValue());
+        }
+    }
+
+    private static class RecordingVisitor implements MessageDispositionListenerRing.Visitor
+    {
+        private final List<Integer> _commandIds = new ArrayList<Integer>();
+
+        public void visit(int commandId, MessageDispositionChangeListener listener)
+        {
+            _commandIds.add(commandId);
+        }
+    }
+}
@@ -26,13 +26,19 @@ import org.apache.qpid.server.queue.MockAMQQueue;
 import org.apache.qpid.server.queue.MockQueueEntry;
 import org.apache.qpid.server.queue.QueueEntry;
 import org.apache.qpid.server.store.MessageStore;
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.server.store.Transaction;
 import org.apache.qpid.server.txn.MockStoreTransaction.TransactionState;
 import org.apache.qpid.test.utils.QpidTestCase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 /**
  * A unit test ensuring that LocalTransactionTest creates a long-lived store transaction
  * that spans many dequeue/enqueue operations of enlistable messages.  Verifies
@@ -597,6 +603,232 @@ public class LocalTransactionTest extends QpidTestCase
         assertEquals("Transaction update time should be reset after rollback", 0, _transaction.getTransactionUpdateTime());
     }
 
+    /**
+     * Tests that an asynchronous commit returns before the store completes the transaction, and that a second
+     * transaction may be started in the meantime.
+     */
+    public void testCommitAsyncDoesNotWaitForStore() throws Exception
+    {
+        TestStoreFuture storeFuture1 = new TestStoreFuture();
+        TestStoreFuture storeFuture2 = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture1, storeFuture2));
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        StoreFuture future1 = transaction.commitAsync(null);
+
+        assertFalse("Commit must not be complete before the store", future1.isComplete());
+        assertNotFired(_action1);
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action2);
+        StoreFuture future2 = transaction.commitAsync(null);
+
+        storeFuture1.complete();
+        assertTrue("Commit must be complete once the store is", future1.isComplete());
+        assertTrue("Post commit action must be fired", _action1.isPostCommitActionFired());
+        assertFalse("Second commit must not be complete before the store", future2.isComplete());
+        assertNotFired(_action2);
+    }
+
+    /**
+     * Tests that the post transaction actions of asynchronous commits run in commit order, even when the store
+     * completes a later transaction first.
+     */
+    public void testCommitAsyncCompletesInCommitOrder() throws Exception
+    {
+        TestStoreFuture storeFuture1 = new TestStoreFuture();
+        TestStoreFuture storeFuture2 = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture1, storeFuture2));
+        final List<String> fired = new ArrayList<String>();
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        StoreFuture future1 = transaction.commitAsync(new RecordingRunnable(fired, "first"));
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action2);
+        StoreFuture future2 = transaction.commitAsync(new RecordingRunnable(fired, "second"));
+
+        storeFuture2.complete();
+        assertFalse("Second commit must wait for the first", future2.isComplete());
+        assertNotFired(_action2);
+
+        storeFuture1.complete();
+        assertTrue("Second commit must be complete", future2.isComplete());
+        assertTrue("First commit must be complete", future1.isComplete());
+        assertTrue("Post commit action must be fired", _action1.isPostCommitActionFired());
+        assertTrue("Post commit action must be fired", _action2.isPostCommitActionFired());
+        assertEquals("Unexpected completion order", Arrays.asList("first", "second"), fired);
+    }
+
+    /**
+     * Tests that a commit without store work still waits for the earlier asynchronous commits.
+     */
+    public void testCommitAsyncNoWorkWaitsForEarlierCommits() throws Exception
+    {
+        TestStoreFuture storeFuture = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture));
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        transaction.commitAsync(null);
+        transaction.addPostTransactionAction(_action2);
+        StoreFuture future = transaction.commitAsync(null);
+
+        assertFalse("Commit must wait for the earlier commit", future.isComplete());
+        assertNotFired(_action2);
+
+        storeFuture.complete();
+        assertTrue("Commit must be complete", future.isComplete());
+        assertTrue("Post commit action must be fired", _action2.isPostCommitActionFired());
+    }
+
+    /**
+     * Tests that a synchronous commit completes the outstanding asynchronous commits first.
+     */
+    public void testCommitCompletesAsyncCommits() throws Exception
+    {
+        TestStoreFuture storeFuture = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture));
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        StoreFuture future = transaction.commitAsync(null);
+        storeFuture.complete();
+
+        transaction.commit();
+
+        assertTrue("Commit must be complete", future.isComplete());
+        assertTrue("Post commit action must be fired", _action1.isPostCommitActionFired());
+    }
+
+    /**
+     * Tests that a commit without store work and without outstanding commits completes immediately.
+     */
+    public void testCommitAsyncNoWork() throws Exception
+    {
+        final List<String> fired = new ArrayList<String>();
+        LocalTransaction transaction = new LocalTransaction(_transactionLog);
+
+        transaction.addPostTransactionAction(_action1);
+        StoreFuture future = transaction.commitAsync(new RecordingRunnable(fired, "deferred"));
+
+        assertTrue("Commit must be complete", future.isComplete());
+        assertTrue("Post commit action must be fired", _action1.isPostCommitActionFired());
+        assertEquals("Deferred work must be run", Arrays.asList("deferred"), fired);
+        assertEquals("Unexpected transaction state", TransactionState.NOT_STARTED, _storeTransaction.getState());
+    }
+
+    /**
+     * Tests that when the store fails an asynchronous commit its rollback actions are run and the failure is
+     * reported by the commit's future, while a later commit still completes.
+     */
+    public void testCommitAsyncFailureRunsRollbackActions() throws Exception
+    {
+        TestStoreFuture storeFuture1 = new TestStoreFuture();
+        TestStoreFuture storeFuture2 = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture1, storeFuture2));
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        StoreFuture future1 = transaction.commitAsync(null);
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action2);
+        StoreFuture future2 = transaction.commitAsync(null);
+
+        storeFuture1.fail(new RuntimeException("Mocked exception"));
+        storeFuture2.complete();
+
+        assertTrue("Second commit must be complete", future2.isComplete());
+        assertTrue("Post commit action must be fired", _action2.isPostCommitActionFired());
+        assertTrue("Rollback action must be fired", _action1.isRollbackActionFired());
+        assertFalse("Post commit action must not be fired", _action1.isPostCommitActionFired());
+
+        try
+        {
+            future1.isComplete();
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException re)
+        {
+            // PASS
+        }
+
+        try
+        {
+            future1.waitForCompletion();
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException re)
+        {
+            // PASS
+        }
+    }
+
+    /**
+     * Tests that a post commit action which throws does not roll back a commit the store has completed, and that
+     * the remaining post commit actions are still run.
+     */
+    public void testCommitAsyncPostCommitActionFailureDoesNotRollBack() throws Exception
+    {
+        TestStoreFuture storeFuture = new TestStoreFuture();
+        LocalTransaction transaction = new LocalTransaction(createAsyncTransactionLog(storeFuture));
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        transaction.addPostTransactionAction(new ServerTransaction.Action()
+        {
+            public void postCommit()
+            {
+                throw new RuntimeException("Mocked exception");
+            }
+
+            public void onRollback()
+            {
+                fail("Committed transaction must not be rolled back");
+            }
+        });
+        transaction.addPostTransactionAction(_action2);
+        StoreFuture future = transaction.commitAsync(null);
+
+        storeFuture.complete();
+        assertTrue("Commit must be complete", future.isComplete());
+        future.waitForCompletion();
+        assertTrue("Post commit action must be fired", _action1.isPostCommitActionFired());
+        assertTrue("Later post commit action must be fired", _action2.isPostCommitActionFired());
+        assertFalse("Rollback action must not be fired", _action1.isRollbackActionFired());
+        assertFalse("Rollback action must not be fired", _action2.isRollbackActionFired());
+    }
+
+    /**
+     * Tests that the failure of an earlier asynchronous commit is not thrown from a later rollback, which still
+     * completes the outstanding commits and rolls back its own work.
+     */
+    public void testRollbackAfterFailedAsyncCommit() throws Exception
+    {
+        TestStoreFuture storeFuture1 = new TestStoreFuture();
+        TestStoreFuture storeFuture2 = new TestStoreFuture();
+        MessageStore store = createAsyncTransactionLog(storeFuture1, storeFuture2, new TestStoreFuture());
+        LocalTransaction transaction = new LocalTransaction(store);
+        MockAction action3 = new MockAction();
+
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action1);
+        StoreFuture future1 = transaction.commitAsync(null);
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), _action2);
+        StoreFuture future2 = transaction.commitAsync(null);
+        transaction.enqueue(createTestAMQQueue(true), createTestMessage(true), action3);
+
+        storeFuture1.fail(new RuntimeException("Mocked exception"));
+        storeFuture2.complete();
+
+        transaction.rollback();
+
+        assertTrue("Rollback action of failed commit must be fired", _action1.isRollbackActionFired());
+        assertTrue("Later commit must be complete", future2.isComplete());
+        assertTrue("Post commit action of later commit must be fired", _action2.isPostCommitActionFired());
+        assertTrue("Rollback action must be fired", action3.isRollbackActionFired());
+        try
+        {
+            future1.waitForCompletion();
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException re)
+        {
+            // PASS
+        }
+    }
+
     private Collection<QueueEntry> createTestQueueEntries(boolean[] queueDurableFlags, boolean[] messagePersistentFlags)
     {
         Collection<QueueEntry> queueEntries = new ArrayList<QueueEntry>();
@@ -669,4 +901,64 @@ public class LocalTransactionTest extends QpidTestCase
         assertFalse("Post commit action must not be fired", action.isPostCommitActionFired());
     }
 
+    private MessageStore createAsyncTransactionLog(StoreFuture... storeFutures) throws Exception
+    {
+        MessageStore store = mock(MessageStore.class);
+        Transaction[] transactions = new Transaction[storeFutures.length];
+        for(int i = 0; i < storeFutures.length; i++)
+        {
+            transactions[i] = mock(Transaction.class);
+            when(transactions[i].commitTranAsync()).thenReturn(storeFutures[i]);
+        }
+        when(store.newTransaction()).thenReturn(transactions[0], Arrays.copyOfRange(transactions, 1, transactions.length));
+        return store;
+    }
+
+    private static class TestStoreFuture implements StoreFuture
+    {
+        private boolean _complete;
+        private RuntimeException _failure;
+
+        public void complete()
+        {
+            _complete = true;
+        }
+
+        public void fail(RuntimeException failure)
+        {
+            _failure = failure;
+            _complete = true;
+        }
+
+        public boolean isComplete()
+        {
+            if(_failure != null)
+            {
+                throw _failure;
+            }
+            return _complete;
+        }
+
+        public void waitForCompletion()
+        {
+            assertTrue("Test store future would block", isComplete());
+        }
+    }
+
+    private static class RecordingRunnable implements Runnable
+    {
+        private final List<String> _fired;
+        private final String _name;
+
+        public RecordingRunnable(List<String> fired, String name)
+        {
+            _fired = fired;
+            _name = name;
+        }
+
+        public void run()
+        {
+            _fired.add(_name);
+        }
+    }
 }
@@ -23,9 +23,11 @@ package org.apache.qpid.server.txn;
 import org.apache.commons.lang.NotImplementedException;
 
 import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageConverter;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.virtualhost.VirtualHost;
 
 import java.nio.ByteBuffer;
 
@@ -103,6 +105,11 @@ class MockServerMessage implements ServerMessage
         throw new NotImplementedException();
     }
 
+    public <V> V getConverted(MessageConverter<V> converter, VirtualHost virtualHost)
+    {
+        throw new NotImplementedException();
+    }
+
     public long getMessageNumber()
     {
         return 0L;